@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.business;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The assignments of a gradebook in the order the assignment pages step through
+ * them: category by category in the category order, each category's assignments
+ * in the assignment order, then those without a category. Holds only what the
+ * previous and next links need, so working out the neighbours of an assignment
+ * doesn't load the assignments or their statistics.
+ *
+ * Instances are immutable and may be shared between requests.
+ */
+public final class AssignmentNavigationIndex implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * An assignment's place in the index.
+	 */
+	public static final class Item implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Long id;
+		private final String name;
+		private final Long categoryId;
+
+		public Item(final Long id, final String name, final Long categoryId) {
+			this.id = id;
+			this.name = name;
+			this.categoryId = categoryId;
+		}
+
+		public Long getId() {
+			return this.id;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * @return the id of the assignment's category, null if it has none or categories are not in use
+		 */
+		public Long getCategoryId() {
+			return this.categoryId;
+		}
+	}
+
+	private final List<Item> items;
+
+	/**
+	 * @param items the assignments, in navigation order
+	 */
+	public AssignmentNavigationIndex(final List<Item> items) {
+		this.items = Collections.unmodifiableList(new ArrayList<>(items));
+	}
+
+	public List<Item> getItems() {
+		return this.items;
+	}
+
+	/**
+	 * @return the ids of the categories of the assignments, in navigation order
+	 */
+	public List<Long> getCategoryIds() {
+		final Set<Long> categoryIds = new LinkedHashSet<>();
+		for (final Item item : this.items) {
+			if (item.categoryId != null) {
+				categoryIds.add(item.categoryId);
+			}
+		}
+		return new ArrayList<>(categoryIds);
+	}
+
+	/**
+	 * @param categoryIds the categories whose assignments are kept
+	 * @param uncategorized whether assignments without a category are kept
+	 * @return the index of the kept assignments, e.g. those a grader may view
+	 */
+	public AssignmentNavigationIndex restrictTo(final Collection<Long> categoryIds, final boolean uncategorized) {
+		final List<Item> kept = new ArrayList<>(this.items.size());
+		for (final Item item : this.items) {
+			if (item.categoryId == null ? uncategorized : categoryIds.contains(item.categoryId)) {
+				kept.add(item);
+			}
+		}
+		return new AssignmentNavigationIndex(kept);
+	}
+
+	/**
+	 * @return the assignment before the given one, or null if it is the first or not in the index
+	 */
+	public Item getPrevious(final Long assignmentId) {
+		final int index = indexOf(assignmentId);
+		return index > 0 ? this.items.get(index - 1) : null;
+	}
+
+	/**
+	 * @return the assignment after the given one, or null if it is the last or not in the index
+	 */
+	public Item getNext(final Long assignmentId) {
+		final int index = indexOf(assignmentId);
+		return index >= 0 && index < this.items.size() - 1 ? this.items.get(index + 1) : null;
+	}
+
+	private int indexOf(final Long assignmentId) {
+		for (int i = 0; i < this.items.size(); i++) {
+			if (this.items.get(i).id.equals(assignmentId)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
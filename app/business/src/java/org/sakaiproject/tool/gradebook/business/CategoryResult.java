@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.business;
+
+import java.io.Serializable;
+
+/**
+ * A student's statistics for one category: the values
+ * {@link org.sakaiproject.tool.gradebook.Category#calculateStatisticsPerStudent(java.util.List, String)}
+ * leaves on the category, held apart from it.
+ *
+ * All statistics are null when the student has no counted score in the category.
+ *
+ * Instances are immutable and may be shared between threads.
+ */
+public final class CategoryResult implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String studentUid;
+	private final Long categoryId;
+	private final Double averageScore;
+	private final Double averageTotalPoints;
+	private final Double mean;
+	private final Double totalPointsEarned;
+	private final Double totalPointsPossible;
+
+	public CategoryResult(final String studentUid, final Long categoryId, final Double averageScore, final Double averageTotalPoints,
+			final Double mean, final Double totalPointsEarned, final Double totalPointsPossible) {
+		this.studentUid = studentUid;
+		this.categoryId = categoryId;
+		this.averageScore = averageScore;
+		this.averageTotalPoints = averageTotalPoints;
+		this.mean = mean;
+		this.totalPointsEarned = totalPointsEarned;
+		this.totalPointsPossible = totalPointsPossible;
+	}
+
+	public String getStudentUid() {
+		return this.studentUid;
+	}
+
+	public Long getCategoryId() {
+		return this.categoryId;
+	}
+
+	/**
+	 * @return the mean points earned per scored, non extra credit assignment
+	 */
+	public Double getAverageScore() {
+		return this.averageScore;
+	}
+
+	/**
+	 * @return the mean points possible per scored, non extra credit assignment
+	 */
+	public Double getAverageTotalPoints() {
+		return this.averageTotalPoints;
+	}
+
+	/**
+	 * @return the student's percentage for the category
+	 */
+	public Double getMean() {
+		return this.mean;
+	}
+
+	public Double getTotalPointsEarned() {
+		return this.totalPointsEarned;
+	}
+
+	public Double getTotalPointsPossible() {
+		return this.totalPointsPossible;
+	}
+
+	@Override
+	public String toString() {
+		return "CategoryResult[" + this.studentUid + ", category " + this.categoryId + ", mean " + this.mean + "]";
+	}
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.business;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Record of a long running gradebook operation handed to the {@link GradebookJobManager},
+ * kept so that the UI can poll its state and progress after the submitting request is gone.
+ */
+@Getter
+@Setter
+public class GradebookJob implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String STATE_QUEUED = "queued";
+	public static final String STATE_RUNNING = "running";
+	public static final String STATE_SUCCEEDED = "succeeded";
+	public static final String STATE_FAILED = "failed";
+
+	private Long id;
+	private int version;
+	private String gradebookUid;
+	private String type;
+	private String state;
+
+	/** units of work done so far, out of {@link #getTotal()} */
+	private int progress;
+
+	/** units of work of the job, 0 until the job knows */
+	private int total;
+
+	/** error of a failed job */
+	private String message;
+
+	/** user the job runs as */
+	private String creator;
+
+	/** server the job runs on */
+	private String serverId;
+
+	private Date dateCreated;
+	private Date dateStarted;
+	private Date dateFinished;
+
+	public boolean isFinished() {
+		return STATE_SUCCEEDED.equals(this.state) || STATE_FAILED.equals(this.state);
+	}
+
+	@Override
+	public String toString() {
+		return "GradebookJob " + this.id + " (" + this.type + ", gradebook " + this.gradebookUid + ", " + this.state + ")";
+	}
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.business;
+
+/**
+ * Runs long running gradebook operations off the request thread.
+ *
+ * Jobs run on a bounded pool of threads, as the user who submitted them. Jobs of
+ * the same gradebook run one after the other in submission order, so two jobs
+ * never work on one gradebook at the same time. Each job has a {@link GradebookJob}
+ * record holding its state, progress and error, which the UI polls.
+ */
+public interface GradebookJobManager {
+
+	/** filling in zeros for ungraded counted items before calculating course grades */
+	public static final String TYPE_FILL_IN_ZEROS = "fillInZeros";
+
+	/** building the student grade snapshots of a gradebook ahead of students viewing their grades */
+	public static final String TYPE_STUDENT_SNAPSHOTS = "studentSnapshots";
+
+	/** rolling up the older grading events of a gradebook into the grading event archive */
+	public static final String TYPE_ARCHIVE_GRADING_EVENTS = "archiveGradingEvents";
+
+	/**
+	 * Work of a job.
+	 */
+	public interface Task {
+
+		/**
+		 * Runs the job's work. Any exception fails the job with the exception's message.
+		 */
+		public void run(Progress progress) throws Exception;
+	}
+
+	/**
+	 * Lets a running task report how far along it is.
+	 */
+	public interface Progress {
+
+		/**
+		 * @param done units of work done so far
+		 * @param total units of work of the job
+		 */
+		public void update(int done, int total);
+	}
+
+	/**
+	 * Queues the task to run as the current user once the gradebook's earlier jobs are done.
+	 *
+	 * @return the job's record, already failed if too many jobs are waiting
+	 */
+	public GradebookJob submitJob(String gradebookUid, String type, Task task);
+
+	/**
+	 * @return the job's current record, or null if there is no such job
+	 */
+	public GradebookJob getJob(Long jobId);
+
+	/**
+	 * @return the record of the gradebook's most recently submitted job of the type, or null if there is none
+	 */
+	public GradebookJob getLatestJob(String gradebookUid, String type);
+}
@@ -160,6 +160,51 @@ public interface GradebookManager {
     public void addToGradeRecordMap(Map gradeRecordMap, List gradeRecords, Map studentIdItemIdFunctionMap);
     
     public void addToCategoryResultMap(Map categoryResultMap, List categories, Map gradeRecordMap, Map enrollmentMap);
+
+    /**
+     * Adds student grade records to the grid, marking them all viewable.
+     * Records of students or items not on the grid are left out.
+     */
+    public void addToGradeRecordGrid(RosterGradeGrid grid, List gradeRecords);
+
+    /**
+     * Adds student grade records to the grid but takes into account grader permissions
+     * passed as studentIdItemIdFunctionMap, as {@link #addToGradeRecordMap(Map, List, Map)} does.
+     * Records of students or items not on the grid are left out.
+     * @param grid
+     * @param gradeRecords
+     * @param studentIdItemIdFunctionMap
+     * 			Map of studentId to Map of Item to function (grade/view)
+     */
+    public void addToGradeRecordGrid(RosterGradeGrid grid, List gradeRecords, Map studentIdItemIdFunctionMap);
+
+    /**
+     * Same as {@link #addToCategoryResultMap(Map, List, Map, Map)}, reading the grade records from the grid.
+     */
+    public void addToCategoryResultMap(Map categoryResultMap, List categories, RosterGradeGrid grid, Map enrollmentMap);
+
+    /**
+     * Gets the roster sort keys of an assignment's column: students with a grade
+     * record have its points earned as key, with null scores placed as the database
+     * orders them. The keys are cached until the gradebook's grade records or
+     * structure change.
+     *
+     * @param assignment
+     * @return the sort keys of every student of the gradebook
+     */
+    public RosterSortKeys getAssignmentSortKeys(GradebookAssignment assignment);
+
+    /**
+     * Gets the roster sort keys of a category's column: students with any grade
+     * record in the gradebook have their mean for the category as key, null if
+     * they have none. The keys are cached until the gradebook's grade records or
+     * structure change.
+     *
+     * @param category the category, with its assignment list populated
+     * @param studentUids
+     * @return the sort keys of at least the given students
+     */
+    public RosterSortKeys getCategorySortKeys(Category category, Collection studentUids);
    
     /**
      * Gets all grade records that belong to a collection of enrollments in a
@@ -262,6 +307,40 @@ public interface GradebookManager {
      */
     public Map getGradingEventsForStudent(final String studentId, final Collection gradableObjects);
 
+    /**
+     * Gets the latest grading events of the given students on the given gradable object,
+     * without loading the rest of their history.
+     *
+     * @param gradableObject
+     * @param studentUids
+     * @param limit the most events fetched per student
+     * @return the events, and which students have older ones
+     */
+    public GradingEventWindow getLatestGradingEvents(GradableObject gradableObject, Collection studentUids, int limit);
+
+    /**
+     * Gets every grading event of the student on the gradable object, including
+     * those rolled up by {@link #archiveGradingEvents(Long, int, GradebookJobManager.Progress)}.
+     *
+     * @param gradableObject
+     * @param studentUid
+     * @return the events, oldest first
+     */
+    public List<GradingEvent> getGradingHistory(GradableObject gradableObject, String studentUid);
+
+    /**
+     * Rolls up the grading events of the gradebook's students on each gradable object
+     * beyond the latest ones into a compressed archive record per student and object,
+     * removing them from the grading event table. The events stay part of the full
+     * history returned by the other grading event methods.
+     *
+     * @param gradebookId
+     * @param keep the latest events per student and object left in the grading event table
+     * @param progress
+     * @return the number of events archived
+     */
+    public int archiveGradingEvents(Long gradebookId, int keep, GradebookJobManager.Progress progress);
+
     /**
      * Fetches a List of Assignments, but does not populate non-persistent
      * fields.
@@ -319,6 +398,16 @@ public interface GradebookManager {
      */
     public GradebookAssignment getAssignmentWithStats(Long assignmentId);
 
+    /**
+     * Fetches an assignment and populates its non-persistent statistics
+     * fields.
+     *
+     * @param assignmentId The assignment ID
+     * @param includeDroppedScores whether scores dropped by category drop rules count toward the statistics
+     * @return The GradableObject with all statistics fields populated
+     */
+    public GradebookAssignment getAssignmentWithStats(Long assignmentId, boolean includeDroppedScores);
+
    /**
      * Add a new assignment to a gradebook
      *
@@ -355,19 +444,26 @@ public interface GradebookManager {
     abstract double getTotalPointsInternal(final Gradebook gradebook, final List categories, final String studentId, List<AssignmentGradeRecord> studentGradeRecs, List<GradebookAssignment> countedAssigns, boolean literalTotal);
 
     /**
-     * Fetches a spreadsheet that has been saved
+     * Fetches what the loading dock shows of a saved spreadsheet, without its content
      *
-      * @param spreadsheetId
-     * @return  The saved spreadsheet object
+     * @param spreadsheetId
+     * @return the spreadsheet's summary, or null if there is no such spreadsheet
      */
-    public Spreadsheet getSpreadsheet(Long spreadsheetId);
+    public SpreadsheetSummary getSpreadsheetSummary(Long spreadsheetId);
 
     /**
      *
      * @param gradebookId
-     * @return  a Collection of spreadsheets
+     * @return  the summaries of the gradebook's saved spreadsheets, with the sizes of their content but
+     * without reading it
      */
-    public List getSpreadsheets(Long gradebookId);
+    public List<SpreadsheetSummary> getSpreadsheets(Long gradebookId);
+
+    /**
+     * @param spreadsheetId
+     * @return  the content of a saved spreadsheet, as passed to {@link #createSpreadsheet}
+     */
+    public String getSpreadsheetContent(Long spreadsheetId);
 
     /**
      *
@@ -610,6 +706,22 @@ public interface GradebookManager {
      * @return GradebookAssignment list
      */
     public List getAssignmentsWithNoCategoryWithStats(Long gradebookId, String assignmentSort, boolean assignAscending);
+
+    /**
+     * Get the order the assignment pages step through the assignments in: by category when
+     * categories are in use, followed by the assignments with no category. Sorts other than by
+     * mean or average score don't need statistics, and their indexes are kept until the
+     * gradebook's assignments or categories change.
+     *
+     * @param gradebookId
+     * @param assignmentSort assignment sorting string
+     * @param assignAscending assignment sorting ascending/descending
+     * @param categorySort category sorting string
+     * @param categoryAscending category sorting ascending/descending
+     * @return the navigation index of every assignment of the gradebook
+     */
+    public AssignmentNavigationIndex getAssignmentNavigationIndex(Long gradebookId, String assignmentSort, boolean assignAscending,
+            String categorySort, boolean categoryAscending);
     
     /**
      * Convert grading events to percentage or letter value depending upon grade_type
@@ -645,6 +757,36 @@ public interface GradebookManager {
      * @param gradebook
      */
     public void fillInZeroForNullGradeRecords(Gradebook gradebook);
+
+    /**
+     * Same as {@link #fillInZeroForNullGradeRecords(Gradebook)}, reporting the number of
+     * students handled so far to the progress of the job running it.
+     *
+     * @param gradebook
+     * @param progress
+     */
+    public void fillInZeroForNullGradeRecords(Gradebook gradebook, GradebookJobManager.Progress progress);
+
+    /**
+     * Fetches what the student view shows of a student's grades: the course grade, the category averages,
+     * the released items with their grades and comments, and the total points. The snapshot is kept and
+     * handed out again until the student's grades or the gradebook change.
+     *
+     * @param gradebookId
+     * @param studentUid
+     * @return the student's snapshot
+     */
+    public StudentGradeSnapshot getStudentGradeSnapshot(Long gradebookId, String studentUid);
+
+    /**
+     * Builds the grade snapshots of every student of the gradebook whose snapshot isn't current,
+     * so that they are ready before students open their grades, reporting the number of students
+     * handled so far to the progress of the job running it.
+     *
+     * @param gradebookId
+     * @param progress
+     */
+    public void buildStudentGradeSnapshots(Long gradebookId, GradebookJobManager.Progress progress);
     
     /**
      * Update grade points in DB for assignment when total point is changed by users for grade_type of GRADE_TYPE_PERCENTAGE. 
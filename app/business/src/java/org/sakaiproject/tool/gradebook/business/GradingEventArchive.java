@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.gradebook.business;
+package org.sakaiproject.tool.gradebook.business;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The older grading events of one student on one gradable object, rolled up out of
+ * GB_GRADING_EVENT_T into a single gzipped record once the student has more events
+ * than the grading pages show, so that those pages only query the latest events.
+ *
+ * The events are read back as {@link org.sakaiproject.tool.gradebook.GradingEvent}s
+ * by the manager whenever a full history is asked for.
+ */
+@Getter
+@Setter
+public class GradingEventArchive implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private Long id;
+	private int version;
+
+	private Long gradableObjectId;
+	private String studentId;
+
+	/** the archived events, oldest first, as written by the manager and gzipped */
+	private byte[] data;
+
+	/** number of events in {@link #getData()} */
+	private int eventCount;
+
+	/** when the newest archived event was graded */
+	private Date lastDateGraded;
+}
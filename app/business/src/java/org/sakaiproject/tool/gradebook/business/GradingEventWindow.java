@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.gradebook.business;
+package org.sakaiproject.tool.gradebook.business;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.sakaiproject.tool.gradebook.GradingEvent;
+import org.sakaiproject.tool.gradebook.GradingEvents;
+
+/**
+ * The latest grading events of some students on a gradable object, at most a given
+ * number per student, and which of those students have older events besides.
+ */
+public final class GradingEventWindow {
+
+	private final GradingEvents events;
+	private final Set<String> studentsWithOlderEvents;
+
+	public GradingEventWindow(final GradingEvents events, final Set<String> studentsWithOlderEvents) {
+		this.events = events;
+		this.studentsWithOlderEvents = Collections.unmodifiableSet(studentsWithOlderEvents);
+	}
+
+	/**
+	 * @return the student's latest events, in no particular order
+	 */
+	public List<GradingEvent> getEvents(final String studentUid) {
+		return this.events.getEvents(studentUid);
+	}
+
+	/**
+	 * @return whether the student has events older than those of the window
+	 */
+	public boolean hasOlderEvents(final String studentUid) {
+		return this.studentsWithOlderEvents.contains(studentUid);
+	}
+}
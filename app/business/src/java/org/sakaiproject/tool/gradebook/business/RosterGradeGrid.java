@@ -0,0 +1,339 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.business;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.sakaiproject.tool.gradebook.AbstractGradeRecord;
+
+/**
+ * Grade records of a roster laid out as a dense student x item grid.
+ *
+ * Students and items are given int ordinals when the grid is created and the
+ * records are held in one row-major array, so a roster costs an array slot per
+ * cell instead of a hash map entry per cell and a hash map per student. Whether
+ * the current user may view a cell is kept in a bit set.
+ *
+ * {@link #asMap()} and {@link #getRow(String)} are read-only views keyed by
+ * student uid and item id, for code written against the nested
+ * studentUid --> itemId --> record map, such as the roster's value bindings.
+ *
+ * Not thread safe.
+ */
+public class RosterGradeGrid {
+
+	private final String[] studentIds;
+	private final Map<String, Integer> studentOrdinals;
+	private final Long[] itemIds;
+	private final Map<Long, Integer> itemOrdinals;
+
+	private final AbstractGradeRecord[] records;
+	/** number of records held by each row */
+	private final int[] rowSizes;
+	private final BitSet viewable;
+
+	private Map<String, Map<Long, AbstractGradeRecord>> mapView;
+
+	/**
+	 * @param studentIds the students of the roster, one row each
+	 * @param itemIds the gradable objects (assignments and course grade) of the roster, one column each
+	 */
+	public RosterGradeGrid(final Collection<String> studentIds, final Collection<Long> itemIds) {
+		this.studentOrdinals = new HashMap<>(studentIds.size() * 2);
+		final List<String> students = new ArrayList<>(studentIds.size());
+		for (final String studentId : studentIds) {
+			if (studentId != null && !this.studentOrdinals.containsKey(studentId)) {
+				this.studentOrdinals.put(studentId, students.size());
+				students.add(studentId);
+			}
+		}
+		this.studentIds = students.toArray(new String[students.size()]);
+
+		this.itemOrdinals = new HashMap<>(itemIds.size() * 2);
+		final List<Long> items = new ArrayList<>(itemIds.size());
+		for (final Long itemId : itemIds) {
+			if (itemId != null && !this.itemOrdinals.containsKey(itemId)) {
+				this.itemOrdinals.put(itemId, items.size());
+				items.add(itemId);
+			}
+		}
+		this.itemIds = items.toArray(new Long[items.size()]);
+
+		this.records = new AbstractGradeRecord[this.studentIds.length * this.itemIds.length];
+		this.rowSizes = new int[this.studentIds.length];
+		this.viewable = new BitSet(this.records.length);
+	}
+
+	public int getStudentCount() {
+		return this.studentIds.length;
+	}
+
+	public int getItemCount() {
+		return this.itemIds.length;
+	}
+
+	/**
+	 * @return the student's row, or -1 if the student is not on the grid
+	 */
+	public int getStudentOrdinal(final String studentId) {
+		final Integer ordinal = studentId == null ? null : this.studentOrdinals.get(studentId);
+		return ordinal == null ? -1 : ordinal;
+	}
+
+	/**
+	 * @return the item's column, or -1 if the item is not on the grid
+	 */
+	public int getItemOrdinal(final Long itemId) {
+		final Integer ordinal = itemId == null ? null : this.itemOrdinals.get(itemId);
+		return ordinal == null ? -1 : ordinal;
+	}
+
+	public String getStudentId(final int row) {
+		return this.studentIds[row];
+	}
+
+	public Long getItemId(final int column) {
+		return this.itemIds[column];
+	}
+
+	/**
+	 * @return the record of the cell, or null if there is none
+	 */
+	public AbstractGradeRecord getRecord(final int row, final int column) {
+		return this.records[row * this.itemIds.length + column];
+	}
+
+	/**
+	 * @return whether the current user may view the cell's record
+	 */
+	public boolean isViewable(final int row, final int column) {
+		return this.viewable.get(row * this.itemIds.length + column);
+	}
+
+	/**
+	 * @return whether the row holds any record
+	 */
+	public boolean hasRecords(final int row) {
+		return this.rowSizes[row] > 0;
+	}
+
+	/**
+	 * @return whether the grid holds no record at all
+	 */
+	public boolean isEmpty() {
+		for (final int rowSize : this.rowSizes) {
+			if (rowSize > 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Puts the record in the cell of its student and gradable object, replacing any record there.
+	 *
+	 * @param viewable whether the current user may view the record
+	 * @return false if the record's student or gradable object is not on the grid, in which case it is not kept
+	 */
+	public boolean setRecord(final AbstractGradeRecord gradeRecord, final boolean viewable) {
+		final int row = getStudentOrdinal(gradeRecord.getStudentId());
+		final int column = getItemOrdinal(gradeRecord.getGradableObject().getId());
+		if (row < 0 || column < 0) {
+			return false;
+		}
+		final int cell = row * this.itemIds.length + column;
+		if (this.records[cell] == null) {
+			this.rowSizes[row]++;
+		}
+		this.records[cell] = gradeRecord;
+		this.viewable.set(cell, viewable);
+		return true;
+	}
+
+	/**
+	 * @return every record of the grid, row by row
+	 */
+	public List<AbstractGradeRecord> getRecords() {
+		final List<AbstractGradeRecord> all = new ArrayList<>();
+		for (final AbstractGradeRecord gradeRecord : this.records) {
+			if (gradeRecord != null) {
+				all.add(gradeRecord);
+			}
+		}
+		return all;
+	}
+
+	/**
+	 * @return a read-only view of the student's records keyed by gradable object id,
+	 * or null if the student has no record on the grid
+	 */
+	public Map<Long, AbstractGradeRecord> getRow(final String studentId) {
+		final int row = getStudentOrdinal(studentId);
+		return row < 0 || this.rowSizes[row] == 0 ? null : new RowMap(row);
+	}
+
+	/**
+	 * @return a read-only view of the grid as a map of student uid --> map of gradable object id --> record,
+	 * holding the students with at least one record
+	 */
+	public Map<String, Map<Long, AbstractGradeRecord>> asMap() {
+		if (this.mapView == null) {
+			this.mapView = new GridMap();
+		}
+		return this.mapView;
+	}
+
+	private final class GridMap extends AbstractMap<String, Map<Long, AbstractGradeRecord>> {
+
+		@Override
+		public Map<Long, AbstractGradeRecord> get(final Object key) {
+			return key instanceof String ? getRow((String) key) : null;
+		}
+
+		@Override
+		public boolean containsKey(final Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public Set<Entry<String, Map<Long, AbstractGradeRecord>>> entrySet() {
+			return new AbstractSet<Entry<String, Map<Long, AbstractGradeRecord>>>() {
+				@Override
+				public int size() {
+					int size = 0;
+					for (final int rowSize : RosterGradeGrid.this.rowSizes) {
+						if (rowSize > 0) {
+							size++;
+						}
+					}
+					return size;
+				}
+
+				@Override
+				public Iterator<Entry<String, Map<Long, AbstractGradeRecord>>> iterator() {
+					return new CellIterator<Entry<String, Map<Long, AbstractGradeRecord>>>(RosterGradeGrid.this.rowSizes.length) {
+						@Override
+						boolean present(final int row) {
+							return RosterGradeGrid.this.rowSizes[row] > 0;
+						}
+
+						@Override
+						Entry<String, Map<Long, AbstractGradeRecord>> entry(final int row) {
+							return new SimpleImmutableEntry<String, Map<Long, AbstractGradeRecord>>(RosterGradeGrid.this.studentIds[row], new RowMap(row));
+						}
+					};
+				}
+			};
+		}
+	}
+
+	private final class RowMap extends AbstractMap<Long, AbstractGradeRecord> {
+		private final int base;
+		private final int row;
+
+		private RowMap(final int row) {
+			this.row = row;
+			this.base = row * RosterGradeGrid.this.itemIds.length;
+		}
+
+		@Override
+		public AbstractGradeRecord get(final Object key) {
+			if (!(key instanceof Long)) {
+				return null;
+			}
+			final int column = getItemOrdinal((Long) key);
+			return column < 0 ? null : RosterGradeGrid.this.records[this.base + column];
+		}
+
+		@Override
+		public boolean containsKey(final Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public int size() {
+			return RosterGradeGrid.this.rowSizes[this.row];
+		}
+
+		@Override
+		public Set<Entry<Long, AbstractGradeRecord>> entrySet() {
+			return new AbstractSet<Entry<Long, AbstractGradeRecord>>() {
+				@Override
+				public int size() {
+					return RowMap.this.size();
+				}
+
+				@Override
+				public Iterator<Entry<Long, AbstractGradeRecord>> iterator() {
+					return new CellIterator<Entry<Long, AbstractGradeRecord>>(RosterGradeGrid.this.itemIds.length) {
+						@Override
+						boolean present(final int column) {
+							return RosterGradeGrid.this.records[RowMap.this.base + column] != null;
+						}
+
+						@Override
+						Entry<Long, AbstractGradeRecord> entry(final int column) {
+							return new SimpleImmutableEntry<>(RosterGradeGrid.this.itemIds[column], RosterGradeGrid.this.records[RowMap.this.base + column]);
+						}
+					};
+				}
+			};
+		}
+	}
+
+	/**
+	 * Iterates the indexes below a bound that are present.
+	 */
+	private abstract static class CellIterator<E> implements Iterator<E> {
+		private final int bound;
+		private int next;
+
+		CellIterator(final int bound) {
+			this.bound = bound;
+		}
+
+		abstract boolean present(int index);
+
+		abstract E entry(int index);
+
+		@Override
+		public boolean hasNext() {
+			while (this.next < this.bound && !present(this.next)) {
+				this.next++;
+			}
+			return this.next < this.bound;
+		}
+
+		@Override
+		public E next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return entry(this.next++);
+		}
+	}
+}
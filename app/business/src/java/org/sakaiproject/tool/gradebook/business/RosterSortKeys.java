@@ -0,0 +1,204 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.business;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Sort keys of the students for one score column of the roster.
+ *
+ * A student has either no key (no grade record for the column), a null key (a record
+ * without a score) or a score key. In ascending order students without a key come
+ * first, in the order they are given in, then null keys and score keys with the null
+ * keys before or after the scores, then scores from low to high. Descending order is
+ * the exact reverse.
+ *
+ * A page of the order is picked by partial selection: only as many students as the
+ * page ends with are kept and sorted, in a bounded heap.
+ *
+ * Instances are immutable and may be shared between requests.
+ */
+public final class RosterSortKeys {
+
+	private final Map<String, Integer> ordinals;
+	private final double[] keys;
+	private final boolean nullsFirst;
+	/** students the keys were worked out for, null if for every student */
+	private final Set<String> coveredStudents;
+
+	private RosterSortKeys(final Map<String, Integer> ordinals, final double[] keys, final boolean nullsFirst, final Set<String> coveredStudents) {
+		this.ordinals = ordinals;
+		this.keys = keys;
+		this.nullsFirst = nullsFirst;
+		this.coveredStudents = coveredStudents;
+	}
+
+	/**
+	 * @return whether the student has a key, null or not
+	 */
+	public boolean hasKey(final String studentId) {
+		return this.ordinals.containsKey(studentId);
+	}
+
+	/**
+	 * @return the student's score key, NaN if the key is null or the student has none
+	 */
+	public double getKey(final String studentId) {
+		final Integer ordinal = this.ordinals.get(studentId);
+		return ordinal == null ? Double.NaN : this.keys[ordinal];
+	}
+
+	public boolean isNullsFirst() {
+		return this.nullsFirst;
+	}
+
+	/**
+	 * @return whether the keys were worked out for all of the given students
+	 */
+	public boolean covers(final Collection<String> studentIds) {
+		return this.coveredStudents == null || this.coveredStudents.containsAll(studentIds);
+	}
+
+	/**
+	 * Picks a page of the items in sort order.
+	 *
+	 * @param items the items to sort, ties between equal keys keeping this order in ascending order
+	 * @param studentIdOf the student of an item
+	 * @param ascending whether to sort in ascending order
+	 * @param first the first row of the page
+	 * @param max the number of rows of the page, 0 for all rows
+	 * @return the items of the page, in sort order
+	 */
+	public <T> List<T> selectPage(final List<T> items, final Function<T, String> studentIdOf, final boolean ascending,
+			final int first, final int max) {
+		final int size = items.size();
+		final int end = max == 0 ? size : Math.min(size, first + max);
+		if (first >= end) {
+			return new ArrayList<T>();
+		}
+
+		// work on positions, with each item's group and key looked up once
+		final byte[] groups = new byte[size];
+		final double[] itemKeys = new double[size];
+		for (int i = 0; i < size; i++) {
+			final Integer ordinal = this.ordinals.get(studentIdOf.apply(items.get(i)));
+			if (ordinal == null) {
+				groups[i] = 0;
+				itemKeys[i] = Double.NaN;
+			} else {
+				itemKeys[i] = this.keys[ordinal];
+				groups[i] = (byte) (Double.isNaN(itemKeys[i]) ? (this.nullsFirst ? 1 : 3) : 2);
+			}
+		}
+		final Comparator<Integer> ascendingOrder = (a, b) -> {
+			if (groups[a] != groups[b]) {
+				return groups[a] - groups[b];
+			}
+			final int byKey = Double.compare(itemKeys[a], itemKeys[b]);
+			return byKey != 0 ? byKey : Integer.compare(a, b);
+		};
+		final Comparator<Integer> order = ascending ? ascendingOrder : ascendingOrder.reversed();
+
+		final List<Integer> selected;
+		if (end == size) {
+			selected = new ArrayList<Integer>(size);
+			for (int i = 0; i < size; i++) {
+				selected.add(i);
+			}
+		} else {
+			// keep the first "end" positions of the order: the heap's head is the last of them
+			final PriorityQueue<Integer> heap = new PriorityQueue<Integer>(end + 1, order.reversed());
+			for (int i = 0; i < size; i++) {
+				if (heap.size() < end) {
+					heap.add(i);
+				} else if (order.compare(i, heap.peek()) < 0) {
+					heap.poll();
+					heap.add(i);
+				}
+			}
+			selected = new ArrayList<Integer>(heap);
+		}
+		Collections.sort(selected, order);
+
+		final List<T> page = new ArrayList<T>(end - first);
+		for (final Integer position : selected.subList(first, end)) {
+			page.add(items.get(position));
+		}
+		return page;
+	}
+
+	/**
+	 * Collects the keys of a column.
+	 */
+	public static final class Builder {
+		private final boolean nullsFirst;
+		private final Map<String, Integer> ordinals = new HashMap<String, Integer>();
+		private double[] keys = new double[16];
+
+		/**
+		 * @param nullsFirst whether null keys sort before score keys in ascending order
+		 */
+		public Builder(final boolean nullsFirst) {
+			this.nullsFirst = nullsFirst;
+		}
+
+		/**
+		 * Sets the student's key, replacing any key set before.
+		 *
+		 * @param key the score key, or null
+		 */
+		public Builder add(final String studentId, final Double key) {
+			Integer ordinal = this.ordinals.get(studentId);
+			if (ordinal == null) {
+				ordinal = this.ordinals.size();
+				this.ordinals.put(studentId, ordinal);
+				if (ordinal == this.keys.length) {
+					this.keys = Arrays.copyOf(this.keys, ordinal * 2);
+				}
+			}
+			this.keys[ordinal] = key == null || key.isNaN() ? Double.NaN : key.doubleValue();
+			return this;
+		}
+
+		/**
+		 * @return keys worked out for every student, so that students not added have no key
+		 */
+		public RosterSortKeys build() {
+			return new RosterSortKeys(new HashMap<String, Integer>(this.ordinals), Arrays.copyOf(this.keys, this.ordinals.size()), this.nullsFirst, null);
+		}
+
+		/**
+		 * @param coveredStudents the students the keys were worked out for
+		 * @return keys worked out for the given students only
+		 */
+		public RosterSortKeys build(final Collection<String> coveredStudents) {
+			return new RosterSortKeys(new HashMap<String, Integer>(this.ordinals), Arrays.copyOf(this.keys, this.ordinals.size()), this.nullsFirst,
+					new HashSet<String>(coveredStudents));
+		}
+	}
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.gradebook.business;
+
+import java.io.Serializable;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The gzipped content of a spreadsheet saved to the loading dock, kept apart from its
+ * {@link org.sakaiproject.tool.gradebook.Spreadsheet} so that listing spreadsheets doesn't
+ * read their content.
+ *
+ * Spreadsheets saved before this table existed have no record here and keep their
+ * content in the spreadsheet itself.
+ */
+@Getter
+@Setter
+public class SpreadsheetContent implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** the id of the spreadsheet the content belongs to */
+	private Long spreadsheetId;
+
+	private Long gradebookId;
+
+	/** the content as gzipped UTF-8 */
+	private byte[] data;
+
+	/** characters of the content before compression */
+	private int contentSize;
+
+	/** bytes of {@link #getData()} */
+	private int storedSize;
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.gradebook.business;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * What the loading dock shows of a saved spreadsheet, read without its content.
+ *
+ * Instances are immutable.
+ */
+public final class SpreadsheetSummary implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Long id;
+	private final String name;
+	private final String creator;
+	private final Date dateCreated;
+	private final long contentSize;
+	private final long storedSize;
+	private final boolean compressed;
+
+	public SpreadsheetSummary(final Long id, final String name, final String creator, final Date dateCreated, final long contentSize,
+			final long storedSize, final boolean compressed) {
+		this.id = id;
+		this.name = name;
+		this.creator = creator;
+		this.dateCreated = dateCreated;
+		this.contentSize = contentSize;
+		this.storedSize = storedSize;
+		this.compressed = compressed;
+	}
+
+	public Long getId() {
+		return this.id;
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public String getCreator() {
+		return this.creator;
+	}
+
+	public Date getDateCreated() {
+		return this.dateCreated;
+	}
+
+	/**
+	 * @return the characters of the spreadsheet's content
+	 */
+	public long getContentSize() {
+		return this.contentSize;
+	}
+
+	/**
+	 * @return the size the content takes in the database: bytes once compressed, or characters for spreadsheets
+	 *         saved uncompressed
+	 */
+	public long getStoredSize() {
+		return this.storedSize;
+	}
+
+	/**
+	 * @return whether the content is kept compressed in {@link SpreadsheetContent}
+	 */
+	public boolean isCompressed() {
+		return this.compressed;
+	}
+}
@@ -0,0 +1,347 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.gradebook.business;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * What the student view shows of one student's grades, calculated once and shared
+ * by that student's page views until the student's grades or the gradebook change.
+ *
+ * Only plain values are held, never the records or assignments they were read from,
+ * so pages build their own rows from them.
+ */
+public final class StudentGradeSnapshot implements Serializable {
+
+	private static final long serialVersionUID = 2L;
+
+	private final String studentUid;
+	private final CourseGradeResult courseGrade;
+	private final List<CategoryResult> categories;
+	private final List<ItemRow> items;
+	private final boolean anyUnassignedItems;
+	private final double totalPoints;
+
+	public StudentGradeSnapshot(final String studentUid, final CourseGradeResult courseGrade,
+			final List<CategoryResult> categories, final List<ItemRow> items, final boolean anyUnassignedItems,
+			final double totalPoints) {
+		this.studentUid = studentUid;
+		this.courseGrade = courseGrade;
+		this.categories = Collections.unmodifiableList(new ArrayList<CategoryResult>(categories));
+		this.items = Collections.unmodifiableList(new ArrayList<ItemRow>(items));
+		this.anyUnassignedItems = anyUnassignedItems;
+		this.totalPoints = totalPoints;
+	}
+
+	public String getStudentUid() {
+		return this.studentUid;
+	}
+
+	/**
+	 * @return the student's course grade with its points earned calculated, or null if the student has none
+	 */
+	public CourseGradeResult getCourseGrade() {
+		return this.courseGrade;
+	}
+
+	/**
+	 * @return the gradebook's categories with the student's averages, by name
+	 */
+	public List<CategoryResult> getCategories() {
+		return this.categories;
+	}
+
+	/**
+	 * @return the gradebook's released items with the student's grades, converted to the gradebook's grade type
+	 *         and with drop scores applied, and comments
+	 */
+	public List<ItemRow> getItems() {
+		return this.items;
+	}
+
+	/**
+	 * @return true if the gradebook has items, released or not, outside any category
+	 */
+	public boolean isAnyUnassignedItems() {
+		return this.anyUnassignedItems;
+	}
+
+	/**
+	 * @return the points possible of the assignments counted toward the student's course grade
+	 */
+	public double getTotalPoints() {
+		return this.totalPoints;
+	}
+
+	/**
+	 * The student's course grade record.
+	 */
+	public static final class CourseGradeResult implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String enteredGrade;
+		private final Double autoCalculatedGrade;
+		private final Double pointsEarned;
+
+		public CourseGradeResult(final String enteredGrade, final Double autoCalculatedGrade, final Double pointsEarned) {
+			this.enteredGrade = enteredGrade;
+			this.autoCalculatedGrade = autoCalculatedGrade;
+			this.pointsEarned = pointsEarned;
+		}
+
+		public String getEnteredGrade() {
+			return this.enteredGrade;
+		}
+
+		public Double getAutoCalculatedGrade() {
+			return this.autoCalculatedGrade;
+		}
+
+		public Double getPointsEarned() {
+			return this.pointsEarned;
+		}
+	}
+
+	/**
+	 * A category and the student's average in it.
+	 */
+	public static final class CategoryResult implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Long id;
+		private final String name;
+		private final Double weight;
+		private final Integer dropLowest;
+		private final Integer dropHighest;
+		private final Integer keepHighest;
+		private final Boolean extraCredit;
+		private final boolean anyItems;
+		private final Double averageScore;
+		private final Double averageTotalPoints;
+		private final Double mean;
+
+		public CategoryResult(final Long id, final String name, final Double weight, final Integer dropLowest,
+				final Integer dropHighest, final Integer keepHighest, final Boolean extraCredit, final boolean anyItems,
+				final Double averageScore, final Double averageTotalPoints, final Double mean) {
+			this.id = id;
+			this.name = name;
+			this.weight = weight;
+			this.dropLowest = dropLowest;
+			this.dropHighest = dropHighest;
+			this.keepHighest = keepHighest;
+			this.extraCredit = extraCredit;
+			this.anyItems = anyItems;
+			this.averageScore = averageScore;
+			this.averageTotalPoints = averageTotalPoints;
+			this.mean = mean;
+		}
+
+		public Long getId() {
+			return this.id;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		public Double getWeight() {
+			return this.weight;
+		}
+
+		public Integer getDropLowest() {
+			return this.dropLowest;
+		}
+
+		public Integer getDropHighest() {
+			return this.dropHighest;
+		}
+
+		public Integer getKeepHighest() {
+			return this.keepHighest;
+		}
+
+		public Boolean getExtraCredit() {
+			return this.extraCredit;
+		}
+
+		/**
+		 * @return true if the category has items, released or not
+		 */
+		public boolean isAnyItems() {
+			return this.anyItems;
+		}
+
+		public Double getAverageScore() {
+			return this.averageScore;
+		}
+
+		public Double getAverageTotalPoints() {
+			return this.averageTotalPoints;
+		}
+
+		public Double getMean() {
+			return this.mean;
+		}
+	}
+
+	/**
+	 * A released item with the student's grade and comment, if any.
+	 */
+	public static final class ItemRow implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Long assignmentId;
+		private final String name;
+		private final Double pointsPossible;
+		private final Long dueDate;
+		private final Integer sortOrder;
+		private final Integer categorizedSortOrder;
+		private final Long categoryId;
+		private final boolean counted;
+		private final boolean ungraded;
+		private final Boolean extraCredit;
+		private final boolean externallyMaintained;
+		private final String externalId;
+		private final String externalAppName;
+		private final boolean graded;
+		private final Double pointsEarned;
+		private final Double percentEarned;
+		private final String letterEarned;
+		private final Boolean droppedFromGrade;
+		private final String commentText;
+
+		public ItemRow(final Long assignmentId, final String name, final Double pointsPossible, final Date dueDate,
+				final Integer sortOrder, final Integer categorizedSortOrder, final Long categoryId, final boolean counted,
+				final boolean ungraded, final Boolean extraCredit, final boolean externallyMaintained, final String externalId,
+				final String externalAppName, final boolean graded, final Double pointsEarned, final Double percentEarned,
+				final String letterEarned, final Boolean droppedFromGrade, final String commentText) {
+			this.assignmentId = assignmentId;
+			this.name = name;
+			this.pointsPossible = pointsPossible;
+			this.dueDate = dueDate == null ? null : dueDate.getTime();
+			this.sortOrder = sortOrder;
+			this.categorizedSortOrder = categorizedSortOrder;
+			this.categoryId = categoryId;
+			this.counted = counted;
+			this.ungraded = ungraded;
+			this.extraCredit = extraCredit;
+			this.externallyMaintained = externallyMaintained;
+			this.externalId = externalId;
+			this.externalAppName = externalAppName;
+			this.graded = graded;
+			this.pointsEarned = pointsEarned;
+			this.percentEarned = percentEarned;
+			this.letterEarned = letterEarned;
+			this.droppedFromGrade = droppedFromGrade;
+			this.commentText = commentText;
+		}
+
+		public Long getAssignmentId() {
+			return this.assignmentId;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		public Double getPointsPossible() {
+			return this.pointsPossible;
+		}
+
+		/**
+		 * @return a copy of the due date, or null if the item has none
+		 */
+		public Date getDueDate() {
+			return this.dueDate == null ? null : new Date(this.dueDate);
+		}
+
+		public Integer getSortOrder() {
+			return this.sortOrder;
+		}
+
+		public Integer getCategorizedSortOrder() {
+			return this.categorizedSortOrder;
+		}
+
+		/**
+		 * @return the id of the item's category, or null if it has none
+		 */
+		public Long getCategoryId() {
+			return this.categoryId;
+		}
+
+		public boolean isCounted() {
+			return this.counted;
+		}
+
+		public boolean isUngraded() {
+			return this.ungraded;
+		}
+
+		public Boolean getExtraCredit() {
+			return this.extraCredit;
+		}
+
+		public boolean isExternallyMaintained() {
+			return this.externallyMaintained;
+		}
+
+		public String getExternalId() {
+			return this.externalId;
+		}
+
+		public String getExternalAppName() {
+			return this.externalAppName;
+		}
+
+		/**
+		 * @return true if the student has a grade record for the item, with or without a score
+		 */
+		public boolean isGraded() {
+			return this.graded;
+		}
+
+		public Double getPointsEarned() {
+			return this.pointsEarned;
+		}
+
+		public Double getPercentEarned() {
+			return this.percentEarned;
+		}
+
+		public String getLetterEarned() {
+			return this.letterEarned;
+		}
+
+		public Boolean getDroppedFromGrade() {
+			return this.droppedFromGrade;
+		}
+
+		/**
+		 * @return the comment on the student's grade, or null if there is none
+		 */
+		public String getCommentText() {
+			return this.commentText;
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.business;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Display names of users, shared by the gradebook pages and entity providers so
+ * that listing grading logs and exports doesn't look users up one at a time.
+ *
+ * Names are held for a limited time and the number held is bounded. Users not
+ * held are looked up in the user directory together, in one call per request
+ * for names. Users the directory doesn't know are remembered as unknown for the
+ * same time.
+ */
+public interface UserDisplayNameCache {
+
+	/**
+	 * @return the user's display name, or null if the directory doesn't know the user
+	 */
+	public String getDisplayName(String userUid);
+
+	/**
+	 * @return the display names of the users the directory knows, by user uid
+	 */
+	public Map<String, String> getDisplayNames(Collection<String> userUids);
+
+	/**
+	 * @return how many names were found in the cache since startup
+	 */
+	public long getHitCount();
+
+	/**
+	 * @return how many names had to be looked up in the directory since startup
+	 */
+	public long getMissCount();
+
+	/**
+	 * @return how many times the directory was called since startup
+	 */
+	public long getLookupCount();
+
+	/**
+	 * @return the number of users currently held
+	 */
+	public int getSize();
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.business.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sakaiproject.tool.gradebook.AssignmentGradeRecord;
+import org.sakaiproject.tool.gradebook.GradebookAssignment;
+
+/**
+ * Grade records of a gradebook bucketed by assignment in a single pass, with
+ * per-assignment record counts taken on the way.
+ *
+ * {@link GradebookAssignment#calculateStatistics(Collection)} skips records of
+ * other assignments, so handing it the whole gradebook's records costs one scan
+ * of every record per assignment. Handing it only its own bucket gives the same
+ * result while every record is visited a constant number of times.
+ *
+ * Instances are not thread safe; build one per calculation.
+ */
+final class AssignmentStatisticsAggregator {
+
+	private final Map<Long, Bucket> buckets = new HashMap<>();
+
+	AssignmentStatisticsAggregator(final Collection<AssignmentGradeRecord> gradeRecords) {
+		for (final AssignmentGradeRecord record : gradeRecords) {
+			if (record == null || record.isCourseGradeRecord() || record.getGradableObject() == null) {
+				continue;
+			}
+			final Long assignmentId = record.getGradableObject().getId();
+			Bucket bucket = this.buckets.get(assignmentId);
+			if (bucket == null) {
+				bucket = new Bucket();
+				this.buckets.put(assignmentId, bucket);
+			}
+			bucket.records.add(record);
+			if (record.getPointsEarned() == null) {
+				bucket.unscored++;
+			}
+		}
+	}
+
+	/**
+	 * Calculates the mean and average total of the assignment from its own grade records.
+	 */
+	void calculateStatistics(final GradebookAssignment assignment) {
+		assignment.calculateStatistics(getGradeRecords(assignment.getId()));
+	}
+
+	/**
+	 * @return the grade records of the assignment, in their original order
+	 */
+	List<AssignmentGradeRecord> getGradeRecords(final Long assignmentId) {
+		final Bucket bucket = this.buckets.get(assignmentId);
+		return bucket != null ? bucket.records : Collections.<AssignmentGradeRecord>emptyList();
+	}
+
+	/**
+	 * @return the number of grade records of the assignment, scored or not
+	 */
+	int getRecordCount(final Long assignmentId) {
+		final Bucket bucket = this.buckets.get(assignmentId);
+		return bucket != null ? bucket.records.size() : 0;
+	}
+
+	/**
+	 * @return the number of grade records of the assignment without points earned
+	 */
+	int getUnscoredCount(final Long assignmentId) {
+		final Bucket bucket = this.buckets.get(assignmentId);
+		return bucket != null ? bucket.unscored : 0;
+	}
+
+	private static final class Bucket {
+		private final List<AssignmentGradeRecord> records = new ArrayList<>();
+		private int unscored;
+	}
+}
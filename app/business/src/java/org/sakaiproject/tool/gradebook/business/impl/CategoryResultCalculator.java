@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.business.impl;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.sakaiproject.service.gradebook.shared.GradebookService;
+import org.sakaiproject.tool.gradebook.AssignmentGradeRecord;
+import org.sakaiproject.tool.gradebook.Category;
+import org.sakaiproject.tool.gradebook.GradebookAssignment;
+import org.sakaiproject.tool.gradebook.business.CategoryResult;
+
+/**
+ * Calculates students' category statistics the way
+ * {@link Category#calculateStatisticsPerStudent(List, String)} does, without
+ * setting them on the category.
+ *
+ * What the calculation needs of the category and its assignments is read once,
+ * on the creating thread, so that {@link #calculate(String, List)} only reads the
+ * grade records it is given and can run for many students at once.
+ *
+ * Instances are immutable and thread safe.
+ */
+final class CategoryResultCalculator {
+
+	/** fewest student results worth splitting over threads */
+	static final int PARALLEL_THRESHOLD = 2000;
+
+	/** results calculated per task once split */
+	private static final int TASK_SIZE = 500;
+
+	private static final BigDecimal HUNDRED = new BigDecimal("100");
+
+	private final Long categoryId;
+	/** per assignment of the category: whether its scores count toward the category */
+	private final boolean[] counted;
+	private final boolean[] extraCredit;
+	private final BigDecimal[] pointsPossible;
+
+	/**
+	 * @param category the category, with its assignment list populated
+	 */
+	CategoryResultCalculator(final Category category) {
+		this.categoryId = category.getId();
+		final List assignments = category.getAssignmentList();
+		final int size = assignments == null ? 0 : assignments.size();
+		this.counted = new boolean[size];
+		this.extraCredit = new boolean[size];
+		this.pointsPossible = new BigDecimal[size];
+		for (int i = 0; i < size; i++) {
+			final GradebookAssignment assignment = (GradebookAssignment) assignments.get(i);
+			final Double points = assignment.getPointsPossible();
+			this.counted[i] = assignment.isCounted() && !assignment.getUngraded() && points != null && points.doubleValue() > 0.0
+					&& assignment.getCategory() != null && this.categoryId.equals(assignment.getCategory().getId());
+			this.extraCredit[i] = assignment.isExtraCredit();
+			this.pointsPossible[i] = points == null ? null : new BigDecimal(points.toString());
+		}
+	}
+
+	/**
+	 * @param studentUid
+	 * @param gradeRecords the student's records of the category's assignments, one per assignment
+	 * in the order of the category's assignment list, null where the student has none. Drop
+	 * scores must already have been applied.
+	 * @return the student's statistics for the category
+	 */
+	CategoryResult calculate(final String studentUid, final List gradeRecords) {
+		int numScored = 0;
+		int numOfAssignments = 0;
+		BigDecimal total = BigDecimal.ZERO;
+		BigDecimal totalPossible = BigDecimal.ZERO;
+
+		final int size = Math.min(this.counted.length, gradeRecords == null ? 0 : gradeRecords.size());
+		for (int i = 0; i < size; i++) {
+			final Object obj = gradeRecords.get(i);
+			if (!this.counted[i] || !(obj instanceof AssignmentGradeRecord)) {
+				continue;
+			}
+			final AssignmentGradeRecord gradeRecord = (AssignmentGradeRecord) obj;
+			if (!studentUid.equals(gradeRecord.getStudentId()) || Boolean.TRUE.equals(gradeRecord.getDroppedFromGrade()) || gradeRecord.getPointsEarned() == null) {
+				continue;
+			}
+			total = total.add(new BigDecimal(gradeRecord.getPointsEarned().toString()));
+			if (!this.extraCredit[i]) {
+				totalPossible = totalPossible.add(this.pointsPossible[i]);
+				numOfAssignments++;
+				numScored++;
+			}
+		}
+
+		// no division by zero when only extra credit is scored
+		if (numScored == 0 || numOfAssignments == 0 || totalPossible.signum() == 0) {
+			return new CategoryResult(studentUid, this.categoryId, null, null, null, null, null);
+		}
+		final BigDecimal averageScore = total.divide(new BigDecimal(numScored), GradebookService.MATH_CONTEXT);
+		final BigDecimal averageTotalPoints = totalPossible.divide(new BigDecimal(numOfAssignments), GradebookService.MATH_CONTEXT);
+		final BigDecimal mean = averageScore.divide(averageTotalPoints, GradebookService.MATH_CONTEXT).multiply(HUNDRED);
+		return new CategoryResult(studentUid, this.categoryId, averageScore.doubleValue(), averageTotalPoints.doubleValue(),
+				mean.doubleValue(), total.doubleValue(), totalPossible.doubleValue());
+	}
+
+	/**
+	 * Calculates a result per entry of the given arrays, splitting the work over the pool
+	 * when there are at least {@link #PARALLEL_THRESHOLD} entries and the pool has more than one thread.
+	 *
+	 * @param calculators the calculator of each entry's category
+	 * @param studentUids the student of each entry
+	 * @param gradeRecords the records of each entry, as taken by {@link #calculate(String, List)}
+	 * @return the result of each entry
+	 */
+	static CategoryResult[] calculateAll(final ForkJoinPool pool, final CategoryResultCalculator[] calculators,
+			final String[] studentUids, final List[] gradeRecords) {
+		final CategoryResult[] results = new CategoryResult[studentUids.length];
+		final CalculateTask task = new CalculateTask(calculators, studentUids, gradeRecords, results, 0, results.length);
+		if (results.length < PARALLEL_THRESHOLD || pool.getParallelism() < 2) {
+			task.compute();
+		} else {
+			pool.invoke(task);
+		}
+		return results;
+	}
+
+	private static final class CalculateTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final CategoryResultCalculator[] calculators;
+		private final String[] studentUids;
+		private final List[] gradeRecords;
+		private final CategoryResult[] results;
+		private final int from;
+		private final int to;
+
+		private CalculateTask(final CategoryResultCalculator[] calculators, final String[] studentUids, final List[] gradeRecords,
+				final CategoryResult[] results, final int from, final int to) {
+			this.calculators = calculators;
+			this.studentUids = studentUids;
+			this.gradeRecords = gradeRecords;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from > TASK_SIZE && getPool() != null) {
+				final int middle = (this.from + this.to) >>> 1;
+				invokeAll(new CalculateTask(this.calculators, this.studentUids, this.gradeRecords, this.results, this.from, middle),
+						new CalculateTask(this.calculators, this.studentUids, this.gradeRecords, this.results, middle, this.to));
+				return;
+			}
+			for (int i = this.from; i < this.to; i++) {
+				this.results[i] = this.calculators[i].calculate(this.studentUids[i], this.gradeRecords[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,421 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.business.impl;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.sakaiproject.service.gradebook.shared.GradebookService;
+import org.sakaiproject.tool.gradebook.AssignmentGradeRecord;
+import org.sakaiproject.tool.gradebook.Category;
+import org.sakaiproject.tool.gradebook.Gradebook;
+import org.sakaiproject.tool.gradebook.GradebookAssignment;
+
+/**
+ * Columnar form of the course grade calculation done by
+ * {@link GradebookCalculationImpl#getTotalPointsEarnedInternal(String, Gradebook, List, List, List)}
+ * and {@link GradebookCalculationImpl#getTotalPointsInternal(Gradebook, List, String, List, List, boolean)}.
+ *
+ * The grade records of every student are packed once into a student x assignment
+ * score matrix (NaN where there is no counting score) and the counted assignments
+ * into per-column flags and a category index. Earned, possible and literal totals
+ * are then computed for every student in a single pass without boxing.
+ *
+ * Results are identical to the per-student methods: scores are visited in the
+ * same order as the student's grade record list, category sums are built in the
+ * same order, and the literal total is summed exactly before the same
+ * {@link GradebookService#MATH_CONTEXT} rounding.
+ *
+ * Instances are not thread safe; build one per calculation. Once packed, the
+ * rows may be calculated on several threads, see
+ * {@link #calculate(double[], double[], double[], ForkJoinPool, int)}.
+ */
+final class CourseGradeMatrix {
+
+	/** fewest rows a calculation task is given once split */
+	static final int MIN_TASK_ROWS = 250;
+
+	private final int categoryType;
+	private final boolean weighted;
+
+	// columns, in counted assignment order
+	private final int columns;
+	private final GradebookAssignment[] assignments;
+	private final double[] pointsPossible;
+	private final int[] columnCategory;
+	/** assignment is extra credit, used when summing category totals for the earned score */
+	private final boolean[] assignmentExtraCredit;
+	/** assignment passes the "counted grade record" filter used for points possible */
+	private final boolean[] countsTowardPossible;
+	private final boolean[] external;
+
+	// categories, in the order of the gradebook's category list
+	private final int categoryCount;
+	private final double[] categoryWeight;
+	private final boolean[] categoryExtraCredit;
+
+	// rows
+	private int rows;
+	private double[] scores;
+	/** record order per row, as column indexes; row r spans rowStart[r] to rowStart[r + 1] */
+	private int[] rowStart;
+	private int[] recordOrder;
+	/** one bit per column per row, set when an external column is hidden from that student */
+	private long[] hidden;
+	private final int hiddenWords;
+	/** row had no grade record list at all, which the per-student path reports as zero everywhere */
+	private boolean[] noRecords;
+
+	private final Map<GradebookAssignment, Integer> columnIndex;
+
+	/**
+	 * @param gradebook the gradebook being calculated
+	 * @param categories the gradebook's categories, see {@link GradebookManagerHibernateImpl#getCategories(Long)}
+	 * @param countedAssigns assignments counted toward the course grade
+	 */
+	CourseGradeMatrix(final Gradebook gradebook, final List categories, final List<GradebookAssignment> countedAssigns) {
+		this.categoryType = gradebook.getCategory_type();
+		this.weighted = this.categoryType == GradebookService.CATEGORY_TYPE_WEIGHTED_CATEGORY;
+
+		final Map<Long, Integer> categoryIndex = new HashMap<>();
+		if (categories != null) {
+			this.categoryCount = categories.size();
+			this.categoryWeight = new double[this.categoryCount];
+			this.categoryExtraCredit = new boolean[this.categoryCount];
+			for (int i = 0; i < this.categoryCount; i++) {
+				final Category cate = (Category) categories.get(i);
+				if (cate == null || cate.isRemoved()) {
+					continue;
+				}
+				if (!categoryIndex.containsKey(cate.getId())) {
+					categoryIndex.put(cate.getId(), i);
+				}
+				if (this.weighted) {
+					this.categoryWeight[i] = cate.getWeight().doubleValue();
+				}
+				this.categoryExtraCredit[i] = cate.isExtraCredit() != null && cate.isExtraCredit();
+			}
+		} else {
+			this.categoryCount = 0;
+			this.categoryWeight = new double[0];
+			this.categoryExtraCredit = new boolean[0];
+		}
+
+		this.columns = countedAssigns.size();
+		this.assignments = countedAssigns.toArray(new GradebookAssignment[this.columns]);
+		this.pointsPossible = new double[this.columns];
+		this.columnCategory = new int[this.columns];
+		this.assignmentExtraCredit = new boolean[this.columns];
+		this.countsTowardPossible = new boolean[this.columns];
+		this.external = new boolean[this.columns];
+		this.columnIndex = new HashMap<>(this.columns * 2);
+		this.hiddenWords = (this.columns + 63) >>> 6;
+
+		for (int c = 0; c < this.columns; c++) {
+			final GradebookAssignment assign = countedAssigns.get(c);
+			this.columnIndex.put(assign, c);
+			this.pointsPossible[c] = assign.getPointsPossible() == null ? 0 : assign.getPointsPossible().doubleValue();
+			this.external[c] = assign.isExternallyMaintained();
+			this.assignmentExtraCredit[c] = assign.isExtraCredit();
+
+			final Integer cat = assign.getCategory() == null ? null : categoryIndex.get(assign.getCategory().getId());
+			this.columnCategory[c] = cat == null ? -1 : cat;
+
+			boolean extraCredit = assign.isExtraCredit();
+			if (this.categoryType != GradebookService.CATEGORY_TYPE_NO_CATEGORY && assign.getCategory() != null && Boolean.TRUE.equals(assign.getCategory().isExtraCredit())) {
+				extraCredit = true;
+			}
+			this.countsTowardPossible[c] = assign.isCounted() && !assign.getUngraded() && !assign.isRemoved()
+					&& assign.getPointsPossible() != null && assign.getPointsPossible() > 0 && !extraCredit;
+		}
+	}
+
+	/**
+	 * Packs the grade records of the given students into the score matrix.
+	 * Drop scores must already have been applied to the records.
+	 *
+	 * @param studentIds one row per student, in output order
+	 * @param studentIdGradeRecordsMap map of studentId --> List of that student's AssignmentGradeRecords
+	 * @param visibleExternals map of studentId --> externally maintained assignments visible to that student
+	 */
+	void pack(final List<String> studentIds, final Map<String, List<AssignmentGradeRecord>> studentIdGradeRecordsMap,
+			final Map<String, Set<GradebookAssignment>> visibleExternals) {
+		this.rows = studentIds.size();
+		this.scores = new double[this.rows * this.columns];
+		Arrays.fill(this.scores, Double.NaN);
+		this.rowStart = new int[this.rows + 1];
+		this.recordOrder = new int[Math.max(16, this.rows * Math.min(this.columns, 8))];
+		this.hidden = new long[this.rows * this.hiddenWords];
+		this.noRecords = new boolean[this.rows];
+
+		int next = 0;
+		for (int r = 0; r < this.rows; r++) {
+			final String studentId = studentIds.get(r);
+			this.rowStart[r] = next;
+
+			final Set<GradebookAssignment> visible = visibleExternals == null ? null : visibleExternals.get(studentId);
+			for (int c = 0; c < this.columns; c++) {
+				if (this.external[c] && (visible == null || !visible.contains(this.assignments[c]))) {
+					this.hidden[r * this.hiddenWords + (c >>> 6)] |= 1L << c;
+				}
+			}
+
+			// a missing map means no records for anyone, a missing entry means no record list for this student
+			final List<AssignmentGradeRecord> gradeRecs = studentIdGradeRecordsMap == null
+					? Collections.<AssignmentGradeRecord>emptyList() : studentIdGradeRecordsMap.get(studentId);
+			if (gradeRecs == null) {
+				this.noRecords[r] = true;
+				continue;
+			}
+			final int base = r * this.columns;
+			for (final AssignmentGradeRecord gradeRec : gradeRecs) {
+				final Integer col = this.columnIndex.get(gradeRec.getAssignment());
+				if (col == null || gradeRec.getPointsEarned() == null || gradeRec.getDroppedFromGrade()) {
+					continue;
+				}
+				if (next == this.recordOrder.length) {
+					this.recordOrder = Arrays.copyOf(this.recordOrder, next * 2);
+				}
+				this.scores[base + col] = gradeRec.getPointsEarned();
+				this.recordOrder[next++] = col;
+			}
+		}
+		this.rowStart[this.rows] = next;
+	}
+
+	/**
+	 * Computes the course grade totals of every packed row.
+	 *
+	 * @param earned receives the total points earned (weighted for weighted categories), -1 if nothing was scored
+	 * @param literal receives the literal points earned, rounded with {@link GradebookService#MATH_CONTEXT}
+	 * @param possible receives the total points possible (sum of weights for weighted categories), -1 if nothing was scored
+	 */
+	void calculate(final double[] earned, final double[] literal, final double[] possible) {
+		calculateRows(0, this.rows, earned, literal, possible);
+	}
+
+	/**
+	 * Same as {@link #calculate(double[], double[], double[])}, with the rows split over the
+	 * pool when there are at least parallelThreshold of them and the pool has more than one thread.
+	 * Each row's totals are worked out the same way whichever thread calculates it, so the results
+	 * do not depend on the split.
+	 */
+	void calculate(final double[] earned, final double[] literal, final double[] possible, final ForkJoinPool pool,
+			final int parallelThreshold) {
+		if (pool == null || pool.getParallelism() < 2 || this.rows < Math.max(parallelThreshold, 2 * MIN_TASK_ROWS)) {
+			calculateRows(0, this.rows, earned, literal, possible);
+			return;
+		}
+		pool.invoke(new CalculateTask(0, this.rows, earned, literal, possible));
+	}
+
+	/**
+	 * Computes the totals of rows from (inclusive) to to (exclusive), with scratch buffers of its own.
+	 * The packed matrix is only read, so calls for disjoint rows may run at once.
+	 */
+	private void calculateRows(final int from, final int to, final double[] earned, final double[] literal, final double[] possible) {
+		final boolean[] taken = new boolean[this.columns];
+		final boolean[] takenForPossible = new boolean[this.columns];
+		final double[] cateScore = new double[this.categoryCount];
+		final double[] cateTotal = new double[this.categoryCount];
+		final boolean[] categoryTaken = new boolean[this.categoryCount];
+		final ExactSum literalSum = new ExactSum();
+
+		for (int r = from; r < to; r++) {
+			if (this.noRecords[r]) {
+				earned[r] = 0;
+				literal[r] = 0;
+				possible[r] = 0;
+				continue;
+			}
+			Arrays.fill(taken, false);
+			Arrays.fill(takenForPossible, false);
+			Arrays.fill(cateScore, Double.NaN);
+			Arrays.fill(cateTotal, Double.NaN);
+			Arrays.fill(categoryTaken, false);
+			literalSum.reset();
+
+			final int base = r * this.columns;
+			final int hiddenBase = r * this.hiddenWords;
+			double totalPointsEarned = 0;
+			boolean anyTaken = false;
+			boolean anyTakenForPossible = false;
+
+			// visit the scores in grade record order, as the per-student path does
+			for (int p = this.rowStart[r]; p < this.rowStart[r + 1]; p++) {
+				final int c = this.recordOrder[p];
+				if ((this.hidden[hiddenBase + (c >>> 6)] & (1L << c)) != 0) {
+					continue;
+				}
+				final double score = this.scores[base + c];
+				final int cat = this.columnCategory[c];
+
+				if (this.weighted) {
+					if (cat >= 0) {
+						taken[c] = true;
+						anyTaken = true;
+						literalSum.add(score);
+						cateScore[cat] = Double.isNaN(cateScore[cat]) ? score : cateScore[cat] + score;
+					}
+				} else {
+					totalPointsEarned += score;
+					literalSum.add(score);
+					taken[c] = true;
+					anyTaken = true;
+				}
+
+				if (this.countsTowardPossible[c]) {
+					if (this.categoryType == GradebookService.CATEGORY_TYPE_NO_CATEGORY) {
+						takenForPossible[c] = true;
+						anyTakenForPossible = true;
+					} else if (cat >= 0 && !this.categoryExtraCredit[cat]) {
+						takenForPossible[c] = true;
+						anyTakenForPossible = true;
+						categoryTaken[cat] = true;
+					}
+				}
+			}
+
+			if (this.weighted) {
+				for (int c = 0; c < this.columns; c++) {
+					final int cat = this.columnCategory[c];
+					if (taken[c] && cat >= 0 && !this.assignmentExtraCredit[c]) {
+						cateTotal[cat] = Double.isNaN(cateTotal[cat]) ? this.pointsPossible[c] : cateTotal[cat] + this.pointsPossible[c];
+					}
+				}
+			}
+
+			if (!anyTaken) {
+				totalPointsEarned = -1;
+			}
+
+			if (this.weighted) {
+				for (int cat = 0; cat < this.categoryCount; cat++) {
+					if (!Double.isNaN(cateScore[cat]) && !Double.isNaN(cateTotal[cat])) {
+						totalPointsEarned += cateScore[cat] * this.categoryWeight[cat] / cateTotal[cat];
+					}
+				}
+			}
+
+			earned[r] = totalPointsEarned;
+			literal[r] = new BigDecimal(literalSum.doubleValue(), GradebookService.MATH_CONTEXT).doubleValue();
+			possible[r] = pointsPossible(takenForPossible, anyTakenForPossible, categoryTaken);
+		}
+	}
+
+	private double pointsPossible(final boolean[] takenForPossible, final boolean anyTaken, final boolean[] categoryTaken) {
+		if (!anyTaken) {
+			return -1;
+		}
+		double totalPointsPossible = 0;
+		if (this.weighted) {
+			for (int cat = 0; cat < this.categoryCount; cat++) {
+				if (categoryTaken[cat]) {
+					totalPointsPossible += this.categoryWeight[cat];
+				}
+			}
+			return totalPointsPossible;
+		}
+		for (int c = 0; c < this.columns; c++) {
+			if (takenForPossible[c]) {
+				totalPointsPossible += this.pointsPossible[c];
+			}
+		}
+		return totalPointsPossible;
+	}
+
+	private final class CalculateTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+		private final double[] earned;
+		private final double[] literal;
+		private final double[] possible;
+
+		private CalculateTask(final int from, final int to, final double[] earned, final double[] literal, final double[] possible) {
+			this.from = from;
+			this.to = to;
+			this.earned = earned;
+			this.literal = literal;
+			this.possible = possible;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from < 2 * MIN_TASK_ROWS) {
+				calculateRows(this.from, this.to, this.earned, this.literal, this.possible);
+				return;
+			}
+			final int middle = (this.from + this.to) >>> 1;
+			invokeAll(new CalculateTask(this.from, middle, this.earned, this.literal, this.possible),
+					new CalculateTask(middle, this.to, this.earned, this.literal, this.possible));
+		}
+	}
+
+	/**
+	 * Exact running sum of doubles, kept as a short list of non-overlapping
+	 * partials (Shewchuk's algorithm). Converting the partials to BigDecimal
+	 * gives the same value as summing every score as a BigDecimal.
+	 */
+	static final class ExactSum {
+		private double[] partials = new double[8];
+		private int size;
+
+		void reset() {
+			this.size = 0;
+		}
+
+		void add(double x) {
+			int i = 0;
+			for (int j = 0; j < this.size; j++) {
+				double y = this.partials[j];
+				if (Math.abs(x) < Math.abs(y)) {
+					final double t = x;
+					x = y;
+					y = t;
+				}
+				final double hi = x + y;
+				final double lo = y - (hi - x);
+				if (lo != 0.0) {
+					this.partials[i++] = lo;
+				}
+				x = hi;
+			}
+			if (i == this.partials.length) {
+				this.partials = Arrays.copyOf(this.partials, i * 2);
+			}
+			this.partials[i++] = x;
+			this.size = i;
+		}
+
+		double doubleValue() {
+			BigDecimal sum = new BigDecimal(0d);
+			for (int i = 0; i < this.size; i++) {
+				sum = sum.add(new BigDecimal(this.partials[i]));
+			}
+			return sum.doubleValue();
+		}
+	}
+}
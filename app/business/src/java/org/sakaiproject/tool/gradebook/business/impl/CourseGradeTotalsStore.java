@@ -0,0 +1,207 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.business.impl;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Running course grade totals per gradebook and student, so that course grade
+ * reads can look up each student's earned, possible and literal points instead
+ * of reloading and recalculating every grade record.
+ *
+ * Each gradebook entry is tied to a structure key built from everything the
+ * calculation depends on besides the scores (grade and category type, counted
+ * assignments, category weights and drop rules). A different key means the
+ * structure changed, and the gradebook's totals are rebuilt from scratch.
+ *
+ * Each student row carries the stamp of that student's grade records it was
+ * calculated from (record count, latest date recorded, score sum). Reads take the
+ * current stamps of their students with one grouped query and recalculate only the
+ * rows that no longer match, which catches writes made around the manager, for
+ * example by an external assessment tool or on another server. Score writes through
+ * the manager refresh the affected rows in the writing transaction, so these reads
+ * usually find nothing to recalculate.
+ *
+ * A row whose stamp was compared less than a configured interval ago can be trusted
+ * without the query, e.g. when one request reads the same course grades repeatedly.
+ * The interval is off by default.
+ *
+ * The number of gradebooks held is bounded, least recently used first out.
+ */
+@Slf4j
+class CourseGradeTotalsStore {
+
+	static final int DEFAULT_MAX_GRADEBOOKS = 100;
+
+	private final Map<Long, GradebookTotals> gradebooks;
+
+	CourseGradeTotalsStore(final int maxGradebooks) {
+		this.gradebooks = Collections.synchronizedMap(new LinkedHashMap<Long, GradebookTotals>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Long, GradebookTotals> eldest) {
+				return size() > maxGradebooks;
+			}
+		});
+	}
+
+	/**
+	 * @return the totals of the gradebook, emptied first if they were built for a different structure
+	 */
+	GradebookTotals getGradebookTotals(final Long gradebookId, final String structureKey) {
+		synchronized (this.gradebooks) {
+			GradebookTotals totals = this.gradebooks.get(gradebookId);
+			if (totals == null || !totals.structureKey.equals(structureKey)) {
+				if (totals != null && log.isDebugEnabled()) {
+					log.debug("Rebuilding course grade totals for gradebook " + gradebookId + " after a structure change");
+				}
+				totals = new GradebookTotals(structureKey);
+				this.gradebooks.put(gradebookId, totals);
+			}
+			return totals;
+		}
+	}
+
+	/**
+	 * @return the totals of the gradebook, or null if none are held
+	 */
+	GradebookTotals peekGradebookTotals(final Long gradebookId) {
+		return this.gradebooks.get(gradebookId);
+	}
+
+	/**
+	 * Drops all totals of the gradebook, forcing a full rebuild on the next read.
+	 */
+	void invalidate(final Long gradebookId) {
+		this.gradebooks.remove(gradebookId);
+	}
+
+	static final class GradebookTotals {
+		private final String structureKey;
+		private final Map<String, StudentTotals> students = new ConcurrentHashMap<>();
+
+		private GradebookTotals(final String structureKey) {
+			this.structureKey = structureKey;
+		}
+
+		String getStructureKey() {
+			return this.structureKey;
+		}
+
+		StudentTotals get(final String studentId) {
+			return this.students.get(studentId);
+		}
+
+		void put(final String studentId, final StudentTotals totals) {
+			this.students.put(studentId, totals);
+		}
+	}
+
+	/**
+	 * Stamp of a student's grade records, as returned by one grouped query.
+	 */
+	static final class RecordStamp {
+		static final RecordStamp NONE = new RecordStamp(0, 0, 0);
+
+		private final long count;
+		private final long lastRecorded;
+		private final double scoreSum;
+
+		RecordStamp(final long count, final long lastRecorded, final double scoreSum) {
+			this.count = count;
+			this.lastRecorded = lastRecorded;
+			this.scoreSum = scoreSum;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof RecordStamp)) {
+				return false;
+			}
+			final RecordStamp other = (RecordStamp) o;
+			return this.count == other.count && this.lastRecorded == other.lastRecorded
+					&& Double.compare(this.scoreSum, other.scoreSum) == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (this.count ^ this.lastRecorded ^ Double.doubleToLongBits(this.scoreSum));
+		}
+
+		@Override
+		public String toString() {
+			return this.count + "/" + this.lastRecorded + "/" + this.scoreSum;
+		}
+	}
+
+	static final class StudentTotals {
+		private final RecordStamp stamp;
+		private final long visibleExternals;
+		private final double totalPointsEarned;
+		private final double literalTotalPointsEarned;
+		private final double totalPointsPossible;
+		/** when the row's stamp was last compared with the database */
+		private volatile long verified = System.currentTimeMillis();
+
+		StudentTotals(final RecordStamp stamp, final long visibleExternals, final double totalPointsEarned,
+				final double literalTotalPointsEarned, final double totalPointsPossible) {
+			this.stamp = stamp;
+			this.visibleExternals = visibleExternals;
+			this.totalPointsEarned = totalPointsEarned;
+			this.literalTotalPointsEarned = literalTotalPointsEarned;
+			this.totalPointsPossible = totalPointsPossible;
+		}
+
+		/**
+		 * @return whether the row's stamp was last compared longer than the interval ago, always for no interval
+		 */
+		boolean isVerificationDue(final long interval) {
+			return interval <= 0 || System.currentTimeMillis() - this.verified > interval;
+		}
+
+		void verified() {
+			this.verified = System.currentTimeMillis();
+		}
+
+		boolean isCurrent(final RecordStamp current, final long currentVisibleExternals) {
+			return this.stamp.equals(current) && isCurrent(currentVisibleExternals);
+		}
+
+		/**
+		 * @return whether the row was calculated for the externally maintained assignments the student now sees
+		 */
+		boolean isCurrent(final long currentVisibleExternals) {
+			return this.visibleExternals == currentVisibleExternals;
+		}
+
+		double getTotalPointsEarned() {
+			return this.totalPointsEarned;
+		}
+
+		double getLiteralTotalPointsEarned() {
+			return this.literalTotalPointsEarned;
+		}
+
+		double getTotalPointsPossible() {
+			return this.totalPointsPossible;
+		}
+	}
+}
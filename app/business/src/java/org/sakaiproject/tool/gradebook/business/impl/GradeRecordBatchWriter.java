@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.business.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.Session;
+import org.hibernate.StaleStateException;
+import org.sakaiproject.service.gradebook.shared.StaleObjectModificationException;
+import org.sakaiproject.tool.gradebook.GradingEvent;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Writes grade records and their grading events in batches within one session.
+ *
+ * Records are handed to the session as they come and flushed every batch size
+ * records, so the session never holds more than one batch of pending statements
+ * and the statements of a batch go to the database together (and as JDBC batches
+ * where hibernate.jdbc.batch_size is set). Grading events are collected and
+ * written after all records, in batches of the same size.
+ *
+ * Writers that produce many new rows can evict what they wrote after each
+ * flush, so the session doesn't grow with the number of rows.
+ *
+ * An optimistic locking failure on any flush is surfaced as a
+ * {@link StaleObjectModificationException}, as it was with per-record writes.
+ *
+ * Instances are not thread safe; build one per write.
+ */
+@Slf4j
+final class GradeRecordBatchWriter {
+
+	/** used unless gradebook.gradeRecords.batchSize is set */
+	static final int DEFAULT_BATCH_SIZE = 50;
+
+	private final Session session;
+	private final int batchSize;
+	private final boolean evictWritten;
+	private final List<GradingEvent> events = new ArrayList<>();
+	private final List<Object> batch = new ArrayList<>();
+
+	private int pending;
+	private int records;
+	private int batches;
+	private long flushNanos;
+
+	GradeRecordBatchWriter(final Session session, final int batchSize) {
+		this(session, batchSize, false);
+	}
+
+	/**
+	 * @param evictWritten whether records and events are evicted from the session once flushed
+	 */
+	GradeRecordBatchWriter(final Session session, final int batchSize, final boolean evictWritten) {
+		this.session = session;
+		this.batchSize = Math.max(1, batchSize);
+		this.evictWritten = evictWritten;
+	}
+
+	/**
+	 * Saves or updates the record, flushing once a batch is full.
+	 */
+	void saveOrUpdate(final Object record) throws StaleObjectModificationException {
+		this.session.saveOrUpdate(record);
+		this.records++;
+		if (this.evictWritten) {
+			this.batch.add(record);
+		}
+		if (++this.pending >= this.batchSize) {
+			flush();
+		}
+	}
+
+	/**
+	 * Queues the grading event until {@link #finish()}.
+	 */
+	void logEvent(final GradingEvent event) {
+		this.events.add(event);
+	}
+
+	/**
+	 * Flushes the remaining records, then writes the queued grading events.
+	 */
+	void finish() throws StaleObjectModificationException {
+		if (this.pending > 0) {
+			flush();
+		}
+		for (final GradingEvent event : this.events) {
+			this.session.save(event);
+			if (this.evictWritten) {
+				this.batch.add(event);
+			}
+			if (++this.pending >= this.batchSize) {
+				flush();
+			}
+		}
+		if (this.pending > 0) {
+			flush();
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Wrote " + this.records + " grade records and " + this.events.size() + " grading events in "
+					+ this.batches + " batches of up to " + this.batchSize + ", " + (this.flushNanos / 1000000) + " ms flushing");
+		}
+		this.events.clear();
+	}
+
+	private void flush() throws StaleObjectModificationException {
+		final long start = System.nanoTime();
+		try {
+			this.session.flush();
+		} catch (final StaleStateException sse) {
+			if (log.isInfoEnabled()) {
+				log.info("An optimistic locking failure occurred while writing a batch of grade records");
+			}
+			throw new StaleObjectModificationException(sse);
+		}
+		final long elapsed = System.nanoTime() - start;
+		this.flushNanos += elapsed;
+		this.batches++;
+		if (log.isDebugEnabled()) {
+			log.debug("Flushed batch " + this.batches + " of " + this.pending + " statements in " + (elapsed / 1000000) + " ms");
+		}
+		this.pending = 0;
+		for (final Object written : this.batch) {
+			this.session.evict(written);
+		}
+		this.batch.clear();
+	}
+}
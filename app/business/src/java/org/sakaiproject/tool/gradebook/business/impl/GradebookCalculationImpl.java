@@ -18,7 +18,10 @@ package org.sakaiproject.tool.gradebook.business.impl;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -28,21 +31,59 @@ import java.util.Set;
 
 import org.hibernate.Query;
 import org.hibernate.Session;
+import org.sakaiproject.component.cover.ServerConfigurationService;
 import org.sakaiproject.service.gradebook.shared.GradebookService;
+import org.sakaiproject.service.gradebook.shared.StaleObjectModificationException;
 import org.sakaiproject.tool.gradebook.GradebookAssignment;
 import org.sakaiproject.tool.gradebook.AssignmentGradeRecord;
 import org.sakaiproject.tool.gradebook.Category;
+import org.sakaiproject.tool.gradebook.Comment;
 import org.sakaiproject.tool.gradebook.CourseGrade;
 import org.sakaiproject.tool.gradebook.CourseGradeRecord;
 import org.sakaiproject.tool.gradebook.Gradebook;
+import org.sakaiproject.tool.gradebook.business.GradebookJobManager;
 import org.sakaiproject.tool.gradebook.business.GradebookManager;
+import org.sakaiproject.tool.gradebook.business.StudentGradeSnapshot;
+import org.sakaiproject.tool.gradebook.business.impl.CourseGradeTotalsStore.GradebookTotals;
+import org.sakaiproject.tool.gradebook.business.impl.CourseGradeTotalsStore.RecordStamp;
+import org.sakaiproject.tool.gradebook.business.impl.CourseGradeTotalsStore.StudentTotals;
 import org.springframework.orm.hibernate4.HibernateCallback;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public class GradebookCalculationImpl extends GradebookManagerHibernateImpl implements GradebookManager 
 {
+	/** above this many students the grade record stamps are taken for the whole gradebook */
+	private static final int MAX_STAMP_STUDENT_IDS = 500;
+
+	/** fewest students whose course grades are split over the calculation pool */
+	static final int DEFAULT_PARALLEL_CALCULATION_THRESHOLD = 1000;
+
+	/** default seconds a stored course grade total is trusted without comparing it with the grade records, none */
+	private static final int DEFAULT_TOTALS_VERIFY_INTERVAL = 0;
+
+	private final CourseGradeTotalsStore courseGradeTotals = new CourseGradeTotalsStore(CourseGradeTotalsStore.DEFAULT_MAX_GRADEBOOKS);
+
+	/** students whose grade snapshots are built per round of queries when building a whole gradebook's */
+	private static final int SNAPSHOT_CHUNK_SIZE = 200;
+
+	/** gradebooks whose student grade snapshots are held, and students held per gradebook */
+	private static final int SNAPSHOT_CACHED_GRADEBOOKS = 50;
+	private static final int SNAPSHOT_CACHED_STUDENTS = 5000;
+
+	/** default age in seconds past which a student grade snapshot is rebuilt even if its data key still matches */
+	private static final int DEFAULT_SNAPSHOT_MAX_AGE = 600;
+
+	/** default seconds a student grade snapshot is served without checking its data key again */
+	private static final int DEFAULT_SNAPSHOT_VERIFY_INTERVAL = 60;
+
+	/** student grade snapshots of recently viewed gradebooks, by student */
+	private final VersionedGradebookCache<String, StudentGradeSnapshot> studentSnapshots = new VersionedGradebookCache<>(
+			SNAPSHOT_CACHED_GRADEBOOKS, SNAPSHOT_CACHED_STUDENTS);
+
 	@Override
 	public List<CourseGradeRecord> getPointsEarnedCourseGradeRecords(final CourseGrade courseGrade, final Collection studentUids)
 	{
@@ -54,16 +95,17 @@ public class GradebookCalculationImpl extends GradebookManagerHibernateImpl impl
             }
 
 			Long gradebookId = courseGrade.getGradebook().getId();
-
-			// get all of the AssignmentGradeRecords here to avoid repeated db calls
-			Map<String, List<AssignmentGradeRecord>> studentIdGradeRecordsMap =
-					getGradeRecordMapForStudents(gradebookId, studentUids);
+			Gradebook gradebook = getGradebook(gradebookId);
 
 			// get all of the counted assignments
 			List<GradebookAssignment> countedAssigns = getCountedAssignments(session, gradebookId);
 
-            return getPointsEarnedCourseGradeRecords(session, courseGrade, studentUids,
-                    countedAssigns, studentIdGradeRecordsMap);
+			// nothing is calculated for letter grade gradebooks, so there are no totals to look up
+			if (gradebook.getGrade_type() == GradebookService.GRADE_TYPE_LETTER) {
+				return getPointsEarnedCourseGradeRecords(session, courseGrade, studentUids, countedAssigns, null);
+			}
+
+			return getPointsEarnedCourseGradeRecordsFromTotals(session, courseGrade, gradebook, studentUids, countedAssigns);
         };
 		return getHibernateTemplate().execute(hc);
 	}
@@ -141,34 +183,28 @@ public class GradebookCalculationImpl extends GradebookManagerHibernateImpl impl
                 Map<String, Set<GradebookAssignment>> visibleExternals =
                     getVisibleExternalAssignments(courseGrade.getGradebook(), studentUids, countedAssigns);
 
-	            for(CourseGradeRecord cgr : courseGradeRecs) 
+	            // apply drop scores first, then calculate every student in one pass over the packed records
+	            List<String> rowStudentIds = new ArrayList<String>(courseGradeRecs.size());
+	            for(CourseGradeRecord cgr : courseGradeRecs)
 	            {
-                    // Filter out external activities that are not visible to this student, considering them "uncounted"
-                    List<GradebookAssignment> studentCountedAssigns = new ArrayList<GradebookAssignment>();
-                    String studentId = cgr.getStudentId();
-                    for (GradebookAssignment a : countedAssigns) {
-                        if (!a.isExternallyMaintained() ||
-                                (visibleExternals.containsKey(studentId) && visibleExternals.get(studentId).contains(a)))
-                        {
-                            studentCountedAssigns.add(a);
-                        }
-                    }
-
-	                //double totalPointsEarned = getTotalPointsEarnedInternal(gradebookId, cgr.getStudentId(), session);
-	                List<AssignmentGradeRecord> studentGradeRecs;
-	                if (studentIdGradeRecordsMap == null) {
-	                    studentGradeRecs = new ArrayList<AssignmentGradeRecord>();
-	                } else {
-	                    studentGradeRecs = studentIdGradeRecordsMap.get(cgr.getStudentId());
+	                rowStudentIds.add(cgr.getStudentId());
+	                if (studentIdGradeRecordsMap != null) {
+	                    applyDropScores(studentIdGradeRecordsMap.get(cgr.getStudentId()));
 	                }
+	            }
 
-	                applyDropScores(studentGradeRecs);
+	            CourseGradeMatrix matrix = new CourseGradeMatrix(gradebook, cates, countedAssigns);
+	            matrix.pack(rowStudentIds, studentIdGradeRecordsMap, visibleExternals);
 
-	                List totalEarned = getTotalPointsEarnedInternal(cgr.getStudentId(), gradebook, cates, studentGradeRecs, studentCountedAssigns);
-	                double totalPointsEarned = ((Double)totalEarned.get(0)).doubleValue();
-	                double literalTotalPointsEarned = ((Double)totalEarned.get(1)).doubleValue();	                
-	                double totalPointsPossible = getTotalPointsInternal(gradebook, cates, cgr.getStudentId(), studentGradeRecs, studentCountedAssigns, false);
-	                cgr.initNonpersistentFields(totalPointsPossible, totalPointsEarned, literalTotalPointsEarned);
+	            double[] totalPointsEarned = new double[courseGradeRecs.size()];
+	            double[] literalTotalPointsEarned = new double[courseGradeRecs.size()];
+	            double[] totalPointsPossible = new double[courseGradeRecs.size()];
+	            matrix.calculate(totalPointsEarned, literalTotalPointsEarned, totalPointsPossible, getCalculationPool(), getParallelCalculationThreshold());
+
+	            for (int i = 0; i < courseGradeRecs.size(); i++)
+	            {
+	                CourseGradeRecord cgr = courseGradeRecs.get(i);
+	                cgr.initNonpersistentFields(totalPointsPossible[i], totalPointsEarned[i], literalTotalPointsEarned[i]);
 	                if(log.isDebugEnabled()) log.debug("Points earned = " + cgr.getPointsEarned());
 	            }
 	        }
@@ -176,6 +212,470 @@ public class GradebookCalculationImpl extends GradebookManagerHibernateImpl impl
 	    return courseGradeRecs;
 	}
 	
+	/**
+	 * Looks up each student's totals in the course grade totals store, calculating only
+	 * the students not held yet or whose grade records no longer match the stamp of their
+	 * totals, which one grouped query takes for all the students at once.
+	 */
+	private List<CourseGradeRecord> getPointsEarnedCourseGradeRecordsFromTotals(Session session, CourseGrade courseGrade,
+			Gradebook gradebook, Collection<String> studentUids, List<GradebookAssignment> countedAssigns) {
+
+		Long gradebookId = gradebook.getId();
+		List cates = getCategories(gradebookId);
+
+		Query q = session.createQuery("from CourseGradeRecord as cgr where cgr.gradableObject.id=:gradableObjectId");
+		q.setLong("gradableObjectId", courseGrade.getId().longValue());
+		List<CourseGradeRecord> courseGradeRecs = filterAndPopulateCourseGradeRecordsByStudents(courseGrade, q.list(), studentUids);
+
+		GradebookTotals totals = courseGradeTotals.getGradebookTotals(gradebookId, getStructureKey(gradebook, cates, countedAssigns));
+		Map<String, Set<GradebookAssignment>> visibleExternals = getVisibleExternalAssignments(gradebook, studentUids, countedAssigns);
+		long verifyInterval = getTotalsVerifyInterval();
+
+		// the students whose totals are missing, or held but due a comparison with their grade records
+		Set<String> unverifiedStudentIds = new HashSet<String>();
+		for (CourseGradeRecord cgr : courseGradeRecs) {
+			StudentTotals studentTotals = totals.get(cgr.getStudentId());
+			if (studentTotals == null || studentTotals.isVerificationDue(verifyInterval)) {
+				unverifiedStudentIds.add(cgr.getStudentId());
+			}
+		}
+		Map<String, RecordStamp> stamps = unverifiedStudentIds.isEmpty() ? new HashMap<String, RecordStamp>()
+				: getRecordStamps(session, gradebookId, unverifiedStudentIds);
+
+		List<String> staleStudentIds = new ArrayList<String>();
+		for (CourseGradeRecord cgr : courseGradeRecs) {
+			String studentId = cgr.getStudentId();
+			StudentTotals studentTotals = totals.get(studentId);
+			long visibleExternalsKey = getVisibleExternalsKey(visibleExternals.get(studentId));
+			boolean current;
+			if (studentTotals == null) {
+				current = false;
+			} else if (unverifiedStudentIds.contains(studentId)) {
+				current = studentTotals.isCurrent(getRecordStamp(stamps, studentId), visibleExternalsKey);
+			} else {
+				current = studentTotals.isCurrent(visibleExternalsKey);
+			}
+			if (current) {
+				studentTotals.verified();
+			} else {
+				staleStudentIds.add(studentId);
+			}
+		}
+		if (log.isDebugEnabled()) log.debug("Recalculating course grade totals of " + staleStudentIds.size() + " of " + courseGradeRecs.size() + " students in gradebook " + gradebookId + " after comparing the record stamps of " + unverifiedStudentIds.size());
+
+		if (!staleStudentIds.isEmpty()) {
+			// students recalculated only for their external assignments still need the stamp stored with their totals
+			List<String> unstamped = new ArrayList<String>();
+			for (String studentId : staleStudentIds) {
+				if (!unverifiedStudentIds.contains(studentId)) {
+					unstamped.add(studentId);
+				}
+			}
+			if (!unstamped.isEmpty()) {
+				stamps.putAll(getRecordStamps(session, gradebookId, unstamped));
+			}
+			calculateTotals(totals, gradebook, cates, countedAssigns, staleStudentIds, stamps, visibleExternals);
+		}
+
+		for (CourseGradeRecord cgr : courseGradeRecs) {
+			StudentTotals studentTotals = totals.get(cgr.getStudentId());
+			cgr.initNonpersistentFields(studentTotals.getTotalPointsPossible(), studentTotals.getTotalPointsEarned(), studentTotals.getLiteralTotalPointsEarned());
+		}
+		return courseGradeRecs;
+	}
+
+	/**
+	 * Recalculates the totals of the given students from their grade records and puts them in the store.
+	 */
+	private void calculateTotals(GradebookTotals totals, Gradebook gradebook, List cates, List<GradebookAssignment> countedAssigns,
+			List<String> studentIds, Map<String, RecordStamp> stamps, Map<String, Set<GradebookAssignment>> visibleExternals) {
+
+		Map<String, List<AssignmentGradeRecord>> studentIdGradeRecordsMap =
+				getGradeRecordMapForStudents(gradebook.getId(), new HashSet<String>(studentIds));
+		for (String studentId : studentIds) {
+			applyDropScores(studentIdGradeRecordsMap.get(studentId));
+		}
+
+		CourseGradeMatrix matrix = new CourseGradeMatrix(gradebook, cates, countedAssigns);
+		matrix.pack(studentIds, studentIdGradeRecordsMap, visibleExternals);
+
+		double[] totalPointsEarned = new double[studentIds.size()];
+		double[] literalTotalPointsEarned = new double[studentIds.size()];
+		double[] totalPointsPossible = new double[studentIds.size()];
+		matrix.calculate(totalPointsEarned, literalTotalPointsEarned, totalPointsPossible, getCalculationPool(), getParallelCalculationThreshold());
+
+		for (int i = 0; i < studentIds.size(); i++) {
+			String studentId = studentIds.get(i);
+			totals.put(studentId, new StudentTotals(getRecordStamp(stamps, studentId),
+					getVisibleExternalsKey(visibleExternals.get(studentId)),
+					totalPointsEarned[i], literalTotalPointsEarned[i], totalPointsPossible[i]));
+		}
+	}
+
+	/**
+	 * Refreshes the stored totals of the students whose grade records were just written,
+	 * in the writing transaction, so the next course grade read is a plain lookup.
+	 */
+	@Override
+	void gradeRecordsUpdated(Session session, Long gradebookId, Collection<String> studentIds) {
+		super.gradeRecordsUpdated(session, gradebookId, studentIds);
+		if (studentIds != null) {
+			studentSnapshots.invalidate(gradebookId, studentIds);
+		}
+
+		GradebookTotals totals = courseGradeTotals.peekGradebookTotals(gradebookId);
+		if (totals == null || studentIds == null || studentIds.isEmpty()) {
+			// nothing stored yet, the next read builds the totals
+			return;
+		}
+
+		Gradebook gradebook = getGradebook(gradebookId);
+		if (gradebook.getGrade_type() == GradebookService.GRADE_TYPE_LETTER) {
+			return;
+		}
+		List cates = getCategories(gradebookId);
+		List<GradebookAssignment> countedAssigns = getCountedAssignments(session, gradebookId);
+		if (!totals.getStructureKey().equals(getStructureKey(gradebook, cates, countedAssigns))) {
+			courseGradeTotals.invalidate(gradebookId);
+			return;
+		}
+
+		List<String> updatedStudentIds = new ArrayList<String>(studentIds);
+		Map<String, RecordStamp> stamps = getRecordStamps(session, gradebookId, updatedStudentIds);
+		Map<String, Set<GradebookAssignment>> visibleExternals = getVisibleExternalAssignments(gradebook, updatedStudentIds, countedAssigns);
+		calculateTotals(totals, gradebook, cates, countedAssigns, updatedStudentIds, stamps, visibleExternals);
+
+		// reads trust the refreshed rows, so they must not outlive a rolled back write
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					if (status != STATUS_COMMITTED) {
+						courseGradeTotals.invalidate(gradebookId);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Drops the stored totals of the gradebook, so they are rebuilt from scratch on the next read.
+	 */
+	@Override
+	void gradebookStructureChanged(Long gradebookId) {
+		super.gradebookStructureChanged(gradebookId);
+		courseGradeTotals.invalidate(gradebookId);
+		studentSnapshots.invalidate(gradebookId);
+	}
+
+	/**
+	 * Drops the student grade snapshots of the gradebook, whose grade type or categories may have changed.
+	 */
+	@Override
+	public void updateGradebook(final Gradebook gradebook) throws StaleObjectModificationException {
+		super.updateGradebook(gradebook);
+		studentSnapshots.invalidate(gradebook.getId());
+	}
+
+	@Override
+	public StudentGradeSnapshot getStudentGradeSnapshot(final Long gradebookId, final String studentUid) {
+		// writes through the manager drop the snapshot, so a recently checked one needs no queries
+		StudentGradeSnapshot verified = studentSnapshots.getVerified(gradebookId, studentUid, getSnapshotVerifyInterval(), getSnapshotMaxAge());
+		if (verified != null) {
+			return verified;
+		}
+		HibernateCallback<StudentGradeSnapshot> hc = session -> {
+			long version = studentSnapshots.getVersion(gradebookId);
+			List<String> studentUids = Collections.singletonList(studentUid);
+			Map<String, String> dataKeys = getSnapshotDataKeys(session, gradebookId, studentUids);
+			StudentGradeSnapshot snapshot = studentSnapshots.get(gradebookId, studentUid, dataKeys.get(studentUid), getSnapshotMaxAge());
+			if (snapshot == null) {
+				snapshot = buildStudentGradeSnapshots(session, gradebookId, studentUids, dataKeys, version).get(0);
+			}
+			return snapshot;
+		};
+		return getHibernateTemplate().execute(hc);
+	}
+
+	@Override
+	public void buildStudentGradeSnapshots(final Long gradebookId, final GradebookJobManager.Progress progress) {
+		HibernateCallback<Integer> hc = session -> {
+			List<String> studentUids = new ArrayList<String>(getAllStudentUids(getGradebookUid(gradebookId)));
+			int built = 0;
+			for (int from = 0; from < studentUids.size(); from += SNAPSHOT_CHUNK_SIZE) {
+				List<String> chunk = studentUids.subList(from, Math.min(studentUids.size(), from + SNAPSHOT_CHUNK_SIZE));
+				long version = studentSnapshots.getVersion(gradebookId);
+				Map<String, String> dataKeys = getSnapshotDataKeys(session, gradebookId, chunk);
+				List<String> stale = new ArrayList<String>(chunk.size());
+				for (String studentUid : chunk) {
+					if (studentSnapshots.get(gradebookId, studentUid, dataKeys.get(studentUid), getSnapshotMaxAge()) == null) {
+						stale.add(studentUid);
+					}
+				}
+				if (!stale.isEmpty()) {
+					buildStudentGradeSnapshots(session, gradebookId, stale, dataKeys, version);
+					built += stale.size();
+				}
+				// the snapshots hold plain values, the loaded records are no longer needed
+				session.clear();
+				if (progress != null) {
+					progress.update(from + chunk.size(), studentUids.size());
+				}
+			}
+			return built;
+		};
+		long start = System.currentTimeMillis();
+		int built = getHibernateTemplate().execute(hc);
+		if (log.isInfoEnabled()) log.info("Built " + built + " student grade snapshots for gradebook " + gradebookId + " in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+	/**
+	 * Builds the snapshots of the given students and stores them under the given keys, unless
+	 * the gradebook was written to since the given version was taken.
+	 *
+	 * @return the snapshots, in the order of the students
+	 */
+	private List<StudentGradeSnapshot> buildStudentGradeSnapshots(Session session, Long gradebookId, List<String> studentUids,
+			Map<String, String> dataKeys, long version) {
+
+		Gradebook gradebook = getGradebook(gradebookId);
+		CourseGrade courseGrade = getCourseGrade(gradebookId);
+		List cates = getCategories(gradebookId);
+		List<GradebookAssignment> assignments = getAssignments(gradebookId);
+
+		// the assignments the student view counts toward the total points
+		List<GradebookAssignment> countedAssigns = new ArrayList<GradebookAssignment>();
+		Set<Long> categoriesWithItems = new HashSet<Long>();
+		boolean anyUnassignedItems = false;
+		for (GradebookAssignment assign : assignments) {
+			if (assign.isIncludedInCalculations()) {
+				countedAssigns.add(assign);
+			}
+			if (assign.getCategory() == null) {
+				anyUnassignedItems = true;
+			} else {
+				categoriesWithItems.add(assign.getCategory().getId());
+			}
+		}
+
+		// the student view lists the categories by name unless sorted otherwise
+		List<Category> sortedCates = new ArrayList<Category>(cates);
+		Collections.sort(sortedCates, Category.nameComparator);
+
+		Map<String, CourseGradeRecord> courseGradeRecords = new HashMap<String, CourseGradeRecord>();
+		for (CourseGradeRecord cgr : getPointsEarnedCourseGradeRecords(courseGrade, studentUids)) {
+			courseGradeRecords.put(cgr.getStudentId(), cgr);
+		}
+
+		Map<String, List<AssignmentGradeRecord>> gradeRecords = new HashMap<String, List<AssignmentGradeRecord>>();
+		for (String studentUid : studentUids) {
+			gradeRecords.put(studentUid, new ArrayList<AssignmentGradeRecord>());
+		}
+		Query q = session.createQuery("from AssignmentGradeRecord as agr where agr.gradableObject.gradebook.id = :gradebookId " +
+				"and agr.gradableObject.removed = false and agr.studentId in (:studentIds)");
+		q.setLong("gradebookId", gradebookId.longValue());
+		q.setParameterList("studentIds", studentUids);
+		for (Iterator iter = q.list().iterator(); iter.hasNext();) {
+			AssignmentGradeRecord agr = (AssignmentGradeRecord) iter.next();
+			gradeRecords.get(agr.getStudentId()).add(agr);
+		}
+
+		Map<String, String> comments = new HashMap<String, String>();
+		q = session.createQuery("from Comment as c where c.gradableObject.gradebook.id = :gradebookId " +
+				"and c.gradableObject.removed = false and c.studentId in (:studentIds)");
+		q.setLong("gradebookId", gradebookId.longValue());
+		q.setParameterList("studentIds", studentUids);
+		for (Iterator iter = q.list().iterator(); iter.hasNext();) {
+			Comment comment = (Comment) iter.next();
+			if (comment.getCommentText() != null && comment.getCommentText().length() > 0) {
+				comments.put(comment.getStudentId() + "/" + comment.getGradableObject().getId(), comment.getCommentText());
+			}
+		}
+
+		List<StudentGradeSnapshot> snapshots = new ArrayList<StudentGradeSnapshot>(studentUids.size());
+		for (String studentUid : studentUids) {
+			List<AssignmentGradeRecord> studentGradeRecs = gradeRecords.get(studentUid);
+			applyDropScores(studentGradeRecs);
+			double totalPoints = getTotalPointsInternal(gradebook, cates, studentUid, studentGradeRecs, countedAssigns, true);
+
+			// converting sets the percentages or letters on the same records
+			if (gradebook.getGrade_type() == GradebookService.GRADE_TYPE_PERCENTAGE) {
+				convertPointsToPercentage(gradebook, studentGradeRecs);
+			} else if (gradebook.getGrade_type() == GradebookService.GRADE_TYPE_LETTER) {
+				convertPointsToLetterGrade(gradebook, studentGradeRecs);
+			}
+
+			List<StudentGradeSnapshot.CategoryResult> categoryResults = new ArrayList<StudentGradeSnapshot.CategoryResult>(sortedCates.size());
+			for (Category cate : sortedCates) {
+				boolean anyItems = categoriesWithItems.contains(cate.getId());
+				Double averageScore = null;
+				Double averageTotalPoints = null;
+				Double mean = null;
+				if (anyItems) {
+					cate.calculateStatisticsPerStudent(studentGradeRecs, studentUid);
+					averageScore = cate.getAverageScore();
+					averageTotalPoints = cate.getAverageTotalPoints();
+					mean = cate.getMean();
+				}
+				categoryResults.add(new StudentGradeSnapshot.CategoryResult(cate.getId(), cate.getName(), cate.getWeight(),
+						cate.getDropLowest(), cate.getDropHighest(), cate.getKeepHighest(), cate.isExtraCredit(), anyItems,
+						averageScore, averageTotalPoints, mean));
+			}
+
+			Map<Long, AssignmentGradeRecord> recordsByAssignment = new HashMap<Long, AssignmentGradeRecord>();
+			for (AssignmentGradeRecord agr : studentGradeRecs) {
+				recordsByAssignment.put(agr.getAssignment().getId(), agr);
+			}
+			List<StudentGradeSnapshot.ItemRow> items = new ArrayList<StudentGradeSnapshot.ItemRow>();
+			for (GradebookAssignment assign : assignments) {
+				if (!assign.isReleased()) {
+					continue;
+				}
+				AssignmentGradeRecord agr = recordsByAssignment.get(assign.getId());
+				items.add(new StudentGradeSnapshot.ItemRow(assign.getId(), assign.getName(), assign.getPointsPossible(),
+						assign.getDueDate(), assign.getSortOrder(), assign.getCategorizedSortOrder(),
+						assign.getCategory() == null ? null : assign.getCategory().getId(), assign.isCounted(),
+						assign.getUngraded(), assign.isExtraCredit(), assign.isExternallyMaintained(), assign.getExternalId(),
+						assign.getExternalAppName(), agr != null,
+						agr == null ? null : agr.getPointsEarned(), agr == null ? null : agr.getPercentEarned(),
+						agr == null ? null : agr.getLetterEarned(), agr == null ? null : agr.getDroppedFromGrade(),
+						comments.get(studentUid + "/" + assign.getId())));
+			}
+
+			CourseGradeRecord cgr = courseGradeRecords.get(studentUid);
+			StudentGradeSnapshot.CourseGradeResult courseGradeResult = cgr == null ? null
+					: new StudentGradeSnapshot.CourseGradeResult(cgr.getEnteredGrade(), cgr.getAutoCalculatedGrade(), cgr.getPointsEarned());
+
+			StudentGradeSnapshot snapshot = new StudentGradeSnapshot(studentUid, courseGradeResult, categoryResults, items,
+					anyUnassignedItems, totalPoints);
+			studentSnapshots.put(gradebookId, version, studentUid, dataKeys.get(studentUid), snapshot);
+			snapshots.add(snapshot);
+		}
+		return snapshots;
+	}
+
+	/**
+	 * @return the key of the data each student's grade snapshot is built from: the gradebook's assignments and
+	 * categories, the stamp of the student's grade records and the student's course grade record
+	 */
+	private Map<String, String> getSnapshotDataKeys(Session session, Long gradebookId, Collection<String> studentUids) {
+		Object[] assignments = (Object[]) session.createQuery(
+				"select count(asn.id), max(asn.id), sum(asn.pointsPossible) from GradebookAssignment as asn " +
+				"where asn.gradebook.id = :gradebookId and asn.removed = false")
+				.setLong("gradebookId", gradebookId.longValue()).uniqueResult();
+		Object[] categories = (Object[]) session.createQuery(
+				"select count(cat.id), max(cat.id), sum(cat.weight) from Category as cat " +
+				"where cat.gradebook.id = :gradebookId and cat.removed = false")
+				.setLong("gradebookId", gradebookId.longValue()).uniqueResult();
+		String structureKey = Arrays.toString(assignments) + Arrays.toString(categories);
+
+		String hql = "select cgr.studentId, cgr.dateRecorded, cgr.enteredGrade from CourseGradeRecord as cgr " +
+				"where cgr.gradableObject.gradebook.id = :gradebookId";
+		Query q;
+		if (studentUids.size() <= MAX_STAMP_STUDENT_IDS) {
+			q = session.createQuery(hql + " and cgr.studentId in (:studentIds)");
+			q.setParameterList("studentIds", studentUids);
+		} else {
+			q = session.createQuery(hql);
+		}
+		q.setLong("gradebookId", gradebookId.longValue());
+		Map<String, String> courseGradeKeys = new HashMap<String, String>();
+		for (Iterator iter = q.list().iterator(); iter.hasNext();) {
+			Object[] row = (Object[]) iter.next();
+			courseGradeKeys.put((String) row[0], (row[1] == null ? 0 : ((Date) row[1]).getTime()) + "/" + row[2]);
+		}
+
+		Map<String, RecordStamp> stamps = getRecordStamps(session, gradebookId, studentUids);
+		Map<String, String> keys = new HashMap<String, String>();
+		for (String studentUid : studentUids) {
+			keys.put(studentUid, structureKey + "|" + getRecordStamp(stamps, studentUid) + "|" + courseGradeKeys.get(studentUid));
+		}
+		return keys;
+	}
+
+	/**
+	 * @return the age in milliseconds past which student grade snapshots are rebuilt, set in seconds by the
+	 * gradebook.studentSnapshot.maxAge property, covering what their data keys can't see, e.g. changes to the
+	 * drop rules of a category made by another tool
+	 */
+	private long getSnapshotMaxAge() {
+		return ServerConfigurationService.getInt("gradebook.studentSnapshot.maxAge", DEFAULT_SNAPSHOT_MAX_AGE) * 1000L;
+	}
+
+	/**
+	 * @return the milliseconds a student grade snapshot is served without checking its data key again, set in
+	 * seconds by the gradebook.studentSnapshot.verifyInterval property, which bounds how long changes made outside
+	 * the manager take to show
+	 */
+	private long getSnapshotVerifyInterval() {
+		return ServerConfigurationService.getInt("gradebook.studentSnapshot.verifyInterval", DEFAULT_SNAPSHOT_VERIFY_INTERVAL) * 1000L;
+	}
+
+	/**
+	 * @return the stamps of the given students' grade records, taken with one grouped query
+	 */
+	private Map<String, RecordStamp> getRecordStamps(Session session, Long gradebookId, Collection<String> studentUids) {
+		String hql = "select agr.studentId, count(agr.id), max(agr.dateRecorded), sum(agr.pointsEarned) from AssignmentGradeRecord as agr " +
+				"where agr.gradableObject.gradebook.id=:gradebookId and agr.gradableObject.removed=false";
+		Query q;
+		if (studentUids.size() <= MAX_STAMP_STUDENT_IDS) {
+			q = session.createQuery(hql + " and agr.studentId in (:studentIds) group by agr.studentId");
+			q.setParameterList("studentIds", studentUids);
+		} else {
+			q = session.createQuery(hql + " group by agr.studentId");
+		}
+		q.setLong("gradebookId", gradebookId.longValue());
+
+		Map<String, RecordStamp> stamps = new HashMap<String, RecordStamp>();
+		for (Iterator iter = q.list().iterator(); iter.hasNext();) {
+			Object[] row = (Object[]) iter.next();
+			long count = ((Number) row[1]).longValue();
+			long lastRecorded = row[2] == null ? 0 : ((Date) row[2]).getTime();
+			double scoreSum = row[3] == null ? 0 : ((Number) row[3]).doubleValue();
+			stamps.put((String) row[0], new RecordStamp(count, lastRecorded, scoreSum));
+		}
+		return stamps;
+	}
+
+	/**
+	 * @return the milliseconds a stored course grade total is trusted without comparing it with the grade records,
+	 * set in seconds by the gradebook.courseGradeTotals.verifyInterval property; 0, the default, compares on every read
+	 */
+	private long getTotalsVerifyInterval() {
+		return ServerConfigurationService.getInt("gradebook.courseGradeTotals.verifyInterval", DEFAULT_TOTALS_VERIFY_INTERVAL) * 1000L;
+	}
+
+	/**
+	 * @return the fewest students whose course grades are calculated on several threads,
+	 * set by the gradebook.courseGrade.parallelThreshold property
+	 */
+	private int getParallelCalculationThreshold() {
+		return ServerConfigurationService.getInt("gradebook.courseGrade.parallelThreshold", DEFAULT_PARALLEL_CALCULATION_THRESHOLD);
+	}
+
+	private static RecordStamp getRecordStamp(Map<String, RecordStamp> stamps, String studentId) {
+		RecordStamp stamp = stamps.get(studentId);
+		return stamp != null ? stamp : RecordStamp.NONE;
+	}
+
+	/**
+	 * @return an order independent key of the externally maintained assignments visible to a student
+	 */
+	private static long getVisibleExternalsKey(Set<GradebookAssignment> visible) {
+		if (visible == null) {
+			return 0;
+		}
+		long key = visible.size();
+		for (GradebookAssignment assign : visible) {
+			long h = assign.getId().longValue();
+			h ^= h >>> 33;
+			h *= 0xff51afd7ed558ccdL;
+			h ^= h >>> 33;
+			key += h;
+		}
+		return key;
+	}
+
 	@Override
 	List getTotalPointsEarnedInternal(final String studentId, final Gradebook gradebook, final List categories,
 	        final List<AssignmentGradeRecord> gradeRecs, List<GradebookAssignment> countedAssigns)
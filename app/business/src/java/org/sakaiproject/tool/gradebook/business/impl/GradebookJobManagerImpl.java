@@ -0,0 +1,351 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.business.impl;
+
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.hibernate.Query;
+import org.sakaiproject.component.cover.ServerConfigurationService;
+import org.sakaiproject.thread_local.cover.ThreadLocalManager;
+import org.sakaiproject.tool.api.Session;
+import org.sakaiproject.tool.api.SessionManager;
+import org.sakaiproject.tool.gradebook.business.GradebookJob;
+import org.sakaiproject.tool.gradebook.business.GradebookJobManager;
+import org.springframework.orm.hibernate4.HibernateCallback;
+import org.springframework.orm.hibernate4.support.HibernateDaoSupport;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs gradebook jobs on a fixed number of daemon threads.
+ *
+ * Each gradebook has a queue of its jobs. Only the head of a queue is handed to
+ * the pool; when it finishes, the next job of the same gradebook is. The number
+ * of jobs waiting or running across all gradebooks is capped, and jobs submitted
+ * beyond the cap are failed straight away rather than queued.
+ *
+ * Job records are written in their own transactions, so that progress is visible
+ * to pollers while the job's work is still uncommitted. Progress is written at
+ * most once every {@link #PROGRESS_WRITE_INTERVAL_MS}.
+ *
+ * Queues are held per server: jobs submitted for the same gradebook on different
+ * servers of a cluster are not serialized against each other. Jobs a server still
+ * had queued or running when it stopped are failed when it starts again.
+ */
+@Slf4j
+public class GradebookJobManagerImpl extends HibernateDaoSupport implements GradebookJobManager {
+
+	private static final int MAX_MESSAGE_LENGTH = 4000;
+	private static final long PROGRESS_WRITE_INTERVAL_MS = 1000;
+
+	private SessionManager sessionManager;
+	private TransactionTemplate transactionTemplate;
+	private int maxThreads = 2;
+	private int maxPendingJobs = 100;
+
+	private ThreadPoolExecutor executor;
+
+	/** jobs of each gradebook in submission order, the head being the one running */
+	private final Map<String, Queue<JobRun>> gradebookQueues = new HashMap<>();
+	private int pendingJobs;
+
+	public void init() {
+		final AtomicInteger threadCount = new AtomicInteger();
+		final ThreadFactory threadFactory = runnable -> {
+			final Thread thread = new Thread(runnable, "gradebook-job-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		// The queue never holds more than one job per gradebook, and at most maxPendingJobs in all
+		this.executor = new ThreadPoolExecutor(this.maxThreads, this.maxThreads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), threadFactory);
+		this.executor.allowCoreThreadTimeOut(true);
+		failAbandonedJobs();
+		if (log.isInfoEnabled()) {
+			log.info("Gradebook jobs run on " + this.maxThreads + " threads, at most " + this.maxPendingJobs + " pending");
+		}
+	}
+
+	/**
+	 * Fails the jobs this server left queued or running, which no thread will pick up again,
+	 * so that pages stop showing them as in progress and new jobs of their type can be submitted.
+	 */
+	private void failAbandonedJobs() {
+		final String serverId = ServerConfigurationService.getServerId();
+		final HibernateCallback<Integer> hc = session -> {
+			final Query q = session.createQuery(
+					"update GradebookJob set state = :failed, message = :message, dateFinished = :now, version = version + 1 "
+							+ "where serverId = :serverId and state in (:queued, :running)");
+			q.setString("failed", GradebookJob.STATE_FAILED);
+			q.setString("message", "The server running the job was restarted");
+			q.setTimestamp("now", new Date());
+			q.setString("serverId", serverId);
+			q.setString("queued", GradebookJob.STATE_QUEUED);
+			q.setString("running", GradebookJob.STATE_RUNNING);
+			return q.executeUpdate();
+		};
+		try {
+			final Integer failed = this.transactionTemplate.execute(status -> getHibernateTemplate().execute(hc));
+			if (failed != null && failed > 0) {
+				log.warn("Failed " + failed + " gradebook jobs left unfinished when server " + serverId + " stopped");
+			}
+		} catch (final RuntimeException e) {
+			log.warn("Could not fail the gradebook jobs left unfinished by server " + serverId + ": " + e.getMessage());
+		}
+	}
+
+	public void destroy() {
+		if (this.executor != null) {
+			this.executor.shutdownNow();
+		}
+	}
+
+	@Override
+	public GradebookJob submitJob(final String gradebookUid, final String type, final Task task) {
+		final GradebookJob job = new GradebookJob();
+		job.setGradebookUid(gradebookUid);
+		job.setType(type);
+		job.setState(GradebookJob.STATE_QUEUED);
+		job.setCreator(this.sessionManager.getCurrentSessionUserId());
+		job.setServerId(ServerConfigurationService.getServerId());
+		job.setDateCreated(new Date());
+
+		final boolean accepted;
+		synchronized (this.gradebookQueues) {
+			accepted = this.pendingJobs < this.maxPendingJobs;
+			if (accepted) {
+				this.pendingJobs++;
+			}
+		}
+		if (!accepted) {
+			log.warn("Not running " + type + " for gradebook " + gradebookUid + ": " + this.maxPendingJobs + " jobs are already pending");
+			job.setState(GradebookJob.STATE_FAILED);
+			job.setMessage("Too many gradebook jobs are pending, please try again later");
+			job.setDateFinished(new Date());
+			this.transactionTemplate.execute(status -> getHibernateTemplate().save(job));
+			return job;
+		}
+
+		final JobRun run;
+		try {
+			this.transactionTemplate.execute(status -> getHibernateTemplate().save(job));
+			run = new JobRun(job.getId(), gradebookUid, job.getCreator(), task);
+		} catch (final RuntimeException e) {
+			synchronized (this.gradebookQueues) {
+				this.pendingJobs--;
+			}
+			throw e;
+		}
+
+		final boolean dispatch;
+		synchronized (this.gradebookQueues) {
+			Queue<JobRun> queue = this.gradebookQueues.get(gradebookUid);
+			if (queue == null) {
+				queue = new ArrayDeque<>();
+				this.gradebookQueues.put(gradebookUid, queue);
+			}
+			queue.add(run);
+			dispatch = queue.size() == 1;
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Queued " + job + (dispatch ? "" : " behind earlier jobs of the gradebook"));
+		}
+		if (dispatch) {
+			dispatch(run);
+		}
+		return job;
+	}
+
+	@Override
+	public GradebookJob getJob(final Long jobId) {
+		return this.transactionTemplate.execute(status -> getHibernateTemplate().get(GradebookJob.class, jobId));
+	}
+
+	@Override
+	public GradebookJob getLatestJob(final String gradebookUid, final String type) {
+		final HibernateCallback<GradebookJob> hc = session -> {
+			final Query q = session.createQuery(
+					"from GradebookJob as job where job.gradebookUid = :gradebookUid and job.type = :type order by job.id desc");
+			q.setString("gradebookUid", gradebookUid);
+			q.setString("type", type);
+			q.setMaxResults(1);
+			final List<GradebookJob> jobs = q.list();
+			return jobs.isEmpty() ? null : jobs.get(0);
+		};
+		return this.transactionTemplate.execute(status -> getHibernateTemplate().execute(hc));
+	}
+
+	private void dispatch(final JobRun run) {
+		try {
+			this.executor.execute(run);
+		} catch (final RejectedExecutionException e) {
+			// Only happens once the pool is shut down
+			log.warn("Could not run gradebook job " + run.jobId + ": " + e.getMessage());
+			updateJob(run.jobId, job -> fail(job, "The gradebook job service is shutting down"));
+			finished(run);
+		}
+	}
+
+	/**
+	 * Removes the finished job from its gradebook's queue and hands the next one to the pool.
+	 */
+	private void finished(final JobRun run) {
+		final JobRun next;
+		synchronized (this.gradebookQueues) {
+			this.pendingJobs--;
+			final Queue<JobRun> queue = this.gradebookQueues.get(run.gradebookUid);
+			if (queue == null) {
+				return;
+			}
+			queue.remove(run);
+			next = queue.peek();
+			if (next == null) {
+				this.gradebookQueues.remove(run.gradebookUid);
+			}
+		}
+		if (next != null) {
+			dispatch(next);
+		}
+	}
+
+	private void updateJob(final Long jobId, final Consumer<GradebookJob> change) {
+		try {
+			this.transactionTemplate.execute(status -> {
+				final GradebookJob job = getHibernateTemplate().get(GradebookJob.class, jobId);
+				if (job != null) {
+					change.accept(job);
+				}
+				return null;
+			});
+		} catch (final RuntimeException e) {
+			// A lost update of the record must not fail or stop the job itself
+			log.warn("Could not update gradebook job " + jobId + ": " + e.getMessage());
+		}
+	}
+
+	private static void fail(final GradebookJob job, final String message) {
+		job.setState(GradebookJob.STATE_FAILED);
+		job.setMessage(message != null && message.length() > MAX_MESSAGE_LENGTH ? message.substring(0, MAX_MESSAGE_LENGTH) : message);
+		job.setDateFinished(new Date());
+	}
+
+	private final class JobRun implements Runnable {
+		private final Long jobId;
+		private final String gradebookUid;
+		private final String userId;
+		private final Task task;
+
+		private JobRun(final Long jobId, final String gradebookUid, final String userId, final Task task) {
+			this.jobId = jobId;
+			this.gradebookUid = gradebookUid;
+			this.userId = userId;
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			final Session session = GradebookJobManagerImpl.this.sessionManager.startSession();
+			session.setUserId(this.userId);
+			GradebookJobManagerImpl.this.sessionManager.setCurrentSession(session);
+			final long start = System.currentTimeMillis();
+			try {
+				updateJob(this.jobId, job -> {
+					job.setState(GradebookJob.STATE_RUNNING);
+					job.setDateStarted(new Date());
+				});
+				final JobProgress progress = new JobProgress(this.jobId);
+				this.task.run(progress);
+				updateJob(this.jobId, job -> {
+					job.setState(GradebookJob.STATE_SUCCEEDED);
+					job.setProgress(progress.done);
+					job.setTotal(progress.total);
+					job.setDateFinished(new Date());
+				});
+				if (log.isInfoEnabled()) {
+					log.info("Gradebook job " + this.jobId + " for gradebook " + this.gradebookUid + " finished in "
+							+ (System.currentTimeMillis() - start) + " ms");
+				}
+			} catch (final Exception e) {
+				log.error("Gradebook job " + this.jobId + " for gradebook " + this.gradebookUid + " failed", e);
+				final String message = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+				updateJob(this.jobId, job -> fail(job, message));
+			} finally {
+				session.invalidate();
+				ThreadLocalManager.clear();
+				finished(this);
+			}
+		}
+	}
+
+	private final class JobProgress implements Progress {
+		private final Long jobId;
+		private int done;
+		private int total;
+		private long lastWrite;
+
+		private JobProgress(final Long jobId) {
+			this.jobId = jobId;
+		}
+
+		@Override
+		public void update(final int done, final int total) {
+			this.done = done;
+			this.total = total;
+			final long now = System.currentTimeMillis();
+			if (now - this.lastWrite < PROGRESS_WRITE_INTERVAL_MS && done < total) {
+				return;
+			}
+			this.lastWrite = now;
+			updateJob(this.jobId, job -> {
+				job.setProgress(done);
+				job.setTotal(total);
+			});
+		}
+	}
+
+	public void setSessionManager(final SessionManager sessionManager) {
+		this.sessionManager = sessionManager;
+	}
+
+	public void setTransactionManager(final PlatformTransactionManager transactionManager) {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+	}
+
+	public void setMaxThreads(final int maxThreads) {
+		this.maxThreads = Math.max(1, maxThreads);
+	}
+
+	public void setMaxPendingJobs(final int maxPendingJobs) {
+		this.maxPendingJobs = Math.max(1, maxPendingJobs);
+	}
+}
@@ -16,6 +16,17 @@
 
 package org.sakaiproject.tool.gradebook.business.impl;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -24,17 +35,21 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.hibernate.Hibernate;
 import org.hibernate.HibernateException;
 import org.hibernate.Query;
 import org.hibernate.Session;
-import org.hibernate.StaleObjectStateException;
 import org.hibernate.TransientObjectException;
 import org.hibernate.criterion.Restrictions;
+import org.sakaiproject.component.cover.ServerConfigurationService;
 import org.sakaiproject.component.gradebook.GradebookServiceHibernateImpl;
 import org.sakaiproject.hibernate.HibernateCriterionUtils;
 import org.sakaiproject.service.gradebook.shared.ConflictingAssignmentNameException;
@@ -56,8 +71,17 @@ import org.sakaiproject.tool.gradebook.GradingEvent;
 import org.sakaiproject.tool.gradebook.GradingEvents;
 import org.sakaiproject.tool.gradebook.LetterGradePercentMapping;
 import org.sakaiproject.tool.gradebook.Spreadsheet;
+import org.sakaiproject.tool.gradebook.business.AssignmentNavigationIndex;
+import org.sakaiproject.tool.gradebook.business.CategoryResult;
 import org.sakaiproject.tool.gradebook.business.GbSynchronizer;
+import org.sakaiproject.tool.gradebook.business.GradebookJobManager;
 import org.sakaiproject.tool.gradebook.business.GradebookManager;
+import org.sakaiproject.tool.gradebook.business.GradingEventArchive;
+import org.sakaiproject.tool.gradebook.business.GradingEventWindow;
+import org.sakaiproject.tool.gradebook.business.RosterGradeGrid;
+import org.sakaiproject.tool.gradebook.business.RosterSortKeys;
+import org.sakaiproject.tool.gradebook.business.SpreadsheetContent;
+import org.sakaiproject.tool.gradebook.business.SpreadsheetSummary;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.orm.hibernate4.HibernateCallback;
 import org.springframework.orm.hibernate4.HibernateOptimisticLockingFailureException;
@@ -74,6 +98,40 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
     /** synchronize from external application*/
     GbSynchronizer synchronizer = null;
 
+    /** students given zeros per chunk by {@link #fillInZeroForNullGradeRecords(Gradebook)} */
+    private static final int FINALIZE_STUDENT_CHUNK_SIZE = 200;
+
+    /**
+     * content left in GB_SPREADSHEET_T for spreadsheets whose content is kept in {@link SpreadsheetContent},
+     * the column not accepting nulls or, on Oracle, empty strings
+     */
+    private static final String STORED_APART = "-";
+
+    /** students whose latest grading events are fetched per query */
+    private static final int GRADING_EVENT_STUDENT_CHUNK_SIZE = 500;
+
+    /** student histories archived between flushes of the session by {@link #archiveGradingEvents(Long, int, GradebookJobManager.Progress)} */
+    private static final int GRADING_EVENT_ARCHIVE_FLUSH_SIZE = 100;
+
+    /** gradebooks whose statistics, sort keys and navigation indexes are held */
+    private static final int CACHED_GRADEBOOKS = 100;
+
+    /** class statistics of recently viewed gradebooks, with and without dropped scores, shared by the UI beans and entity providers using this manager */
+    private final VersionedGradebookCache<Boolean, GradebookStatistics> statisticsCache = new VersionedGradebookCache<>(CACHED_GRADEBOOKS, 2);
+
+    /** sort keys of the roster score columns of recently viewed gradebooks, by column */
+    private final VersionedGradebookCache<String, RosterSortKeys> sortKeyCache = new VersionedGradebookCache<>(CACHED_GRADEBOOKS, Integer.MAX_VALUE);
+
+    /** assignment navigation indexes of recently viewed gradebooks, by assignment and category order */
+    private final VersionedGradebookCache<String, AssignmentNavigationIndex> navigationCache = new VersionedGradebookCache<>(CACHED_GRADEBOOKS,
+            Integer.MAX_VALUE);
+
+    /** default number of threads large calculations are split over */
+    static final int DEFAULT_CALCULATION_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    /** bounded pool large calculations are split over, created on first use */
+    private volatile ForkJoinPool calculationPool;
+
     @Override
     public void removeAssignment(final Long assignmentId) throws StaleObjectModificationException {
         final HibernateCallback hc = new HibernateCallback() {
@@ -83,6 +141,7 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
                 final Gradebook gradebook = asn.getGradebook();
                 asn.setRemoved(true);
                 session.update(asn);
+                gradebookStructureChanged(gradebook.getId());
                 /** synchronize from external application*/
                 if ( (GradebookManagerHibernateImpl.this.synchronizer != null) && (!GradebookManagerHibernateImpl.this.synchronizer.isProjectSite()))
                 {
@@ -200,53 +259,172 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
 			return;
 		}
 
+    	final List<Category> resultCategories = getResultCategories(categories);
+    	final CategoryResultJobs jobs = new CategoryResultJobs(resultCategories);
     	for (final Iterator stuIter = enrollmentMap.keySet().iterator(); stuIter.hasNext(); ){
     		final String studentUid = (String) stuIter.next();
     		final Map studentMap = (Map) gradeRecordMap.get(studentUid);
 
     		if (studentMap != null) {
-	    		for (final Iterator iter = categories.iterator(); iter.hasNext(); ){
-	    			final Object obj = iter.next();
-	    			if(!(obj instanceof Category)){
-	    				continue;
-	    			}
-	    			final Category category = (Category) obj;
-
-		    		final List categoryAssignments = category.getAssignmentList();
-		    		if (categoryAssignments == null){
-		    			continue;
-		    		}
-
-		    		final List gradeRecords = new ArrayList();
-
+	    		for (int c = 0; c < resultCategories.size(); c++) {
+		    		final List categoryAssignments = resultCategories.get(c).getAssignmentList();
+		    		final List gradeRecords = new ArrayList(categoryAssignments.size());
 		    		for (final Iterator assignmentsIter = categoryAssignments.iterator(); assignmentsIter.hasNext(); ){
 		    			final GradebookAssignment assignment = (GradebookAssignment) assignmentsIter.next();
-		    			final AbstractGradeRecord gradeRecord = (AbstractGradeRecord) studentMap.get(assignment.getId());
-		    			gradeRecords.add(gradeRecord);
-
+		    			gradeRecords.add(studentMap.get(assignment.getId()));
 		    		}
-		    		applyDropScores(gradeRecords);
-		    		category.calculateStatisticsPerStudent(gradeRecords, studentUid);
-
-		    		Map studentCategoryMap = (Map) categoryResultMap.get(studentUid);
-			    	if (studentCategoryMap == null) {
-			    		studentCategoryMap = new HashMap();
-			    		categoryResultMap.put(studentUid, studentCategoryMap);
-			    	}
-			    	final Map stats = new HashMap();
-			    	stats.put("studentAverageScore", category.getAverageScore());
-			    	stats.put("studentAverageTotalPoints", category.getAverageTotalPoints());
-			    	stats.put("studentMean", category.getMean());
-			    	stats.put("studentTotalPointsEarned", category.getTotalPointsEarned());
-			    	stats.put("studentTotalPointsPossible", category.getTotalPointsPossible());
-
-			    	stats.put("category", category);
-
-			    	studentCategoryMap.put(category.getId(), stats);
+		    		jobs.add(c, studentUid, gradeRecords);
 		    	}
 	    	}
     	}
+    	jobs.calculateInto(categoryResultMap);
+    }
+
+    @Override
+    public void addToGradeRecordGrid(final RosterGradeGrid grid, final List gradeRecords) {
+		for (final Iterator iter = gradeRecords.iterator(); iter.hasNext(); ) {
+			final AbstractGradeRecord gradeRecord = (AbstractGradeRecord)iter.next();
+			if (gradeRecord instanceof AssignmentGradeRecord) {
+				((AssignmentGradeRecord)gradeRecord).setUserAbleToView(true);
+			}
+			grid.setRecord(gradeRecord, true);
+		}
+    }
+
+    @Override
+    public void addToGradeRecordGrid(final RosterGradeGrid grid, final List gradeRecords, final Map studentIdItemIdFunctionMap) {
+		for (final Iterator iter = gradeRecords.iterator(); iter.hasNext(); ) {
+			final AbstractGradeRecord gradeRecord = (AbstractGradeRecord)iter.next();
+			boolean viewable = true;
+			if (gradeRecord instanceof AssignmentGradeRecord) {
+				// check to see if this item is included in the items that the current user is able to view/grade
+				final Map itemIdFunctionMap = (Map)studentIdItemIdFunctionMap.get(gradeRecord.getStudentId());
+				viewable = itemIdFunctionMap != null && itemIdFunctionMap.get(gradeRecord.getGradableObject().getId()) != null;
+				((AssignmentGradeRecord)gradeRecord).setUserAbleToView(viewable);
+				if (!viewable) {
+					((AssignmentGradeRecord)gradeRecord).setLetterEarned(null);
+					((AssignmentGradeRecord)gradeRecord).setPointsEarned(null);
+					((AssignmentGradeRecord)gradeRecord).setPercentEarned(null);
+				}
+			}
+			grid.setRecord(gradeRecord, viewable);
+		}
+    }
+
+    @Override
+    public void addToCategoryResultMap(final Map categoryResultMap, final List categories, final RosterGradeGrid grid, final Map enrollmentMap) {
+    	if (grid == null || grid.isEmpty()) {
+			return;
+		}
+
+    	// resolve each category's assignments to grid columns once rather than once per student
+    	final List<Category> resultCategories = getResultCategories(categories);
+    	final List<int[]> categoryColumns = new ArrayList<>(resultCategories.size());
+    	for (final Category category : resultCategories) {
+    		final List categoryAssignments = category.getAssignmentList();
+    		final int[] columns = new int[categoryAssignments.size()];
+    		for (int i = 0; i < columns.length; i++) {
+    			columns[i] = grid.getItemOrdinal(((GradebookAssignment) categoryAssignments.get(i)).getId());
+    		}
+    		categoryColumns.add(columns);
+    	}
+
+    	final CategoryResultJobs jobs = new CategoryResultJobs(resultCategories);
+    	for (final Iterator stuIter = enrollmentMap.keySet().iterator(); stuIter.hasNext(); ){
+    		final String studentUid = (String) stuIter.next();
+    		final int row = grid.getStudentOrdinal(studentUid);
+    		if (row < 0 || !grid.hasRecords(row)) {
+    			continue;
+    		}
+    		for (int c = 0; c < resultCategories.size(); c++) {
+    			final int[] columns = categoryColumns.get(c);
+    			final List gradeRecords = new ArrayList(columns.length);
+    			for (final int column : columns) {
+    				gradeRecords.add(column < 0 ? null : grid.getRecord(row, column));
+    			}
+    			jobs.add(c, studentUid, gradeRecords);
+    		}
+    	}
+    	jobs.calculateInto(categoryResultMap);
+    }
+
+    /**
+     * @return the categories of the list that have their assignment list populated
+     */
+    private static List<Category> getResultCategories(final List categories) {
+    	final List<Category> resultCategories = new ArrayList<>();
+    	for (final Iterator iter = categories.iterator(); iter.hasNext(); ){
+    		final Object obj = iter.next();
+    		if (obj instanceof Category && ((Category) obj).getAssignmentList() != null) {
+    			resultCategories.add((Category) obj);
+    		}
+    	}
+    	return resultCategories;
+    }
+
+    /**
+     * Students' category results waiting to be calculated. Drop scores are applied to each
+     * student's records as they are added, on the calling thread since they may read lazily
+     * loaded entities; the statistics themselves are then calculated by
+     * {@link CategoryResultCalculator}s, on the calculation pool for large rosters.
+     */
+    private final class CategoryResultJobs {
+    	private final List<Category> categories;
+    	private final CategoryResultCalculator[] categoryCalculators;
+    	private final List<Integer> categoryIndexes = new ArrayList<>();
+    	private final List<String> studentUids = new ArrayList<>();
+    	private final List<List> gradeRecords = new ArrayList<>();
+
+    	private CategoryResultJobs(final List<Category> categories) {
+    		this.categories = categories;
+    		this.categoryCalculators = new CategoryResultCalculator[categories.size()];
+    		for (int c = 0; c < this.categoryCalculators.length; c++) {
+    			this.categoryCalculators[c] = new CategoryResultCalculator(categories.get(c));
+    		}
+    	}
 
+    	/**
+    	 * @param gradeRecords the student's records of the category's assignments, in the order of its assignment list
+    	 */
+    	private void add(final int categoryIndex, final String studentUid, final List gradeRecords) {
+    		applyDropScores(gradeRecords);
+    		this.categoryIndexes.add(categoryIndex);
+    		this.studentUids.add(studentUid);
+    		this.gradeRecords.add(gradeRecords);
+    	}
+
+    	/**
+    	 * Calculates the results and puts them in the category result map as
+    	 * student uid --> category id --> map of the student's statistics for the category.
+    	 */
+    	private void calculateInto(final Map categoryResultMap) {
+    		final int size = this.studentUids.size();
+    		final CategoryResultCalculator[] calculators = new CategoryResultCalculator[size];
+    		for (int i = 0; i < size; i++) {
+    			calculators[i] = this.categoryCalculators[this.categoryIndexes.get(i)];
+    		}
+    		final CategoryResult[] results = CategoryResultCalculator.calculateAll(getCalculationPool(),
+    				calculators, this.studentUids.toArray(new String[size]), this.gradeRecords.toArray(new List[size]));
+
+    		for (int i = 0; i < size; i++) {
+    			final CategoryResult result = results[i];
+    			Map studentCategoryMap = (Map) categoryResultMap.get(result.getStudentUid());
+    			if (studentCategoryMap == null) {
+    				studentCategoryMap = new HashMap();
+    				categoryResultMap.put(result.getStudentUid(), studentCategoryMap);
+    			}
+    			final Map stats = new HashMap();
+    			stats.put("studentAverageScore", result.getAverageScore());
+    			stats.put("studentAverageTotalPoints", result.getAverageTotalPoints());
+    			stats.put("studentMean", result.getMean());
+    			stats.put("studentTotalPointsEarned", result.getTotalPointsEarned());
+    			stats.put("studentTotalPointsPossible", result.getTotalPointsPossible());
+
+    			stats.put("category", this.categories.get(this.categoryIndexes.get(i)));
+
+    			studentCategoryMap.put(result.getCategoryId(), stats);
+    		}
+    	}
     }
 
     @Override
@@ -341,6 +519,7 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
 
                 final Set studentsWithUpdatedAssignmentGradeRecords = new HashSet();
                 final Set studentsWithExcessiveScores = new HashSet();
+                final GradeRecordBatchWriter writer = new GradeRecordBatchWriter(session, getGradeRecordBatchSize());
 
                 /** synchronize from external application*/
                 if(GradebookManagerHibernateImpl.this.synchronizer != null)
@@ -391,19 +570,19 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
                 						returnedPersistentItem.setGraderId(gradeRecordFromCall.getGraderId());
                 						returnedPersistentItem.setPointsEarned(gradeRecordFromCall.getPointsEarned());
                 						returnedPersistentItem.setDateRecorded(gradeRecordFromCall.getDateRecorded());
-                						session.saveOrUpdate(returnedPersistentItem);
+                						writer.saveOrUpdate(returnedPersistentItem);
                 					}
                 					else if(returnedPersistentItem == null)
                 					{
                 						graderId = gradeRecordFromCall.getGraderId();
                 						updated = true;
-                						session.saveOrUpdate(gradeRecordFromCall);
+                						writer.saveOrUpdate(gradeRecordFromCall);
                 					}
                 				}
                 				else
                 				{
                 					updated = true;
-                					session.saveOrUpdate(gradeRecordFromCall);
+                					writer.saveOrUpdate(gradeRecordFromCall);
                 				}
                 			}
                 			if (!isUpdateAll && !isStudentView && GradebookManagerHibernateImpl.this.synchronizer != null && !GradebookManagerHibernateImpl.this.synchronizer.isProjectSite())
@@ -434,7 +613,7 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
                 				studentsWithExcessiveScores.add(gradeRecordFromCall.getStudentId());
                 			}
 
-                			logAssignmentGradingEvent(gradeRecordFromCall, graderId, assignment, session);
+                			logAssignmentGradingEvent(gradeRecordFromCall, graderId, assignment, writer);
                 			studentsWithUpdatedAssignmentGradeRecords.add(gradeRecordFromCall.getStudentId());
                 		}
 
@@ -453,7 +632,7 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
                 		gradeRecordFromCall.setGraderId(graderId);
                 		gradeRecordFromCall.setDateRecorded(now);
                 		try {
-                			session.saveOrUpdate(gradeRecordFromCall);
+                			writer.saveOrUpdate(gradeRecordFromCall);
                 		} catch (final TransientObjectException e) {
                 			// It's possible that a previously unscored student
                 			// was scored behind the current user's back before
@@ -473,14 +652,16 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
                 		}
 
                 		// Logger the grading event, and keep track of the students with saved/updated grades
-                		logAssignmentGradingEvent(gradeRecordFromCall, graderId, assignment, session);
+                		logAssignmentGradingEvent(gradeRecordFromCall, graderId, assignment, writer);
 
                 		studentsWithUpdatedAssignmentGradeRecords.add(gradeRecordFromCall.getStudentId());
                 	}
                 }
+                writer.finish();
                 if (log.isDebugEnabled()) {
 					log.debug("Updated " + studentsWithUpdatedAssignmentGradeRecords.size() + " assignment score records");
 				}
+                gradeRecordsUpdated(session, assignment.getGradebook().getId(), studentsWithUpdatedAssignmentGradeRecords);
 
                 return studentsWithExcessiveScores;
             }
@@ -520,6 +701,7 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
 
                 final Set studentsWithUpdatedAssignmentGradeRecords = new HashSet();
                 final Set assignmentsWithExcessiveScores = new HashSet();
+                final GradeRecordBatchWriter writer = new GradeRecordBatchWriter(session, getGradeRecordBatchSize());
 
                 /** synchronize from external application*/
                 if(GradebookManagerHibernateImpl.this.synchronizer != null)
@@ -569,19 +751,19 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
                 						returnedPersistentItem.setGraderId(gradeRecordFromCall.getGraderId());
                 						returnedPersistentItem.setPointsEarned(gradeRecordFromCall.getPointsEarned());
                 						returnedPersistentItem.setDateRecorded(gradeRecordFromCall.getDateRecorded());
-                						session.saveOrUpdate(returnedPersistentItem);
+                						writer.saveOrUpdate(returnedPersistentItem);
                 					}
                 					else if(returnedPersistentItem == null)
                 					{
                 						graderId = gradeRecordFromCall.getGraderId();
                 						updated = true;
-                						session.saveOrUpdate(gradeRecordFromCall);
+                						writer.saveOrUpdate(gradeRecordFromCall);
                 					}
                 				}
                 				else
                 				{
                 					updated = true;
-                					session.saveOrUpdate(gradeRecordFromCall);
+                					writer.saveOrUpdate(gradeRecordFromCall);
                 				}
                 			}
                 			if (assignment != null && !isUpdateAll && !isStudentView && GradebookManagerHibernateImpl.this.synchronizer != null && !GradebookManagerHibernateImpl.this.synchronizer.isProjectSite())
@@ -613,7 +795,7 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
                 			}
 
                 			// Logger the grading event, and keep track of the students with saved/updated grades
-                			logAssignmentGradingEvent(gradeRecordFromCall, graderId, assignment, session);
+                			logAssignmentGradingEvent(gradeRecordFromCall, graderId, assignment, writer);
 
                 			studentsWithUpdatedAssignmentGradeRecords.add(gradeRecordFromCall.getStudentId());
                 		}
@@ -637,7 +819,7 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
 	                	gradeRecordFromCall.setGraderId(graderId);
 	                	gradeRecordFromCall.setDateRecorded(now);
 	                	try {
-	                		session.saveOrUpdate(gradeRecordFromCall);
+	                		writer.saveOrUpdate(gradeRecordFromCall);
 	                	} catch (final TransientObjectException e) {
 	                		// It's possible that a previously unscored student
 	                		// was scored behind the current user's back before
@@ -657,14 +839,22 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
 	                	}
 
 	                	// Logger the grading event, and keep track of the students with saved/updated grades
-	                	logAssignmentGradingEvent(gradeRecordFromCall, graderId, assignment, session);
+	                	logAssignmentGradingEvent(gradeRecordFromCall, graderId, assignment, writer);
 
 	                	studentsWithUpdatedAssignmentGradeRecords.add(gradeRecordFromCall.getStudentId());
 	                }
                 }
+                writer.finish();
 				if (log.isDebugEnabled()) {
 					log.debug("Updated " + studentsWithUpdatedAssignmentGradeRecords.size() + " assignment score records");
 				}
+				for (final Iterator iter = gradeRecordsFromCall.iterator(); iter.hasNext();) {
+					final AssignmentGradeRecord gradeRecord = (AssignmentGradeRecord)iter.next();
+					if (gradeRecord != null && gradeRecord.getAssignment() != null) {
+						gradeRecordsUpdated(session, gradeRecord.getAssignment().getGradebook().getId(), studentsWithUpdatedAssignmentGradeRecords);
+						break;
+					}
+				}
 
                 return assignmentsWithExcessiveScores;
             }
@@ -751,27 +941,21 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
                 final Date now = new Date();
                 final String graderId = GradebookManagerHibernateImpl.this.authn.getUserUid();
                 int numberOfUpdatedGrades = 0;
+                final GradeRecordBatchWriter writer = new GradeRecordBatchWriter(session, getGradeRecordBatchSize());
 
                 for(final Iterator iter = gradeRecordsFromCall.iterator(); iter.hasNext();) {
                     // The modified course grade record
                     final CourseGradeRecord gradeRecordFromCall = (CourseGradeRecord)iter.next();
                     gradeRecordFromCall.setGraderId(graderId);
                     gradeRecordFromCall.setDateRecorded(now);
-                    try {
-                        session.saveOrUpdate(gradeRecordFromCall);
-                        session.flush();
-                    } catch (final StaleObjectStateException sose) {
-                        if(log.isInfoEnabled()) {
-							log.info("An optimistic locking failure occurred while attempting to update course grade records");
-						}
-                        throw new StaleObjectModificationException(sose);
-                    }
+                    writer.saveOrUpdate(gradeRecordFromCall);
 
                     // Logger the grading event
-                    session.save(new GradingEvent(courseGrade, graderId, gradeRecordFromCall.getStudentId(), gradeRecordFromCall.getEnteredGrade()));
+                    writer.logEvent(new GradingEvent(courseGrade, graderId, gradeRecordFromCall.getStudentId(), gradeRecordFromCall.getEnteredGrade()));
 
                     numberOfUpdatedGrades++;
                 }
+                writer.finish();
                 if (log.isDebugEnabled()) {
 					log.debug("Changed " + numberOfUpdatedGrades + " course grades for gradebook=" + courseGrade.getGradebook().getUid());
 				}
@@ -781,6 +965,7 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
 
         try {
 	        getHibernateTemplate().execute(hc);
+	        this.statisticsCache.invalidate(courseGrade.getGradebook().getId());
 	        if (log.isDebugEnabled()) {
 				log.debug("END: Update " + gradeRecordsFromCall.size() + " course grades for gradebook=" + courseGrade.getGradebook().getUid());
 			}
@@ -853,6 +1038,65 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
      */
     abstract List getTotalPointsEarnedInternal(final String studentId, final Gradebook gradebook, final List categories, final List<AssignmentGradeRecord> gradeRecs, List<GradebookAssignment> countedAssigns);
 
+    /**
+     * Called in the writing transaction once grade records of the given students
+     * have been saved, so that course grade data, class statistics and roster sort keys derived from them can be brought up to date.
+     *
+     * @param session the writing session
+     * @param gradebookId
+     * @param studentIds the students whose grade records were saved
+     */
+    void gradeRecordsUpdated(final Session session, final Long gradebookId, final Collection<String> studentIds) {
+        this.statisticsCache.invalidate(gradebookId);
+        this.sortKeyCache.invalidate(gradebookId);
+    }
+
+    /**
+     * Called when assignments or categories of a gradebook changed in a way that
+     * affects course grades, class statistics or roster sort keys, e.g. points possible, counting, weights or drop rules.
+     *
+     * @param gradebookId
+     */
+    void gradebookStructureChanged(final Long gradebookId) {
+        this.statisticsCache.invalidate(gradebookId);
+        this.sortKeyCache.invalidate(gradebookId);
+        this.navigationCache.invalidate(gradebookId);
+    }
+
+    /**
+     * @return a key of everything besides the scores that course grades and class statistics depend on
+     */
+    static String getStructureKey(final Gradebook gradebook, final List cates, final List<GradebookAssignment> assigns) {
+        final StringBuilder key = new StringBuilder();
+        key.append(gradebook.getGrade_type()).append('/').append(gradebook.getCategory_type());
+        for (final GradebookAssignment assign : assigns) {
+            key.append("|a").append(assign.getId())
+                .append(',').append(assign.getPointsPossible())
+                .append(',').append(assign.getCategory() == null ? null : assign.getCategory().getId())
+                .append(',').append(assign.isExtraCredit())
+                .append(',').append(assign.isCounted())
+                .append(',').append(assign.getUngraded())
+                .append(',').append(assign.isExternallyMaintained());
+        }
+        if (cates != null) {
+            for (final Object o : cates) {
+                final Category cate = (Category) o;
+                if (cate == null) {
+                    continue;
+                }
+                key.append("|c").append(cate.getId())
+                    .append(',').append(cate.isRemoved())
+                    .append(',').append(cate.getWeight())
+                    .append(',').append(cate.isExtraCredit())
+                    .append(',').append(cate.getDropLowest())
+                    .append(',').append(cate.getDropHighest())
+                    .append(',').append(cate.getKeepHighest())
+                    .append(',').append(cate.getItemValue());
+            }
+        }
+        return key.toString();
+    }
+
     //for testing
     public double getTotalPointsEarnedInternal(final Long gradebookId, final String studentId, final Gradebook gradebook, final List categories)
     {
@@ -986,6 +1230,9 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
 		for (final GradingEvent event : list) {
 			events.addEvent(event);
 		}
+		for (final GradingEvent event : getArchivedGradingEvents(Collections.singletonList(gradableObject), studentIds)) {
+			events.addEvent(event);
+		}
         return events;
     }
 
@@ -1017,7 +1264,8 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
 				.add(HibernateCriterionUtils.CriterionInRestrictionSplitter("gradableObject", gradableObjects))
 				.list();
 
-        final List<GradingEvent> list = getHibernateTemplate().execute(hc);
+        final List<GradingEvent> list = new ArrayList<>(getHibernateTemplate().execute(hc));
+        list.addAll(getArchivedGradingEvents(gradableObjects, Collections.singletonList(studentId)));
 
 		for (final GradingEvent event : list) {
 			final GradableObject go = event.getGradableObject();
@@ -1032,6 +1280,202 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
         return goEventListMap;
     }
 
+    @Override
+    public GradingEventWindow getLatestGradingEvents(final GradableObject gradableObject, final Collection studentUids, final int limit) {
+        final GradingEvents events = new GradingEvents();
+        final Set<String> studentsWithOlderEvents = new HashSet<>();
+        if (studentUids == null || studentUids.isEmpty()) {
+            return new GradingEventWindow(events, studentsWithOlderEvents);
+        }
+
+        // one more than the limit per student tells whether there are older events
+        final String hql = "from GradingEvent as ge where ge.gradableObject.id = :gradableObjectId and ge.studentId in (:studentUids) " +
+                "and (select count(later.id) from GradingEvent as later " +
+                "where later.gradableObject.id = ge.gradableObject.id and later.studentId = ge.studentId " +
+                "and (later.dateGraded > ge.dateGraded or (later.dateGraded = ge.dateGraded and later.id > ge.id))) <= :limit";
+        final List<String> uids = new ArrayList<>(studentUids);
+        final List<GradingEvent> list = new ArrayList<>();
+        for (int from = 0; from < uids.size(); from += GRADING_EVENT_STUDENT_CHUNK_SIZE) {
+            final List<String> chunk = uids.subList(from, Math.min(uids.size(), from + GRADING_EVENT_STUDENT_CHUNK_SIZE));
+            final HibernateCallback<List<GradingEvent>> hc = session -> session.createQuery(hql)
+                    .setLong("gradableObjectId", gradableObject.getId())
+                    .setParameterList("studentUids", chunk)
+                    .setLong("limit", limit)
+                    .list();
+            list.addAll(getHibernateTemplate().execute(hc));
+        }
+
+        // the newest first, so the one past the limit is the oldest of each student
+        list.sort(Comparator.comparing(GradingEvent::getDateGraded).thenComparing(GradingEvent::getId).reversed());
+        final Map<String, Integer> counts = new HashMap<>();
+        for (final GradingEvent event : list) {
+            final int count = counts.merge(event.getStudentId(), 1, Integer::sum);
+            if (count <= limit) {
+                events.addEvent(event);
+            } else {
+                studentsWithOlderEvents.add(event.getStudentId());
+            }
+        }
+
+        // students whose only older events are archived
+        for (int from = 0; from < uids.size(); from += GRADING_EVENT_STUDENT_CHUNK_SIZE) {
+            final List<String> chunk = uids.subList(from, Math.min(uids.size(), from + GRADING_EVENT_STUDENT_CHUNK_SIZE));
+            final HibernateCallback<List<String>> archiveHc = session -> session.createQuery(
+                    "select a.studentId from GradingEventArchive as a where a.gradableObjectId = :gradableObjectId and a.studentId in (:studentUids)")
+                    .setLong("gradableObjectId", gradableObject.getId())
+                    .setParameterList("studentUids", chunk)
+                    .list();
+            studentsWithOlderEvents.addAll(getHibernateTemplate().execute(archiveHc));
+        }
+        return new GradingEventWindow(events, studentsWithOlderEvents);
+    }
+
+    @Override
+    public List<GradingEvent> getGradingHistory(final GradableObject gradableObject, final String studentUid) {
+        final HibernateCallback<List<GradingEvent>> hc = session -> session.createQuery(
+                "from GradingEvent as ge where ge.gradableObject.id = :gradableObjectId and ge.studentId = :studentUid")
+                .setLong("gradableObjectId", gradableObject.getId())
+                .setString("studentUid", studentUid)
+                .list();
+        final List<GradingEvent> history = new ArrayList<>(getHibernateTemplate().execute(hc));
+        history.addAll(getArchivedGradingEvents(Collections.singletonList(gradableObject), Collections.singletonList(studentUid)));
+        history.sort(Comparator.comparing(GradingEvent::getDateGraded).thenComparing(GradingEvent::getId, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return history;
+    }
+
+    /**
+     * @return the archived events of the students on the gradable objects, rebuilt as unsaved grading events
+     */
+    private List<GradingEvent> getArchivedGradingEvents(final Collection gradableObjects, final Collection studentUids) {
+        final Map<Long, GradableObject> objectsById = new HashMap<>();
+        for (final Object go : gradableObjects) {
+            objectsById.put(((GradableObject) go).getId(), (GradableObject) go);
+        }
+        final List<GradingEvent> events = new ArrayList<>();
+        if (objectsById.isEmpty() || studentUids == null || studentUids.isEmpty()) {
+            return events;
+        }
+        final List<String> uids = new ArrayList<>(studentUids);
+        for (int from = 0; from < uids.size(); from += GRADING_EVENT_STUDENT_CHUNK_SIZE) {
+            final List<String> chunk = uids.subList(from, Math.min(uids.size(), from + GRADING_EVENT_STUDENT_CHUNK_SIZE));
+            final HibernateCallback<List<GradingEventArchive>> hc = session -> session.createQuery(
+                    "from GradingEventArchive as a where a.gradableObjectId in (:gradableObjectIds) and a.studentId in (:studentUids)")
+                    .setParameterList("gradableObjectIds", objectsById.keySet())
+                    .setParameterList("studentUids", chunk)
+                    .list();
+            for (final GradingEventArchive archive : getHibernateTemplate().execute(hc)) {
+                events.addAll(readArchivedEvents(archive, objectsById.get(archive.getGradableObjectId())));
+            }
+        }
+        return events;
+    }
+
+    @Override
+    public int archiveGradingEvents(final Long gradebookId, final int keep, final GradebookJobManager.Progress progress) {
+        final HibernateCallback<Integer> hc = session -> {
+            final List<Object[]> histories = session.createQuery(
+                    "select ge.gradableObject.id, ge.studentId from GradingEvent as ge where ge.gradableObject.gradebook.id = :gradebookId " +
+                    "group by ge.gradableObject.id, ge.studentId having count(ge.id) > :keep")
+                    .setLong("gradebookId", gradebookId)
+                    .setLong("keep", keep)
+                    .list();
+            int archived = 0;
+            for (int i = 0; i < histories.size(); i++) {
+                final Long gradableObjectId = (Long) histories.get(i)[0];
+                final String studentUid = (String) histories.get(i)[1];
+                final List<GradingEvent> events = session.createQuery(
+                        "from GradingEvent as ge where ge.gradableObject.id = :gradableObjectId and ge.studentId = :studentUid " +
+                        "order by ge.dateGraded desc, ge.id desc")
+                        .setLong("gradableObjectId", gradableObjectId)
+                        .setString("studentUid", studentUid)
+                        .list();
+                final List<GradingEvent> older = new ArrayList<>(events.subList(Math.min(keep, events.size()), events.size()));
+                Collections.reverse(older);
+
+                GradingEventArchive archive = (GradingEventArchive) session.createQuery(
+                        "from GradingEventArchive as a where a.gradableObjectId = :gradableObjectId and a.studentId = :studentUid")
+                        .setLong("gradableObjectId", gradableObjectId)
+                        .setString("studentUid", studentUid)
+                        .uniqueResult();
+                final List<GradingEvent> archivedEvents = new ArrayList<>();
+                if (archive == null) {
+                    archive = new GradingEventArchive();
+                    archive.setGradableObjectId(gradableObjectId);
+                    archive.setStudentId(studentUid);
+                } else {
+                    archivedEvents.addAll(readArchivedEvents(archive, null));
+                }
+                archivedEvents.addAll(older);
+                writeArchivedEvents(archive, archivedEvents);
+                session.saveOrUpdate(archive);
+                for (final GradingEvent event : older) {
+                    session.delete(event);
+                }
+                archived += older.size();
+
+                if ((i + 1) % GRADING_EVENT_ARCHIVE_FLUSH_SIZE == 0 || i == histories.size() - 1) {
+                    session.flush();
+                    session.clear();
+                    if (progress != null) {
+                        progress.update(i + 1, histories.size());
+                    }
+                }
+            }
+            return archived;
+        };
+        final int archived = getHibernateTemplate().execute(hc);
+        if (log.isInfoEnabled()) {
+            log.info("Archived " + archived + " grading events of gradebook " + gradebookId);
+        }
+        return archived;
+    }
+
+    /**
+     * Stores the events, oldest first, in the archive.
+     */
+    private static void writeArchivedEvents(final GradingEventArchive archive, final List<GradingEvent> events) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(events.size() * 24 + 64);
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeInt(events.size());
+            for (final GradingEvent event : events) {
+                out.writeLong(event.getDateGraded().getTime());
+                out.writeUTF(event.getGraderId());
+                out.writeBoolean(event.getGrade() != null);
+                if (event.getGrade() != null) {
+                    out.writeUTF(event.getGrade());
+                }
+            }
+        } catch (final IOException e) {
+            // not thrown writing to memory
+            throw new UncheckedIOException(e);
+        }
+        archive.setData(bytes.toByteArray());
+        archive.setEventCount(events.size());
+        archive.setLastDateGraded(events.get(events.size() - 1).getDateGraded());
+    }
+
+    /**
+     * @param gradableObject the object the events are rebuilt for
+     * @return the events of the archive, oldest first
+     */
+    private static List<GradingEvent> readArchivedEvents(final GradingEventArchive archive, final GradableObject gradableObject) {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(archive.getData())))) {
+            final int size = in.readInt();
+            final List<GradingEvent> events = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                final Date dateGraded = new Date(in.readLong());
+                final String graderId = in.readUTF();
+                final String grade = in.readBoolean() ? in.readUTF() : null;
+                final GradingEvent event = new GradingEvent(gradableObject, graderId, archive.getStudentId(), grade);
+                event.setDateGraded(dateGraded);
+                events.add(event);
+            }
+            return events;
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Corrupt grading event archive " + archive.getId(), e);
+        }
+    }
+
 
     /**
      */
@@ -1062,54 +1506,209 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
      */
     public List getAssignmentsWithStats(final Long gradebookId, final String sortBy, final boolean ascending, final boolean includeDroppedScores) {
         final Set studentUids = getAllStudentUids(getGradebookUid(gradebookId));
+        final List assignments = getAssignmentsWithStats(gradebookId, studentUids, getCategories(gradebookId),
+                getCourseGrade(gradebookId), includeDroppedScores);
+        sortAssignments(assignments, sortBy, ascending);
+        return assignments;
+    }
+
+    /**
+     * Loads all assignments of the gradebook with their statistics populated, and populates
+     * the statistics of the given course grade. The statistics are taken from the statistics
+     * cache if nothing they depend on changed since they were last calculated.
+     *
+     * @param gradebookId
+     * @param studentUids the students the statistics are calculated over
+     * @param categories the categories of the gradebook
+     * @param courseGrade the course grade of the gradebook
+     * @param includeDroppedScores whether scores dropped by category drop rules count toward the assignment statistics
+     * @return the unsorted assignments with stats populated
+     */
+    private List<GradebookAssignment> getAssignmentsWithStats(final Long gradebookId, final Set<String> studentUids,
+            final List categories, final CourseGrade courseGrade, final boolean includeDroppedScores) {
+        final List<GradebookAssignment> assignments = getAssignments(gradebookId);
+
+        // take the version before reading anything, so statistics racing with a write are not stored
+        final long version = this.statisticsCache.getVersion(gradebookId);
+        final String dataKey = getStatisticsKey(gradebookId, studentUids, categories, assignments);
+        final GradebookStatistics cached = this.statisticsCache.get(gradebookId, includeDroppedScores, dataKey);
+        if (cached != null && cached.applyTo(assignments, courseGrade)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Using cached statistics of gradebook " + gradebookId + " for " + cached.getStudentCount() + " students");
+            }
+            return assignments;
+        }
+
         final List<AssignmentGradeRecord> gradeRecords = getAllAssignmentGradeRecords(gradebookId, studentUids);
-        if(!includeDroppedScores) {
+        if (!includeDroppedScores) {
             applyDropScores(gradeRecords);
         }
-        final List assignments = getAssignmentsWithStats(gradebookId, sortBy, ascending, gradeRecords);
+        final AssignmentStatisticsAggregator aggregator = new AssignmentStatisticsAggregator(gradeRecords);
+        for (final GradebookAssignment assignment : assignments) {
+            aggregator.calculateStatistics(assignment);
+        }
+
+        // course grade totals come from the maintained per-student totals
+        final List<CourseGradeRecord> courseGradeRecords = getPointsEarnedCourseGradeRecords(courseGrade, studentUids);
+        courseGrade.calculateStatistics(courseGradeRecords, studentUids.size());
+
+        this.statisticsCache.put(gradebookId, version, includeDroppedScores, dataKey,
+                GradebookStatistics.of(studentUids.size(), assignments, courseGrade));
         return assignments;
     }
 
     /**
-     *
-     * @param gradebookId
-     * @param sortBy
-     * @param ascending
-     * @param gradeRecords - use {@link #getAllAssignmentGradeRecords(Long, Collection)}
-     * @return a list of all assignments with stats populated. this method is
-     * helpful to eliminate repeated calls to {@link #getAllAssignmentGradeRecords(Long, Collection)}
-     * if you have already retrieved them
+     * @return a key of the data class statistics are calculated from: the structure and grade
+     * mapping of the gradebook, the students and a stamp of all assignment and course grade records
      */
+    private String getStatisticsKey(final Long gradebookId, final Set<String> studentUids, final List categories,
+            final List<GradebookAssignment> assignments) {
+        final Gradebook gradebook = getGradebook(gradebookId);
+        final StringBuilder key = new StringBuilder(getStructureKey(gradebook, categories, assignments));
+        if (gradebook.getSelectedGradeMapping() != null) {
+            key.append("|m").append(gradebook.getSelectedGradeMapping().getGradeMap());
+        }
 
-    private List getAssignmentsWithStats(final Long gradebookId, final String sortBy,
-            final boolean ascending, final List<AssignmentGradeRecord> gradeRecords) {
+        long studentsKey = 0;
+        for (final String studentUid : studentUids) {
+            long h = studentUid.hashCode();
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            studentsKey += h;
+        }
+        key.append("|s").append(studentUids.size()).append(',').append(studentsKey);
+
+        final HibernateCallback<List<Object[]>> hc = session -> {
+            final List<Object[]> stamps = new ArrayList<>(2);
+            stamps.add((Object[]) session.createQuery(
+                    "select count(agr.id), max(agr.dateRecorded), sum(agr.pointsEarned) from AssignmentGradeRecord as agr " +
+                    "where agr.gradableObject.gradebook.id=:gradebookId and agr.gradableObject.removed=false")
+                    .setLong("gradebookId", gradebookId)
+                    .uniqueResult());
+            stamps.add((Object[]) session.createQuery(
+                    "select count(cgr.id), max(cgr.dateRecorded) from CourseGradeRecord as cgr " +
+                    "where cgr.gradableObject.gradebook.id=:gradebookId")
+                    .setLong("gradebookId", gradebookId)
+                    .uniqueResult());
+            return stamps;
+        };
+        for (final Object[] stamp : getHibernateTemplate().execute(hc)) {
+            appendStamp(key, stamp);
+        }
+        return key.toString();
+    }
 
-        final List assignments = getAssignments(gradebookId);
-        for (final Iterator iter = assignments.iterator(); iter.hasNext(); ) {
-            final GradebookAssignment assignment = (GradebookAssignment)iter.next();
-            assignment.calculateStatistics(gradeRecords);
+    @Override
+    public RosterSortKeys getAssignmentSortKeys(final GradebookAssignment assignment) {
+        final Long gradebookId = assignment.getGradebook().getId();
+        final String column = "a" + assignment.getId();
+
+        // take the version before reading anything, so keys racing with a write are not stored
+        final long version = this.sortKeyCache.getVersion(gradebookId);
+        final Gradebook gradebook = getGradebook(gradebookId);
+        final HibernateCallback<Object[]> stampHc = session -> (Object[]) session.createQuery(
+                "select count(agr.id), max(agr.dateRecorded), sum(agr.pointsEarned) from AssignmentGradeRecord as agr " +
+                "where agr.gradableObject.id=:gradableObjectId")
+                .setLong("gradableObjectId", assignment.getId())
+                .uniqueResult();
+        final StringBuilder dataKey = new StringBuilder(getStructureKey(gradebook, null, Collections.singletonList(assignment)));
+        dataKey.append('|').append(assignment.isRemoved());
+        appendStamp(dataKey, getHibernateTemplate().execute(stampHc));
+        final RosterSortKeys cached = this.sortKeyCache.get(gradebookId, column, dataKey.toString());
+        if (cached != null) {
+            return cached;
         }
-        sortAssignments(assignments, sortBy, ascending);
-        return assignments;
+
+        // percentage and letter grade conversion leaves out every record of items without points possible
+        final boolean converted = gradebook.getGrade_type() != GradebookService.GRADE_TYPE_POINTS;
+        if (assignment.isRemoved() || (converted && (assignment.getPointsPossible() == null || assignment.getPointsPossible() <= 0))) {
+            final RosterSortKeys keys = new RosterSortKeys.Builder(true).build();
+            this.sortKeyCache.put(gradebookId, version, column, dataKey.toString(), keys);
+            return keys;
+        }
+
+        final HibernateCallback<List<Object[]>> hc = session -> session.createQuery(
+                "select agr.studentId, agr.pointsEarned from AssignmentGradeRecord as agr " +
+                "where agr.gradableObject.id=:gradableObjectId order by agr.pointsEarned")
+                .setLong("gradableObjectId", assignment.getId())
+                .list();
+        final List<Object[]> rows = getHibernateTemplate().execute(hc);
+
+        // the roster has always listed records in database order, so null scores go where the database sorts them
+        final boolean nullsFirst = rows.isEmpty() || rows.get(0)[1] == null;
+        final RosterSortKeys.Builder builder = new RosterSortKeys.Builder(nullsFirst);
+        for (final Object[] row : rows) {
+            builder.add((String) row[0], (Double) row[1]);
+        }
+        final RosterSortKeys keys = builder.build();
+        this.sortKeyCache.put(gradebookId, version, column, dataKey.toString(), keys);
+        return keys;
     }
 
     @Override
-    public List getAssignmentsAndCourseGradeWithStats(final Long gradebookId, final String sortBy, final boolean ascending) {
-        final Set studentUids = getAllStudentUids(getGradebookUid(gradebookId));
-        final List assignments = getAssignments(gradebookId);
-        final CourseGrade courseGrade = getCourseGrade(gradebookId);
-        final Map gradeRecordMap = new HashMap();
-        final List<AssignmentGradeRecord> gradeRecords = getAllAssignmentGradeRecords(gradebookId, studentUids);
-        applyDropScores(gradeRecords);
-        addToGradeRecordMap(gradeRecordMap, gradeRecords);
+    public RosterSortKeys getCategorySortKeys(final Category category, final Collection studentUids) {
+        final Long gradebookId = category.getGradebook().getId();
+        final String column = "c" + category.getId();
+        final List<GradebookAssignment> categoryAssignments = category.getAssignmentList() == null
+                ? new ArrayList<GradebookAssignment>() : category.getAssignmentList();
+
+        final long version = this.sortKeyCache.getVersion(gradebookId);
+        final Gradebook gradebook = getGradebook(gradebookId);
+        final HibernateCallback<Object[]> stampHc = session -> (Object[]) session.createQuery(
+                "select count(agr.id), max(agr.dateRecorded), sum(agr.pointsEarned) from AssignmentGradeRecord as agr " +
+                "where agr.gradableObject.gradebook.id=:gradebookId and agr.gradableObject.removed=false")
+                .setLong("gradebookId", gradebookId)
+                .uniqueResult();
+        final StringBuilder dataKey = new StringBuilder(getStructureKey(gradebook, Collections.singletonList(category), categoryAssignments));
+        appendStamp(dataKey, getHibernateTemplate().execute(stampHc));
+        final RosterSortKeys cached = this.sortKeyCache.get(gradebookId, column, dataKey.toString());
+        if (cached != null && cached.covers(studentUids)) {
+            return cached;
+        }
 
-        for (final Iterator iter = assignments.iterator(); iter.hasNext(); ) {
-        	final GradebookAssignment assignment = (GradebookAssignment)iter.next();
-        	assignment.calculateStatistics(gradeRecords);
+        final List gradeRecords = getAllAssignmentGradeRecordsConverted(gradebookId, studentUids);
+        final List<Long> itemIds = new ArrayList<>(categoryAssignments.size());
+        for (final GradebookAssignment assignment : categoryAssignments) {
+            itemIds.add(assignment.getId());
         }
+        final RosterGradeGrid grid = new RosterGradeGrid(studentUids, itemIds);
+        addToGradeRecordGrid(grid, gradeRecords);
 
-        final List<CourseGradeRecord> courseGradeRecords = getPointsEarnedCourseGradeRecords(courseGrade, studentUids, assignments, gradeRecordMap);
-        courseGrade.calculateStatistics(courseGradeRecords, studentUids.size());
+        final Map students = new HashMap();
+        for (final Object studentUid : studentUids) {
+            students.put(studentUid, null);
+        }
+        final Map categoryResults = new HashMap();
+        addToCategoryResultMap(categoryResults, Collections.singletonList(category), grid, students);
+
+        // students with a record of any item have a (possibly empty) category result, the others have no key
+        final RosterSortKeys.Builder builder = new RosterSortKeys.Builder(true);
+        for (final Iterator iter = gradeRecords.iterator(); iter.hasNext();) {
+            final String studentUid = ((AbstractGradeRecord) iter.next()).getStudentId();
+            if (!students.containsKey(studentUid)) {
+                continue;
+            }
+            final Map studentCategoryMap = (Map) categoryResults.get(studentUid);
+            final Map stats = studentCategoryMap == null ? null : (Map) studentCategoryMap.get(category.getId());
+            builder.add(studentUid, stats == null ? null : (Double) stats.get("studentMean"));
+        }
+        final RosterSortKeys keys = builder.build(studentUids);
+        this.sortKeyCache.put(gradebookId, version, column, dataKey.toString(), keys);
+        return keys;
+    }
+
+    private static void appendStamp(final StringBuilder key, final Object[] stamp) {
+        key.append("|r");
+        for (final Object value : stamp) {
+            key.append(',').append(value instanceof Date ? ((Date) value).getTime() : value);
+        }
+    }
+
+    @Override
+    public List getAssignmentsAndCourseGradeWithStats(final Long gradebookId, final String sortBy, final boolean ascending) {
+        final Set studentUids = getAllStudentUids(getGradebookUid(gradebookId));
+        final CourseGrade courseGrade = getCourseGrade(gradebookId);
+        final List assignments = getAssignmentsWithStats(gradebookId, studentUids, getCategories(gradebookId), courseGrade, false);
 
         sortAssignments(assignments, sortBy, ascending);
 
@@ -1191,6 +1790,7 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
 
     /**
      */
+    @Override
     public GradebookAssignment getAssignmentWithStats(final Long assignmentId, final boolean includeDroppedScores) {
 
     	final GradebookAssignment assignment = getAssignment(assignmentId);
@@ -1210,6 +1810,7 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
     public void updateAssignment(final GradebookAssignment assignment)
         throws ConflictingAssignmentNameException, StaleObjectModificationException {
        	super.updateAssignment(assignment);
+       	gradebookStructureChanged(assignment.getGradebook().getId());
         try {
         	/** synchronize from external application*/
         	String oldTitle = null;
@@ -1281,6 +1882,7 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
                     this.synchronizer.updateAssignment(oldTitle, assignment.getName(), assignment.getGradebook().getGrade_type());
                 }
             }
+            gradebookStructureChanged(gradebookId);
         } catch (final HibernateOptimisticLockingFailureException holfe) {
             if(log.isInfoEnabled()) {
 				log.info("An optimistic locking failure occurred while attempting to update an assignment");
@@ -1601,30 +2203,89 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
 	}
 
 
-    /**
-     *
-     * @param spreadsheetId
-     * @return
-     */
     @Override
-    public Spreadsheet getSpreadsheet(final Long spreadsheetId) {
-        return getHibernateTemplate().load(Spreadsheet.class, spreadsheetId);
+    public SpreadsheetSummary getSpreadsheetSummary(final Long spreadsheetId) {
+        final HibernateCallback<SpreadsheetSummary> hc = session -> {
+            final List<SpreadsheetSummary> summaries = getSpreadsheetSummaries(session.createQuery(
+                    "select spt.id, spt.name, spt.creator, spt.dateCreated, length(spt.content) from Spreadsheet as spt where spt.id = :id")
+                    .setLong("id", spreadsheetId).list(), session.createQuery(
+                    "select c.spreadsheetId, c.contentSize, c.storedSize from SpreadsheetContent as c where c.spreadsheetId = :id")
+                    .setLong("id", spreadsheetId).list());
+            return summaries.isEmpty() ? null : summaries.get(0);
+        };
+        return getHibernateTemplate().execute(hc);
+    }
+
+    @Override
+    public List<SpreadsheetSummary> getSpreadsheets(final Long gradebookId) {
+        final HibernateCallback<List<SpreadsheetSummary>> hc = session -> getSpreadsheetSummaries(session.createQuery(
+                "select spt.id, spt.name, spt.creator, spt.dateCreated, length(spt.content) from Spreadsheet as spt where spt.gradebook.id = :id")
+                .setLong("id", gradebookId).list(), session.createQuery(
+                "select c.spreadsheetId, c.contentSize, c.storedSize from SpreadsheetContent as c where c.gradebookId = :id")
+                .setLong("id", gradebookId).list());
+        return getHibernateTemplate().execute(hc);
     }
 
     /**
-     *
-     * @param gradebookId
-     * @return
+     * @param spreadsheetRows id, name, creator, date created and content length of spreadsheets
+     * @param contentRows spreadsheet id, content size and stored size of the compressed contents of those spreadsheets
      */
+    private List<SpreadsheetSummary> getSpreadsheetSummaries(final List<Object[]> spreadsheetRows, final List<Object[]> contentRows) {
+        final Map<Long, Object[]> contentById = new HashMap<>();
+        for (final Object[] row : contentRows) {
+            contentById.put((Long) row[0], row);
+        }
+        final List<SpreadsheetSummary> summaries = new ArrayList<>(spreadsheetRows.size());
+        for (final Object[] row : spreadsheetRows) {
+            final Object[] content = contentById.get(row[0]);
+            if (content != null) {
+                summaries.add(new SpreadsheetSummary((Long) row[0], (String) row[1], (String) row[2], (Date) row[3],
+                        ((Number) content[1]).longValue(), ((Number) content[2]).longValue(), true));
+            } else {
+                final long length = row[4] == null ? 0 : ((Number) row[4]).longValue();
+                summaries.add(new SpreadsheetSummary((Long) row[0], (String) row[1], (String) row[2], (Date) row[3], length, length, false));
+            }
+        }
+        return summaries;
+    }
+
     @Override
-    public List getSpreadsheets(final Long gradebookId) {
-        return (List)getHibernateTemplate().execute(new HibernateCallback() {
-            @Override
-            public Object doInHibernate(final Session session) throws HibernateException {
-                final List spreadsheets = getSpreadsheets(gradebookId, session);
-                return spreadsheets;
+    public String getSpreadsheetContent(final Long spreadsheetId) {
+        final HibernateCallback<String> hc = session -> {
+            final SpreadsheetContent content = (SpreadsheetContent) session.get(SpreadsheetContent.class, spreadsheetId);
+            if (content != null) {
+                return decompress(content.getData());
+            }
+            // saved before contents were kept apart
+            return (String) session.createQuery("select spt.content from Spreadsheet as spt where spt.id = :id")
+                    .setLong("id", spreadsheetId).uniqueResult();
+        };
+        return getHibernateTemplate().execute(hc);
+    }
+
+    private static byte[] compress(final String content) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length() / 4 + 64);
+        try (Writer out = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+            out.write(content);
+        } catch (final IOException e) {
+            // not thrown writing to memory
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String decompress(final byte[] data) {
+        final StringBuilder content = new StringBuilder(data.length * 4);
+        try (Reader in = new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(data)), StandardCharsets.UTF_8)) {
+            final char[] buffer = new char[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                content.append(buffer, 0, read);
             }
-        });
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Corrupt spreadsheet content", e);
+        }
+        return content.toString();
     }
 
     /**
@@ -1638,6 +2299,8 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
             @Override
             public Object doInHibernate(final Session session) throws HibernateException {
                 final Spreadsheet spt = (Spreadsheet)session.load(Spreadsheet.class, spreadsheetId);
+                session.createQuery("delete from SpreadsheetContent as c where c.spreadsheetId = :id")
+                        .setLong("id", spreadsheetId).executeUpdate();
                 session.delete(spt);
                 if(log.isInfoEnabled()) {
 					log.info("Spreadsheet " + spt.getName() + " has been removed from gradebook" );
@@ -1711,10 +2374,18 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
                 spt.setName(name);
                 spt.setCreator(creator);
                 spt.setDateCreated(new Date());
-                spt.setContent(content);
+                spt.setContent(STORED_APART);
 
                 // Save the new assignment
                 final Long id = (Long)session.save(spt);
+
+                final SpreadsheetContent sptContent = new SpreadsheetContent();
+                sptContent.setSpreadsheetId(id);
+                sptContent.setGradebookId(gradebookId);
+                sptContent.setData(compress(content));
+                sptContent.setContentSize(content.length());
+                sptContent.setStoredSize(sptContent.getData().length);
+                session.save(sptContent);
                 return id;
             }
         };
@@ -1723,14 +2394,6 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
 
     }
 
-    protected List getSpreadsheets(final Long gradebookId, final Session session) throws HibernateException {
-        final List spreadsheets = session.createQuery(
-                "from Spreadsheet as spt where spt.gradebook.id = :id").
-                setLong("id", gradebookId.longValue()).
-                list();
-        return spreadsheets;
-    }
-
     @Override
     public List<Comment> getStudentAssignmentComments(final String studentId, final Long gradebookId) {
         final HibernateCallback<List<Comment>> hcb =  session -> session
@@ -2018,17 +2681,19 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
         final List catAssignCGList = new ArrayList();
 
         final Set<String> allStudentUids = getAllStudentUids(getGradebookUid(gradebookId));
-        final List<AssignmentGradeRecord> gradeRecords = getAllAssignmentGradeRecords(gradebookId, allStudentUids);
 
         if (assignmentSort == null) {
             assignmentSort = GradebookAssignment.DEFAULT_SORT;
         }
 
-        final List<GradebookAssignment> allAssignments = getAssignmentsWithStats(gradebookId, assignmentSort, assignAscending, gradeRecords);
+        // scores dropped by category drop rules have always been included here
+        final List categories = getCategories(gradebookId);
+        final CourseGrade courseGrade = getCourseGrade(gradebookId);
+        final List<GradebookAssignment> allAssignments = getAssignmentsWithStats(gradebookId, allStudentUids, categories, courseGrade, true);
+        sortAssignments(allAssignments, assignmentSort, assignAscending);
 
         // this method also returns the course grade
-        final List categoriesPlusCG = getCategoriesWithStats(gradebookId, assignmentSort,
-                assignAscending, categorySort, categoryAscending, gradeRecords, allAssignments);
+        final List categoriesPlusCG = getCategoriesWithStats(categories, categorySort, categoryAscending, allAssignments, courseGrade);
 
         // we will add assignments, then categories, then course grade (which is included in cate list)
         if (allAssignments != null) {
@@ -2044,29 +2709,16 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
 
     /**
      *
-     * @param gradebookId
-     * @param assignmentSort
-     * @param assignAscending
+     * @param categories the categories of the gradebook
      * @param categorySort
      * @param categoryAscending
-     * @param gradeRecs
      * @param assignmentsWithStats
+     * @param courseGradeWithStats
      * @return a list of the Categories with stats populated plus the Course Grade.
-     * this method is useful if you have already retrieved all grade recs and
-     * all assignments with stats to avoid repeated calls
+     * the category stats are derived from the assignments, which already have their stats calculated
      */
-    private List getCategoriesWithStats(final Long gradebookId, final String assignmentSort, final boolean assignAscending,
-            final String categorySort, final boolean categoryAscending, final List<AssignmentGradeRecord> gradeRecs,
-            final List<GradebookAssignment> assignmentsWithStats){
-    	final Set studentUids = getAllStudentUids(getGradebookUid(gradebookId));
-    	return getCategoriesWithStats(gradebookId, assignmentSort, assignAscending, categorySort, categoryAscending, gradeRecs, assignmentsWithStats, studentUids);
-	}
-
-    private List getCategoriesWithStats(final Long gradebookId, final String assignmentSort, final boolean assignAscending,
-                                        final String categorySort, final boolean categoryAscending, final List<AssignmentGradeRecord> gradeRecs,
-                                        final List<GradebookAssignment> assignmentsWithStats, final Set studentUids) {
-        final List categories = getCategories(gradebookId);
-
+    private List getCategoriesWithStats(final List categories, final String categorySort, final boolean categoryAscending,
+                                        final List<GradebookAssignment> assignmentsWithStats, final CourseGrade courseGradeWithStats) {
         final Map cateMap = new HashMap();
         for (final Object element : assignmentsWithStats) {
             final GradebookAssignment assign = (GradebookAssignment) element;
@@ -2109,14 +2761,7 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
 			sortCategories(categories, Category.SORT_BY_NAME, categoryAscending);
 		}
 
-        final CourseGrade courseGrade = getCourseGrade(gradebookId);
-        final Map gradeRecordMap = new HashMap();
-        addToGradeRecordMap(gradeRecordMap, gradeRecs);
-        //      List<CourseGradeRecord> courseGradeRecords = getPointsEarnedCourseGradeRecords(courseGrade, studentUids, releasedAssignments, gradeRecordMap);
-        final List<CourseGradeRecord> courseGradeRecords = getPointsEarnedCourseGradeRecords(courseGrade, studentUids, assignmentsWithStats, gradeRecordMap);
-        courseGrade.calculateStatistics(courseGradeRecords, studentUids.size());
-
-        categories.add(courseGrade);
+        categories.add(courseGradeWithStats);
 
         return categories;
     }
@@ -2138,20 +2783,16 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
     public List getCategoriesWithStats(final Long gradebookId, String assignmentSort,
 			final boolean assignAscending, final String categorySort,
 			final boolean categoryAscending, final boolean includeDroppedScores, final Set studentUids){
-    	List allAssignments;
-
     	if (assignmentSort == null) {
     	    assignmentSort = GradebookAssignment.DEFAULT_SORT;
     	}
 
-        final List gradeRecords = getAllAssignmentGradeRecords(gradebookId, studentUids);
-        if(!includeDroppedScores) {
-            applyDropScores(gradeRecords);
-        }
-    	allAssignments = getAssignmentsWithStats(gradebookId, assignmentSort, assignAscending, gradeRecords);
+    	final List categories = getCategories(gradebookId);
+    	final CourseGrade courseGrade = getCourseGrade(gradebookId);
+    	final List<GradebookAssignment> allAssignments = getAssignmentsWithStats(gradebookId, studentUids, categories, courseGrade, includeDroppedScores);
+    	sortAssignments(allAssignments, assignmentSort, assignAscending);
 
-    	return getCategoriesWithStats(gradebookId, assignmentSort, assignAscending,
-    	        categorySort, categoryAscending, gradeRecords, allAssignments, studentUids);
+    	return getCategoriesWithStats(categories, categorySort, categoryAscending, allAssignments, courseGrade);
     }
 
     private void sortCategories(final List categories, final String sortBy, final boolean ascending)
@@ -2202,12 +2843,12 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
     public List getAssignmentsWithNoCategoryWithStats(final Long gradebookId, final String assignmentSort, final boolean assignAscending)
     {
     	final Set studentUids = getAllStudentUids(getGradebookUid(gradebookId));
-    	final List assignments = getAssignmentsWithNoCategory(gradebookId, assignmentSort, assignAscending);
-    	final List<AssignmentGradeRecord> gradeRecords = getAllAssignmentGradeRecords(gradebookId, studentUids);
-        applyDropScores(gradeRecords);
-    	for (final Iterator iter = assignments.iterator(); iter.hasNext(); ) {
-    		final GradebookAssignment assignment = (GradebookAssignment)iter.next();
-    		assignment.calculateStatistics(gradeRecords);
+    	final List assignments = new ArrayList();
+    	for (final GradebookAssignment assignment : getAssignmentsWithStats(gradebookId, studentUids, getCategories(gradebookId),
+    	        getCourseGrade(gradebookId), false)) {
+    		if (assignment.getCategory() == null) {
+    			assignments.add(assignment);
+    		}
     	}
     	// AZ - fixing bug, sorts based on stats need to be resorted
         if (assignmentSort != null) {
@@ -2218,6 +2859,106 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
     	return assignments;
     }
 
+    @Override
+    public AssignmentNavigationIndex getAssignmentNavigationIndex(final Long gradebookId, String assignmentSort, final boolean assignAscending,
+            final String categorySort, final boolean categoryAscending) {
+        if (assignmentSort == null) {
+            assignmentSort = GradebookAssignment.DEFAULT_SORT;
+        }
+        final Gradebook gradebook = getGradebook(gradebookId);
+        final boolean categoriesEnabled = gradebook.getCategory_type() != GradebookService.CATEGORY_TYPE_NO_CATEGORY;
+        // orders by statistics change with every score, so they are left to the statistics cache
+        final boolean byStatistics = GradebookAssignment.SORT_BY_MEAN.equals(assignmentSort)
+                || (categoriesEnabled && Category.SORT_BY_AVERAGE_SCORE.equals(categorySort));
+        final String order = assignmentSort + "," + assignAscending + (categoriesEnabled ? "," + categorySort + "," + categoryAscending : "");
+
+        // take the version before reading anything, so an index racing with a write is not stored
+        final long version = this.navigationCache.getVersion(gradebookId);
+        String dataKey = null;
+        if (!byStatistics) {
+            dataKey = getNavigationKey(gradebook);
+            final AssignmentNavigationIndex cached = this.navigationCache.get(gradebookId, order, dataKey);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        List categories = categoriesEnabled ? getCategories(gradebookId) : new ArrayList();
+        final List<GradebookAssignment> assignments;
+        if (byStatistics) {
+            // the category pages have always sorted by the statistics including dropped scores
+            final CourseGrade courseGrade = getCourseGrade(gradebookId);
+            assignments = getAssignmentsWithStats(gradebookId, getAllStudentUids(getGradebookUid(gradebookId)),
+                    categoriesEnabled ? categories : getCategories(gradebookId), courseGrade, categoriesEnabled);
+            sortAssignments(assignments, assignmentSort, assignAscending);
+            if (categoriesEnabled) {
+                categories = getCategoriesWithStats(categories, categorySort, categoryAscending, assignments, courseGrade);
+            }
+        } else {
+            assignments = getAssignments(gradebookId, assignmentSort, assignAscending);
+            sortCategories(categories, categorySort != null ? categorySort : Category.SORT_BY_NAME, categoryAscending);
+        }
+
+        final List<AssignmentNavigationIndex.Item> items = new ArrayList<>(assignments.size());
+        if (categoriesEnabled) {
+            final Map<Long, List<AssignmentNavigationIndex.Item>> categoryItems = new LinkedHashMap<>();
+            for (final Object category : categories) {
+                if (category instanceof Category) {
+                    categoryItems.put(((Category) category).getId(), new ArrayList<AssignmentNavigationIndex.Item>());
+                }
+            }
+            final List<AssignmentNavigationIndex.Item> uncategorized = new ArrayList<>();
+            for (final GradebookAssignment assignment : assignments) {
+                if (assignment.getCategory() == null) {
+                    uncategorized.add(new AssignmentNavigationIndex.Item(assignment.getId(), assignment.getName(), null));
+                } else if (categoryItems.containsKey(assignment.getCategory().getId())) {
+                    categoryItems.get(assignment.getCategory().getId()).add(
+                            new AssignmentNavigationIndex.Item(assignment.getId(), assignment.getName(), assignment.getCategory().getId()));
+                }
+            }
+            for (final List<AssignmentNavigationIndex.Item> categoryAssignments : categoryItems.values()) {
+                items.addAll(categoryAssignments);
+            }
+            items.addAll(uncategorized);
+        } else {
+            for (final GradebookAssignment assignment : assignments) {
+                items.add(new AssignmentNavigationIndex.Item(assignment.getId(), assignment.getName(), null));
+            }
+        }
+
+        final AssignmentNavigationIndex index = new AssignmentNavigationIndex(items);
+        if (!byStatistics) {
+            this.navigationCache.put(gradebookId, version, order, dataKey, index);
+        }
+        return index;
+    }
+
+    /**
+     * @return a key of what assignment navigation indexes are built from: the category type and the
+     * assignments and categories of the gradebook, each of whose versions is bumped on any update
+     */
+    private String getNavigationKey(final Gradebook gradebook) {
+        final StringBuilder key = new StringBuilder().append(gradebook.getCategory_type());
+        final HibernateCallback<List<Object[]>> hc = session -> {
+            final List<Object[]> stamps = new ArrayList<>(2);
+            stamps.add((Object[]) session.createQuery(
+                    "select count(asn.id), max(asn.id), sum(asn.version) from GradebookAssignment as asn " +
+                    "where asn.gradebook.id=:gradebookId and asn.removed=false")
+                    .setLong("gradebookId", gradebook.getId())
+                    .uniqueResult());
+            stamps.add((Object[]) session.createQuery(
+                    "select count(cat.id), max(cat.id), sum(cat.version) from Category as cat " +
+                    "where cat.gradebook.id=:gradebookId and cat.removed=false")
+                    .setLong("gradebookId", gradebook.getId())
+                    .uniqueResult());
+            return stamps;
+        };
+        for (final Object[] stamp : getHibernateTemplate().execute(hc)) {
+            appendStamp(key, stamp);
+        }
+        return key.toString();
+    }
+
     @Override
     public void convertGradingEventsConverted(final GradebookAssignment assign, final GradingEvents events, final List studentUids, final int grade_type)
     {
@@ -2294,79 +3035,184 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
     public boolean checkStuendsNotSubmitted(final Gradebook gradebook)
     {
     	final Set studentUids = getAllStudentUids(getGradebookUid(gradebook.getId()));
-    	if(gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_NO_CATEGORY || gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_ONLY_CATEGORY)
+    	final boolean unweighted = gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_NO_CATEGORY
+    	        || gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_ONLY_CATEGORY;
+    	final List assigns = getAssignments(gradebook.getId(), GradebookAssignment.DEFAULT_SORT, true);
+    	final List records = getAllAssignmentGradeRecords(gradebook.getId(), studentUids);
+    	final AssignmentStatisticsAggregator aggregator = new AssignmentStatisticsAggregator(records);
+
+    	int filteredAssigns = 0;
+    	int filteredRecords = 0;
+    	for (final Iterator iter = assigns.iterator(); iter.hasNext(); )
     	{
-    		final List records = getAllAssignmentGradeRecords(gradebook.getId(), studentUids);
-    		final List assigns = getAssignments(gradebook.getId(), GradebookAssignment.DEFAULT_SORT, true);
-    		final List filteredAssigns = new ArrayList();
-    		for(final Iterator iter = assigns.iterator(); iter.hasNext();)
+    		final GradebookAssignment assign = (GradebookAssignment) iter.next();
+    		if(assign == null || !assign.isCounted() || assign.getUngraded())
     		{
-    			final GradebookAssignment assignment = (GradebookAssignment)iter.next();
-    			if(assignment.isCounted() && !assignment.getUngraded()) {
-					filteredAssigns.add(assignment);
-				}
+    			continue;
     		}
-    		final List filteredRecords = new ArrayList();
-    		for(final Iterator iter = records.iterator(); iter.hasNext();)
+    		// weighted gradebooks only count assignments in a category
+    		if(!unweighted && (assign.getCategory() == null || assign.getCategory().isRemoved()))
     		{
-    			final AssignmentGradeRecord agr = (AssignmentGradeRecord)iter.next();
-    			if(!agr.isCourseGradeRecord() && agr.getAssignment().isCounted() && !agr.getAssignment().getUngraded())
-    			{
-    				if(agr.getPointsEarned() == null) {
-						return true;
-					}
-    				filteredRecords.add(agr);
-    			}
+    			continue;
     		}
+    		if(aggregator.getUnscoredCount(assign.getId()) > 0) {
+    			return true;
+    		}
+    		filteredAssigns++;
+    		filteredRecords += aggregator.getRecordCount(assign.getId());
+    	}
 
-    		if(filteredRecords.size() < (filteredAssigns.size() * studentUids.size())) {
-				return true;
-			}
+    	if(filteredRecords < filteredAssigns * studentUids.size()) {
+			return true;
+		}
+
+    	return false;
+    }
+
+    @Override
+    public void fillInZeroForNullGradeRecords(final Gradebook gradebook)
+    {
+    	fillInZeroForNullGradeRecords(gradebook, null);
+    }
 
-    		return false;
+    /**
+     * Gives every enrolled student a zero for each counted assignment they have no score for.
+     *
+     * Students are handled in chunks. Per chunk, the existing records are looked up as
+     * plain (assignment, student) pairs rather than entities, only the unscored records are
+     * loaded, and the missing zero records and their grading events are inserted in batches
+     * and evicted again, so neither the queries nor the session grow with the gradebook.
+     *
+     * Progress, if given, is reported once per chunk.
+     */
+    @Override
+    public void fillInZeroForNullGradeRecords(final Gradebook gradebook, final GradebookJobManager.Progress progress)
+    {
+    	final List<String> studentUids = new ArrayList<>(getAllStudentUids(gradebook.getUid()));
+    	final List<GradebookAssignment> countedAssignments = new ArrayList<>();
+    	for (final Iterator iter = getAssignments(gradebook.getId()).iterator(); iter.hasNext(); ) {
+    		final GradebookAssignment assignment = (GradebookAssignment) iter.next();
+    		if (assignment.isCounted() && !assignment.getUngraded()) {
+    			countedAssignments.add(assignment);
+    		}
+    	}
+    	if (studentUids.isEmpty() || countedAssignments.isEmpty()) {
+    		return;
     	}
-    	else
-    	{
-      	final List assigns = getAssignments(gradebook.getId(), GradebookAssignment.DEFAULT_SORT, true);
-      	final List records = getAllAssignmentGradeRecords(gradebook.getId(), studentUids);
-      	final Set filteredAssigns = new HashSet();
-      	for (final Iterator iter = assigns.iterator(); iter.hasNext(); )
-      	{
-      		final GradebookAssignment assign = (GradebookAssignment) iter.next();
-      		if(assign != null && assign.isCounted() && !assign.getUngraded())
-      		{
-      			if(assign.getCategory() != null && !assign.getCategory().isRemoved())
-      			{
-      				filteredAssigns.add(assign.getId());
-      			}
-      		}
-      	}
 
-    		final List filteredRecords = new ArrayList();
-    		for(final Iterator iter = records.iterator(); iter.hasNext();)
-    		{
-    			final AssignmentGradeRecord agr = (AssignmentGradeRecord)iter.next();
-    			if(filteredAssigns.contains(agr.getAssignment().getId()) && !agr.isCourseGradeRecord())
-    			{
-    				if(agr.getPointsEarned() == null) {
-						return true;
-					}
-    				filteredRecords.add(agr);
+    	final String graderId = this.authn.getUserUid();
+    	final Date now = new Date();
+    	final int chunks = (studentUids.size() + FINALIZE_STUDENT_CHUNK_SIZE - 1) / FINALIZE_STUDENT_CHUNK_SIZE;
+    	final long start = System.currentTimeMillis();
+
+    	final HibernateCallback<int[]> hc = session -> {
+    		final int[] totals = new int[2];
+    		for (int chunk = 0; chunk < chunks; chunk++) {
+    			final List<String> chunkUids = studentUids.subList(chunk * FINALIZE_STUDENT_CHUNK_SIZE,
+    			        Math.min(studentUids.size(), (chunk + 1) * FINALIZE_STUDENT_CHUNK_SIZE));
+    			final int[] counts = fillInZeroForNullGradeRecords(session, gradebook, countedAssignments, chunkUids, graderId, now);
+    			totals[0] += counts[0];
+    			totals[1] += counts[1];
+    			if (counts[0] + counts[1] > 0) {
+    				// the chunk's zeros change its students' course grades and snapshots like any other score write
+    				gradeRecordsUpdated(session, gradebook.getId(), chunkUids);
+    			}
+    			if (log.isDebugEnabled()) {
+    				log.debug("Filled in zeros for gradebook " + gradebook.getUid() + ": chunk " + (chunk + 1) + " of " + chunks
+    				        + ", " + counts[0] + " scores set and " + counts[1] + " records added");
+    			}
+    			if (progress != null) {
+    				progress.update(Math.min(studentUids.size(), (chunk + 1) * FINALIZE_STUDENT_CHUNK_SIZE), studentUids.size());
     			}
     		}
+    		return totals;
+    	};
+    	final int[] totals = getHibernateTemplate().execute(hc);
 
-    		if(filteredRecords.size() < filteredAssigns.size() * studentUids.size()) {
-				return true;
-			}
+    	if (log.isInfoEnabled()) {
+    		log.info("Filled in zeros for gradebook " + gradebook.getUid() + " (" + studentUids.size() + " students, "
+    		        + countedAssignments.size() + " assignments): " + totals[0] + " scores set and " + totals[1]
+    		        + " records added in " + (System.currentTimeMillis() - start) + " ms");
+    	}
+    }
 
-    		return false;
+    /**
+     * @return the number of unscored records set to zero and the number of zero records added for the students
+     */
+    private int[] fillInZeroForNullGradeRecords(final Session session, final Gradebook gradebook,
+            final List<GradebookAssignment> countedAssignments, final List<String> studentUids, final String graderId, final Date now) {
+    	final Map<Long, GradebookAssignment> assignmentsById = new HashMap<>();
+    	boolean anyExternal = false;
+    	for (final GradebookAssignment assignment : countedAssignments) {
+    		assignmentsById.put(assignment.getId(), assignment);
+    		anyExternal |= assignment.isExternallyMaintained();
+    	}
+    	// SAK-11485 - don't score students on grouped activities they can't see
+    	final Map<String, Set<GradebookAssignment>> visible = anyExternal
+    	        ? getVisibleExternalAssignments(gradebook, studentUids, countedAssignments) : null;
+
+    	// assignment id -> students who already have a record for it
+    	final Map<Long, Set<String>> recorded = new HashMap<>();
+    	final List<Object[]> scored = session.createQuery(
+    	        "select agr.gradableObject.id, agr.studentId from AssignmentGradeRecord as agr " +
+    	        "where agr.gradableObject.gradebook.id = :gradebookId and agr.gradableObject.removed = false " +
+    	        "and agr.pointsEarned is not null and agr.studentId in (:studentUids)")
+    	        .setLong("gradebookId", gradebook.getId())
+    	        .setParameterList("studentUids", studentUids)
+    	        .list();
+    	for (final Object[] pair : scored) {
+    		recorded.computeIfAbsent((Long) pair[0], id -> new HashSet<>()).add((String) pair[1]);
     	}
+    	final List<AssignmentGradeRecord> unscored = session.createQuery(
+    	        "from AssignmentGradeRecord as agr " +
+    	        "where agr.gradableObject.gradebook.id = :gradebookId and agr.gradableObject.removed = false " +
+    	        "and agr.pointsEarned is null and agr.studentId in (:studentUids)")
+    	        .setLong("gradebookId", gradebook.getId())
+    	        .setParameterList("studentUids", studentUids)
+    	        .list();
+
+    	final String zero = Double.valueOf(0).toString();
+    	final GradeRecordBatchWriter writer = new GradeRecordBatchWriter(session, getGradeRecordBatchSize(), true);
+    	final int[] counts = new int[2];
+    	for (final AssignmentGradeRecord gradeRecord : unscored) {
+    		final Long assignmentId = gradeRecord.getGradableObject().getId();
+    		recorded.computeIfAbsent(assignmentId, id -> new HashSet<>()).add(gradeRecord.getStudentId());
+    		final GradebookAssignment assignment = assignmentsById.get(assignmentId);
+    		if (assignment == null || !isScoredFor(assignment, gradeRecord.getStudentId(), visible)) {
+    			continue;
+    		}
+    		gradeRecord.setPointsEarned(Double.valueOf(0));
+    		gradeRecord.setGraderId(graderId);
+    		gradeRecord.setDateRecorded(now);
+    		writer.saveOrUpdate(gradeRecord);
+    		writer.logEvent(new GradingEvent(assignment, graderId, gradeRecord.getStudentId(), zero));
+    		counts[0]++;
+    	}
+
+    	for (final GradebookAssignment assignment : countedAssignments) {
+    		final Set<String> withRecord = recorded.get(assignment.getId());
+    		for (final String studentUid : studentUids) {
+    			if ((withRecord != null && withRecord.contains(studentUid)) || !isScoredFor(assignment, studentUid, visible)) {
+    				continue;
+    			}
+    			final AssignmentGradeRecord gradeRecord = new AssignmentGradeRecord(assignment, studentUid, Double.valueOf(0));
+    			gradeRecord.setGraderId(graderId);
+    			gradeRecord.setDateRecorded(now);
+    			writer.saveOrUpdate(gradeRecord);
+    			writer.logEvent(new GradingEvent(assignment, graderId, studentUid, zero));
+    			counts[1]++;
+    		}
+    	}
+    	writer.finish();
+    	return counts;
     }
 
-    @Override
-    public void fillInZeroForNullGradeRecords(final Gradebook gradebook)
-    {
-    	finalizeNullGradeRecords(gradebook);
+    private static boolean isScoredFor(final GradebookAssignment assignment, final String studentUid, final Map<String, Set<GradebookAssignment>> visible) {
+    	if (!assignment.isExternallyMaintained()) {
+    		return true;
+    	}
+    	final Set<GradebookAssignment> visibleToStudent = visible != null ? visible.get(studentUid) : null;
+    	return visibleToStudent != null && visibleToStudent.contains(assignment);
     }
 
     @Override
@@ -2414,6 +3260,7 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
     protected Long saveNewAssignment(final Long gradebookId, final Long categoryId, final GradebookAssignment asn) throws ConflictingAssignmentNameException
     {
         final Long result = super.saveNewAssignment(gradebookId, categoryId, asn);
+        gradebookStructureChanged(gradebookId);
 
         syncAssignment(asn.getName());
 
@@ -2435,6 +3282,37 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
     	this.synchronizer = synchronizer;
     }
 
+    /**
+     * @return the pool that per-student calculations of large rosters are split over, sized by
+     * the gradebook.calculation.threads property
+     */
+    ForkJoinPool getCalculationPool()
+    {
+    	ForkJoinPool pool = this.calculationPool;
+    	if (pool == null) {
+    		synchronized (this) {
+    			pool = this.calculationPool;
+    			if (pool == null) {
+    				final int threads = Math.max(1, ServerConfigurationService.getInt("gradebook.calculation.threads", DEFAULT_CALCULATION_THREADS));
+    				pool = new ForkJoinPool(threads);
+    				this.calculationPool = pool;
+    				if (log.isInfoEnabled()) {
+    					log.info("Large gradebook calculations are split over " + threads + " threads");
+    				}
+    			}
+    		}
+    	}
+    	return pool;
+    }
+
+    /**
+     * @return how many grade records or grading events are written per flush
+     */
+    private int getGradeRecordBatchSize()
+    {
+    	return ServerConfigurationService.getInt("gradebook.gradeRecords.batchSize", GradeRecordBatchWriter.DEFAULT_BATCH_SIZE);
+    }
+
     @Override
     public void createAssignments(final Long gradebookId, final List assignList) throws MultipleAssignmentSavingException
     {
@@ -2483,7 +3361,7 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
     	return true;
     }
 
-	private void logAssignmentGradingEvent(final AssignmentGradeRecord gradeRecord, final String graderId, final GradebookAssignment assignment, final Session session) {
+	private void logAssignmentGradingEvent(final AssignmentGradeRecord gradeRecord, final String graderId, final GradebookAssignment assignment, final GradeRecordBatchWriter writer) {
 		if (gradeRecord == null || assignment == null) {
 			throw new IllegalArgumentException("null gradeRecord or assignment passed to logAssignmentGradingEvent");
 		}
@@ -2504,7 +3382,7 @@ public abstract class GradebookManagerHibernateImpl extends GradebookServiceHibe
 			}
 		}
 
-		session.save(new GradingEvent(assignment, graderId, gradeRecord.getStudentId(), gradeEntry));
+		writer.logEvent(new GradingEvent(assignment, graderId, gradeRecord.getStudentId(), gradeEntry));
 	}
 
 }
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.business.impl;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sakaiproject.tool.gradebook.CourseGrade;
+import org.sakaiproject.tool.gradebook.GradebookAssignment;
+
+/**
+ * Means and averages of a gradebook's assignments and course grade, as held in
+ * the manager's statistics cache. Immutable once built.
+ */
+final class GradebookStatistics {
+	private final int studentCount;
+	private final Map<Long, ItemStatistics> assignments;
+	private final ItemStatistics courseGrade;
+
+	private GradebookStatistics(final int studentCount, final Map<Long, ItemStatistics> assignments, final ItemStatistics courseGrade) {
+		this.studentCount = studentCount;
+		this.assignments = assignments;
+		this.courseGrade = courseGrade;
+	}
+
+	/**
+	 * @return the statistics already calculated on the given assignments and course grade
+	 */
+	static GradebookStatistics of(final int studentCount, final List<GradebookAssignment> assignments, final CourseGrade courseGrade) {
+		final Map<Long, ItemStatistics> assignmentStats = new HashMap<>(assignments.size() * 2);
+		for (final GradebookAssignment assignment : assignments) {
+			assignmentStats.put(assignment.getId(), new ItemStatistics(assignment.getMean(), assignment.getAverageTotal()));
+		}
+		return new GradebookStatistics(studentCount, assignmentStats,
+				new ItemStatistics(courseGrade.getMean(), courseGrade.getAverageScore()));
+	}
+
+	/**
+	 * Sets the held statistics on the given assignments and course grade.
+	 *
+	 * @return false if statistics are missing for one of the assignments
+	 */
+	boolean applyTo(final List<GradebookAssignment> assignments, final CourseGrade courseGrade) {
+		for (final GradebookAssignment assignment : assignments) {
+			if (!this.assignments.containsKey(assignment.getId())) {
+				return false;
+			}
+		}
+		for (final GradebookAssignment assignment : assignments) {
+			final ItemStatistics stats = this.assignments.get(assignment.getId());
+			assignment.setMean(stats.mean);
+			assignment.setAverageTotal(stats.average);
+		}
+		courseGrade.setMean(this.courseGrade.mean);
+		courseGrade.setAverageScore(this.courseGrade.average);
+		return true;
+	}
+
+	int getStudentCount() {
+		return this.studentCount;
+	}
+
+	private static final class ItemStatistics {
+		private final Double mean;
+		private final Double average;
+
+		private ItemStatistics(final Double mean, final Double average) {
+			this.mean = mean;
+			this.average = average;
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.business.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.sakaiproject.tool.gradebook.business.UserDisplayNameCache;
+import org.sakaiproject.user.api.User;
+import org.sakaiproject.user.api.UserDirectoryService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Holds display names in a map bounded to {@link #setMaxEntries(int)} users, least
+ * recently used first out, each for {@link #setTimeToLive(int)} seconds. Names
+ * missing or expired are looked up with a single
+ * {@link UserDirectoryService#getUsers(Collection)} call per request.
+ *
+ * Names are held per server, so a changed display name shows on each server once
+ * the name it holds has expired.
+ */
+@Slf4j
+public class UserDisplayNameCacheImpl implements UserDisplayNameCache {
+
+	/** directory calls between logging the cache's statistics */
+	private static final int STATISTICS_LOG_INTERVAL = 1000;
+
+	private UserDirectoryService userDirectoryService;
+	private int maxEntries = 10000;
+	private long timeToLiveMs = 600000;
+
+	private Map<String, Entry> entries;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder lookups = new LongAdder();
+
+	public void init() {
+		final int max = this.maxEntries;
+		this.entries = Collections.synchronizedMap(new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+				return size() > max;
+			}
+		});
+		if (log.isInfoEnabled()) {
+			log.info("User display names are cached for " + (this.timeToLiveMs / 1000) + " seconds, at most " + this.maxEntries + " users");
+		}
+	}
+
+	@Override
+	public String getDisplayName(final String userUid) {
+		return getDisplayNames(Collections.singleton(userUid)).get(userUid);
+	}
+
+	@Override
+	public Map<String, String> getDisplayNames(final Collection<String> userUids) {
+		final Map<String, String> names = new HashMap<>();
+		final Set<String> missing = new LinkedHashSet<>();
+		final long now = System.currentTimeMillis();
+		synchronized (this.entries) {
+			for (final String userUid : userUids) {
+				if (userUid == null || names.containsKey(userUid) || missing.contains(userUid)) {
+					continue;
+				}
+				final Entry entry = this.entries.get(userUid);
+				if (entry == null || entry.expires <= now) {
+					missing.add(userUid);
+				} else {
+					this.hits.increment();
+					if (entry.displayName != null) {
+						names.put(userUid, entry.displayName);
+					}
+				}
+			}
+		}
+		if (missing.isEmpty()) {
+			return names;
+		}
+
+		this.misses.add(missing.size());
+		this.lookups.increment();
+		final List<User> users = this.userDirectoryService.getUsers(missing);
+		final long expires = System.currentTimeMillis() + this.timeToLiveMs;
+		synchronized (this.entries) {
+			for (final User user : users) {
+				if (missing.remove(user.getId())) {
+					final String displayName = user.getDisplayName();
+					this.entries.put(user.getId(), new Entry(displayName, expires));
+					if (displayName != null) {
+						names.put(user.getId(), displayName);
+					}
+				}
+			}
+			// the rest are unknown to the directory
+			for (final String userUid : missing) {
+				this.entries.put(userUid, new Entry(null, expires));
+			}
+		}
+		if (log.isDebugEnabled() && this.lookups.sum() % STATISTICS_LOG_INTERVAL == 0) {
+			log.debug("User display names: " + getHitCount() + " hits, " + getMissCount() + " misses, " + getLookupCount()
+					+ " directory calls, " + getSize() + " users held");
+		}
+		return names;
+	}
+
+	@Override
+	public long getHitCount() {
+		return this.hits.sum();
+	}
+
+	@Override
+	public long getMissCount() {
+		return this.misses.sum();
+	}
+
+	@Override
+	public long getLookupCount() {
+		return this.lookups.sum();
+	}
+
+	@Override
+	public int getSize() {
+		return this.entries.size();
+	}
+
+	public void setUserDirectoryService(final UserDirectoryService userDirectoryService) {
+		this.userDirectoryService = userDirectoryService;
+	}
+
+	public void setMaxEntries(final int maxEntries) {
+		this.maxEntries = Math.max(1, maxEntries);
+	}
+
+	/**
+	 * @param timeToLive seconds a name is held for
+	 */
+	public void setTimeToLive(final int timeToLive) {
+		this.timeToLiveMs = Math.max(0, timeToLive) * 1000L;
+	}
+
+	private static final class Entry {
+		/** null if the directory doesn't know the user */
+		private final String displayName;
+		private final long expires;
+
+		private Entry(final String displayName, final long expires) {
+			this.displayName = displayName;
+			this.expires = expires;
+		}
+	}
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.business.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Values worked out from the data of recently viewed gradebooks, e.g. class
+ * statistics or roster sort keys, held so that pages don't work them out again
+ * on each request.
+ *
+ * Each gradebook has a version which the manager's write methods bump through
+ * {@link #invalidate(Long)}, dropping the gradebook's values. Values are only
+ * stored under the version that was current when they started being worked out,
+ * so a value racing with a write is never kept.
+ *
+ * Each value also carries the key of the data it was worked out from. Readers
+ * look values up with the current key, which catches changes made outside the
+ * manager, e.g. by external assessment tools or on other servers. Readers may
+ * skip the key for a while after a value was last checked against it, see
+ * {@link #getVerified(Long, Object, long, long)}.
+ *
+ * The number of gradebooks held, and of values held per gradebook, are bounded,
+ * least recently used first out.
+ *
+ * @param <K> what tells the values of a gradebook apart
+ * @param <V> the values, which must not be changed once stored
+ */
+class VersionedGradebookCache<K, V> {
+
+	private final Map<Long, Slot<K, V>> gradebooks;
+	private final int maxValues;
+
+	/**
+	 * @param maxGradebooks the number of gradebooks held
+	 * @param maxValues the number of values held per gradebook
+	 */
+	VersionedGradebookCache(final int maxGradebooks, final int maxValues) {
+		this.maxValues = maxValues;
+		this.gradebooks = Collections.synchronizedMap(new LinkedHashMap<Long, Slot<K, V>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Long, Slot<K, V>> eldest) {
+				return size() > maxGradebooks;
+			}
+		});
+	}
+
+	/**
+	 * @return the current version of the gradebook's values, to be passed to
+	 * {@link #put(Long, long, Object, String, Object)} once a value is worked out
+	 */
+	long getVersion(final Long gradebookId) {
+		synchronized (this.gradebooks) {
+			Slot<K, V> slot = this.gradebooks.get(gradebookId);
+			if (slot == null) {
+				slot = new Slot<>(this.maxValues);
+				this.gradebooks.put(gradebookId, slot);
+			}
+			return slot.version;
+		}
+	}
+
+	/**
+	 * @return the value if it was worked out from data with the given key, otherwise null
+	 */
+	V get(final Long gradebookId, final K key, final String dataKey) {
+		return get(gradebookId, key, dataKey, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @param maxAge the age in milliseconds past which the value is no longer handed out
+	 * @return the value if it was worked out from data with the given key, otherwise null
+	 */
+	V get(final Long gradebookId, final K key, final String dataKey, final long maxAge) {
+		synchronized (this.gradebooks) {
+			final Slot<K, V> slot = this.gradebooks.get(gradebookId);
+			final Entry<V> entry = slot == null ? null : slot.values.get(key);
+			final long now = System.currentTimeMillis();
+			if (entry == null || !entry.dataKey.equals(dataKey) || now - entry.stored > maxAge) {
+				return null;
+			}
+			entry.verified = now;
+			return entry.value;
+		}
+	}
+
+	/**
+	 * Looks a value up without its data key, for readers which can't afford to work the key out on each request.
+	 *
+	 * @param verifyInterval the age in milliseconds of the value's last check against its data key, past which
+	 * it is no longer handed out without one
+	 * @param maxAge the age in milliseconds past which the value is no longer handed out
+	 * @return the value if it was stored or last checked within the interval, otherwise null
+	 */
+	V getVerified(final Long gradebookId, final K key, final long verifyInterval, final long maxAge) {
+		synchronized (this.gradebooks) {
+			final Slot<K, V> slot = this.gradebooks.get(gradebookId);
+			final Entry<V> entry = slot == null ? null : slot.values.get(key);
+			final long now = System.currentTimeMillis();
+			if (entry == null || now - entry.verified > verifyInterval || now - entry.stored > maxAge) {
+				return null;
+			}
+			return entry.value;
+		}
+	}
+
+	/**
+	 * Stores the value unless the gradebook was written to since the given version was taken.
+	 */
+	void put(final Long gradebookId, final long version, final K key, final String dataKey, final V value) {
+		synchronized (this.gradebooks) {
+			final Slot<K, V> slot = this.gradebooks.get(gradebookId);
+			if (slot == null || slot.version != version) {
+				return;
+			}
+			slot.values.put(key, new Entry<>(dataKey, value));
+		}
+	}
+
+	/**
+	 * Bumps the version of the gradebook and drops all its values.
+	 */
+	void invalidate(final Long gradebookId) {
+		synchronized (this.gradebooks) {
+			final Slot<K, V> slot = this.gradebooks.get(gradebookId);
+			if (slot != null) {
+				slot.version++;
+				slot.values.clear();
+			}
+		}
+	}
+
+	/**
+	 * Bumps the version of the gradebook and drops the values of the given keys.
+	 */
+	void invalidate(final Long gradebookId, final Collection<K> keys) {
+		synchronized (this.gradebooks) {
+			final Slot<K, V> slot = this.gradebooks.get(gradebookId);
+			if (slot != null) {
+				slot.version++;
+				slot.values.keySet().removeAll(keys);
+			}
+		}
+	}
+
+	private static final class Slot<K, V> {
+		private long version;
+		private final Map<K, Entry<V>> values;
+
+		private Slot(final int maxValues) {
+			this.values = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(final Map.Entry<K, Entry<V>> eldest) {
+					return size() > maxValues;
+				}
+			};
+		}
+	}
+
+	private static final class Entry<V> {
+		private final String dataKey;
+		private final long stored = System.currentTimeMillis();
+		private long verified = this.stored;
+		private final V value;
+
+		private Entry(final String dataKey, final V value) {
+			this.dataKey = dataKey;
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,17 @@
+-- Records of long running gradebook operations run off the request thread
+create table GB_JOB_T (
+	ID bigint generated by default as identity (start with 1),
+	VERSION integer not null,
+	GRADEBOOK_UID varchar(255) not null,
+	JOB_TYPE varchar(64) not null,
+	STATE varchar(32) not null,
+	PROGRESS integer not null,
+	TOTAL integer not null,
+	MESSAGE varchar(4000),
+	CREATOR varchar(255) not null,
+	SERVER_ID varchar(255),
+	DATE_CREATED timestamp not null,
+	DATE_STARTED timestamp,
+	DATE_FINISHED timestamp,
+	primary key (ID));
+create index GB_JOB_GRADEBOOK_IDX on GB_JOB_T (GRADEBOOK_UID, JOB_TYPE);
@@ -0,0 +1,13 @@
+-- Older grading events rolled up per student and gradable object, kept apart from GB_GRADING_EVENT_T
+create table GB_GRADING_EVENT_ARCHIVE_T (
+	ID bigint not null auto_increment,
+	VERSION integer not null,
+	GRADABLE_OBJECT_ID bigint not null,
+	STUDENT_ID varchar(255) not null,
+	CONTENT longblob not null,
+	EVENT_COUNT integer not null,
+	LAST_DATE_GRADED datetime not null,
+	primary key (ID),
+	unique (GRADABLE_OBJECT_ID, STUDENT_ID)) ENGINE=InnoDB;
+-- Serves the latest grading events of each student on an item
+create index GB_GRADING_EVENT_T_OBJ_STU_DT on GB_GRADING_EVENT_T (GRADABLE_OBJECT_ID, STUDENT_ID, DATE_GRADED);
@@ -0,0 +1,9 @@
+-- Compressed content of loading dock spreadsheets, kept apart from GB_SPREADSHEET_T
+create table GB_SPREADSHEET_CONTENT_T (
+	SPREADSHEET_ID bigint not null,
+	GRADEBOOK_ID bigint not null,
+	CONTENT longblob not null,
+	CONTENT_SIZE integer not null,
+	STORED_SIZE integer not null,
+	primary key (SPREADSHEET_ID)) ENGINE=InnoDB;
+create index GB_SPREADSHEET_CONTENT_GB_IDX on GB_SPREADSHEET_CONTENT_T (GRADEBOOK_ID);
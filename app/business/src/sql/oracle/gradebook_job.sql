@@ -0,0 +1,18 @@
+-- Records of long running gradebook operations run off the request thread
+create table GB_JOB_T (
+	ID number(19,0) not null,
+	VERSION number(10,0) not null,
+	GRADEBOOK_UID varchar2(255 char) not null,
+	JOB_TYPE varchar2(64 char) not null,
+	STATE varchar2(32 char) not null,
+	PROGRESS number(10,0) not null,
+	TOTAL number(10,0) not null,
+	MESSAGE varchar2(4000 char),
+	CREATOR varchar2(255 char) not null,
+	SERVER_ID varchar2(255 char),
+	DATE_CREATED timestamp not null,
+	DATE_STARTED timestamp,
+	DATE_FINISHED timestamp,
+	primary key (ID));
+create index GB_JOB_GRADEBOOK_IDX on GB_JOB_T (GRADEBOOK_UID, JOB_TYPE);
+create sequence GB_JOB_S;
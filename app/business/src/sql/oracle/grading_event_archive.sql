@@ -0,0 +1,14 @@
+-- Older grading events rolled up per student and gradable object, kept apart from GB_GRADING_EVENT_T
+create table GB_GRADING_EVENT_ARCHIVE_T (
+	ID number(19,0) not null,
+	VERSION number(10,0) not null,
+	GRADABLE_OBJECT_ID number(19,0) not null,
+	STUDENT_ID varchar2(255 char) not null,
+	CONTENT blob not null,
+	EVENT_COUNT number(10,0) not null,
+	LAST_DATE_GRADED timestamp not null,
+	primary key (ID),
+	unique (GRADABLE_OBJECT_ID, STUDENT_ID));
+create sequence GB_GRADING_EVENT_ARCHIVE_S;
+-- Serves the latest grading events of each student on an item
+create index GB_GRADING_EVENT_T_OBJ_STU_DT on GB_GRADING_EVENT_T (GRADABLE_OBJECT_ID, STUDENT_ID, DATE_GRADED);
@@ -0,0 +1,9 @@
+-- Compressed content of loading dock spreadsheets, kept apart from GB_SPREADSHEET_T
+create table GB_SPREADSHEET_CONTENT_T (
+	SPREADSHEET_ID number(19,0) not null,
+	GRADEBOOK_ID number(19,0) not null,
+	CONTENT blob not null,
+	CONTENT_SIZE number(10,0) not null,
+	STORED_SIZE number(10,0) not null,
+	primary key (SPREADSHEET_ID));
+create index GB_SPREADSHEET_CONTENT_GB_IDX on GB_SPREADSHEET_CONTENT_T (GRADEBOOK_ID);
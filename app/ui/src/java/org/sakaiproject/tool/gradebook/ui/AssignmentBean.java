@@ -415,6 +415,10 @@ public class AssignmentBean extends GradebookDependentBean implements Serializab
 			}
 
 			getGradebookManager().updateAssignment(this.assignment);
+			if (this.assignment.isReleased() && !originalAssignment.isReleased()) {
+				// students are about to look at the newly released grades
+				buildStudentGradeSnapshots();
+			}
 			long dueDateMillis = -1;
 			final Date dueDate = this.assignment.getDueDate();
 			if (dueDate != null) {
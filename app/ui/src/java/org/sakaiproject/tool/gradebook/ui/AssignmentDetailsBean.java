@@ -39,7 +39,8 @@ import org.sakaiproject.tool.gradebook.Category;
 import org.sakaiproject.tool.gradebook.Comment;
 import org.sakaiproject.tool.gradebook.GradebookAssignment;
 import org.sakaiproject.tool.gradebook.GradingEvent;
-import org.sakaiproject.tool.gradebook.GradingEvents;
+import org.sakaiproject.tool.gradebook.business.AssignmentNavigationIndex;
+import org.sakaiproject.tool.gradebook.business.GradingEventWindow;
 import org.sakaiproject.tool.gradebook.jsf.FacesUtil;
 
 import lombok.extern.slf4j.Slf4j;
@@ -58,8 +59,8 @@ public class AssignmentDetailsBean extends EnrollmentTableBean {
 
 	private Long assignmentId;
     private GradebookAssignment assignment;
-	private GradebookAssignment previousAssignment;
-	private GradebookAssignment nextAssignment;
+	private AssignmentNavigationIndex.Item previousAssignment;
+	private AssignmentNavigationIndex.Item nextAssignment;
 
 	private String assignmentCategory;
 	private String assignmentWeight;
@@ -75,6 +76,7 @@ public class AssignmentDetailsBean extends EnrollmentTableBean {
         private EnrollmentRecord enrollment;
         private Comment comment;
         private List eventRows;
+        private boolean olderEvents;
         private boolean userCanGrade;
         // if a ScoringComponent is associated with this assignment, this
         // is the URL for scoring this student
@@ -85,11 +87,13 @@ public class AssignmentDetailsBean extends EnrollmentTableBean {
 
 		public ScoreRow() {
 		}
-		public ScoreRow(final EnrollmentRecord enrollment, final AssignmentGradeRecord gradeRecord, final Comment comment, final List gradingEvents, final boolean userCanGrade) {
+		public ScoreRow(final EnrollmentRecord enrollment, final AssignmentGradeRecord gradeRecord, final Comment comment, final List gradingEvents,
+				final boolean olderEvents, final boolean userCanGrade) {
             Collections.sort(gradingEvents);
             this.enrollment = enrollment;
             this.gradeRecord = gradeRecord;
             this.comment = comment;
+            this.olderEvents = olderEvents;
             this.userCanGrade = userCanGrade;
 
             this.eventRows = new ArrayList();
@@ -186,6 +190,9 @@ public class AssignmentDetailsBean extends EnrollmentTableBean {
         public List getEventRows() {
         	return this.eventRows;
         }
+        public boolean isOlderEvents() {
+        	return this.olderEvents;
+        }
         public String getEventsLogTitle() {
         	return FacesUtil.getLocalizedString("assignment_details_log_title", new String[] {this.enrollment.getUser().getDisplayName()});
         }
@@ -275,98 +282,28 @@ public class AssignmentDetailsBean extends EnrollmentTableBean {
 		this.isAllStudentsViewOnly = true;
 
 		if (this.assignmentId != null) {
-			this.assignment = getGradebookManager().getAssignmentWithStats(this.assignmentId);
+			// with categories, assignments of categories dropping scores show the statistics including the dropped scores
+			final GradebookAssignment storedAssignment = getGradebookManager().getAssignment(this.assignmentId);
+			final boolean includeDroppedScores = storedAssignment != null && getCategoriesEnabled()
+					&& storedAssignment.getCategory() != null && storedAssignment.getCategory().isDropScores();
+			this.assignment = storedAssignment == null ? null
+					: getGradebookManager().getAssignmentWithStats(this.assignmentId, includeDroppedScores);
 			if (this.assignment != null) {
-                // Get the list of assignments.  If we are sorting by mean, we
-                // need to fetch the assignment statistics as well. If categories
-				// are enabled, we need to retrieve the categories and extract the assignments
-				// b/c the assignments will be grouped by category
-				List assignments;
-                if(!getCategoriesEnabled() && GradebookAssignment.SORT_BY_MEAN.equals(getAssignmentSortColumn())) {
-                    assignments = getGradebookManager().getAssignmentsWithStats(getGradebookId(),
-                            getAssignmentSortColumn(), isAssignmentSortAscending());
-                } else if (!getCategoriesEnabled()){
-                    assignments = getGradebookManager().getAssignments(getGradebookId(),
-                            getAssignmentSortColumn(), isAssignmentSortAscending());
-                } else {
-                	// Categories are enabled, so the assignments are grouped by category
-                	assignments = new ArrayList();
-
-                	final List categoryListWithCG = getGradebookManager().getCategoriesWithStats(getGradebookId(), getAssignmentSortColumn(), isAssignmentSortAscending(), getCategorySortColumn(), isCategorySortAscending(), true);
-
-                	// if drop scores, must apply the average total as it was calculated for all assignments within the category
-                    if(this.assignment.getCategory() != null && this.assignment.getCategory().isDropScores()) {
-                    	for(final Object obj : categoryListWithCG) {
-                    	    if(obj instanceof Category) {
-                        	    final List<GradebookAssignment> catAssignments = ((Category)obj).getAssignmentList();
-                        	    if(catAssignments != null) {
-                            	    for(final GradebookAssignment catAssignment : catAssignments) {
-                            	        if(catAssignment.equals(this.assignment)) {
-                            	            this.assignment.setAverageTotal(catAssignment.getAverageTotal());
-                            	            this.assignment.setMean(catAssignment.getMean());
-                            	        }
-
-                            	    }
-                        	    }
-                    	    }
-                    	}
-                    }
-
-        			List categoryList = new ArrayList();
-
-        			// first, remove the CourseGrade from the Category list
-        			for (final Iterator catIter = categoryListWithCG.iterator(); catIter.hasNext();) {
-        				final Object catOrCourseGrade = catIter.next();
-        				if (catOrCourseGrade instanceof Category) {
-        					categoryList.add(catOrCourseGrade);
-        				}
-        			}
-
-        			if (!isUserAbleToGradeAll() && isUserHasGraderPermissions()) {
+				// Set up next and previous links, if any, from the gradebook's navigation
+				// index, rather than loading every assignment with its statistics
+				AssignmentNavigationIndex navigationIndex = getGradebookManager().getAssignmentNavigationIndex(getGradebookId(),
+						getAssignmentSortColumn(), isAssignmentSortAscending(), getCategorySortColumn(), isCategorySortAscending());
+				if (getCategoriesEnabled() && !isUserAbleToGradeAll() && isUserHasGraderPermissions()) {
 					//SAK-19896, eduservice's can't share the same "Category" class, so just pass the ID's
-        				final List<Long> catIds = new ArrayList<Long>();
-        				for (final Category category : (List<Category>) categoryList) {
-        					catIds.add(category.getId());
-        				}
-        				final List<Long> viewableCats = getGradebookPermissionService().getCategoriesForUser(getGradebookId(), getUserUid(), catIds);
-        				final List<Category> tmpCatList = new ArrayList<Category>();
-        				for (final Category category : (List<Category>) categoryList) {
-        					if(viewableCats.contains(category.getId())){
-        						tmpCatList.add(category);
-        					}
-        				}
-        				categoryList = tmpCatList;
-        			}
-
-					final Iterator catIter = categoryList.iterator();
-					while (catIter.hasNext()) {
-						final Category myCat = (Category) catIter.next();
-						final List catAssigns = myCat.getAssignmentList();
-						if (catAssigns != null) {
-							assignments.addAll(catAssigns);
-						}
-					}
-
-                	// we also need to retrieve all of the assignments that have not
-                	// yet been assigned a category
-        			if (!isUserAbleToGradeAll() && (isUserHasGraderPermissions() && !getGradebookPermissionService().getPermissionForUserForAllAssignment(getGradebookId(), getUserUid()))) {
-        				// is not authorized to view the "Unassigned" Category
-        			} else {
-	                	final List assignNoCategory = getGradebookManager().getAssignmentsWithNoCategory(getGradebookId(), getAssignmentSortColumn(), isAssignmentSortAscending());
-	                	if (assignNoCategory != null) {
-	                		assignments.addAll(assignNoCategory);
-	                	}
-        			}
-                }
-
-                // Set up next and previous links, if any.
-                final int thisIndex = assignments.indexOf(this.assignment);
-				if (thisIndex > 0) {
-					this.previousAssignment = (GradebookAssignment)assignments.get(thisIndex - 1);
-				}
-				if (thisIndex < (assignments.size() - 1)) {
-					this.nextAssignment = (GradebookAssignment)assignments.get(thisIndex + 1);
+					final List<Long> viewableCats = getGradebookPermissionService().getCategoriesForUser(getGradebookId(), getUserUid(),
+							navigationIndex.getCategoryIds());
+					// only graders of every item are authorized to view the "Unassigned" Category
+					final boolean viewsUncategorized = getGradebookPermissionService().getPermissionForUserForAllAssignment(getGradebookId(),
+							getUserUid());
+					navigationIndex = navigationIndex.restrictTo(viewableCats, viewsUncategorized);
 				}
+				this.previousAssignment = navigationIndex.getPrevious(this.assignmentId);
+				this.nextAssignment = navigationIndex.getNext(this.assignmentId);
 
 				final Category category = this.assignment.getCategory();
 				Long categoryId = null;
@@ -408,8 +345,9 @@ public class AssignmentDetailsBean extends EnrollmentTableBean {
 					studentUids = finalizeSortingAndPaging(studentUids);
 				}
 
-                // Get all of the grading events for these enrollments on this assignment
-                final GradingEvents allEvents = getGradebookManager().getGradingEvents(this.assignment, studentUids);
+                // Get the latest grading events for these enrollments on this assignment
+                final GradingEventWindow latestEvents = getLatestGradingEvents(this.assignment, studentUids);
+                final String historyStudentUid = takeHistoryStudentUid();
                 // NOTE: we are no longer converting the events b/c we are
                 // storing what the user entered, not just points
                 //getGradebookManager().convertGradingEventsConverted(assignment, allEvents, studentUids, getGradebook().getGrade_type());
@@ -461,7 +399,11 @@ public class AssignmentDetailsBean extends EnrollmentTableBean {
 						userCanGrade = true;
 					}
 
-					this.scoreRows.add(new ScoreRow(enrollment, gradeRecord, comment, allEvents.getEvents(studentUid), userCanGrade));
+					final boolean fullHistory = studentUid.equals(historyStudentUid);
+					final List gradingEvents = fullHistory ? getGradebookManager().getGradingHistory(this.assignment, studentUid)
+							: latestEvents.getEvents(studentUid);
+					this.scoreRows.add(new ScoreRow(enrollment, gradeRecord, comment, gradingEvents,
+							!fullHistory && latestEvents.hasOlderEvents(studentUid), userCanGrade));
 					if (userCanGrade) {
 						this.isAllStudentsViewOnly = false;
 					}
@@ -585,6 +527,7 @@ public class AssignmentDetailsBean extends EnrollmentTableBean {
         if(this.updatedGradeRecords.size() > 0){
 			getGradebookBean().postEvent("gradebook.updateItemScores",
 					"/gradebook/" + getGradebookId() + "/" + this.updatedGradeRecords.size() + "/" + getAuthzLevel(), true);
+			archiveGradingEvents();
         }
         if(this.updatedComments.size() > 0){
 			getGradebookBean().postEvent("gradebook.comment",
@@ -621,6 +564,7 @@ public class AssignmentDetailsBean extends EnrollmentTableBean {
         if(this.updatedGradeRecords.size() > 0){
 			getGradebookBean().postEvent("gradebook.updateItemScores",
 					"/gradebook/" + getGradebookId() + "/" + this.updatedGradeRecords.size() + "/" + getAuthzLevel(), true);
+			archiveGradingEvents();
         }
         if(this.updatedComments.size() > 0){
 			getGradebookBean().postEvent("gradebook.comment",
@@ -759,16 +703,16 @@ public class AssignmentDetailsBean extends EnrollmentTableBean {
     public void setAssignment(final GradebookAssignment assignment) {
         this.assignment = assignment;
     }
-    public GradebookAssignment getNextAssignment() {
+    public AssignmentNavigationIndex.Item getNextAssignment() {
         return this.nextAssignment;
     }
-    public void setNextAssignment(final GradebookAssignment nextAssignment) {
+    public void setNextAssignment(final AssignmentNavigationIndex.Item nextAssignment) {
         this.nextAssignment = nextAssignment;
     }
-    public GradebookAssignment getPreviousAssignment() {
+    public AssignmentNavigationIndex.Item getPreviousAssignment() {
         return this.previousAssignment;
     }
-    public void setPreviousAssignment(final GradebookAssignment previousAssignment) {
+    public void setPreviousAssignment(final AssignmentNavigationIndex.Item previousAssignment) {
         this.previousAssignment = previousAssignment;
     }
 	public String getAssignmentCategory() {
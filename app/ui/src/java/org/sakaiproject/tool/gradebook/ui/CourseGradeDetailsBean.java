@@ -28,36 +28,41 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import javax.faces.event.ActionEvent;
 import javax.faces.model.SelectItem;
 
 import org.apache.commons.lang.StringUtils;
 import org.sakaiproject.component.cover.ServerConfigurationService;
-import org.sakaiproject.jsf.spreadsheet.SpreadsheetDataFileWriterCsv;
-import org.sakaiproject.jsf.spreadsheet.SpreadsheetDataFileWriterPdf;
-import org.sakaiproject.jsf.spreadsheet.SpreadsheetDataFileWriterXls;
-import org.sakaiproject.jsf.spreadsheet.SpreadsheetUtil;
 import org.sakaiproject.section.api.coursemanagement.EnrollmentRecord;
 import org.sakaiproject.service.gradebook.shared.GradebookService;
 import org.sakaiproject.service.gradebook.shared.StaleObjectModificationException;
 import org.sakaiproject.tool.gradebook.CourseGrade;
 import org.sakaiproject.tool.gradebook.CourseGradeRecord;
 import org.sakaiproject.tool.gradebook.CourseGradesToSpreadsheetConverter;
+import org.sakaiproject.tool.gradebook.Gradebook;
 import org.sakaiproject.tool.gradebook.GradeMapping;
 import org.sakaiproject.tool.gradebook.GradingEvent;
-import org.sakaiproject.tool.gradebook.GradingEvents;
+import org.sakaiproject.tool.gradebook.business.GradebookJob;
+import org.sakaiproject.tool.gradebook.business.GradebookJobManager;
+import org.sakaiproject.tool.gradebook.business.GradebookManager;
+import org.sakaiproject.tool.gradebook.business.GradingEventWindow;
 import org.sakaiproject.tool.gradebook.jsf.FacesUtil;
 
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public class CourseGradeDetailsBean extends EnrollmentTableBean {
+	/** enrollments converted to export rows at a time */
+	private static final int EXPORT_CHUNK_SIZE = 500;
+
 	// View maintenance fields - serializable.
 	private List scoreRows;
 	private CourseGrade courseGrade;
 	private List updatedGradeRecords;
 	private GradeMapping gradeMapping;
+	private GradebookJob calculateJob;
 	private double totalPoints;
 	private String courseGradesConverterPlugin;
 	private String standardExportDefaultFields;
@@ -154,6 +159,7 @@ public class CourseGradeDetailsBean extends EnrollmentTableBean {
         private EnrollmentRecord enrollment;
         private CourseGradeRecord courseGradeRecord;
 		private List eventRows;
+		private boolean olderEvents;
         private boolean userCanGrade;
 
 
@@ -161,10 +167,11 @@ public class CourseGradeDetailsBean extends EnrollmentTableBean {
 		}
 
 		public ScoreRow(final EnrollmentRecord enrollment, final CourseGradeRecord courseGradeRecord,
-				final List<GradingEvent> gradingEvents,
+				final List<GradingEvent> gradingEvents, final boolean olderEvents,
 				final boolean userCanGrade) {
             this.enrollment = enrollment;
 			this.courseGradeRecord = courseGradeRecord;
+			this.olderEvents = olderEvents;
 			this.userCanGrade = userCanGrade;
 
 			this.eventRows = new ArrayList<>();
@@ -228,6 +235,9 @@ public class CourseGradeDetailsBean extends EnrollmentTableBean {
 		public List<GradingEventRow> getEventRows() {
 			return this.eventRows;
         }
+		public boolean isOlderEvents() {
+			return this.olderEvents;
+		}
         public String getEventsLogTitle() {
 			return FacesUtil.getLocalizedString("course_grade_details_log_title",
 					new String[] { this.enrollment.getUser().getDisplayName() });
@@ -249,6 +259,9 @@ public class CourseGradeDetailsBean extends EnrollmentTableBean {
         this.gradeMapping = getGradebook().getSelectedGradeMapping();
         this.totalPoints = getGradebookManager().getTotalPoints(getGradebookId());
 
+		final GradebookJob latestCalculateJob = getJobManager().getLatestJob(getGradebookUid(), GradebookJobManager.TYPE_FILL_IN_ZEROS);
+		this.calculateJob = latestCalculateJob != null && !latestCalculateJob.isFinished() ? latestCalculateJob : null;
+
 		this.enableCustomExport = ServerConfigurationService.getBoolean("gradebook.institutional.export.enabled",false);
 
 		//Default standard export fields
@@ -295,8 +308,9 @@ public class CourseGradeDetailsBean extends EnrollmentTableBean {
 			studentUids = finalizeSortingAndPaging(studentUids);
 		}
 
-		// Get all of the grading events for these enrollments on this assignment
-		final GradingEvents allEvents = getGradebookManager().getGradingEvents(this.courseGrade, studentUids);
+		// Get the latest grading events for these enrollments on the course grade
+		final GradingEventWindow latestEvents = getLatestGradingEvents(this.courseGrade, studentUids);
+		final String historyStudentUid = takeHistoryStudentUid();
 
 		final Map gradeRecordMap = new HashMap();
 		for (final Iterator iter = gradeRecords.iterator(); iter.hasNext(); ) {
@@ -333,7 +347,11 @@ public class CourseGradeDetailsBean extends EnrollmentTableBean {
             	this.allStudentsViewOnly = false;
             }
 
-			this.scoreRows.add(new ScoreRow(enrollment, gradeRecord, allEvents.getEvents(studentUid), userCanGrade));
+			final boolean fullHistory = studentUid.equals(historyStudentUid);
+			final List<GradingEvent> gradingEvents = fullHistory ? getGradebookManager().getGradingHistory(this.courseGrade, studentUid)
+					: latestEvents.getEvents(studentUid);
+			this.scoreRows.add(new ScoreRow(enrollment, gradeRecord, gradingEvents, !fullHistory && latestEvents.hasOlderEvents(studentUid),
+					userCanGrade));
 		}
 	}
 
@@ -375,26 +393,52 @@ public class CourseGradeDetailsBean extends EnrollmentTableBean {
 	 * Action to calculate course grades
 	 */
 	public String processCalculateCourseGrades() {
-		try {
-			calculateCourseGrades();
-		} catch (final StaleObjectModificationException e) {
-			log.error(e.getMessage());
-			FacesUtil.addErrorMessage(getLocalizedString("course_grade_details_locking_failure"));
-		}
+		calculateCourseGrades();
 		return "courseGradeDetails";
 	}
 
 	private void saveGrades() throws StaleObjectModificationException {
 		getGradebookManager().updateCourseGradeRecords(this.courseGrade, this.updatedGradeRecords);
+		if (!this.updatedGradeRecords.isEmpty()) {
+			archiveGradingEvents();
+		}
 		getGradebookBean().postEvent("gradebook.updateCourseGrades",
 				"/gradebook/" + getGradebookId() + "/" + this.updatedGradeRecords.size() + "/" + getAuthzLevel(), true);
         // Let the user know.
 		FacesUtil.addMessage(getLocalizedString("course_grade_details_grades_saved"));
 	}
 
+	/**
+	 * Zeroes are filled in by a background job, as this can take minutes on large gradebooks.
+	 */
 	private void calculateCourseGrades() {
-		getGradebookManager().fillInZeroForNullGradeRecords(getGradebook());
-		FacesUtil.addMessage(getLocalizedString("calculate_course_grade_done"));
+		final Gradebook gradebook = getGradebook();
+		final GradebookManager gradebookManager = getGradebookManager();
+		final GradebookJob job = getJobManager().submitJob(getGradebookUid(), GradebookJobManager.TYPE_FILL_IN_ZEROS,
+				progress -> gradebookManager.fillInZeroForNullGradeRecords(gradebook, progress));
+		if (GradebookJob.STATE_FAILED.equals(job.getState())) {
+			FacesUtil.addErrorMessage(getLocalizedString("calculate_course_grade_failed"));
+		} else {
+			FacesUtil.addMessage(getLocalizedString("calculate_course_grade_started"));
+		}
+	}
+
+	/**
+	 * @return whether course grades are being calculated by a job that hasn't finished yet
+	 */
+	public boolean isCalculatingCourseGrades() {
+		return this.calculateJob != null;
+	}
+
+	public String getCalculateCourseGradesProgress() {
+		if (this.calculateJob == null) {
+			return null;
+		}
+		if (this.calculateJob.getTotal() == 0) {
+			return getLocalizedString("calculate_course_grade_queued");
+		}
+		return getLocalizedString("calculate_course_grade_progress",
+				new String[] { String.valueOf(this.calculateJob.getProgress()), String.valueOf(this.calculateJob.getTotal()) });
 	}
 
 	public void updateExportFieldStatus(String standardExportFields){
@@ -458,25 +502,19 @@ public class CourseGradeDetailsBean extends EnrollmentTableBean {
         	 if(log.isInfoEnabled()) {
 				log.info("exporting course grade as CSV for gradebook " + getGradebookUid());
 			}
-             SpreadsheetUtil.downloadSpreadsheetData(getSpreadsheetData("csv", fields),
-             		getDownloadFileName(getLocalizedString("export_course_grade_prefix")),
-             		new SpreadsheetDataFileWriterCsv());
+             downloadSpreadsheet("csv", fields, new SpreadsheetStreamWriter.Csv());
         }
         else if(this.exportType.equalsIgnoreCase("Excel")){
         	if(log.isInfoEnabled()) {
 				log.info("exporting course grade as Excel for gradebook " + getGradebookUid());
 			}
-            SpreadsheetUtil.downloadSpreadsheetData(getSpreadsheetData("excel", fields),
-            		getDownloadFileName(getLocalizedString("export_course_grade_prefix")),
-            		new SpreadsheetDataFileWriterXls());
+            downloadSpreadsheet("excel", fields, SpreadsheetStreamWriter.newExcelWriter());
         }
         else if(this.exportType.equalsIgnoreCase("PDF")){
         	if(log.isInfoEnabled()) {
 				log.info("exporting course grade as PDF for gradebook " + getGradebookUid());
 			}
-            SpreadsheetUtil.downloadSpreadsheetData(getSpreadsheetData("pdf", fields),
-            		getDownloadFileName(getLocalizedString("export_course_grade_prefix")),
-            		new SpreadsheetDataFileWriterPdf());
+            downloadSpreadsheet("pdf", fields, new SpreadsheetStreamWriter.Pdf());
         }
 	}
 
@@ -494,9 +532,7 @@ public class CourseGradeDetailsBean extends EnrollmentTableBean {
 		if (fields.length == 0) {
 			fields = defaultFields.split(",");
 		}
-		SpreadsheetUtil.downloadSpreadsheetData(getSpreadsheetData("customCsv", Arrays.asList(fields)),
-        		getDownloadFileName(getLocalizedString("export_course_grade_prefix")),
-        		new SpreadsheetDataFileWriterCsv());
+		downloadSpreadsheet("customCsv", Arrays.asList(fields), new SpreadsheetStreamWriter.Csv());
 	}
 
 	//Export custom grade label
@@ -504,7 +540,17 @@ public class CourseGradeDetailsBean extends EnrollmentTableBean {
 		return ServerConfigurationService.getString("gradebook.institutional.export.label",getLocalizedString("course_grade_details_export_course_grades_institution"));
 	}
 
-	private List<List<Object>> getSpreadsheetData(final String type, final List<String> fields) {
+	private void downloadSpreadsheet(final String type, final List<String> fields, final SpreadsheetStreamWriter writer) {
+		SpreadsheetStreamWriter.download(sink -> writeSpreadsheetData(type, fields, sink),
+				getDownloadFileName(getLocalizedString("export_course_grade_prefix")), writer);
+	}
+
+	/**
+	 * Hands the export's rows to the sink, converting the enrollments a chunk at a time so that
+	 * only one chunk's rows are held at once. The converter's header rows are kept from the first
+	 * chunk only.
+	 */
+	private void writeSpreadsheetData(final String type, final List<String> fields, final Consumer<List<Object>> sink) {
 		// Get the full list of filtered enrollments and scores (not just the current page's worth).
 		final List<EnrollmentRecord> filteredEnrollments = new ArrayList(getWorkingEnrollmentsForCourseGrade().keySet());
 		Collections.sort(filteredEnrollments, ENROLLMENT_NAME_COMPARATOR);
@@ -524,7 +570,15 @@ public class CourseGradeDetailsBean extends EnrollmentTableBean {
 		} else {
 			converter = (CourseGradesToSpreadsheetConverter)getGradebookBean().getConfigurationBean().getPlugin(this.courseGradesConverterPlugin);
 		}
-		return converter.getSpreadsheetData(filteredEnrollments, courseGrade, filteredGradesMap, fields);
+		for (int from = 0; from == 0 || from < filteredEnrollments.size(); from += EXPORT_CHUNK_SIZE) {
+			final List<EnrollmentRecord> chunk = filteredEnrollments.subList(from, Math.min(from + EXPORT_CHUNK_SIZE, filteredEnrollments.size()));
+			final List<List<Object>> rows = converter.getSpreadsheetData(chunk, courseGrade, filteredGradesMap, fields);
+			// the converters add their header rows ahead of one row per enrollment
+			final int skip = from == 0 ? 0 : Math.max(0, rows.size() - chunk.size());
+			for (int i = skip; i < rows.size(); i++) {
+				sink.accept(rows.get(i));
+			}
+		}
 	}
 
 	public List getScoreRows() {
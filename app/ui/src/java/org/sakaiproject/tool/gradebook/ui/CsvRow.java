@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.ui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The cells of a row read by {@link CsvTokenizer}, each blank, a number or a string. One row is
+ * meant to be read into over and over, its arrays only growing to the widest row read.
+ *
+ * A cell is a number when it is a plain decimal: an optional sign, digits and at most one
+ * decimal separator, without grouping or exponent. Anything else that isn't empty is a string,
+ * left for the locale's number format to make sense of.
+ *
+ * Not thread safe.
+ */
+class CsvRow {
+
+	enum CellType {
+		BLANK, NUMBER, STRING
+	}
+
+	/** the most significant digits whose value is exact as a long and as a double */
+	private static final int EXACT_DIGITS = 15;
+
+	/** powers of ten exact as doubles */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private final char decimalSeparator;
+	private String[] values = new String[16];
+	private CellType[] types = new CellType[16];
+	private double[] numbers = new double[16];
+	private int size;
+
+	/**
+	 * @param decimalSeparator the separator of number cells, that of the locale the values are read in
+	 */
+	CsvRow(final char decimalSeparator) {
+		this.decimalSeparator = decimalSeparator;
+	}
+
+	int size() {
+		return this.size;
+	}
+
+	CellType getType(final int index) {
+		checkIndex(index);
+		return this.types[index];
+	}
+
+	/**
+	 * @return the text of the cell as read, empty for a blank cell
+	 */
+	String getString(final int index) {
+		checkIndex(index);
+		return this.values[index];
+	}
+
+	/**
+	 * @throws IllegalStateException if the cell is not a number
+	 */
+	double getDouble(final int index) {
+		if (getType(index) != CellType.NUMBER) {
+			throw new IllegalStateException("Cell " + index + " is not a number: " + this.values[index]);
+		}
+		return this.numbers[index];
+	}
+
+	/**
+	 * @return whether every cell of the row is blank
+	 */
+	boolean isBlank() {
+		for (int i = 0; i < this.size; i++) {
+			if (this.types[i] != CellType.BLANK) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return a new list of the text of the cells, for rows kept once read
+	 */
+	List<String> toList() {
+		return new ArrayList<String>(Arrays.asList(this.values).subList(0, this.size));
+	}
+
+	void clear() {
+		Arrays.fill(this.values, 0, this.size, null);
+		this.size = 0;
+	}
+
+	void add(final String value) {
+		if (this.size == this.values.length) {
+			final int capacity = this.size * 2;
+			this.values = Arrays.copyOf(this.values, capacity);
+			this.types = Arrays.copyOf(this.types, capacity);
+			this.numbers = Arrays.copyOf(this.numbers, capacity);
+		}
+		this.values[this.size] = value;
+		this.types[this.size] = value.isEmpty() ? CellType.BLANK
+				: parseNumber(value, this.size) ? CellType.NUMBER : CellType.STRING;
+		this.size++;
+	}
+
+	/**
+	 * Removes the last cell, which the tokenizer reads before knowing it ends the line.
+	 */
+	void removeLast() {
+		this.values[--this.size] = null;
+	}
+
+	/**
+	 * Reads a plain decimal into the numbers at the index, without creating anything for the
+	 * usual short scores.
+	 *
+	 * @return false if the value is not a plain decimal
+	 */
+	private boolean parseNumber(final String value, final int index) {
+		final int length = value.length();
+		int i = 0;
+		final char first = value.charAt(0);
+		final boolean negative = first == '-';
+		if (negative || first == '+') {
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean fraction = false;
+		boolean anyDigit = false;
+		for (; i < length; i++) {
+			final char c = value.charAt(i);
+			if (c >= '0' && c <= '9') {
+				anyDigit = true;
+				if (mantissa == 0 && c == '0') {
+					// leading zeros don't count towards the exact digits
+					if (fraction) {
+						scale++;
+					}
+					continue;
+				}
+				mantissa = mantissa * 10 + (c - '0');
+				digits++;
+				if (fraction) {
+					scale++;
+				}
+			} else if (c == this.decimalSeparator && !fraction) {
+				fraction = true;
+			} else {
+				return false;
+			}
+		}
+		if (!anyDigit) {
+			return false;
+		}
+		double number;
+		if (digits <= EXACT_DIGITS && scale < POWERS_OF_TEN.length) {
+			// both exact, so the quotient is the correctly rounded value
+			number = mantissa / POWERS_OF_TEN[scale];
+		} else {
+			number = Double.parseDouble(value.substring(negative || first == '+' ? 1 : 0).replace(this.decimalSeparator, '.'));
+		}
+		this.numbers[index] = negative ? -number : number;
+		return true;
+	}
+
+	private void checkIndex(final int index) {
+		if (index < 0 || index >= this.size) {
+			throw new IndexOutOfBoundsException("Cell " + index + " of a row of " + this.size);
+		}
+	}
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.ui;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits comma separated values into rows of fields as it reads them, scanning a
+ * buffer of characters rather than reading whole lines first.
+ *
+ * A field starting with a double quote runs to the next quote followed by the
+ * delimiter or a line break, so it may hold both; two double quotes inside it stand
+ * for one, and any other quote is kept as it is. Lines end with LF, CRLF or CR. A
+ * byte order mark at the start of the input is skipped. The fields are read into a
+ * {@link CsvRow}, which types them as blank, number or string cells.
+ *
+ * Not thread safe.
+ */
+class CsvTokenizer {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final int DELIMITER = 0;
+	private static final int END_OF_LINE = 1;
+	private static final int END_OF_INPUT = 2;
+
+	private final Reader reader;
+	private final char delimiter;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int position;
+	private int limit;
+	private boolean exhausted;
+	private boolean started;
+
+	/** the text of a field read over more than one buffer, or with escaped quotes */
+	private final StringBuilder field = new StringBuilder();
+	private String value;
+	private boolean quoted;
+
+	CsvTokenizer(final Reader reader, final char delimiter) {
+		this.reader = reader;
+		this.delimiter = delimiter;
+	}
+
+	/**
+	 * Reads the fields of the next row into the given row, replacing its cells.
+	 *
+	 * @return false, leaving the row empty, once the input is exhausted
+	 */
+	boolean readRow(final CsvRow row) throws IOException {
+		row.clear();
+		if (!fill()) {
+			return false;
+		}
+		if (!this.started) {
+			this.started = true;
+			if (this.buffer[this.position] == '\uFEFF') {
+				this.position++;
+				if (!fill()) {
+					return false;
+				}
+			}
+		}
+		int end;
+		do {
+			end = readField();
+			row.add(this.value);
+		} while (end == DELIMITER);
+
+		// a delimiter ending the line doesn't start a further, empty field
+		if (row.size() > 1 && !this.quoted && this.value.isEmpty()) {
+			row.removeLast();
+		}
+		return true;
+	}
+
+	private int readField() throws IOException {
+		this.field.setLength(0);
+		this.quoted = false;
+		if (!fill()) {
+			this.value = "";
+			return END_OF_INPUT;
+		}
+		if (this.buffer[this.position] == '"') {
+			this.position++;
+			this.quoted = true;
+			return readQuoted();
+		}
+		return readPlain();
+	}
+
+	private int readPlain() throws IOException {
+		do {
+			final int start = this.position;
+			while (this.position < this.limit) {
+				final char c = this.buffer[this.position];
+				if (c == this.delimiter || c == '\n' || c == '\r') {
+					// most fields lie within the buffer and are taken from it directly
+					this.value = this.field.length() == 0 ? new String(this.buffer, start, this.position - start)
+							: this.field.append(this.buffer, start, this.position - start).toString();
+					return terminate(c);
+				}
+				this.position++;
+			}
+			this.field.append(this.buffer, start, this.position - start);
+		} while (fill());
+		this.value = this.field.toString();
+		return END_OF_INPUT;
+	}
+
+	private int readQuoted() throws IOException {
+		do {
+			int start = this.position;
+			while (this.position < this.limit) {
+				if (this.buffer[this.position] != '"') {
+					this.position++;
+					continue;
+				}
+				this.field.append(this.buffer, start, this.position - start);
+				this.position++;
+				if (!fill()) {
+					this.value = this.field.toString();
+					return END_OF_INPUT;
+				}
+				final char next = this.buffer[this.position];
+				if (next == this.delimiter || next == '\n' || next == '\r') {
+					this.value = this.field.toString();
+					return terminate(next);
+				}
+				this.field.append('"');
+				if (next == '"') {
+					this.position++;
+				}
+				start = this.position;
+			}
+			this.field.append(this.buffer, start, this.position - start);
+		} while (fill());
+		this.value = this.field.toString();
+		return END_OF_INPUT;
+	}
+
+	/**
+	 * Consumes the delimiter or line break at the current position.
+	 */
+	private int terminate(final char c) throws IOException {
+		this.position++;
+		if (c == this.delimiter) {
+			return DELIMITER;
+		}
+		if (c == '\r' && fill() && this.buffer[this.position] == '\n') {
+			this.position++;
+		}
+		return END_OF_LINE;
+	}
+
+	/**
+	 * @return whether there is a character at the current position, reading more input if needed
+	 */
+	private boolean fill() throws IOException {
+		if (this.position < this.limit) {
+			return true;
+		}
+		if (this.exhausted) {
+			return false;
+		}
+		int read;
+		do {
+			read = this.reader.read(this.buffer, 0, this.buffer.length);
+		} while (read == 0);
+		this.position = 0;
+		if (read < 0) {
+			this.exhausted = true;
+			this.limit = 0;
+			return false;
+		}
+		this.limit = read;
+		return true;
+	}
+}
@@ -21,14 +21,17 @@ import java.text.Collator;
 import java.text.ParseException;
 import java.text.RuleBasedCollator;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.faces.context.FacesContext;
 import javax.faces.event.ActionEvent;
@@ -36,11 +39,17 @@ import javax.faces.event.ValueChangeEvent;
 import javax.faces.model.SelectItem;
 
 import org.apache.commons.lang.StringUtils;
+import org.sakaiproject.component.cover.ServerConfigurationService;
 import org.sakaiproject.section.api.coursemanagement.CourseSection;
 import org.sakaiproject.section.api.coursemanagement.EnrollmentRecord;
-import org.sakaiproject.service.gradebook.shared.UnknownUserException;
 import org.sakaiproject.tool.gradebook.Category;
+import org.sakaiproject.tool.gradebook.GradableObject;
 import org.sakaiproject.tool.gradebook.GradingEvent;
+import org.sakaiproject.tool.gradebook.business.GradebookJob;
+import org.sakaiproject.tool.gradebook.business.GradebookJobManager;
+import org.sakaiproject.tool.gradebook.business.GradebookManager;
+import org.sakaiproject.tool.gradebook.business.GradingEventWindow;
+import org.sakaiproject.tool.gradebook.business.RosterSortKeys;
 import org.sakaiproject.tool.gradebook.jsf.FacesUtil;
 
 import lombok.extern.slf4j.Slf4j;
@@ -98,6 +107,9 @@ public abstract class EnrollmentTableBean
 	public static final int ALL_SECTIONS_SELECT_VALUE = -1;
 	public static final int ALL_CATEGORIES_SELECT_VALUE = -1;
 
+	/** latest grading events shown per student in the grading logs, unless set by gradebook.gradingHistory.window */
+	private static final int DEFAULT_GRADING_HISTORY_WINDOW = 10;
+
 	private static Map columnSortMap;
 	private String searchString;
 	private int firstScoreRow;
@@ -108,6 +120,9 @@ public abstract class EnrollmentTableBean
 
 	private boolean refreshRoster = true; // To prevent unnecessary roster loading
 
+	// The student whose full grading log the next rendering shows
+	private String historyStudentUid;
+
 	// The section selection menu will include some choices that aren't
 	// real sections (e.g., "All Sections" or "Unassigned Students".
 	private Integer selectedSectionFilterValue = new Integer(ALL_SECTIONS_SELECT_VALUE);
@@ -162,6 +177,60 @@ public abstract class EnrollmentTableBean
 		setRefreshRoster(true);
 	}
 
+	/**
+	 * Action listener to show the full grading log of a student, older events included.
+	 */
+	public void processShowGradingHistory(final ActionEvent event) {
+		this.historyStudentUid = (String) FacesUtil.getEventParameterMap(event).get("studentUid");
+	}
+
+	/**
+	 * @return the latest grading events of the students on the item, as many per student
+	 * as the grading logs show
+	 */
+	protected GradingEventWindow getLatestGradingEvents(final GradableObject gradableObject, final List studentUids) {
+		final GradingEventWindow latestEvents = getGradebookManager().getLatestGradingEvents(gradableObject, studentUids,
+				ServerConfigurationService.getInt("gradebook.gradingHistory.window", DEFAULT_GRADING_HISTORY_WINDOW));
+		final Set<String> graderIds = new HashSet<>();
+		for (final Object studentUid : studentUids) {
+			for (final GradingEvent gradingEvent : latestEvents.getEvents((String) studentUid)) {
+				graderIds.add(gradingEvent.getGraderId());
+			}
+		}
+		loadGraderNames(graderIds);
+		return latestEvents;
+	}
+
+	/**
+	 * @return the student whose full grading log was asked for, if any, only once
+	 */
+	protected String takeHistoryStudentUid() {
+		final String studentUid = this.historyStudentUid;
+		this.historyStudentUid = null;
+		return studentUid;
+	}
+
+	/**
+	 * Rolls up the older grading events of the gradebook in the background after grades were
+	 * saved, if the gradebook.gradingHistory.archiveAfter property sets how many events of each
+	 * student on each item stay in the grading event table. Off by default, as other tools read
+	 * that table directly.
+	 */
+	protected void archiveGradingEvents() {
+		final int keep = ServerConfigurationService.getInt("gradebook.gradingHistory.archiveAfter", 0);
+		if (keep <= 0) {
+			return;
+		}
+		final GradebookJob latestJob = getJobManager().getLatestJob(getGradebookUid(), GradebookJobManager.TYPE_ARCHIVE_GRADING_EVENTS);
+		if (latestJob != null && GradebookJob.STATE_QUEUED.equals(latestJob.getState())) {
+			return;
+		}
+		final Long gradebookId = getGradebookId();
+		final GradebookManager gradebookManager = getGradebookManager();
+		getJobManager().submitJob(getGradebookUid(), GradebookJobManager.TYPE_ARCHIVE_GRADING_EVENTS,
+				progress -> gradebookManager.archiveGradingEvents(gradebookId, keep, progress));
+	}
+
 	public void clear(final ActionEvent event) {
 		if (log.isDebugEnabled()) {
 			log.debug("clear");
@@ -444,6 +513,23 @@ public abstract class EnrollmentTableBean
 		return finalList;
 	}
 
+	/**
+	 * Same as sorting the enrollments by a score column and calling {@link #finalizeSortingAndPaging(List)},
+	 * but only the rows up to the end of the current page are sorted.
+	 *
+	 * @param enrollmentList - list of EnrollmentRecords, in the order students without a key are listed in
+	 * @param sortKeys - the sort keys of the column
+	 */
+	protected List selectSortedPage(final List enrollmentList, final RosterSortKeys sortKeys) {
+		final List<EnrollmentRecord> enrollments = enrollmentList;
+		final List finalList = sortKeys.selectPage(enrollments, enr -> enr.getUser().getUserUid(), isSortAscending(),
+				this.firstScoreRow, this.maxDisplayedScoreRows);
+		if (log.isDebugEnabled()) {
+			log.debug("selectSortedPage " + finalList.size() + " rows from " + this.firstScoreRow + " of " + enrollments.size());
+		}
+		return finalList;
+	}
+
 	public boolean isEnrollmentSort() {
 		final String sortColumn = getSortColumn();
 		return (sortColumn.equals(PreferencesBean.SORT_BY_NAME) || sortColumn.equals(PreferencesBean.SORT_BY_UID));
@@ -600,20 +686,39 @@ public abstract class EnrollmentTableBean
 
 	// Map grader UIDs to grader names for the grading event log.
 	public String getGraderNameForId(final String graderId) {
+		if (graderId == null) {
+			return null;
+		}
+		loadGraderNames(Collections.singleton(graderId));
+		return (String) this.graderIdToNameMap.get(graderId);
+	}
+
+	/**
+	 * Looks up the names of the graders not yet mapped together, so that building
+	 * the grading event logs of a page doesn't look them up one by one.
+	 */
+	protected void loadGraderNames(final Collection<String> graderIds) {
 		if (this.graderIdToNameMap == null) {
 			this.graderIdToNameMap = new HashMap();
 		}
-		String graderName = (String) this.graderIdToNameMap.get(graderId);
-		if (graderName == null) {
-			try {
-				graderName = getGradebookBean().getUserDisplayName(graderId);
-			} catch (final UnknownUserException e) {
+		final Set<String> unmapped = new HashSet<>();
+		for (final String graderId : graderIds) {
+			if (graderId != null && !this.graderIdToNameMap.containsKey(graderId)) {
+				unmapped.add(graderId);
+			}
+		}
+		if (unmapped.isEmpty()) {
+			return;
+		}
+		final Map<String, String> graderNames = getGradebookBean().getUserDisplayNames(unmapped);
+		for (final String graderId : unmapped) {
+			String graderName = graderNames.get(graderId);
+			if (graderName == null) {
 				log.warn("Unable to find grader with uid=" + graderId);
 				graderName = graderId;
 			}
 			this.graderIdToNameMap.put(graderId, graderName);
 		}
-		return graderName;
 	}
 
 	// Support grading event logs.
@@ -192,6 +192,7 @@ public class FeedbackOptionsBean extends GradebookDependentBean implements Seria
 
 		try {
 			getGradebookManager().updateGradebook(localGradebook);
+			buildStudentGradeSnapshots();
             FacesUtil.addRedirectSafeMessage(getLocalizedString("feedback_options_submit_success"));
         } catch (IllegalStateException ise) {
             FacesUtil.addErrorMessage(getLocalizedString("feedback_options_illegal_change", new String[] {localGradebook.getSelectedGradeMapping().getName()}));
@@ -16,6 +16,9 @@
 
 package org.sakaiproject.tool.gradebook.ui;
 
+import java.util.Collection;
+import java.util.Map;
+
 import javax.faces.context.FacesContext;
 import javax.servlet.ServletRequest;
 import javax.servlet.http.HttpServletRequest;
@@ -32,8 +35,10 @@ import org.sakaiproject.service.gradebook.shared.UnknownUserException;
 import org.sakaiproject.tool.api.Placement;
 import org.sakaiproject.tool.cover.ToolManager;
 import org.sakaiproject.tool.gradebook.Gradebook;
+import org.sakaiproject.tool.gradebook.business.GradebookJobManager;
 import org.sakaiproject.tool.gradebook.business.GradebookManager;
 import org.sakaiproject.tool.gradebook.business.GradebookScoringAgentManager;
+import org.sakaiproject.tool.gradebook.business.UserDisplayNameCache;
 import org.sakaiproject.tool.gradebook.facades.Authn;
 import org.sakaiproject.tool.gradebook.facades.Authz;
 import org.sakaiproject.user.api.User;
@@ -67,6 +72,8 @@ public class GradebookBean extends InitializableBean {
     private GradebookPermissionService gradebookPermissionService;
     private GradebookExternalAssessmentService gradebookExternalAssessmentService;
     private GradebookScoringAgentManager scoringAgentManager;
+    private GradebookJobManager jobManager;
+    private UserDisplayNameCache userDisplayNameCache;
     private GradebookFrameworkService gradebookFrameworkService;
 
 	@Override
@@ -165,12 +172,18 @@ public class GradebookBean extends InitializableBean {
 	}
 
 	public String getUserDisplayName(final String userUid) throws UnknownUserException {
-		try {
-			final User sakaiUser = this.userDirectoryService.getUser(userUid);
-			return sakaiUser.getDisplayName();
-		} catch (final UserNotDefinedException e) {
+		final String displayName = this.userDisplayNameCache.getDisplayName(userUid);
+		if (displayName == null) {
 			throw new UnknownUserException("Unknown uid: " + userUid);
 		}
+		return displayName;
+	}
+
+	/**
+	 * @return the display names of the known users, by uid, looked up together
+	 */
+	public Map<String, String> getUserDisplayNames(final Collection<String> userUids) {
+		return this.userDisplayNameCache.getDisplayNames(userUids);
 	}
 
 	public String getUserEmailAddress(final String userUid) throws UnknownUserException {
@@ -293,4 +306,18 @@ public class GradebookBean extends InitializableBean {
     public void setScoringAgentManager(final GradebookScoringAgentManager scoringAgentManager) {
         this.scoringAgentManager = scoringAgentManager;
     }
+
+    public GradebookJobManager getJobManager() {
+        return this.jobManager;
+    }
+    public void setJobManager(final GradebookJobManager jobManager) {
+        this.jobManager = jobManager;
+    }
+
+    public UserDisplayNameCache getUserDisplayNameCache() {
+        return this.userDisplayNameCache;
+    }
+    public void setUserDisplayNameCache(final UserDisplayNameCache userDisplayNameCache) {
+        this.userDisplayNameCache = userDisplayNameCache;
+    }
 }
@@ -42,7 +42,9 @@ import org.sakaiproject.tool.cover.SessionManager;
 import org.sakaiproject.tool.gradebook.Category;
 import org.sakaiproject.tool.gradebook.GradeMapping;
 import org.sakaiproject.tool.gradebook.Gradebook;
+import org.sakaiproject.tool.gradebook.business.GradebookJob;
 import org.sakaiproject.tool.gradebook.business.GradebookManager;
+import org.sakaiproject.tool.gradebook.business.GradebookJobManager;
 import org.sakaiproject.tool.gradebook.business.GradebookScoringAgentManager;
 import org.sakaiproject.tool.gradebook.facades.Authn;
 import org.sakaiproject.tool.gradebook.jsf.FacesUtil;
@@ -169,6 +171,26 @@ public abstract class GradebookDependentBean extends InitializableBean {
 		return getGradebookBean().getScoringAgentManager();
 	}
 
+	public GradebookJobManager getJobManager() {
+		return getGradebookBean().getJobManager();
+	}
+
+	/**
+	 * Rebuilds the students' grade snapshots in the background, after a change that
+	 * is about to send them to the gradebook, such as releasing grades.
+	 */
+	protected void buildStudentGradeSnapshots() {
+		final GradebookJob latestJob = getJobManager().getLatestJob(getGradebookUid(), GradebookJobManager.TYPE_STUDENT_SNAPSHOTS);
+		if (latestJob != null && GradebookJob.STATE_QUEUED.equals(latestJob.getState())) {
+			// still to start, so it will see this change too
+			return;
+		}
+		final Long gradebookId = getGradebookId();
+		final GradebookManager gradebookManager = getGradebookManager();
+		getJobManager().submitJob(getGradebookUid(), GradebookJobManager.TYPE_STUDENT_SNAPSHOTS,
+				progress -> gradebookManager.buildStudentGradeSnapshots(gradebookId, progress));
+	}
+
 	// Because these methods are referred to inside "rendered" tag attributes,
 	// JSF will call them multiple times in every request. To cut back on
 	// business logic traffic, cache them in request scope. They need to be
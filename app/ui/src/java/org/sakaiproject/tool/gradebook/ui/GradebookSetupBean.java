@@ -396,6 +396,7 @@ public class GradebookSetupBean extends GradebookDependentBean implements Serial
 			}
 
 			getGradebookManager().updateGradebook(this.localGradebook);
+			buildStudentGradeSnapshots();
 			reset();
 
 			FacesUtil.addRedirectSafeMessage(getLocalizedString("gb_save_msg"));
@@ -640,6 +641,7 @@ public class GradebookSetupBean extends GradebookDependentBean implements Serial
 		}
 
 		getGradebookManager().updateGradebook(this.localGradebook);
+		buildStudentGradeSnapshots();
 
 		FacesUtil.addRedirectSafeMessage(getLocalizedString("gb_save_msg"));
 		reset();
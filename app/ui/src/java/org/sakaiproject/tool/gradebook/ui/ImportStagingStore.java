@@ -0,0 +1,171 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.ui;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.sakaiproject.component.cover.ServerConfigurationService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the rows of spreadsheet imports between the upload, preview and save steps
+ * in compressed files on local disk, so that the view state of the import pages
+ * only carries an import id rather than the rows themselves.
+ *
+ * Each import belongs to an owner, the user and gradebook that uploaded it, and is
+ * only handed back to that owner. Imports are discarded by the import pages once
+ * finished or cancelled; those abandoned are removed once older than the
+ * gradebook.import.staging.expiry property, in minutes, as further imports are
+ * staged. The files are placed in the gradebook.import.staging.dir directory,
+ * by default under the system temporary directory.
+ */
+@Slf4j
+final class ImportStagingStore {
+
+	private static final int FORMAT = 0x47424931;
+	private static final int DEFAULT_EXPIRY_MINUTES = 120;
+	private static final String SUFFIX = ".import.gz";
+	private static final Pattern IMPORT_ID = Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
+	private ImportStagingStore() {
+	}
+
+	/**
+	 * @param owner identifies who may load the rows back
+	 * @param rows the rows, each a list of string values or nulls
+	 * @return the import id to load the rows by
+	 */
+	static String stage(final String owner, final List<List<String>> rows) throws IOException {
+		final File dir = getDirectory();
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Could not create the import staging directory " + dir);
+		}
+		removeExpired(dir);
+
+		final String importId = UUID.randomUUID().toString();
+		final File file = new File(dir, importId + SUFFIX);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))))) {
+			out.writeInt(FORMAT);
+			out.writeUTF(owner);
+			out.writeInt(rows.size());
+			for (final List<String> row : rows) {
+				out.writeInt(row.size());
+				for (final String value : row) {
+					if (value == null) {
+						out.writeInt(-1);
+					} else {
+						final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+						out.writeInt(bytes.length);
+						out.write(bytes);
+					}
+				}
+			}
+		} catch (final IOException e) {
+			file.delete();
+			throw e;
+		}
+		return importId;
+	}
+
+	/**
+	 * @return the rows of the import, or null if the import was discarded, has expired, or belongs to another owner
+	 */
+	static List<List<String>> load(final String importId, final String owner) throws IOException {
+		final File file = getFile(importId);
+		if (file == null || !file.isFile()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+			if (in.readInt() != FORMAT || !in.readUTF().equals(owner)) {
+				log.warn("Import " + importId + " was not staged for " + owner);
+				return null;
+			}
+			final int rowCount = in.readInt();
+			final List<List<String>> rows = new ArrayList<>(rowCount);
+			for (int i = 0; i < rowCount; i++) {
+				final int size = in.readInt();
+				final List<String> row = new ArrayList<>(size);
+				for (int j = 0; j < size; j++) {
+					final int length = in.readInt();
+					if (length < 0) {
+						row.add(null);
+					} else {
+						final byte[] bytes = new byte[length];
+						in.readFully(bytes);
+						row.add(new String(bytes, StandardCharsets.UTF_8));
+					}
+				}
+				rows.add(row);
+			}
+			return rows;
+		}
+	}
+
+	/**
+	 * Removes the import's rows, if still staged.
+	 */
+	static void discard(final String importId) {
+		final File file = getFile(importId);
+		if (file != null && file.exists() && !file.delete()) {
+			log.warn("Could not remove staged import " + file);
+		}
+	}
+
+	/**
+	 * @return the import's file, or null if the id isn't one this store hands out
+	 */
+	private static File getFile(final String importId) {
+		if (importId == null || !IMPORT_ID.matcher(importId).matches()) {
+			return null;
+		}
+		return new File(getDirectory(), importId + SUFFIX);
+	}
+
+	private static File getDirectory() {
+		return new File(ServerConfigurationService.getString("gradebook.import.staging.dir",
+				new File(System.getProperty("java.io.tmpdir"), "gradebook-import-staging").getPath()));
+	}
+
+	private static void removeExpired(final File dir) {
+		final long expiry = ServerConfigurationService.getInt("gradebook.import.staging.expiry", DEFAULT_EXPIRY_MINUTES) * 60000L;
+		final long cutoff = System.currentTimeMillis() - expiry;
+		final File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+		if (files == null) {
+			return;
+		}
+		for (final File file : files) {
+			if (file.lastModified() < cutoff && !file.delete()) {
+				log.warn("Could not remove expired staged import " + file);
+			}
+		}
+	}
+}
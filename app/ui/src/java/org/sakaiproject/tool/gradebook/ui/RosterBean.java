@@ -20,15 +20,15 @@ import java.io.Serializable;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import javax.faces.application.Application;
 import javax.faces.component.UIColumn;
@@ -43,10 +43,6 @@ import javax.faces.event.ActionEvent;
 import org.apache.myfaces.component.html.ext.HtmlDataTable;
 import org.apache.myfaces.custom.sortheader.HtmlCommandSortHeader;
 import org.sakaiproject.component.cover.ServerConfigurationService;
-import org.sakaiproject.jsf.spreadsheet.SpreadsheetDataFileWriterCsv;
-import org.sakaiproject.jsf.spreadsheet.SpreadsheetDataFileWriterPdf;
-import org.sakaiproject.jsf.spreadsheet.SpreadsheetDataFileWriterXls;
-import org.sakaiproject.jsf.spreadsheet.SpreadsheetUtil;
 import org.sakaiproject.section.api.coursemanagement.EnrollmentRecord;
 import org.sakaiproject.section.api.coursemanagement.User;
 import org.sakaiproject.service.gradebook.shared.GradebookService;
@@ -57,6 +53,8 @@ import org.sakaiproject.tool.gradebook.CourseGrade;
 import org.sakaiproject.tool.gradebook.CourseGradeRecord;
 import org.sakaiproject.tool.gradebook.GradableObject;
 import org.sakaiproject.tool.gradebook.GradebookAssignment;
+import org.sakaiproject.tool.gradebook.business.RosterGradeGrid;
+import org.sakaiproject.tool.gradebook.business.RosterSortKeys;
 import org.sakaiproject.tool.gradebook.jsf.AssignmentPointsConverter;
 import org.sakaiproject.tool.gradebook.jsf.CategoryPointsConverter;
 import org.sakaiproject.tool.gradebook.jsf.FacesUtil;
@@ -160,7 +158,7 @@ public class RosterBean extends EnrollmentTableBean implements Serializable, Pag
 
 	// Controller fields - transient.
 	private transient List studentRows;
-	private transient Map gradeRecordMap;
+	private transient RosterGradeGrid gradeRecordGrid;
 	private transient Map categoryResultMap;
 
 	public class StudentRow implements Serializable {
@@ -183,7 +181,7 @@ public class RosterBean extends EnrollmentTableBean implements Serializable, Pag
 		}
 
 		public Map getScores() {
-			return (Map)RosterBean.this.gradeRecordMap.get(this.enrollment.getUser().getUserUid());
+			return RosterBean.this.gradeRecordGrid.getRow(this.enrollment.getUser().getUserUid());
 		}
 
 		public Map getCategoryResults() {
@@ -324,7 +322,7 @@ public class RosterBean extends EnrollmentTableBean implements Serializable, Pag
         final Map studentIdItemIdFunctionMap = new HashMap();
 
         // get all of the items included in the item --> function map for each viewable enrollee
-		final List viewableAssignmentIds = new ArrayList();
+		final Set viewableAssignmentIds = new HashSet();
         for (final Iterator enrIter = this.enrollmentMap.keySet().iterator(); enrIter.hasNext();) {
         	final EnrollmentRecord enr = (EnrollmentRecord) enrIter.next();
         	if (enr != null) {
@@ -363,7 +361,6 @@ public class RosterBean extends EnrollmentTableBean implements Serializable, Pag
         }
 
         final List assignments = viewableAssignmentList;
-		List gradeRecords = getGradebookManager().getAllAssignmentGradeRecordsConverted(getGradebookId(), new ArrayList(studentIdEnrRecMap.keySet()));
 
 		if (!getCategoriesEnabled()) {
 			final int unassignedAssignmentCount = assignments.size();
@@ -372,156 +369,222 @@ public class RosterBean extends EnrollmentTableBean implements Serializable, Pag
 			}
 		}
 
-		this.workingEnrollments = new ArrayList(this.enrollmentMap.keySet());
+		if (isEnrollmentSort()) {
+			// the enrollment map already holds just the current page
+			this.workingEnrollments = new ArrayList(this.enrollmentMap.keySet());
+		} else {
+			// Need to sort and page based on a scores column. Order everyone by that column alone,
+			// then load and calculate the rest of the roster for the current page only.
+			this.workingEnrollments = getScoreSortedPage(getSortColumn(),
+					studentIdEnrRecMap, studentIdItemIdFunctionMap, allAssignments, categories, courseGrade);
+			studentIdEnrRecMap.clear();
+			final Map pageItemIdFunctionMap = new HashMap();
+			for (final Iterator iter = this.workingEnrollments.iterator(); iter.hasNext();) {
+				final EnrollmentRecord enr = (EnrollmentRecord) iter.next();
+				final String studentId = enr.getUser().getUserUid();
+				studentIdEnrRecMap.put(studentId, enr);
+				pageItemIdFunctionMap.put(studentId, studentIdItemIdFunctionMap.get(studentId));
+			}
+			studentIdItemIdFunctionMap.clear();
+			studentIdItemIdFunctionMap.putAll(pageItemIdFunctionMap);
+			if (log.isDebugEnabled()) {
+				log.debug("init - building " + studentIdEnrRecMap.size() + " of " + this.enrollmentMap.size() + " roster rows");
+			}
+		}
+
+		final List gradeRecords = getGradebookManager().getAllAssignmentGradeRecordsConverted(getGradebookId(), new ArrayList(studentIdEnrRecMap.keySet()));
 
-        this.gradeRecordMap = new HashMap();
+		final List<Long> itemIds = new ArrayList<Long>(allAssignments.size() + 1);
+		for (final GradebookAssignment assignment : allAssignments) {
+			itemIds.add(assignment.getId());
+		}
+		if (courseGrade != null) {
+			itemIds.add(courseGrade.getId());
+		}
+        this.gradeRecordGrid = new RosterGradeGrid(studentIdEnrRecMap.keySet(), itemIds);
         if (!isUserAbleToGradeAll() && isUserHasGraderPermissions()) {
         	// first, add dummy grade records for all of the missing "unviewable" grade records
-        	// this will allow us to display grade entries that are not viewable differently
-        	// than null grade records
-        	for (final Iterator studentIter = studentIdItemIdFunctionMap.keySet().iterator(); studentIter.hasNext();) {
-        		final String studentId = (String)studentIter.next();
-        		if (studentId != null) {
-        			final Map itemIdFunctionMap = (Map)studentIdItemIdFunctionMap.get(studentId);
-        			for (final Object obj : allAssignments) {
-        				if (obj instanceof GradebookAssignment){
-        					final GradebookAssignment assignment = (GradebookAssignment) obj;
-        					if (assignment != null) {
-        						final Long itemId = assignment.getId();
-        						if (itemIdFunctionMap == null || itemIdFunctionMap.get(itemId) == null){
-        							final AssignmentGradeRecord agr = new AssignmentGradeRecord(assignment, studentId, null);
-        							gradeRecords.add(agr);
-        						}
-        					}
-        				}
-        			}
-        		}
-        	}
+        	addUnviewableGradeRecords(gradeRecords, studentIdItemIdFunctionMap, allAssignments);
 
-        	getGradebookManager().addToGradeRecordMap(this.gradeRecordMap, gradeRecords, studentIdItemIdFunctionMap);
+        	getGradebookManager().addToGradeRecordGrid(this.gradeRecordGrid, gradeRecords, studentIdItemIdFunctionMap);
 
 
         } else {
-        	getGradebookManager().addToGradeRecordMap(this.gradeRecordMap, gradeRecords);
+        	getGradebookManager().addToGradeRecordGrid(this.gradeRecordGrid, gradeRecords);
         }
 		if (log.isDebugEnabled()) {
-			log.debug("init - gradeRecordMap.keySet().size() = " + this.gradeRecordMap.keySet().size());
-		}
-
-		if (!isEnrollmentSort() && !isUserAbleToGradeAll() && isUserHasGraderPermissions()) {
-			// we need to re-sort these records b/c some may actually be null based upon permissions.
-			// retrieve updated grade recs from gradeRecordMap
-			final List updatedGradeRecs = new ArrayList();
-			for (final Iterator iter = this.gradeRecordMap.keySet().iterator(); iter.hasNext();) {
-				final String studentId = (String)iter.next();
-				final Map itemIdGradeRecMap = (Map)this.gradeRecordMap.get(studentId);
-				if (!itemIdGradeRecMap.isEmpty()) {
-					updatedGradeRecs.addAll(itemIdGradeRecMap.values());
-				}
-			}
-			Collections.sort(updatedGradeRecs, AssignmentGradeRecord.calcComparator);
-			gradeRecords = updatedGradeRecs;
+			log.debug("init - gradeRecordGrid " + this.gradeRecordGrid.getStudentCount() + " x " + this.gradeRecordGrid.getItemCount());
 		}
 
 		// only display course grade if user has "grade all" perm
 		if (isUserAbleToGradeAll()) {
-			final List courseGradeRecords = getGradebookManager().getPointsEarnedCourseGradeRecords(courseGrade, studentIdEnrRecMap.keySet(), assignments, this.gradeRecordMap);
-			Collections.sort(courseGradeRecords, CourseGradeRecord.calcComparator);
-	        getGradebookManager().addToGradeRecordMap(this.gradeRecordMap, courseGradeRecords);
-	        gradeRecords.addAll(courseGradeRecords);
+			final List courseGradeRecords = getGradebookManager().getPointsEarnedCourseGradeRecords(courseGrade, studentIdEnrRecMap.keySet(), assignments, this.gradeRecordGrid.asMap());
+	        getGradebookManager().addToGradeRecordGrid(this.gradeRecordGrid, courseGradeRecords);
 		}
 
         //do category results
         this.categoryResultMap = new HashMap();
-        getGradebookManager().addToCategoryResultMap(this.categoryResultMap, categories, this.gradeRecordMap, studentIdEnrRecMap);
+        getGradebookManager().addToCategoryResultMap(this.categoryResultMap, categories, this.gradeRecordGrid, studentIdEnrRecMap);
         if (log.isDebugEnabled()) {
 			log.debug("init - categoryResultMap.keySet().size() = " + this.categoryResultMap.keySet().size());
 		}
 
-        if (!isEnrollmentSort()) {
-        	// Need to sort and page based on a scores column.
-        	final String sortColumn = getSortColumn();
-        	final List scoreSortedEnrollments = new ArrayList();
-			for(final Iterator iter = gradeRecords.iterator(); iter.hasNext();) {
-				final AbstractGradeRecord agr = (AbstractGradeRecord)iter.next();
-				if(getColumnHeader(agr.getGradableObject()).equals(sortColumn)) {
-					scoreSortedEnrollments.add(studentIdEnrRecMap.get(agr.getStudentId()));
+		this.studentRows = new ArrayList(this.workingEnrollments.size());
+        for (final Iterator iter = this.workingEnrollments.iterator(); iter.hasNext(); ) {
+            final EnrollmentRecord enrollment = (EnrollmentRecord)iter.next();
+            this.studentRows.add(new StudentRow(enrollment));
+        }
+
+        // set breadcrumb page for navigation
+//		SessionManager.getCurrentToolSession().setAttribute("breadcrumbPage", "roster");
+
+	}
+
+	/**
+	 * Picks the current page of the enrollments ordered by a score column: students with
+	 * no score for it first, followed by the others in score order. The order comes from
+	 * the column's sort keys, which the gradebook manager keeps for assignment and category
+	 * columns; only graders with limited permissions get keys worked out per request, with
+	 * the scores they may not view hidden.
+	 *
+	 * @return the enrollments of the page, in sort order
+	 */
+	private List getScoreSortedPage(final String sortColumn, final Map studentIdEnrRecMap, final Map studentIdItemIdFunctionMap,
+			final List<GradebookAssignment> allAssignments, final List<Category> categories, final CourseGrade courseGrade) {
+		final List workingEnrollments = new ArrayList(this.enrollmentMap.keySet());
+		final boolean graderPermissions = !isUserAbleToGradeAll() && isUserHasGraderPermissions();
+		RosterSortKeys sortKeys = new RosterSortKeys.Builder(true).build();
+
+		if (sortColumn.startsWith(CATEGORY_COLUMN_PREFIX)) {
+			Category sortCategory = null;
+			try {
+				final Long sortColumnId = Long.parseLong(sortColumn.substring(CATEGORY_COLUMN_PREFIX.length()));
+				for (final Category category : categories) {
+					if (sortColumnId.equals(category.getId())) {
+						sortCategory = category;
+					}
 				}
+			} catch (final NumberFormatException e) {
 			}
-
-			//In order to order by category score, first create 2 lists: students who have no score (null)
-			//and a map of student Id's and their category score.
-			//Next, sort the existing score then and put the sorted students in the scoreSortedEnrollments list
-			if(sortColumn.startsWith(CATEGORY_COLUMN_PREFIX) && sortColumn.length() > CATEGORY_COLUMN_PREFIX.length()){
-				final Map<String, Double> studentCatScore = new HashMap<String, Double>();
-				final String sortColumnIdStr = sortColumn.substring(CATEGORY_COLUMN_PREFIX.length());
-				Long sortColumnId = null;
-				try{
-					sortColumnId = Long.parseLong(sortColumnIdStr);
-				}catch (final NumberFormatException e) {
+			if (sortCategory != null && sortCategory.getAssignmentList() != null) {
+				if (graderPermissions) {
+					sortKeys = getGraderCategorySortKeys(sortCategory, studentIdEnrRecMap, studentIdItemIdFunctionMap, allAssignments);
+				} else {
+					sortKeys = getGradebookManager().getCategorySortKeys(sortCategory, studentIdEnrRecMap.keySet());
 				}
-
-				final List emptyCatList = new ArrayList();
-				if(sortColumnId != null){
-					for(final Iterator iterator = this.categoryResultMap.entrySet().iterator(); iterator.hasNext();){
-						final Entry entry = (Entry) iterator.next();
-						final Map catMap = (Map) entry.getValue();
+			}
+		} else if (courseGrade != null && getColumnHeader(courseGrade).equals(sortColumn)) {
+			// course grades are read from the maintained totals, so their ranks serve as keys
+			final List<CourseGradeRecord> courseGradeRecords = getGradebookManager().getPointsEarnedCourseGradeRecords(courseGrade, studentIdEnrRecMap.keySet());
+			Collections.sort(courseGradeRecords, CourseGradeRecord.calcComparator);
+			final RosterSortKeys.Builder builder = new RosterSortKeys.Builder(true);
+			for (int i = 0; i < courseGradeRecords.size(); i++) {
+				builder.add(courseGradeRecords.get(i).getStudentId(), (double) i);
+			}
+			sortKeys = builder.build();
+		} else {
+			GradebookAssignment sortAssignment = null;
+			for (final GradebookAssignment assignment : allAssignments) {
+				if (getColumnHeader(assignment).equals(sortColumn)) {
+					sortAssignment = assignment;
+				}
+			}
+			if (sortAssignment != null) {
+				sortKeys = getGradebookManager().getAssignmentSortKeys(sortAssignment);
+				if (graderPermissions) {
+					// scores the grader may not view sort as null scores, as their records are
+					// emptied and ordered with AssignmentGradeRecord.calcComparator
+					final RosterSortKeys.Builder builder = new RosterSortKeys.Builder(true);
+					for (final Iterator iter = studentIdItemIdFunctionMap.entrySet().iterator(); iter.hasNext();) {
+						final Entry entry = (Entry) iter.next();
 						final String studentId = (String) entry.getKey();
-						if(catMap.containsKey(sortColumnId)){
-							final Map sortCat = (Map) catMap.get(sortColumnId);
-							//break up the students into two categories: scores and no score
-							if(sortCat.containsKey("studentMean") && sortCat.get("studentMean") != null){
-								studentCatScore.put(studentId, (Double) sortCat.get("studentMean"));
-							}else{
-								emptyCatList.add(studentIdEnrRecMap.get(studentId));
-							}
+						final Map itemIdFunctionMap = (Map) entry.getValue();
+						if (studentId == null) {
+							continue;
+						}
+						if (itemIdFunctionMap == null || itemIdFunctionMap.get(sortAssignment.getId()) == null) {
+							builder.add(studentId, null);
+						} else if (sortKeys.hasKey(studentId)) {
+							builder.add(studentId, sortKeys.getKey(studentId));
 						}
 					}
+					sortKeys = builder.build();
 				}
-
-				//sort category scores:
-				final List studentCatEntrySet = new LinkedList(studentCatScore.entrySet());
-				Collections.sort(studentCatEntrySet, new Comparator() {
-			          @Override
-					public int compare(final Object o1, final Object o2) {
-			               return ((Comparable) ((Map.Entry) (o1)).getValue())
-			              .compareTo(((Map.Entry) (o2)).getValue());
-			          }
-			     });
-
-
-				//add it to the scoreSortedEnrollments list now that it has been ordered
-				for (final Iterator it = studentCatEntrySet.iterator(); it.hasNext();) {
-					final Map.Entry entry = (Map.Entry)it.next();
-					scoreSortedEnrollments.add(studentIdEnrRecMap.get(entry.getKey()));
-				}
-
-				// remove and re-add the empty score users
-	            this.workingEnrollments.removeAll(emptyCatList);
-
-	            // by adding it back in, they will be in a group together (in order)
-	            this.workingEnrollments.addAll(emptyCatList);
-
 			}
+		}
 
-            // Put enrollments with no scores at the beginning of the final list.
-            this.workingEnrollments.removeAll(scoreSortedEnrollments);
-
-            // Add all sorted enrollments with scores into the final list
-            this.workingEnrollments.addAll(scoreSortedEnrollments);
+		return selectSortedPage(workingEnrollments, sortKeys);
+	}
 
-            this.workingEnrollments = finalizeSortingAndPaging(this.workingEnrollments);
+	/**
+	 * Works out the category sort keys for a grader with limited permissions, hiding the
+	 * scores the grader may not view before the category results are calculated.
+	 */
+	private RosterSortKeys getGraderCategorySortKeys(final Category sortCategory, final Map studentIdEnrRecMap,
+			final Map studentIdItemIdFunctionMap, final List<GradebookAssignment> allAssignments) {
+		final List categoryAssignments = sortCategory.getAssignmentList();
+		final List<Long> itemIds = new ArrayList<Long>(categoryAssignments.size());
+		for (final Iterator iter = categoryAssignments.iterator(); iter.hasNext();) {
+			itemIds.add(((GradebookAssignment) iter.next()).getId());
+		}
+		final RosterGradeGrid categoryGrid = new RosterGradeGrid(studentIdEnrRecMap.keySet(), itemIds);
+		final List gradeRecords = getGradebookManager().getAllAssignmentGradeRecordsConverted(getGradebookId(), new ArrayList(studentIdEnrRecMap.keySet()));
+
+		// students with a record of any item, or with any item hidden, have a (possibly empty)
+		// category result, the others have none and stay with the unscored students
+		final Set studentsWithRecords = new HashSet();
+		for (final Iterator iter = gradeRecords.iterator(); iter.hasNext();) {
+			studentsWithRecords.add(((AbstractGradeRecord) iter.next()).getStudentId());
+		}
+		for (final Iterator iter = studentIdItemIdFunctionMap.entrySet().iterator(); iter.hasNext();) {
+			final Entry entry = (Entry) iter.next();
+			final Map itemIdFunctionMap = (Map) entry.getValue();
+			for (final GradebookAssignment assignment : allAssignments) {
+				if (itemIdFunctionMap == null || itemIdFunctionMap.get(assignment.getId()) == null) {
+					studentsWithRecords.add(entry.getKey());
+					break;
+				}
+			}
 		}
+		addUnviewableGradeRecords(gradeRecords, studentIdItemIdFunctionMap, categoryAssignments);
+		getGradebookManager().addToGradeRecordGrid(categoryGrid, gradeRecords, studentIdItemIdFunctionMap);
 
-		this.studentRows = new ArrayList(this.workingEnrollments.size());
-        for (final Iterator iter = this.workingEnrollments.iterator(); iter.hasNext(); ) {
-            final EnrollmentRecord enrollment = (EnrollmentRecord)iter.next();
-            this.studentRows.add(new StudentRow(enrollment));
-        }
+		final Map categoryResults = new HashMap();
+		getGradebookManager().addToCategoryResultMap(categoryResults, Collections.singletonList(sortCategory), categoryGrid, studentIdEnrRecMap);
 
-        // set breadcrumb page for navigation
-//		SessionManager.getCurrentToolSession().setAttribute("breadcrumbPage", "roster");
+		final RosterSortKeys.Builder builder = new RosterSortKeys.Builder(true);
+		for (final Iterator iter = studentsWithRecords.iterator(); iter.hasNext();) {
+			final String studentId = (String) iter.next();
+			if (!studentIdEnrRecMap.containsKey(studentId)) {
+				continue;
+			}
+			final Map catMap = (Map) categoryResults.get(studentId);
+			final Map sortCat = catMap == null ? null : (Map) catMap.get(sortCategory.getId());
+			builder.add(studentId, sortCat == null ? null : (Double) sortCat.get("studentMean"));
+		}
+		return builder.build();
+	}
 
+	/**
+	 * Adds dummy grade records for the assignments each student's grader may not view, so that
+	 * grade entries that are not viewable are displayed differently than null grade records.
+	 */
+	private void addUnviewableGradeRecords(final List gradeRecords, final Map studentIdItemIdFunctionMap, final List assignments) {
+		for (final Iterator studentIter = studentIdItemIdFunctionMap.keySet().iterator(); studentIter.hasNext();) {
+			final String studentId = (String)studentIter.next();
+			if (studentId != null) {
+				final Map itemIdFunctionMap = (Map)studentIdItemIdFunctionMap.get(studentId);
+				for (final Object obj : assignments) {
+					if (obj instanceof GradebookAssignment){
+						final GradebookAssignment assignment = (GradebookAssignment) obj;
+						final Long itemId = assignment.getId();
+						if (itemIdFunctionMap == null || itemIdFunctionMap.get(itemId) == null){
+							gradeRecords.add(new AssignmentGradeRecord(assignment, studentId, null));
+						}
+					}
+				}
+			}
+		}
 	}
 
 	private String getColumnHeader(final GradableObject gradableObject) {
@@ -827,9 +890,7 @@ public class RosterBean extends EnrollmentTableBean implements Serializable, Pag
 			log.info("exporting gradebook " + getGradebookUid() + " as Excel");
 		}
 		getGradebookBean().postEvent("gradebook.downloadRoster", "/gradebook/" + getGradebookId() + "/" + getAuthzLevel(), false);
-        SpreadsheetUtil.downloadSpreadsheetData(getSpreadsheetData(false, false),
-        		getDownloadFileName(getLocalizedString("export_gradebook_prefix")),
-        		new SpreadsheetDataFileWriterXls());
+        downloadSpreadsheet(false, false, SpreadsheetStreamWriter.newExcelWriter());
     }
 
     public void exportCsvNoCourseGrade(final ActionEvent event){
@@ -837,9 +898,7 @@ public class RosterBean extends EnrollmentTableBean implements Serializable, Pag
 			log.info("exporting gradebook " + getGradebookUid() + " as CSV");
 		}
 		getGradebookBean().postEvent("gradebook.downloadRoster", "/gradebook/" + getGradebookId() + "/" + getAuthzLevel(), false);
-        SpreadsheetUtil.downloadSpreadsheetData(getSpreadsheetData(false, true),
-        		getDownloadFileName(getLocalizedString("export_gradebook_prefix")),
-        		new SpreadsheetDataFileWriterCsv());
+        downloadSpreadsheet(false, true, new SpreadsheetStreamWriter.Csv());
     }
 
     public void exportCsv(final ActionEvent event){
@@ -847,15 +906,7 @@ public class RosterBean extends EnrollmentTableBean implements Serializable, Pag
 			log.info("exporting roster as CSV for gradebook " + getGradebookUid());
 		}
 		getGradebookBean().postEvent("gradebook.downloadRoster", "/gradebook/" + getGradebookId() + "/" + getAuthzLevel(), false);
-        if (isUserAbleToGradeAll()) {
-        	SpreadsheetUtil.downloadSpreadsheetData(getSpreadsheetData(true, true),
-        		getDownloadFileName(getLocalizedString("export_gradebook_prefix")),
-        		new SpreadsheetDataFileWriterCsv());
-        } else {
-        	SpreadsheetUtil.downloadSpreadsheetData(getSpreadsheetData(false, true),
-            		getDownloadFileName(getLocalizedString("export_gradebook_prefix")),
-            		new SpreadsheetDataFileWriterCsv());
-        }
+        downloadSpreadsheet(isUserAbleToGradeAll(), true, new SpreadsheetStreamWriter.Csv());
     }
 
     public void exportExcel(final ActionEvent event){
@@ -863,15 +914,7 @@ public class RosterBean extends EnrollmentTableBean implements Serializable, Pag
 			log.info("exporting roster as Excel for gradebook " + getGradebookUid());
 		}
 		getGradebookBean().postEvent("gradebook.downloadRoster", "/gradebook/" + getGradebookId() + "/" + getAuthzLevel(), false);
-        if (isUserAbleToGradeAll()) {
-			SpreadsheetUtil.downloadSpreadsheetData(getSpreadsheetData(true, false),
-					getDownloadFileName(getLocalizedString("export_gradebook_prefix")),
-					new SpreadsheetDataFileWriterXls());
-        } else {
-			SpreadsheetUtil.downloadSpreadsheetData(getSpreadsheetData(false, false),
-            		getDownloadFileName(getLocalizedString("export_gradebook_prefix")),
-            		new SpreadsheetDataFileWriterXls());
-        }
+        downloadSpreadsheet(isUserAbleToGradeAll(), false, SpreadsheetStreamWriter.newExcelWriter());
     }
 
     public void exportPdf(final ActionEvent event){
@@ -879,18 +922,18 @@ public class RosterBean extends EnrollmentTableBean implements Serializable, Pag
 			log.info("exporting roster as Pdf for gradebook " + getGradebookUid());
 		}
 		getGradebookBean().postEvent("gradebook.downloadRoster", "/gradebook/" + getGradebookId() + "/" + getAuthzLevel(), false);
-        if (isUserAbleToGradeAll()) {
-			SpreadsheetUtil.downloadSpreadsheetData(getSpreadsheetData(true, true),
-					getDownloadFileName(getLocalizedString("export_gradebook_prefix")),
-					new SpreadsheetDataFileWriterPdf());
-        } else {
-			SpreadsheetUtil.downloadSpreadsheetData(getSpreadsheetData(false, true),
-            		getDownloadFileName(getLocalizedString("export_gradebook_prefix")),
-            		new SpreadsheetDataFileWriterPdf());
-        }
+        downloadSpreadsheet(isUserAbleToGradeAll(), true, new SpreadsheetStreamWriter.Pdf());
+    }
+
+    /**
+     * Streams the roster export to the response, each row written as soon as it is built.
+     */
+    private void downloadSpreadsheet(final boolean includeCourseGrade, final boolean localizeScores, final SpreadsheetStreamWriter writer) {
+        SpreadsheetStreamWriter.download(sink -> writeSpreadsheetData(includeCourseGrade, localizeScores, sink),
+        		getDownloadFileName(getLocalizedString("export_gradebook_prefix")), writer);
     }
 
-    private List<List<Object>> getSpreadsheetData(boolean includeCourseGrade, final boolean localizeScores) {
+    private void writeSpreadsheetData(boolean includeCourseGrade, final boolean localizeScores, final Consumer<List<Object>> sink) {
     	// Get the full list of filtered enrollments and scores (not just the current page's worth).
     	final Map enrRecItemIdFunctionMap = getWorkingEnrollmentsForAllItems();
     	final List filteredEnrollments = new ArrayList(enrRecItemIdFunctionMap.keySet());
@@ -898,7 +941,7 @@ public class RosterBean extends EnrollmentTableBean implements Serializable, Pag
     	final Set<String> studentUids = new HashSet<String>();
 
     	final Map studentIdItemIdFunctionMap = new HashMap();
-    	final List availableItems = new ArrayList();
+    	final Set availableItems = new HashSet();
     	for (final Iterator iter = filteredEnrollments.iterator(); iter.hasNext(); ) {
     		final EnrollmentRecord enrollment = (EnrollmentRecord)iter.next();
     		final String studentUid = enrollment.getUser().getUserUid();
@@ -912,13 +955,20 @@ public class RosterBean extends EnrollmentTableBean implements Serializable, Pag
     		}
     	}
 
-		final Map filteredGradesMap = new HashMap();
 		final List gradeRecords = getGradebookManager().getAllAssignmentGradeRecordsConverted(getGradebookId(), studentUids);
+		final CourseGrade courseGrade = getGradebookManager().getCourseGrade(getGradebookId());
+
+		final Set<Long> itemIds = new LinkedHashSet<Long>();
+		for (final Iterator iter = gradeRecords.iterator(); iter.hasNext();) {
+			itemIds.add(((AbstractGradeRecord)iter.next()).getGradableObject().getId());
+		}
+		itemIds.add(courseGrade.getId());
+		final RosterGradeGrid filteredGradesGrid = new RosterGradeGrid(studentUids, itemIds);
 
 		if (!isUserAbleToGradeAll() && isUserHasGraderPermissions()) {
-			getGradebookManager().addToGradeRecordMap(filteredGradesMap, gradeRecords, studentIdItemIdFunctionMap);
+			getGradebookManager().addToGradeRecordGrid(filteredGradesGrid, gradeRecords, studentIdItemIdFunctionMap);
 		} else {
-			getGradebookManager().addToGradeRecordMap(filteredGradesMap, gradeRecords);
+			getGradebookManager().addToGradeRecordGrid(filteredGradesGrid, gradeRecords);
 		}
 
 		final Category selCategoryView = getSelectedCategory();
@@ -1006,30 +1056,28 @@ public class RosterBean extends EnrollmentTableBean implements Serializable, Pag
 		}
 
 		if (includeCourseGrade) {
-			final CourseGrade courseGrade = getGradebookManager().getCourseGrade(getGradebookId());
-			final List courseGradeRecords = getGradebookManager().getPointsEarnedCourseGradeRecords(courseGrade, studentUids, gradableObjects, filteredGradesMap);
-	        getGradebookManager().addToGradeRecordMap(filteredGradesMap, courseGradeRecords);
+			final List courseGradeRecords = getGradebookManager().getPointsEarnedCourseGradeRecords(courseGrade, studentUids, gradableObjects, filteredGradesGrid.asMap());
+	        getGradebookManager().addToGradeRecordGrid(filteredGradesGrid, courseGradeRecords);
 	        gradableObjects.add(courseGrade);
 		}
-    	return getSpreadsheetData(filteredEnrollments, filteredGradesMap, gradableObjects, includeCourseGrade, localizeScores);
+    	writeSpreadsheetData(filteredEnrollments, filteredGradesGrid, gradableObjects, includeCourseGrade, localizeScores, sink);
     }
 
     /**
-     * Creates the actual 'spreadsheet' List needed from gradebook objects
+     * Creates the actual 'spreadsheet' rows from gradebook objects, handing each row to the sink as it is built
      * Modified to export without Course Grade column if desired
      * Format:
      * 	Header Row: Student id, Student Name, GradebookAssignment(s) (with [points possible] after title)
      *  Student Rows
      *
      * @param enrollments
-     * @param gradesMap
+     * @param gradesGrid
      * @param gradableObjects
      * @param includeCourseGrade
-     * @return
+     * @param sink receives the rows in order
      */
-    private List<List<Object>> getSpreadsheetData(final List enrollments, final Map gradesMap, final List gradableObjects,
-    												final boolean includeCourseGrade, final boolean localizeScores) {
-    	final List<List<Object>> spreadsheetData = new ArrayList<List<Object>>();
+    private void writeSpreadsheetData(final List enrollments, final RosterGradeGrid gradesGrid, final List gradableObjects,
+    												final boolean includeCourseGrade, final boolean localizeScores, final Consumer<List<Object>> sink) {
 
     	final NumberFormat nf = NumberFormat.getInstance(new ResourceLoader().getLocale());
     	// Build column headers and points possible rows.
@@ -1058,24 +1106,27 @@ public class RosterBean extends EnrollmentTableBean implements Serializable, Pag
 
          	headerRow.add(colName);
         }
-        spreadsheetData.add(headerRow);
+        sink.accept(headerRow);
+
+        // Resolve the columns of the grid once, rather than once per student
+        final int[] gridColumns = new int[gradableObjects.size()];
+        for (int i = 0; i < gridColumns.length; i++) {
+        	gridColumns[i] = gradesGrid.getItemOrdinal(((GradableObject)gradableObjects.get(i)).getId());
+        }
 
         // Build student score rows.
         for (final Object enrollment : enrollments) {
         	final User student = ((EnrollmentRecord)enrollment).getUser();
-        	final String studentUid = student.getUserUid();
-        	final Map studentMap = (Map)gradesMap.get(studentUid);
+        	final int gridRow = gradesGrid.getStudentOrdinal(student.getUserUid());
         	final List<Object> row = new ArrayList<Object>();
         	row.add(student.getDisplayId());
         	row.add(student.getSortName());
-        	for (final Object gradableObject : gradableObjects) {
+        	for (int i = 0; i < gridColumns.length; i++) {
+        		final Object gradableObject = gradableObjects.get(i);
         		Object score = null;
-        		final String letterScore = null;
         		boolean droppedScore = false;
-        		if (studentMap != null) {
-        			final Long gradableObjectId = ((GradableObject)gradableObject).getId();
-
-        			final AbstractGradeRecord gradeRecord = (AbstractGradeRecord)studentMap.get(gradableObjectId);
+        		if (gridRow >= 0 && gridColumns[i] >= 0 && gradesGrid.isViewable(gridRow, gridColumns[i])) {
+        			final AbstractGradeRecord gradeRecord = gradesGrid.getRecord(gridRow, gridColumns[i]);
 
         			if (gradeRecord != null) {
         				if (gradeRecord.isCourseGradeRecord()) {
@@ -1111,15 +1162,13 @@ public class RosterBean extends EnrollmentTableBean implements Serializable, Pag
         				score = nf.format(score);
         			}
         		}
-    			if(droppedScore){
+    			if(droppedScore && score != null){
     				score = score.toString() + " (" + getLocalizedString("export_dropped") + ")";
     			}
         		row.add(score);
         	}
-        	spreadsheetData.add(row);
+        	sink.accept(row);
         }
-
-    	return spreadsheetData;
     }
 
     public String assignmentDetails(){
@@ -0,0 +1,397 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.ui;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.RKRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Reads the first sheet of an uploaded Excel file row by row through POI's event
+ * APIs, rather than loading it as a workbook: the binary records of an .xls file
+ * and the sheet XML of an .xlsx file.
+ *
+ * Cells are handed over typed, text as String and numbers as Double, and null where
+ * the cell is blank or holds anything else. Formula cells give their cached result.
+ * Blank rows are skipped.
+ */
+public final class SpreadsheetImportReader {
+
+	/**
+	 * Receives the rows of the sheet in order, the cells indexed by column.
+	 */
+	public interface RowHandler {
+		void row(List<Object> cells);
+	}
+
+	private SpreadsheetImportReader() {
+	}
+
+	/**
+	 * Reads an Excel 97-2003 (.xls) file.
+	 *
+	 * @throws org.apache.poi.hssf.OldExcelFormatException for Excel 5 files, which POI can't read
+	 */
+	public static void readXls(final InputStream in, final RowHandler handler) throws IOException {
+		try (POIFSFileSystem fs = new POIFSFileSystem(in)) {
+			final HSSFRequest request = new HSSFRequest();
+			final XlsListener listener = new XlsListener(handler);
+			request.addListenerForAllRecords(listener);
+			new HSSFEventFactory().processWorkbookEvents(request, fs);
+			listener.endRow();
+		}
+	}
+
+	/**
+	 * Reads an Excel OOXML (.xlsx) file. The upload is copied to a temporary file so that
+	 * the package can be read without being held in memory.
+	 */
+	public static void readXlsx(final InputStream in, final RowHandler handler) throws IOException {
+		final File file = File.createTempFile("gradebook-import", ".xlsx");
+		try {
+			Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			final OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ);
+			try {
+				final XSSFReader reader = new XSSFReader(pkg);
+				final List<String> sharedStrings = new ArrayList<>();
+				try (InputStream strings = reader.getSharedStringsData()) {
+					// without a shared strings part all text is inline
+					if (strings != null) {
+						parse(strings, new SharedStringsHandler(sharedStrings));
+					}
+				}
+				final Iterator<InputStream> sheets = reader.getSheetsData();
+				if (sheets.hasNext()) {
+					try (InputStream sheet = sheets.next()) {
+						parse(sheet, new SheetHandler(sharedStrings, handler));
+					}
+				}
+			} finally {
+				// closing a read only package would try to save it
+				pkg.revert();
+			}
+		} catch (final OpenXML4JException e) {
+			throw new IOException(e);
+		} finally {
+			Files.deleteIfExists(file.toPath());
+		}
+	}
+
+	private static void parse(final InputStream in, final DefaultHandler handler) throws IOException {
+		try {
+			final SAXParserFactory factory = SAXParserFactory.newInstance();
+			factory.setNamespaceAware(true);
+			factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+			factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+			final XMLReader reader = factory.newSAXParser().getXMLReader();
+			reader.setContentHandler(handler);
+			reader.parse(new InputSource(in));
+		} catch (final ParserConfigurationException | SAXException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private static boolean isBlank(final List<Object> cells) {
+		for (final Object cell : cells) {
+			if (cell != null && !"".equals(cell)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void setCell(final List<Object> cells, final int column, final Object value) {
+		while (cells.size() <= column) {
+			cells.add(null);
+		}
+		cells.set(column, value);
+	}
+
+	/**
+	 * Collects the cell records of the first worksheet. Excel writes them row by row,
+	 * so a row is complete once a record of a later row, or the end of the sheet, is seen.
+	 */
+	private static final class XlsListener implements HSSFListener {
+		private final RowHandler handler;
+		private SSTRecord sharedStrings;
+		private int worksheets;
+		/** nesting of the current substream, as charts embedded in a sheet have their own */
+		private int depth;
+		private int firstSheetDepth;
+		private boolean inFirstSheet;
+		private int rowIndex = -1;
+		private List<Object> cells = new ArrayList<>();
+		/** the formula cell whose string result is in the next record */
+		private FormulaRecord pendingFormula;
+
+		private XlsListener(final RowHandler handler) {
+			this.handler = handler;
+		}
+
+		@Override
+		public void processRecord(final Record record) {
+			switch (record.getSid()) {
+				case BOFRecord.sid:
+					if (((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET && this.worksheets++ == 0) {
+						this.inFirstSheet = true;
+						this.firstSheetDepth = this.depth;
+					}
+					this.depth++;
+					return;
+				case EOFRecord.sid:
+					this.depth--;
+					if (this.inFirstSheet && this.depth == this.firstSheetDepth) {
+						endRow();
+						this.inFirstSheet = false;
+					}
+					return;
+				case SSTRecord.sid:
+					this.sharedStrings = (SSTRecord) record;
+					return;
+				default:
+					break;
+			}
+			if (!this.inFirstSheet) {
+				return;
+			}
+			switch (record.getSid()) {
+				case LabelSSTRecord.sid:
+					final LabelSSTRecord label = (LabelSSTRecord) record;
+					cell(label, this.sharedStrings.getString(label.getSSTIndex()).getString());
+					break;
+				case LabelRecord.sid:
+					cell((LabelRecord) record, ((LabelRecord) record).getValue());
+					break;
+				case NumberRecord.sid:
+					cell((NumberRecord) record, ((NumberRecord) record).getValue());
+					break;
+				case RKRecord.sid:
+					cell((RKRecord) record, ((RKRecord) record).getRKNumber());
+					break;
+				case FormulaRecord.sid:
+					final FormulaRecord formula = (FormulaRecord) record;
+					if (formula.hasCachedResultString()) {
+						this.pendingFormula = formula;
+					} else if (CellType.forInt(formula.getCachedResultType()) == CellType.NUMERIC) {
+						cell(formula, formula.getValue());
+					}
+					break;
+				case StringRecord.sid:
+					if (this.pendingFormula != null) {
+						cell(this.pendingFormula, ((StringRecord) record).getString());
+						this.pendingFormula = null;
+					}
+					break;
+				default:
+					break;
+			}
+		}
+
+		private void cell(final CellValueRecordInterface record, final Object value) {
+			if (record.getRow() != this.rowIndex) {
+				endRow();
+				this.rowIndex = record.getRow();
+			}
+			setCell(this.cells, record.getColumn(), value);
+		}
+
+		private void endRow() {
+			if (!isBlank(this.cells)) {
+				this.handler.row(this.cells);
+				this.cells = new ArrayList<>();
+			} else {
+				this.cells.clear();
+			}
+		}
+	}
+
+	/**
+	 * Reads the text of each string item of the shared strings part, including rich
+	 * text runs and leaving out phonetic runs.
+	 */
+	private static final class SharedStringsHandler extends DefaultHandler {
+		private final List<String> strings;
+		private final StringBuilder text = new StringBuilder();
+		private boolean inText;
+		private boolean inPhonetic;
+
+		private SharedStringsHandler(final List<String> strings) {
+			this.strings = strings;
+		}
+
+		@Override
+		public void startElement(final String uri, final String localName, final String qName, final Attributes attributes) {
+			if ("si".equals(localName)) {
+				this.text.setLength(0);
+			} else if ("rPh".equals(localName)) {
+				this.inPhonetic = true;
+			} else if ("t".equals(localName)) {
+				this.inText = !this.inPhonetic;
+			}
+		}
+
+		@Override
+		public void endElement(final String uri, final String localName, final String qName) {
+			if ("si".equals(localName)) {
+				this.strings.add(this.text.toString());
+			} else if ("rPh".equals(localName)) {
+				this.inPhonetic = false;
+			} else if ("t".equals(localName)) {
+				this.inText = false;
+			}
+		}
+
+		@Override
+		public void characters(final char[] ch, final int start, final int length) {
+			if (this.inText) {
+				this.text.append(ch, start, length);
+			}
+		}
+	}
+
+	/**
+	 * Reads the cells of a worksheet part. A cell's type attribute tells how to take
+	 * its value: an index into the shared strings, inline text, a formula's string
+	 * result, or by default a number.
+	 */
+	private static final class SheetHandler extends DefaultHandler {
+		private final List<String> sharedStrings;
+		private final RowHandler handler;
+		private final StringBuilder value = new StringBuilder();
+		private List<Object> cells = new ArrayList<>();
+		private int column = -1;
+		private String type;
+		private boolean inValue;
+
+		private SheetHandler(final List<String> sharedStrings, final RowHandler handler) {
+			this.sharedStrings = sharedStrings;
+			this.handler = handler;
+		}
+
+		@Override
+		public void startElement(final String uri, final String localName, final String qName, final Attributes attributes) {
+			if ("row".equals(localName)) {
+				this.cells = new ArrayList<>();
+				this.column = -1;
+			} else if ("c".equals(localName)) {
+				final String ref = attributes.getValue("r");
+				this.column = ref == null ? this.column + 1 : columnOf(ref);
+				this.type = attributes.getValue("t");
+				this.value.setLength(0);
+			} else if ("v".equals(localName) || "t".equals(localName) && "inlineStr".equals(this.type)) {
+				this.inValue = true;
+			}
+		}
+
+		@Override
+		public void endElement(final String uri, final String localName, final String qName) {
+			if ("v".equals(localName) || "t".equals(localName)) {
+				this.inValue = false;
+			} else if ("c".equals(localName)) {
+				final Object cell = toCell();
+				if (cell != null) {
+					setCell(this.cells, this.column, cell);
+				}
+			} else if ("row".equals(localName) && !isBlank(this.cells)) {
+				this.handler.row(this.cells);
+			}
+		}
+
+		@Override
+		public void characters(final char[] ch, final int start, final int length) {
+			if (this.inValue) {
+				this.value.append(ch, start, length);
+			}
+		}
+
+		private Object toCell() {
+			if (this.value.length() == 0) {
+				return null;
+			}
+			final String text = this.value.toString();
+			if (this.type == null || "n".equals(this.type)) {
+				try {
+					return Double.valueOf(text);
+				} catch (final NumberFormatException e) {
+					return text;
+				}
+			}
+			switch (this.type) {
+				case "s":
+					final int index = Integer.parseInt(text.trim());
+					return index < this.sharedStrings.size() ? this.sharedStrings.get(index) : null;
+				case "inlineStr":
+				case "str":
+				case "d":
+					return text;
+				default:
+					// booleans and errors
+					return null;
+			}
+		}
+
+		/**
+		 * @return the zero based column of a cell reference such as "AB12"
+		 */
+		private static int columnOf(final String ref) {
+			int column = 0;
+			for (int i = 0; i < ref.length(); i++) {
+				final char c = ref.charAt(i);
+				if (c < 'A' || c > 'Z') {
+					break;
+				}
+				column = column * 26 + (c - 'A' + 1);
+			}
+			return column - 1;
+		}
+	}
+}
@@ -21,7 +21,7 @@ import java.io.Serializable;
 import lombok.extern.slf4j.Slf4j;
 
 import org.sakaiproject.service.gradebook.shared.StaleObjectModificationException;
-import org.sakaiproject.tool.gradebook.Spreadsheet;
+import org.sakaiproject.tool.gradebook.business.SpreadsheetSummary;
 import org.sakaiproject.tool.gradebook.jsf.FacesUtil;
 
 /**
@@ -34,7 +34,7 @@ public class SpreadsheetRemoveBean extends GradebookDependentBean implements Ser
 
     private Long spreadsheetId;
     private boolean removeConfirmed;
-    private Spreadsheet spreadsheet;
+    private SpreadsheetSummary spreadsheet;
     private String pageName;
 
 
@@ -43,7 +43,7 @@ public class SpreadsheetRemoveBean extends GradebookDependentBean implements Ser
         if(log.isDebugEnabled()) log.debug("loading spreadsheetRemove().init()");
         if (spreadsheetId != null) {
             log.debug("spreadsheet id is "+ spreadsheetId);
-            spreadsheet = getGradebookManager().getSpreadsheet(spreadsheetId);
+            spreadsheet = getGradebookManager().getSpreadsheetSummary(spreadsheetId);
             if (spreadsheet == null) {
                 // The assignment might have been removed since this link was set up.
                 if(log.isDebugEnabled()) log.debug("No spreadsheetId=" + spreadsheetId + " in gradebookUid " + getGradebookUid());
@@ -71,11 +71,11 @@ public class SpreadsheetRemoveBean extends GradebookDependentBean implements Ser
         this.removeConfirmed = removeConfirmed;
     }
 
-    public Spreadsheet getSpreadsheet() {
+    public SpreadsheetSummary getSpreadsheet() {
         return spreadsheet;
     }
 
-    public void setSpreadsheet(Spreadsheet spreadsheet) {
+    public void setSpreadsheet(SpreadsheetSummary spreadsheet) {
         this.spreadsheet = spreadsheet;
     }
 
@@ -0,0 +1,378 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.ui;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.faces.context.FacesContext;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.sakaiproject.component.cover.ServerConfigurationService;
+import org.sakaiproject.jsf.spreadsheet.SpreadsheetDataFileWriterPdf;
+import org.sakaiproject.jsf.spreadsheet.SpreadsheetDataFileWriterXls;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Writes spreadsheet downloads row by row as the rows are produced, instead of
+ * collecting the whole spreadsheet as a list first the way
+ * {@link org.sakaiproject.jsf.spreadsheet.SpreadsheetUtil#downloadSpreadsheetData} does.
+ *
+ * CSV goes straight to the response through a buffered writer and Excel through a
+ * streaming XLSX workbook that keeps only a window of rows in memory. Nothing is
+ * written to the response before the first row is produced, so failures loading the
+ * data still end in the usual error page.
+ *
+ * Only those two are bounded in memory. PDF, and Excel when set back to the old XLS
+ * format with gradebook.export.excel.format, are still laid out by the jsf spreadsheet
+ * writers from all the rows at once.
+ *
+ * Instances are single use: create one per download.
+ */
+@Slf4j
+public abstract class SpreadsheetStreamWriter {
+
+	/**
+	 * Produces the rows of a spreadsheet, the header row first.
+	 */
+	public interface RowSource {
+		void writeRows(Consumer<List<Object>> sink);
+	}
+
+	/** the Excel download format, xlsx or the old xls */
+	private static final String EXCEL_FORMAT_PROPERTY = "gradebook.export.excel.format";
+	private static final String EXCEL_FORMAT_XLS = "xls";
+
+	private HttpServletResponse response;
+	private String fileName;
+	private boolean started;
+
+	/**
+	 * @return a writer for Excel downloads in the format set by gradebook.export.excel.format:
+	 * xlsx, the default, streamed with bounded memory, or xls as the gradebook downloaded before,
+	 * which is built in memory
+	 */
+	public static SpreadsheetStreamWriter newExcelWriter() {
+		final String format = ServerConfigurationService.getString(EXCEL_FORMAT_PROPERTY, "xlsx");
+		if (EXCEL_FORMAT_XLS.equalsIgnoreCase(format.trim())) {
+			return new Xls();
+		}
+		return new Xlsx();
+	}
+
+	/**
+	 * Streams the rows of the source to the current faces response as a download and completes the response.
+	 *
+	 * @param fileName the download's file name, without extension
+	 */
+	public static void download(final RowSource rows, final String fileName, final SpreadsheetStreamWriter writer) {
+		final FacesContext faces = FacesContext.getCurrentInstance();
+		final HttpServletResponse response = (HttpServletResponse) faces.getExternalContext().getResponse();
+		writer.response = response;
+		writer.fileName = fileName;
+		boolean complete = false;
+		try {
+			rows.writeRows(row -> {
+				try {
+					if (!writer.started) {
+						writer.start();
+					}
+					writer.writeRow(row);
+				} catch (final IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			if (!writer.started) {
+				writer.start();
+			}
+			writer.finish();
+			complete = true;
+		} catch (final IOException | UncheckedIOException e) {
+			// mostly the client going away mid download
+			log.warn("Failed writing spreadsheet " + fileName + ": " + e.getMessage());
+		} finally {
+			if (!complete) {
+				writer.abort();
+			}
+		}
+		faces.responseComplete();
+	}
+
+	private void start() throws IOException {
+		this.started = true;
+		// the same caching headers SpreadsheetUtil sets, so IE can open the download
+		this.response.reset();
+		this.response.setHeader("Pragma", "public");
+		this.response.setHeader("Cache-Control", "public, must-revalidate, post-check=0, pre-check=0, max-age=0");
+		this.response.setContentType(getContentType());
+		this.response.setHeader("Content-Disposition", getAttachmentHeader(this.fileName + getExtension()));
+		begin(this.response.getOutputStream());
+	}
+
+	private static String getAttachmentHeader(final String fileName) {
+		try {
+			final String encoded = URLEncoder.encode(fileName, "UTF-8").replace("+", "%20");
+			final String fallback = fileName.replaceAll("[^\\x20-\\x7e]|[\"\\\\]", "_");
+			return "attachment; filename=\"" + fallback + "\"; filename*=UTF-8''" + encoded;
+		} catch (final UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	protected abstract String getContentType();
+
+	protected abstract String getExtension();
+
+	/**
+	 * Called once, before the first row, with the response's output stream.
+	 */
+	protected abstract void begin(OutputStream out) throws IOException;
+
+	protected abstract void writeRow(List<Object> row) throws IOException;
+
+	/**
+	 * Called once, after the last row, to complete the file.
+	 */
+	protected abstract void finish() throws IOException;
+
+	/**
+	 * Called instead of {@link #finish()} when the download fails, to release what the writer holds.
+	 */
+	protected void abort() {
+	}
+
+	/**
+	 * Comma separated values, every non null value quoted, in UTF-8 with a byte order mark so Excel
+	 * picks up the encoding. The separator is the csv.separator property.
+	 */
+	public static class Csv extends SpreadsheetStreamWriter {
+		/** rows written between flushes, so the client receives the file in chunks */
+		private static final int FLUSH_ROWS = 500;
+
+		private final String separator = ServerConfigurationService.getString("csv.separator", ",");
+		private Writer writer;
+		private int rowCount;
+
+		@Override
+		protected String getContentType() {
+			return "text/comma-separated-values; charset=UTF-8";
+		}
+
+		@Override
+		protected String getExtension() {
+			return ".csv";
+		}
+
+		@Override
+		protected void begin(final OutputStream out) throws IOException {
+			this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 8192);
+			this.writer.write('\uFEFF');
+		}
+
+		@Override
+		protected void writeRow(final List<Object> row) throws IOException {
+			for (int i = 0; i < row.size(); i++) {
+				if (i > 0) {
+					this.writer.write(this.separator);
+				}
+				final Object value = row.get(i);
+				if (value != null) {
+					this.writer.write('"');
+					this.writer.write(value.toString().replace("\"", "\"\""));
+					this.writer.write('"');
+				}
+			}
+			this.writer.write('\n');
+			if (++this.rowCount % FLUSH_ROWS == 0) {
+				this.writer.flush();
+			}
+		}
+
+		@Override
+		protected void finish() throws IOException {
+			this.writer.close();
+		}
+	}
+
+	/**
+	 * An Excel workbook of one sheet, numbers as numeric cells and the header row in bold. Rows are
+	 * written through POI's streaming workbook, which flushes all but a window of rows to a
+	 * compressed temporary file, and the workbook is copied to the response once complete.
+	 */
+	public static class Xlsx extends SpreadsheetStreamWriter {
+		/** rows kept in memory */
+		private static final int ROW_WINDOW = 100;
+
+		private OutputStream out;
+		private SXSSFWorkbook workbook;
+		private Sheet sheet;
+		private CellStyle headerStyle;
+		private int rowCount;
+
+		@Override
+		protected String getContentType() {
+			return "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+		}
+
+		@Override
+		protected String getExtension() {
+			return ".xlsx";
+		}
+
+		@Override
+		protected void begin(final OutputStream out) {
+			this.out = out;
+			this.workbook = new SXSSFWorkbook(ROW_WINDOW);
+			this.workbook.setCompressTempFiles(true);
+			this.sheet = this.workbook.createSheet();
+			final Font bold = this.workbook.createFont();
+			bold.setBold(true);
+			this.headerStyle = this.workbook.createCellStyle();
+			this.headerStyle.setFont(bold);
+		}
+
+		@Override
+		protected void writeRow(final List<Object> row) {
+			final Row sheetRow = this.sheet.createRow(this.rowCount);
+			for (int i = 0; i < row.size(); i++) {
+				final Object value = row.get(i);
+				if (value == null) {
+					continue;
+				}
+				final Cell cell = sheetRow.createCell(i);
+				if (value instanceof Number) {
+					cell.setCellValue(((Number) value).doubleValue());
+				} else {
+					cell.setCellValue(value.toString());
+				}
+				if (this.rowCount == 0) {
+					cell.setCellStyle(this.headerStyle);
+				}
+			}
+			this.rowCount++;
+		}
+
+		@Override
+		protected void finish() throws IOException {
+			try {
+				this.workbook.write(this.out);
+				this.out.flush();
+			} finally {
+				abort();
+			}
+		}
+
+		@Override
+		protected void abort() {
+			if (this.workbook != null) {
+				// removes the temporary files
+				this.workbook.dispose();
+				this.workbook = null;
+			}
+		}
+	}
+
+	/**
+	 * Formats the jsf spreadsheet writers lay out from the whole table at once: the rows are
+	 * collected and handed over when complete, so these downloads are not bounded in memory
+	 * and grow with the roster like they did before streaming.
+	 */
+	private abstract static class Collected extends SpreadsheetStreamWriter {
+		private final List<List<Object>> rows = new ArrayList<>();
+
+		@Override
+		protected void begin(final OutputStream out) {
+			// the jsf writer opens the response itself
+		}
+
+		@Override
+		protected void writeRow(final List<Object> row) {
+			this.rows.add(row);
+		}
+
+		protected List<List<Object>> getRows() {
+			return this.rows;
+		}
+	}
+
+	/**
+	 * PDF through the jsf spreadsheet writer. PDF exports are meant for printing, and the writer
+	 * has no way to lay out a page at a time, so their rows are still all held in memory.
+	 */
+	public static class Pdf extends Collected {
+		@Override
+		protected String getContentType() {
+			return "application/pdf";
+		}
+
+		@Override
+		protected String getExtension() {
+			return ".pdf";
+		}
+
+		@Override
+		protected void finish() {
+			new SpreadsheetDataFileWriterPdf().writeDataToResponse(getRows(), getFileName(), getResponse());
+		}
+	}
+
+	/**
+	 * The old Excel 97 workbook through the jsf spreadsheet writer, for sites whose users rely on
+	 * .xls downloads. The whole workbook is built in memory.
+	 */
+	public static class Xls extends Collected {
+		@Override
+		protected String getContentType() {
+			return "application/vnd.ms-excel";
+		}
+
+		@Override
+		protected String getExtension() {
+			return ".xls";
+		}
+
+		@Override
+		protected void finish() {
+			new SpreadsheetDataFileWriterXls().writeDataToResponse(getRows(), getFileName(), getResponse());
+		}
+	}
+
+	protected HttpServletResponse getResponse() {
+		return this.response;
+	}
+
+	protected String getFileName() {
+		return this.fileName;
+	}
+}
@@ -17,12 +17,14 @@
 package org.sakaiproject.tool.gradebook.ui;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Serializable;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
+import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -40,17 +42,9 @@ import javax.faces.event.ValueChangeEvent;
 import javax.faces.model.SelectItem;
 import javax.servlet.http.HttpServletRequest;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.myfaces.custom.fileupload.UploadedFile;
 import org.apache.poi.hssf.OldExcelFormatException;
-import org.apache.poi.hssf.usermodel.HSSFCell;
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.apache.poi.ss.usermodel.CellType;
-import org.apache.poi.xssf.usermodel.XSSFCell;
-import org.apache.poi.xssf.usermodel.XSSFRow;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.sakaiproject.component.cover.ComponentManager;
 import org.sakaiproject.component.cover.ServerConfigurationService;
 import org.sakaiproject.content.api.ContentResource;
@@ -72,6 +66,7 @@ import org.sakaiproject.tool.gradebook.Comment;
 import org.sakaiproject.tool.gradebook.Gradebook;
 import org.sakaiproject.tool.gradebook.GradebookAssignment;
 import org.sakaiproject.tool.gradebook.LetterGradePercentMapping;
+import org.sakaiproject.tool.gradebook.business.SpreadsheetSummary;
 import org.sakaiproject.tool.gradebook.jsf.FacesUtil;
 import org.sakaiproject.util.ResourceLoader;
 import org.sakaiproject.util.Validator;
@@ -84,15 +79,19 @@ import lombok.extern.slf4j.Slf4j;
 public class SpreadsheetUploadBean extends GradebookDependentBean implements Serializable {
 
 	private String title;
-	private UploadedFile upFile;
+	private transient UploadedFile upFile;
 	private String pickedFileReference;
 	private String pickedFileDesc;
 	private Spreadsheet spreadsheet;
-	private Map rosterMap;
+	private transient Map rosterMap;
 	private List assignmentList;
-	private List studentRows;
+	// the rows of the import are staged rather than kept in the view state, see stageImport
+	private transient List studentRows;
+	private String importId;
+	private transient List<List<String>> stagedLines;
 	private List assignmentHeaders;
-	private Map selectedAssignment;
+	private transient Map selectedAssignment;
+	private int selectedColumn;
 	private List assignmentColumnSelectItems;
 	private boolean saved = false;
 	private String columnCount;
@@ -100,7 +99,8 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 	private boolean hasUnknownUser;
 	private boolean hasUnknownAssignments;
 	private Long spreadsheetId;
-	private Map scores;
+	private transient List spreadsheets;
+	private transient Map scores;
 	private GradebookAssignment assignment;
 	private Long assignmentId;
 	private Integer selectedCommentsColumnId = 0;
@@ -131,6 +131,9 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 	static final String PICKED_FILE_DESC = "pickedFileDesc";
 	static final String IMPORT_TITLE = "gradebookImportTitle";
 
+	/** the separator of saved spreadsheets, whatever csv.separator is */
+	private static final char SAVED_SEPARATOR = ',';
+
 	public static final String UNASSIGNED_CATEGORY = "unassigned";
 
 	/**
@@ -265,6 +268,9 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 	}
 
 	public Map getRosterMap() {
+		if (this.rosterMap == null) {
+			initializeRosterMap();
+		}
 		return this.rosterMap;
 	}
 
@@ -282,7 +288,24 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 
 	public List getSpreadsheets() {
 		setPageName("spreadsheetListing");
-		return getGradebookManager().getSpreadsheets(getGradebookId());
+		if (this.spreadsheets == null) {
+			this.spreadsheets = getGradebookManager().getSpreadsheets(getGradebookId());
+		}
+		return this.spreadsheets;
+	}
+
+	/**
+	 * @return how many spreadsheets the loading dock holds and the space they take
+	 */
+	public String getSpreadsheetsStorageReport() {
+		long contentSize = 0;
+		long storedSize = 0;
+		for (final Object spreadsheet : getSpreadsheets()) {
+			contentSize += ((SpreadsheetSummary) spreadsheet).getContentSize();
+			storedSize += ((SpreadsheetSummary) spreadsheet).getStoredSize();
+		}
+		return getLocalizedString("loading_dock_storage_report", new String[] { String.valueOf(getSpreadsheets().size()),
+				String.valueOf((storedSize + 1023) / 1024), String.valueOf((contentSize + 1023) / 1024) });
 	}
 
 	public String deleteItem() {
@@ -297,7 +320,18 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 		this.assignmentList = assignmentList;
 	}
 
+	/**
+	 * @return the student rows of the import, loaded from staging after the request that read the spreadsheet, or null if there
+	 *         is no import or it has expired
+	 */
 	public List getStudentRows() {
+		if (this.studentRows == null && getStagedLines() != null) {
+			final List<List<String>> lines = getStagedLines();
+			this.studentRows = new ArrayList(lines.size());
+			for (int i = 1; i < lines.size(); i++) {
+				this.studentRows.add(new SpreadsheetRow(lines.get(i)));
+			}
+		}
 		return this.studentRows;
 	}
 
@@ -370,8 +404,8 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 
 	public String getRowStyles() {
 		final StringBuilder sb = new StringBuilder();
-		if (this.studentRows != null) {
-			for (final Iterator iter = this.studentRows.iterator(); iter.hasNext();) {
+		if (getStudentRows() != null) {
+			for (final Iterator iter = getStudentRows().iterator(); iter.hasNext();) {
 				final SpreadsheetRow row = (SpreadsheetRow) iter.next();
 				if (row.isKnown()) {
 					sb.append("internal,");
@@ -393,7 +427,13 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 		return this.hasUnknownUser;
 	}
 
+	/**
+	 * @return the scores of the column chosen for import by student uid, with the column's title under "GradebookAssignment"
+	 */
 	public Map getScores() {
+		if (this.scores == null && this.selectedColumn > 0 && getStudentRows() != null) {
+			this.scores = getSelectedColumnScores(this.selectedColumn);
+		}
 		return this.scores;
 	}
 
@@ -553,22 +593,27 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 			log.debug("loading viewItem()");
 		}
 
-		final org.sakaiproject.tool.gradebook.Spreadsheet sp = getGradebookManager().getSpreadsheet(this.spreadsheetId);
-		final StringBuilder sb = new StringBuilder();
-		sb.append(sp.getContent());
+		final SpreadsheetSummary sp = getGradebookManager().getSpreadsheetSummary(this.spreadsheetId);
+		final String content = getGradebookManager().getSpreadsheetContent(this.spreadsheetId);
 
 		final List contents = new ArrayList();
-
-		final String lineitems[] = sb.toString().split("\n");
-		for (final String lineitem : lineitems) {
-			if (log.isDebugEnabled()) {
-				log.debug("line item contents \n" + lineitem);
+		try {
+			final CsvTokenizer tokenizer = new CsvTokenizer(new StringReader(StringUtils.defaultString(content)), SAVED_SEPARATOR);
+			final CsvRow row = new CsvRow(getDecimalSeparator());
+			while (tokenizer.readRow(row)) {
+				final List<String> lineitem = row.toList();
+				if (log.isDebugEnabled()) {
+					log.debug("line item contents \n" + lineitem);
+				}
+				contents.add(lineitem);
 			}
-			contents.add(lineitem);
+		} catch (final IOException e) {
+			// not thrown reading a string
+			throw new IllegalStateException(e);
 		}
 
 		if (log.isDebugEnabled()) {
-			log.debug(sp.toString());
+			log.debug("spreadsheet " + sp.getId() + " of " + sp.getContentSize() + " characters");
 		}
 
 		this.spreadsheet = new Spreadsheet();
@@ -583,7 +628,7 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 		//
 		// assignmentHeaders = new ArrayList();
 
-		final SpreadsheetHeader header = new SpreadsheetHeader((String) this.spreadsheet.getLineitems().get(0));
+		final SpreadsheetHeader header = new SpreadsheetHeader((List) this.spreadsheet.getLineitems().get(0));
 		this.assignmentHeaders = header.getHeaderWithoutUser();
 
 		// generate spreadsheet rows
@@ -591,7 +636,7 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 		int rowcount = 0;
 		int unknownusers = 0;
 		while (it.hasNext()) {
-			final String line = (String) it.next();
+			final List line = (List) it.next();
 			if (rowcount > 0) {
 				final SpreadsheetRow row = new SpreadsheetRow(line);
 				this.studentRows.add(row);
@@ -638,6 +683,9 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 			log.debug("assignmentList " + this.assignmentList.size());
 		}
 
+		if (!stageImport((List) this.spreadsheet.getLineitems().get(0))) {
+			return null;
+		}
 		return "spreadsheetPreview";
 	}
 
@@ -797,9 +845,9 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 
 		try {
 			if (isXlsImport) {
-				contents = excelToArray(inputStream);
+				contents = excelToRows(inputStream, false);
 			} else if (isOOXMLimport) {
-				contents = excelOOXMLToArray(inputStream);
+				contents = excelToRows(inputStream, true);
 			} else {
 				contents = csvtoArray(inputStream);
 			}
@@ -834,7 +882,7 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 
 		SpreadsheetHeader header;
 		try {
-			header = new SpreadsheetHeader((String) this.spreadsheet.getLineitems().get(0));
+			header = new SpreadsheetHeader((List) this.spreadsheet.getLineitems().get(0));
 			this.assignmentHeaders = header.getHeaderWithoutUserAndCumulativeGrade();
 		} catch (final IndexOutOfBoundsException ioe) {
 			if (log.isDebugEnabled()) {
@@ -862,7 +910,7 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 		int unknownusers = 0;
 		final int headerCount = this.assignmentHeaders.size();
 		while (it.hasNext()) {
-			final String line = (String) it.next();
+			final List line = (List) it.next();
 			if (rowcount > 0) {
 				final SpreadsheetRow row = new SpreadsheetRow(line);
 
@@ -932,6 +980,9 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 			return null;
 		}
 
+		if (!stageImport((List) this.spreadsheet.getLineitems().get(0))) {
+			return null;
+		}
 		return "spreadsheetVerify";
 	}
 
@@ -1039,9 +1090,9 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 
 		try {
 			if (isXlsImport) {
-				contents = excelToArray(inputStream);
+				contents = excelToRows(inputStream, false);
 			} else if (isOOXMLimport) {
-				contents = excelOOXMLToArray(inputStream);
+				contents = excelToRows(inputStream, true);
 			} else {
 				contents = csvtoArray(inputStream);
 			}
@@ -1081,7 +1132,7 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 
 		SpreadsheetHeader header;
 		try {
-			header = new SpreadsheetHeader((String) this.spreadsheet.getLineitems().get(0));
+			header = new SpreadsheetHeader((List) this.spreadsheet.getLineitems().get(0));
 			this.assignmentHeaders = header.getHeaderWithoutUser();
 		} catch (final IndexOutOfBoundsException ioe) {
 			if (log.isDebugEnabled()) {
@@ -1096,7 +1147,7 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 		int rowcount = 0;
 		int unknownusers = 0;
 		while (it.hasNext()) {
-			final String line = (String) it.next();
+			final List line = (List) it.next();
 			if (rowcount > 0) {
 				final SpreadsheetRow row = new SpreadsheetRow(line);
 				this.studentRows.add(row);
@@ -1148,37 +1199,33 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 			return null;
 		}
 
+		if (!stageImport((List) this.spreadsheet.getLineitems().get(0))) {
+			return null;
+		}
 		return "spreadsheetUploadPreview";
 	}
 
 	/**
-	 * method converts an input stream to an List consist of strings representing a line
+	 * method converts an input stream to an List of rows, each the List of the line's values. The input is read as UTF-8, values
+	 * separated by the csv.separator property; rows of only empty values are skipped.
 	 *
 	 * @param inputStream
 	 * @return contents
 	 */
 	private List csvtoArray(final InputStream inputStream) throws IOException {
-
-		/**
-		 * TODO this well probably be removed
-		 */
-
 		if (log.isDebugEnabled()) {
 			log.debug("csvtoArray()");
 		}
 		final List contents = new ArrayList();
-		final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-		String line;
-		while ((line = reader.readLine()) != null) {
-			// log.debug("contents of line: "+line);
-			if (line.replaceAll(",", "").replaceAll("\"", "").equals("")) {
-				continue;
+		final CsvTokenizer tokenizer = new CsvTokenizer(new InputStreamReader(inputStream, StandardCharsets.UTF_8), getCsvDelimiter().charAt(0));
+		// one row is read into throughout, only the rows kept are copied out of it
+		final CsvRow row = new CsvRow(getDecimalSeparator());
+		while (tokenizer.readRow(row)) {
+			if (!row.isBlank()) {
+				contents.add(row.toList());
 			}
-
-			contents.add(line);
 		}
 		return contents;
-
 	}
 
 	/**
@@ -1188,12 +1235,16 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 	 */
 	public String saveFile() {
 
+		final List contents = getStagedLines();
+		if (contents == null) {
+			FacesUtil.addErrorMessage(getLocalizedString("import_staging_expired"));
+			return "spreadsheetListing";
+		}
 		final StringBuilder sb = new StringBuilder();
-		final List contents = this.spreadsheet.getLineitems();
 		final Iterator it = contents.iterator();
 		while (it.hasNext()) {
-			final String line = (String) it.next();
-			sb.append(line + '\n');
+			appendCsvLine(sb, (List) it.next());
+			sb.append('\n');
 		}
 
 		final String filename = this.spreadsheet.getFilename();
@@ -1214,6 +1265,7 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 			return null;
 		}
 		FacesUtil.addRedirectSafeMessage(getLocalizedString("upload_preview_save_confirmation", new String[] { filename }));
+		discardStagedImport();
 
 		setPageName("spreadsheetListing");
 		return "spreadsheetListing";
@@ -1235,9 +1287,13 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 			log.debug("the selected column is " + selectedColumn);
 		}
 
-		this.selectedAssignment = new HashMap();
+		if (getStudentRows() == null) {
+			FacesUtil.addErrorMessage(getLocalizedString("import_staging_expired"));
+			return "spreadsheetListing";
+		}
 		try {
-			this.selectedAssignment.put("GradebookAssignment", this.assignmentHeaders.get(Integer.parseInt(selectedColumn) - 1));
+			this.selectedAssignment = getSelectedColumnScores(Integer.parseInt(selectedColumn));
+			this.selectedColumn = Integer.parseInt(selectedColumn);
 		} catch (final Exception e) {
 			if (log.isDebugEnabled()) {
 				log.debug("no assignment selected");
@@ -1246,9 +1302,36 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 			return null;
 		}
 
-		final Iterator it = this.studentRows.iterator();
+		this.spreadsheet.setSelectedAssignment(this.selectedAssignment);
+
+		if (this.assignment == null) {
+			this.assignment = new GradebookAssignment();
+			this.assignment.setReleased(true);
+		}
+
+		try {
+			this.scores = this.spreadsheet.getSelectedAssignment();
+			this.assignment.setName((String) this.scores.get("GradebookAssignment"));
+		} catch (final NullPointerException npe) {
+			if (log.isDebugEnabled()) {
+				log.debug("scores not set");
+			}
+		}
+
+		return "spreadsheetImport";
+	}
+
+	/**
+	 * @param selectedColumn the column of the student rows, counting the user id column as 0
+	 * @return the non blank values of the column by the uid of each known student, and the column's title under "GradebookAssignment"
+	 */
+	private Map getSelectedColumnScores(final int selectedColumn) {
+		final Map selected = new HashMap();
+		selected.put("GradebookAssignment", this.assignmentHeaders.get(selectedColumn - 1));
+
+		final Iterator it = getStudentRows().iterator();
 		if (log.isDebugEnabled()) {
-			log.debug("number of student rows " + this.studentRows.size());
+			log.debug("number of student rows " + getStudentRows().size());
 		}
 		int i = 0;
 		while (it.hasNext()) {
@@ -1262,7 +1345,7 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 			String userid = "";
 			final String user = (String) line.get(0);
 			try {
-				userid = ((User) this.rosterMap.get(line.get(0))).getUserUid();
+				userid = ((User) getRosterMap().get(line.get(0))).getUserUid();
 			} catch (final Exception e) {
 				if (log.isDebugEnabled()) {
 					log.debug("user " + user + "is not known to the system");
@@ -1271,47 +1354,74 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 			}
 
 			String points;
-			try {
-				final int index = Integer.parseInt(selectedColumn);
-				if (line.size() > index) {
-					points = (String) line.get(index);
-				} else {
-					log.info("unable to find any points for " + userid + " in spreadsheet");
-					points = "";
-				}
-			} catch (final NumberFormatException e) {
-				log.debug(e.getMessage());
+			if (line.size() > selectedColumn) {
+				points = (String) line.get(selectedColumn);
+			} else {
+				log.info("unable to find any points for " + userid + " in spreadsheet");
 				points = "";
 			}
 			if (log.isDebugEnabled()) {
 				log.debug("user " + user + " userid " + userid + " points " + points);
 			}
 			if (!"".equals(points) && (!"".equals(userid))) {
-				this.selectedAssignment.put(userid, points);
+				selected.put(userid, points);
 			}
 			i++;
 		}
 		if (log.isDebugEnabled()) {
 			log.debug("scores to import " + i);
 		}
+		return selected;
+	}
 
-		this.spreadsheet.setSelectedAssignment(this.selectedAssignment);
-
-		if (this.assignment == null) {
-			this.assignment = new GradebookAssignment();
-			this.assignment.setReleased(true);
+	/**
+	 * Stages the header and the student rows of the import just read, replacing any import staged before, so that the rows are
+	 * not carried in the view state from page to page.
+	 *
+	 * @return false, having added an error message, if the rows couldn't be staged
+	 */
+	private boolean stageImport(final List header) {
+		discardStagedImport();
+		final List<List<String>> lines = new ArrayList<List<String>>(this.studentRows.size() + 1);
+		lines.add(header);
+		for (final Object row : this.studentRows) {
+			lines.add(((SpreadsheetRow) row).getRowcontent());
 		}
-
 		try {
-			this.scores = this.spreadsheet.getSelectedAssignment();
-			this.assignment.setName((String) this.scores.get("GradebookAssignment"));
-		} catch (final NullPointerException npe) {
-			if (log.isDebugEnabled()) {
-				log.debug("scores not set");
+			this.importId = ImportStagingStore.stage(getImportOwner(), lines);
+			this.stagedLines = lines;
+			return true;
+		} catch (final IOException e) {
+			log.error("Could not stage the import of " + lines.size() + " rows for gradebook " + getGradebookUid(), e);
+			FacesUtil.addErrorMessage(getLocalizedString("upload_view_config_error"));
+			return false;
+		}
+	}
+
+	/**
+	 * @return the staged header and student rows of the import, or null if there is no import or it has expired
+	 */
+	private List<List<String>> getStagedLines() {
+		if (this.stagedLines == null && this.importId != null) {
+			try {
+				this.stagedLines = ImportStagingStore.load(this.importId, getImportOwner());
+			} catch (final IOException e) {
+				log.error("Could not load staged import " + this.importId, e);
 			}
 		}
+		return this.stagedLines;
+	}
 
-		return "spreadsheetImport";
+	private void discardStagedImport() {
+		if (this.importId != null) {
+			ImportStagingStore.discard(this.importId);
+			this.importId = null;
+		}
+		this.stagedLines = null;
+	}
+
+	private String getImportOwner() {
+		return getUserUid() + "@" + getGradebookUid();
 	}
 
 	/**
@@ -1331,12 +1441,20 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 			log.debug("importDataAll()");
 		}
 
+		if (getStudentRows() == null) {
+			FacesUtil.addErrorMessage(getLocalizedString("import_staging_expired"));
+			return "spreadsheetAll";
+		}
+
 		// first, verify imported data is valid
 		if (!verifyImportedData(lgpm)) {
 			return "spreadsheetVerify";
 		}
 
-		final List grAssignments = getGradebookManager().getAssignments(getGradebook().getId());
+		final Map<String, GradebookAssignment> assignmentsByName = indexAssignmentsByName(
+				getGradebookManager().getAssignments(getGradebook().getId()));
+		// the existing grades of every column, loaded at the first column of an existing item
+		Map<Long, Map<String, AssignmentGradeRecord>> existingGrades = null;
 		final Iterator assignIter = this.assignmentHeaders.iterator();
 
 		// since the first two columns are user ids and name, skip over
@@ -1376,8 +1494,8 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 
 			index++;
 
-			// Get GradebookAssignment object from assignment name
-			GradebookAssignment assignment = getAssignmentByName(grAssignments, assignmentName);
+			// Get GradebookAssignment object from assignment name, each item matching one column only
+			GradebookAssignment assignment = assignmentsByName.remove(assignmentNameKey(assignmentName));
 			List gradeRecords = new ArrayList();
 
 			// if assignment == null, need to create a new one plus all the grade records
@@ -1398,10 +1516,10 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 					continue;
 				}
 
-				final Iterator it = this.studentRows.iterator();
+				final Iterator it = getStudentRows().iterator();
 
 				if (log.isDebugEnabled()) {
-					log.debug("number of student rows " + this.studentRows.size());
+					log.debug("number of student rows " + getStudentRows().size());
 				}
 				int i = 1;
 
@@ -1415,7 +1533,7 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 					String userid = "";
 					final String user = (String) line.get(0);
 					try {
-						userid = ((User) this.rosterMap.get(user)).getUserUid();
+						userid = ((User) getRosterMap().get(user)).getUserUid();
 					} catch (final Exception e) {
 						if (log.isDebugEnabled()) {
 							log.debug("user " + user + "is not known to the system");
@@ -1464,6 +1582,10 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 
 				gbUpdated = true;
 			} else {
+				if (existingGrades == null) {
+					existingGrades = indexGradeRecords(
+							getGradebookManager().getAllAssignmentGradeRecordsConverted(getGradebookId(), getImportedStudentUids()));
+				}
 				if (!assignment.getPointsPossible().equals(pointsPossible)) {
 					if (assignment.isExternallyMaintained()) {
 						this.externallyMaintainedImportMsg.append(getLocalizedString("import_assignment_externally_maintained_settings",
@@ -1474,10 +1596,16 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 						assignment.setPointsPossible(pointsPossible);
 						getGradebookManager().updateAssignment(assignment);
 						gbUpdated = true;
+						// percentages and letter grades are converted from the points possible, so convert them again
+						existingGrades.remove(assignment.getId());
+						existingGrades.putAll(indexGradeRecords(
+								getGradebookManager().getAssignmentGradeRecordsConverted(assignment, getImportedStudentUids())));
 					}
 				}
 
-				gradeRecords = gradeChanges(assignment, this.studentRows, index + 1, lgpm);
+				final Map<String, AssignmentGradeRecord> assignmentGrades = existingGrades.get(assignment.getId());
+				gradeRecords = gradeChanges(assignment, getStudentRows(), index,
+						assignmentGrades != null ? assignmentGrades : new HashMap<String, AssignmentGradeRecord>(), lgpm);
 
 				if (gradeRecords.size() == 0) {
 					continue; // no changes to current grade record so go to next one
@@ -1493,6 +1621,7 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 
 		// just in case previous attempt had unknown users
 		this.hasUnknownUser = false;
+		discardStagedImport();
 		if (gbUpdated) {
 			if (!this.hasUnknownAssignments) {
 				FacesUtil.addRedirectSafeMessage(getLocalizedString(IMPORT_SUCCESS_STRING));
@@ -1514,7 +1643,8 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 	 *         item, more than one row for the same student
 	 */
 	private boolean verifyImportedData(final LetterGradePercentMapping lgpm) {
-		if (this.studentRows == null || this.studentRows.isEmpty()) {
+		final List studentRows = getStudentRows();
+		if (studentRows == null || studentRows.isEmpty()) {
 			return true;
 		}
 
@@ -1554,8 +1684,8 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 
 		final List<String> uploadedStudents = new ArrayList<String>();
 
-		for (int row = 0; row < this.studentRows.size(); row++) {
-			final SpreadsheetRow scoreRow = (SpreadsheetRow) this.studentRows.get(row);
+		for (int row = 0; row < studentRows.size(); row++) {
+			final SpreadsheetRow scoreRow = (SpreadsheetRow) studentRows.get(row);
 			final List studentScores = scoreRow.getRowcontent();
 
 			// verify that a student doesn't appear more than once in the ss
@@ -1629,52 +1759,28 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 	 * @param assignment The GradebookAssignment object whose grades need to be checked
 	 * @param fromSpreadsheet The rows of grades from the imported spreadsheet
 	 * @param index The column of spreadsheet to check
+	 * @param gbGrades The assignment's current grade records, by student uid
 	 *
 	 * @return List containing AssignmentGradeRecords for those student's grades that have changed
 	 */
 	private List gradeChanges(final GradebookAssignment assignment, final List fromSpreadsheet, final int index,
-			final LetterGradePercentMapping lgpm) {
+			final Map<String, AssignmentGradeRecord> gbGrades, final LetterGradePercentMapping lgpm) {
 		final List updatedGradeRecords = new ArrayList();
-		final List studentUids = new ArrayList();
-		final List studentRowsWithUids = new ArrayList();
 
-		Iterator it = fromSpreadsheet.iterator();
+		final Iterator it = fromSpreadsheet.iterator();
 
+		boolean updatingExternalGrade = false;
 		while (it.hasNext()) {
 			final SpreadsheetRow row = (SpreadsheetRow) it.next();
-			final List line = row.getRowcontent();
-
-			String userid = "";
-			final String user = ((String) line.get(0)).toLowerCase();
-			try {
-				userid = ((User) this.rosterMap.get(user)).getUserUid();
-
-				// create list of uids to get current grades from gradebook
-				studentUids.add(userid);
+			final List aRow = row.getRowcontent();
 
-				// add uid to each row so can check spreadsheet value against currently stored
-				final List linePlus = new ArrayList();
-				linePlus.add(userid);
-				linePlus.addAll(line);
-				studentRowsWithUids.add(linePlus);
-
-			} catch (final Exception e) {
-				// Weirdness. Should be caught when importing, not here
+			// Weirdness. Unknown students should be caught when importing, not here
+			final String userid = row.getUserUid();
+			if (userid == null) {
+				continue;
 			}
-		}
 
-		final List gbGrades = getGradebookManager().getAssignmentGradeRecordsConverted(assignment, studentUids);
-
-		// now do the actual comparison
-		it = studentRowsWithUids.iterator();
-
-		boolean updatingExternalGrade = false;
-		while (it.hasNext()) {
-			final List aRow = (List) it.next();
-
-			final String userid = (String) aRow.get(0);
-
-			AssignmentGradeRecord gr = findGradeRecord(gbGrades, userid);
+			AssignmentGradeRecord gr = gbGrades.get(userid);
 
 			String score = null;
 			if (index < aRow.size()) {
@@ -1788,48 +1894,61 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 	}
 
 	/**
-	 * Finds the AssignmentGradeRecord for userid passed in (if it exists).
-	 *
-	 * @param gbGrades List of AssignmentGradeRecord objects.
-	 * @param userid String of user id to find.
-	 *
-	 * @return AssignmentGradeRecord if it's student id matches id passed in. NULL otherwise.
+	 * @return the uids of the known students of the imported rows
 	 */
-	private AssignmentGradeRecord findGradeRecord(final List gbGrades, final String userid) {
-		final Iterator it = gbGrades.iterator();
-
-		while (it.hasNext()) {
-			final AssignmentGradeRecord agr = (AssignmentGradeRecord) it.next();
-
-			if (agr.getStudentId().equals(userid)) {
-				it.remove(); // for efficiency
-				return agr;
+	private List<String> getImportedStudentUids() {
+		final List<String> studentUids = new ArrayList<String>(getStudentRows().size());
+		for (final Object row : getStudentRows()) {
+			final String userUid = ((SpreadsheetRow) row).getUserUid();
+			if (userUid != null) {
+				studentUids.add(userUid);
 			}
 		}
-
-		return null;
+		return studentUids;
 	}
 
 	/**
-	 * Used to find assignment in gradebook by its name
-	 *
-	 * @param list The list of gradebook assignments
-	 * @param name The String to look for
-	 *
-	 * @return GradebookAssignment object if found, null otherwise
+	 * Indexes AssignmentGradeRecords by assignment id, then by student uid.
 	 */
-	private GradebookAssignment getAssignmentByName(final List assignList, final String name) {
-		for (final Iterator assignIter = assignList.iterator(); assignIter.hasNext();) {
-			final GradebookAssignment assignment = (GradebookAssignment) assignIter.next();
+	private Map<Long, Map<String, AssignmentGradeRecord>> indexGradeRecords(final List gradeRecords) {
+		final Map<Long, Map<String, AssignmentGradeRecord>> index = new HashMap<Long, Map<String, AssignmentGradeRecord>>();
+		for (final Object o : gradeRecords) {
+			final AssignmentGradeRecord agr = (AssignmentGradeRecord) o;
+			Map<String, AssignmentGradeRecord> byStudent = index.get(agr.getAssignment().getId());
+			if (byStudent == null) {
+				byStudent = new HashMap<String, AssignmentGradeRecord>();
+				index.put(agr.getAssignment().getId(), byStudent);
+			}
+			byStudent.put(agr.getStudentId(), agr);
+		}
+		return index;
+	}
 
-			if (assignment.getName().trim().equalsIgnoreCase(name.trim())) {
-				// remove for performance
-				assignIter.remove();
-				return assignment;
+	/**
+	 * Indexes gradebook assignments by {@link #assignmentNameKey(String)} of their names, the first of the list winning
+	 */
+	private Map<String, GradebookAssignment> indexAssignmentsByName(final List assignList) {
+		final Map<String, GradebookAssignment> index = new HashMap<String, GradebookAssignment>();
+		for (final Object o : assignList) {
+			final GradebookAssignment assignment = (GradebookAssignment) o;
+			final String key = assignmentNameKey(assignment.getName());
+			if (!index.containsKey(key)) {
+				index.put(key, assignment);
 			}
 		}
+		return index;
+	}
 
-		return null;
+	/**
+	 * @return a key equal for names that are equal trimmed and ignoring case, the way String.equalsIgnoreCase compares
+	 */
+	private static String assignmentNameKey(final String name) {
+		final String trimmed = name.trim();
+		final StringBuilder key = new StringBuilder(trimmed.length());
+		for (int i = 0; i < trimmed.length(); i++) {
+			key.append(Character.toLowerCase(Character.toUpperCase(trimmed.charAt(i))));
+		}
+		return key.toString();
 	}
 
 	/**
@@ -1840,6 +1959,7 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 	public String processImportAllCancel() {
 		this.hasUnknownUser = false;
 		this.hasUnknownAssignments = false;
+		discardStagedImport();
 		return "spreadsheetAll";
 	}
 
@@ -1853,14 +1973,19 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 			log.debug("first check if all variables are numeric");
 		}
 
-		log.debug("********************" + this.scores);
+		final Map scores = getScores();
+		if (scores == null) {
+			FacesUtil.addErrorMessage(getLocalizedString("import_staging_expired"));
+			return "spreadsheetListing";
+		}
+		log.debug("********************" + scores);
 
 		LetterGradePercentMapping lgpm = new LetterGradePercentMapping();
 		if (getGradeEntryByLetter()) {
 			lgpm = getGradebookManager().getLetterGradePercentMapping(getGradebook());
 		}
 
-		final Iterator iter = this.scores.entrySet().iterator();
+		final Iterator iter = scores.entrySet().iterator();
 		while (iter.hasNext()) {
 			final Map.Entry entry = (Map.Entry) iter.next();
 			if (!entry.getKey().equals("GradebookAssignment")) {
@@ -1931,10 +2056,10 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 
 			log.debug("remove title entry form map");
 
-			this.scores.remove("GradebookAssignment");
+			scores.remove("GradebookAssignment");
 			log.debug("iterate through scores and and save assignment grades");
 
-			final Iterator it = this.scores.entrySet().iterator();
+			final Iterator it = scores.entrySet().iterator();
 			while (it.hasNext()) {
 
 				final Map.Entry entry = (Map.Entry) it.next();
@@ -1971,6 +2096,7 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 			getGradebookManager().updateAssignmentGradesAndComments(this.assignment, gradeRecords, comments);
 			getGradebookBean().postEvent("gradebook.importItem",
 					"/gradebook/" + getGradebookId() + "/" + this.assignment.getName() + "/" + getAuthzLevel(), true);
+			discardStagedImport();
 
 			return "spreadsheetListing";
 
@@ -1992,7 +2118,7 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 	public List createCommentList(final GradebookAssignment assignmentTobeCommented) {
 
 		final List comments = new ArrayList();
-		final Iterator it = this.studentRows.iterator();
+		final Iterator it = getStudentRows().iterator();
 		while (it.hasNext()) {
 			final SpreadsheetRow row = (SpreadsheetRow) it.next();
 			final List line = row.getRowcontent();
@@ -2000,7 +2126,7 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 			String userid = "";
 			final String user = (String) line.get(0);
 			try {
-				userid = ((User) this.rosterMap.get(line.get(0))).getUserUid();
+				userid = ((User) getRosterMap().get(line.get(0))).getUserUid();
 				final String commentText = (String) line.get(this.selectedCommentsColumnId.intValue());
 				if ((!commentText.equals(""))) {
 					final Comment comment = new Comment(userid, commentText, assignmentTobeCommented);
@@ -2057,13 +2183,14 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 		@Setter
 		private String filename;
 
+		// staged with the import, see stageImport
 		@Getter
 		@Setter
-		private List lineitems;
+		private transient List lineitems;
 
 		@Getter
 		@Setter
-		private Map selectedAssignment;
+		private transient Map selectedAssignment;
 
 		public Spreadsheet(final String title, final Date date, final String userId, final String contents) {
 
@@ -2129,13 +2256,11 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 			return head;
 		}
 
-		public SpreadsheetHeader(final String source) {
+		public SpreadsheetHeader(final List source) {
 
 			log.debug("creating header from " + source);
 
-			this.header = new ArrayList();
-			final CSV csv = new CSV();
-			this.header = csv.parse(source);
+			this.header = new ArrayList(source);
 			this.columnCount = this.header.size();
 			this.hasCumulative = this.header.get(this.columnCount - 1).equals("Cumulative");
 		}
@@ -2171,20 +2296,15 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 		@Setter
 		private boolean isKnown;
 
-		public SpreadsheetRow(final String source) {
-
-			// this may be instantiated before SpreadsheetUploadBean is initialized, so make sure
-			// the rosterMap is populated
-			if (SpreadsheetUploadBean.this.rosterMap == null) {
-				initializeRosterMap();
-			}
+		/**
+		 * @param source the values of the row, copied so the row can pad or trim them
+		 */
+		public SpreadsheetRow(final List source) {
 
 			if (log.isDebugEnabled()) {
-				log.debug("creating row from string " + source);
+				log.debug("creating row from " + source);
 			}
-			this.rowcontent = new ArrayList();
-			final CSV csv = new CSV();
-			this.rowcontent = csv.parse(source);
+			this.rowcontent = new ArrayList(source);
 
 			// derive the user information
 			final String userContent = (String) this.rowcontent.get(0);
@@ -2192,9 +2312,9 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 				this.userId = userContent.toLowerCase();
 
 				// check to see if this student is in the roster
-				if (SpreadsheetUploadBean.this.rosterMap.containsKey(this.userId)) {
+				if (SpreadsheetUploadBean.this.getRosterMap().containsKey(this.userId)) {
 					this.isKnown = true;
-					final User user = (User) SpreadsheetUploadBean.this.rosterMap.get(this.userId);
+					final User user = (User) SpreadsheetUploadBean.this.getRosterMap().get(this.userId);
 					this.userDisplayName = user.getDisplayName();
 					this.userUid = user.getUserUid();
 
@@ -2224,218 +2344,49 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 		}
 	}
 
-	// csv class to handle
-
-	/**
-	 * Parse comma-separated values (CSV), a common Windows file format. Sample input: "LU",86.25,"11/4/1998","2:19PM",+4.0625
-	 * <p>
-	 * Inner logic adapted from a C++ original that was Copyright (C) 1999 Lucent Technologies Excerpted from 'The Practice of Programming'
-	 * by Brian W. Kernighan and Rob Pike.
-	 * <p>
-	 * Included by permission of the http://tpop.awl.com/ web site, which says: "You may use this code for any purpose, as long as you leave
-	 * the copyright notice and book citation attached." I have done so.
-	 *
-	 * @author Brian W. Kernighan and Rob Pike (C++ original)
-	 * @author Ian F. Darwin (translation into Java and removal of I/O)
-	 * @author Ben Ballard (rewrote advQuoted to handle '""' and for readability)
-	 */
-	class CSV {
-
-		public static final char DEFAULT_SEP = ',';
-
-		/** Construct a CSV parser, with the default separator (`,'). */
-		public CSV() {
-			this(DEFAULT_SEP);
-		}
-
-		/**
-		 * Construct a CSV parser with a given separator.
-		 *
-		 * @param sep The single char for the separator (not a list of separator characters)
-		 */
-		public CSV(final char sep) {
-			this.fieldSep = sep;
-		}
-
-		/** The fields in the current String */
-		protected List list = new ArrayList();
-
-		/** the separator char for this parser */
-		protected char fieldSep;
-
-		/**
-		 * parse: break the input String into fields
-		 *
-		 * @return java.util.Iterator containing each field from the original as a String, in order.
-		 */
-		public List parse(final String line) {
-			final StringBuilder sb = new StringBuilder();
-			this.list.clear(); // recycle to initial state
-			int i = 0;
-
-			if (line.length() == 0) {
-				this.list.add(line);
-				return this.list;
-			}
-
-			do {
-				sb.setLength(0);
-				if (i < line.length() && line.charAt(i) == '"') {
-					i = advQuoted(line, sb, ++i); // skip quote
-				} else {
-					i = advPlain(line, sb, i);
-				}
-				this.list.add(sb.toString());
-				i++;
-			} while (i < line.length());
-			if (log.isDebugEnabled()) {
-				final StringBuilder logBuffer = new StringBuilder("Parsed " + line + " as: ");
-				for (final Iterator iter = this.list.iterator(); iter.hasNext();) {
-					logBuffer.append(iter.next());
-					if (iter.hasNext()) {
-						logBuffer.append(", ");
-					}
-				}
-				log.debug("Parsed source string " + line + " as " + logBuffer.toString() + ", length=" + this.list.size());
-			}
-			return this.list;
-
-		}
-
-		/** advQuoted: quoted field; return index of next separator */
-		protected int advQuoted(final String s, final StringBuilder sb, final int i) {
-			int j;
-			final int len = s.length();
-			for (j = i; j < len; j++) {
-				if (s.charAt(j) == '"' && j + 1 < len) {
-					if (s.charAt(j + 1) == '"') {
-						j++; // skip escape char
-					} else if (s.charAt(j + 1) == this.fieldSep) { // next delimeter
-						j++; // skip end quotes
-						break;
-					}
-				} else if (s.charAt(j) == '"' && j + 1 == len) { // end quotes at end of line
-					break; // done
-				}
-				sb.append(s.charAt(j)); // regular character.
-			}
-			return j;
-		}
-
-		/** advPlain: unquoted field; return index of next separator */
-		protected int advPlain(final String s, final StringBuilder sb, final int i) {
-			int j;
-
-			j = s.indexOf(this.fieldSep, i); // look for separator
-			if (j == -1) { // none found
-				sb.append(s.substring(i));
-				return s.length();
-			} else {
-				sb.append(s.substring(i, j));
-				return j;
-			}
-		}
-	}
-
 	// ************************ EXCEL file parsing *****************************
 	/**
-	 * method converts an input stream to an List consisting of strings representing a line. The input stream must be for an xls file.
+	 * method converts an input stream to an List of rows, each the List of the row's values. The input stream must be for an xls file,
+	 * or for an xlsx file if ooxml is set. The file is read as a stream of cells rather than loaded as a workbook.
 	 *
 	 * @param inputStream
+	 * @param ooxml
 	 * @return contents
 	 */
-	private List excelToArray(final InputStream inputStreams) throws IOException {
-		final HSSFWorkbook wb = new HSSFWorkbook(inputStreams);
-
-		// Convert an Excel file to csv
-		final HSSFSheet sheet = wb.getSheetAt(0);
-		final List array = new ArrayList();
-		final Iterator it = sheet.rowIterator();
-		while (it.hasNext()) {
-			final HSSFRow row = (HSSFRow) it.next();
-			final String rowAsString = fromHSSFRowtoCSV(row);
-			if (rowAsString.replaceAll(",", "").replaceAll("\"", "").equals("")) {
-				continue;
-			}
-			array.add(fromHSSFRowtoCSV(row));
-		}
-		return array;
-	}
-
-	private String fromHSSFRowtoCSV(final HSSFRow row) {
-		final StringBuffer csvRow = new StringBuffer();
-		final int l = row.getLastCellNum();
-		for (int i = 0; i < l; i++) {
-			final HSSFCell cell = row.getCell((short) i);
-			String cellValue = "";
-			if (cell == null || cell.getCellType() == CellType.BLANK) {
-				cellValue = "";
-			} else if (cell.getCellType() == CellType.STRING) {
-				cellValue = "\"" + cell.getStringCellValue() + "\"";
-			} else if (cell.getCellType() == CellType.NUMERIC) {
-				final double value = cell.getNumericCellValue();
-				cellValue = getNumberFormat().format(value);
-				cellValue = "\"" + cellValue + "\"";
-			}
-
-			csvRow.append(cellValue);
-
-			if (i < l) {
-				csvRow.append(getCsvDelimiter().toCharArray()[0]);
+	private List excelToRows(final InputStream inputStream, final boolean ooxml) throws IOException {
+		final List rows = new ArrayList();
+		final SpreadsheetImportReader.RowHandler handler = cells -> {
+			final List<String> row = new ArrayList<String>(cells.size());
+			for (final Object cell : cells) {
+				if (cell instanceof Double) {
+					row.add(getNumberFormat().format(((Double) cell).doubleValue()));
+				} else {
+					row.add(cell == null ? "" : (String) cell);
+				}
 			}
+			rows.add(row);
+		};
+		if (ooxml) {
+			SpreadsheetImportReader.readXlsx(inputStream, handler);
+		} else {
+			SpreadsheetImportReader.readXls(inputStream, handler);
 		}
-		return csvRow.toString();
-
+		return rows;
 	}
 
 	/**
-	 * Parse newer OOXML Excel Spreadsheets
-	 *
-	 * @param inputStreams
-	 * @return
-	 * @throws IOException
+	 * Appends the values as a line of the CSV format saved spreadsheets are kept in, every value quoted
 	 */
-	private List<String> excelOOXMLToArray(final InputStream inputStreams) throws IOException {
-		final XSSFWorkbook wb = new XSSFWorkbook(inputStreams);
-
-		// Convert an Excel OOXML (.xslx) file to csv
-		final XSSFSheet sheet = wb.getSheetAt(0);
-		final List<String> array = new ArrayList<String>();
-		final Iterator it = sheet.rowIterator();
-		while (it.hasNext()) {
-			final XSSFRow row = (XSSFRow) it.next();
-			final String rowAsString = fromXSSFRowtoCSV(row);
-			if (rowAsString.replaceAll(",", "").replaceAll("\"", "").equals("")) {
-				continue;
-			}
-			array.add(fromXSSFRowtoCSV(row));
-		}
-		return array;
-	}
-
-	private String fromXSSFRowtoCSV(final XSSFRow row) {
-		final StringBuffer csvRow = new StringBuffer();
-		final int l = row.getLastCellNum();
-		for (int i = 0; i < l; i++) {
-			final XSSFCell cell = row.getCell((short) i);
-			String cellValue = "";
-			if (cell == null || cell.getCellType() == CellType.BLANK) {
-				cellValue = "";
-			} else if (cell.getCellType() == CellType.STRING) {
-				cellValue = "\"" + cell.getStringCellValue() + "\"";
-			} else if (cell.getCellType() == CellType.NUMERIC) {
-				final double value = cell.getNumericCellValue();
-				cellValue = getNumberFormat().format(value);
-				cellValue = "\"" + cellValue + "\"";
+	private static void appendCsvLine(final StringBuilder sb, final List values) {
+		for (int i = 0; i < values.size(); i++) {
+			if (i > 0) {
+				sb.append(SAVED_SEPARATOR);
 			}
-
-			csvRow.append(cellValue);
-
-			if (i < l) {
-				csvRow.append(getCsvDelimiter().toCharArray()[0]);
+			final Object value = values.get(i);
+			if (value != null) {
+				sb.append('"').append(value.toString().replace("\"", "\"\"")).append('"');
 			}
 		}
-		return csvRow.toString();
 	}
 
 	/**
@@ -2482,6 +2433,7 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 	public void cancelAndClearSession(final ActionEvent event) {
 		clearImportTitle();
 		clearPickedFile();
+		discardStagedImport();
 	}
 
 	/**
@@ -2615,6 +2567,10 @@ public class SpreadsheetUploadBean extends GradebookDependentBean implements Ser
 		return this.numberFormat;
 	}
 
+	private char getDecimalSeparator() {
+		return DecimalFormatSymbols.getInstance(new ResourceLoader().getLocale()).getDecimalSeparator();
+	}
+
 	public String getDateEntryFormatDescription() {
 		return this.date_entry_format_description;
 	}
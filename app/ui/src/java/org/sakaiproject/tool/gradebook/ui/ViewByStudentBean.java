@@ -40,6 +40,7 @@ import org.sakaiproject.tool.gradebook.GradableObject;
 import org.sakaiproject.tool.gradebook.Gradebook;
 import org.sakaiproject.tool.gradebook.GradebookAssignment;
 import org.sakaiproject.tool.gradebook.GradingEvent;
+import org.sakaiproject.tool.gradebook.business.StudentGradeSnapshot;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -242,8 +243,14 @@ public class ViewByStudentBean extends EnrollmentTableBean implements Serializab
 		// Reset the row styles
 		this.rowStyles = new StringBuilder();
 
+		// Students are served from their grade snapshot, which holds what the live queries below would load.
+		// Instructors may edit the records they are shown, so they always get their own.
+		final StudentGradeSnapshot snapshot = this.isInstructorView ? null
+				: getGradebookManager().getStudentGradeSnapshot(this.gradebook.getId(), this.studentUid);
+
 		// Display course grade if we've been instructed to.
-		final CourseGradeRecord gradeRecord = getGradebookManager().getPointsEarnedCourseGradeRecords(cg, this.studentUid);
+		final CourseGradeRecord gradeRecord = snapshot != null ? makeCourseGradeRecord(cg, snapshot.getCourseGrade())
+				: getGradebookManager().getPointsEarnedCourseGradeRecords(cg, this.studentUid);
 		if (gradeRecord != null) {
 			if (this.courseGradeReleased || this.isInstructorView) {
 				this.courseGradeRecord = gradeRecord;
@@ -254,26 +261,31 @@ public class ViewByStudentBean extends EnrollmentTableBean implements Serializab
 			}
 		}
 
-		final List<AssignmentGradeRecord> studentGradeRecs = getGradebookManager().getStudentGradeRecords(this.gradebook.getId(),
-				this.studentUid);
-		getGradebookManager().applyDropScores(studentGradeRecs);
-
-		final List<GradebookAssignment> assignments = getGradebookManager().getAssignments(this.gradebook.getId());
-		final List<GradebookAssignment> countedAssigns = new ArrayList<GradebookAssignment>();
-		// let's filter the passed assignments to make sure they are all counted
-		if (assignments != null) {
-			for (final GradebookAssignment assign : assignments) {
-				if (assign.isIncludedInCalculations()) {
-					countedAssigns.add(assign);
+		if (snapshot != null) {
+			this.totalPoints = snapshot.getTotalPoints();
+			initializeStudentGradeData(snapshot);
+		} else {
+			final List<AssignmentGradeRecord> studentGradeRecs = getGradebookManager().getStudentGradeRecords(this.gradebook.getId(),
+					this.studentUid);
+			getGradebookManager().applyDropScores(studentGradeRecs);
+
+			final List<GradebookAssignment> assignments = getGradebookManager().getAssignments(this.gradebook.getId());
+			final List<GradebookAssignment> countedAssigns = new ArrayList<GradebookAssignment>();
+			// let's filter the passed assignments to make sure they are all counted
+			if (assignments != null) {
+				for (final GradebookAssignment assign : assignments) {
+					if (assign.isIncludedInCalculations()) {
+						countedAssigns.add(assign);
+					}
 				}
 			}
-		}
-		this.totalPoints = getGradebookManager().getTotalPointsInternal(this.gradebook,
-				getGradebookManager().getCategories(this.gradebook.getId()),
-				this.studentUid, studentGradeRecs, countedAssigns, true);
-		// getTotalPointsInternal(gradebook, categories, studentUid, studentGradeRecs, countedAssigns);
+			this.totalPoints = getGradebookManager().getTotalPointsInternal(this.gradebook,
+					getGradebookManager().getCategories(this.gradebook.getId()),
+					this.studentUid, studentGradeRecs, countedAssigns, true);
+			// getTotalPointsInternal(gradebook, categories, studentUid, studentGradeRecs, countedAssigns);
 
-		initializeStudentGradeData();
+			initializeStudentGradeData(null);
+		}
 
 		if (isScoringAgentEnabled()) {
 			this.scoringAgentData = initializeScoringAgentData(getGradebookUid(), null, this.studentUid);
@@ -422,6 +434,91 @@ public class ViewByStudentBean extends EnrollmentTableBean implements Serializab
 		return this.scoringAgentData;
 	}
 
+	/**
+	 * @return a course grade record of this page's own with the snapshot's values, or null if the student has none
+	 */
+	private CourseGradeRecord makeCourseGradeRecord(final CourseGrade courseGrade, final StudentGradeSnapshot.CourseGradeResult result) {
+		if (result == null) {
+			return null;
+		}
+		final CourseGradeRecord record = new CourseGradeRecord(courseGrade, this.studentUid);
+		record.setEnteredGrade(result.getEnteredGrade());
+		record.setAutoCalculatedGrade(result.getAutoCalculatedGrade());
+		record.setPointsEarned(result.getPointsEarned());
+		return record;
+	}
+
+	/**
+	 * The categories, assignments, grade records and comments the page builds its rows from, made from a
+	 * student grade snapshot for this page only, as the snapshot itself is shared by the student's page views
+	 */
+	private class SnapshotRows {
+		private final List<Category> categories = new ArrayList<Category>();
+		private final List<GradebookAssignment> items = new ArrayList<GradebookAssignment>();
+		private final List<GradebookAssignment> unassignedItems = new ArrayList<GradebookAssignment>();
+		private final List<AssignmentGradeRecord> gradeRecords = new ArrayList<AssignmentGradeRecord>();
+		private final Map<Long, String> commentTexts = new HashMap<Long, String>();
+
+		private SnapshotRows(final StudentGradeSnapshot snapshot) {
+			final Map<Long, Category> categoriesById = new HashMap<Long, Category>();
+			for (final StudentGradeSnapshot.CategoryResult result : snapshot.getCategories()) {
+				final Category category = new Category();
+				category.setId(result.getId());
+				category.setGradebook(ViewByStudentBean.this.gradebook);
+				category.setName(result.getName());
+				category.setWeight(result.getWeight());
+				category.setDropLowest(result.getDropLowest());
+				category.setDropHighest(result.getDropHighest());
+				category.setKeepHighest(result.getKeepHighest());
+				category.setExtraCredit(result.getExtraCredit());
+				category.setAverageScore(result.getAverageScore());
+				category.setAverageTotalPoints(result.getAverageTotalPoints());
+				category.setMean(result.getMean());
+				category.setAssignmentList(new ArrayList());
+				this.categories.add(category);
+				categoriesById.put(result.getId(), category);
+			}
+
+			for (final StudentGradeSnapshot.ItemRow row : snapshot.getItems()) {
+				final Category category = row.getCategoryId() == null ? null : categoriesById.get(row.getCategoryId());
+				final GradebookAssignment assignment = new GradebookAssignment();
+				assignment.setId(row.getAssignmentId());
+				assignment.setGradebook(ViewByStudentBean.this.gradebook);
+				assignment.setName(row.getName());
+				assignment.setPointsPossible(row.getPointsPossible());
+				assignment.setDueDate(row.getDueDate());
+				assignment.setSortOrder(row.getSortOrder());
+				assignment.setCategorizedSortOrder(row.getCategorizedSortOrder());
+				assignment.setCategory(category);
+				assignment.setCounted(row.isCounted());
+				assignment.setUngraded(row.isUngraded());
+				assignment.setExtraCredit(row.getExtraCredit());
+				assignment.setExternallyMaintained(row.isExternallyMaintained());
+				assignment.setExternalId(row.getExternalId());
+				assignment.setExternalAppName(row.getExternalAppName());
+				assignment.setReleased(true);
+				this.items.add(assignment);
+				if (category != null) {
+					category.getAssignmentList().add(assignment);
+				} else if (row.getCategoryId() == null) {
+					this.unassignedItems.add(assignment);
+				}
+
+				if (row.isGraded()) {
+					final AssignmentGradeRecord gradeRecord = new AssignmentGradeRecord(assignment, ViewByStudentBean.this.studentUid,
+							row.getPointsEarned());
+					gradeRecord.setPercentEarned(row.getPercentEarned());
+					gradeRecord.setLetterEarned(row.getLetterEarned());
+					gradeRecord.setDroppedFromGrade(row.getDroppedFromGrade());
+					this.gradeRecords.add(gradeRecord);
+				}
+				if (row.getCommentText() != null) {
+					this.commentTexts.put(row.getAssignmentId(), row.getCommentText());
+				}
+			}
+		}
+	}
+
 	/**
 	 * Create the AssignmentGradeRows for the passed assignments list
 	 * 
@@ -514,9 +611,20 @@ public class ViewByStudentBean extends EnrollmentTableBean implements Serializab
 			}
 		}
 
-		final Map goEventListMap = getGradebookManager().getGradingEventsForStudent(this.studentUid, gradebookAssignments);
+		// only the instructor view shows the grading events
+		final Map goEventListMap = this.isInstructorView
+				? getGradebookManager().getGradingEventsForStudent(this.studentUid, gradebookAssignments) : null;
 		// NOTE: we are no longer converting the events b/c we are
 		// storing what the user entered, not just points
+		if (this.isInstructorView && goEventListMap != null) {
+			final Set<String> graderIds = new HashSet<>();
+			for (final Object events : goEventListMap.values()) {
+				for (final Object gradingEvent : (List) events) {
+					graderIds.add(((GradingEvent) gradingEvent).getGraderId());
+				}
+			}
+			loadGraderNames(graderIds);
+		}
 
 		// iterate through the assignments and update the comments and grading events
 		final Iterator assignmentIterator = gradebookAssignments.iterator();
@@ -544,15 +652,11 @@ public class ViewByStudentBean extends EnrollmentTableBean implements Serializab
 			}
 
 			// Comments
-			try {
-				final Comment comment = (Comment) this.commentMap.get(asnGradeRow.getAssociatedAssignment().getId());
-				if (comment.getCommentText().length() > 0) {
-					asnGradeRow.setCommentText(comment.getCommentText());
-				}
-			} catch (final NullPointerException npe) {
-				if (log.isDebugEnabled()) {
-					log.debug("assignment has no associated comment");
-				}
+			final String commentText = (String) this.commentMap.get(asnGradeRow.getAssociatedAssignment().getId());
+			if (commentText != null && commentText.length() > 0) {
+				asnGradeRow.setCommentText(commentText);
+			} else if (log.isDebugEnabled()) {
+				log.debug("assignment has no associated comment");
 			}
 		}
 
@@ -607,27 +711,35 @@ public class ViewByStudentBean extends EnrollmentTableBean implements Serializab
 	/**
 	 * Sets up the grade/category rows for student
 	 * 
-	 * @param userUid
-	 * @param gradebook
+	 * @param snapshot the student's grade snapshot to build the rows from, or null to load what they show
 	 */
-	private void initializeStudentGradeData() {
+	private void initializeStudentGradeData(final StudentGradeSnapshot snapshot) {
 
 		// do not retrieve assignments if not displayed for students
 		if (this.assignmentsReleased || this.isInstructorView) {
 
-			// get grade comments and load them into a map assignmentId->comment
-			this.commentMap = new HashMap();
-			final List assignmentComments = getGradebookManager().getStudentAssignmentComments(this.studentUid, this.gradebook.getId());
-			log.debug("number of comments " + assignmentComments.size());
-			final Iterator iteration = assignmentComments.iterator();
-			while (iteration.hasNext()) {
-				final Comment comment = (Comment) iteration.next();
-				this.commentMap.put(comment.getGradableObject().getId(), comment);
-			}
+			// the snapshot's items, their records and categories, made for this page only
+			final SnapshotRows snapshotRows = snapshot != null ? new SnapshotRows(snapshot) : null;
+
+			// get grade comments and load them into a map assignmentId->comment text
+			final List gradeRecords;
+			if (snapshotRows != null) {
+				this.commentMap = snapshotRows.commentTexts;
+				gradeRecords = snapshotRows.gradeRecords;
+			} else {
+				this.commentMap = new HashMap();
+				final List assignmentComments = getGradebookManager().getStudentAssignmentComments(this.studentUid, this.gradebook.getId());
+				log.debug("number of comments " + assignmentComments.size());
+				final Iterator iteration = assignmentComments.iterator();
+				while (iteration.hasNext()) {
+					final Comment comment = (Comment) iteration.next();
+					this.commentMap.put(comment.getGradableObject().getId(), comment.getCommentText());
+				}
 
-			// get the student grade records
-			final List gradeRecords = getGradebookManager().getStudentGradeRecordsConverted(this.gradebook.getId(), this.studentUid);
-			getGradebookManager().applyDropScores(gradeRecords);
+				// get the student grade records
+				gradeRecords = getGradebookManager().getStudentGradeRecordsConverted(this.gradebook.getId(), this.studentUid);
+				getGradebookManager().applyDropScores(gradeRecords);
+			}
 
 			// The display may include categories and assignments, so we need a generic list
 			this.gradebookItems = new ArrayList();
@@ -638,7 +750,10 @@ public class ViewByStudentBean extends EnrollmentTableBean implements Serializab
 				List categoryListWithCG = new ArrayList();
 				final Set studentUids = new HashSet<String>();
 				studentUids.add(this.studentUid);
-				if (this.sortColumn.equals(Category.SORT_BY_WEIGHT)) {
+				if (snapshotRows != null) {
+					// the snapshot's categories come by name and with the student's averages, the weight sort follows below
+					categoryListWithCG = snapshotRows.categories;
+				} else if (this.sortColumn.equals(Category.SORT_BY_WEIGHT)) {
 					categoryListWithCG = getGradebookManager().getCategoriesWithStats(getGradebookId(), GradebookAssignment.DEFAULT_SORT,
 							true, this.sortColumn, this.sortAscending, false, studentUids);
 				} else {
@@ -684,7 +799,7 @@ public class ViewByStudentBean extends EnrollmentTableBean implements Serializab
 							if (catObject instanceof Category) {
 								final Category category = (Category) catObject;
 								final List catAssign = category.getAssignmentList();
-								if (catAssign != null && !catAssign.isEmpty()) {
+								if (catAssign != null && !catAssign.isEmpty() && snapshotRows == null) {
 									// we want to create the grade rows for these assignments
 									category.calculateStatisticsPerStudent(gradeRecords, this.studentUid);
 								}
@@ -713,7 +828,9 @@ public class ViewByStudentBean extends EnrollmentTableBean implements Serializab
 							if (catAssign != null && !catAssign.isEmpty()) {
 								// we want to create the grade rows for these assignments
 								final List gradeRows = retrieveGradeRows(catAssign, gradeRecords);
-								category.calculateStatisticsPerStudent(gradeRecords, this.studentUid);
+								if (snapshotRows == null) {
+									category.calculateStatisticsPerStudent(gradeRecords, this.studentUid);
+								}
 								if (gradeRows != null && !gradeRows.isEmpty()) {
 									this.gradebookItems.addAll(gradeRows);
 								}
@@ -728,9 +845,10 @@ public class ViewByStudentBean extends EnrollmentTableBean implements Serializab
 								this.studentUid, getViewableSectionIds()))) {
 					// user is not authorized to view/grade the unassigned category for the current student
 				} else {
-					final List assignNoCat = getGradebookManager().getAssignmentsWithNoCategory(getGradebookId(),
-							GradebookAssignment.DEFAULT_SORT, true);
-					if (assignNoCat != null && !assignNoCat.isEmpty()) {
+					final List assignNoCat = snapshotRows != null ? snapshotRows.unassignedItems
+							: getGradebookManager().getAssignmentsWithNoCategory(getGradebookId(), GradebookAssignment.DEFAULT_SORT, true);
+					// the snapshot only holds released items, but says whether there are any others
+					if (snapshotRows != null ? snapshot.isAnyUnassignedItems() : assignNoCat != null && !assignNoCat.isEmpty()) {
 						final Category unassignedCat = new Category();
 						unassignedCat.setGradebook(this.gradebook);
 						unassignedCat.setName(getLocalizedString("cat_unassigned"));
@@ -753,7 +871,7 @@ public class ViewByStudentBean extends EnrollmentTableBean implements Serializab
 
 			} else {
 				// there are no categories, so we will be returning a list of grade rows
-				final List assignList = getGradebookManager().getAssignments(getGradebookId());
+				final List assignList = snapshotRows != null ? snapshotRows.items : getGradebookManager().getAssignments(getGradebookId());
 				if (assignList != null && !assignList.isEmpty()) {
 					final List gradeRows = retrieveGradeRows(assignList, gradeRecords);
 					if (gradeRows != null && !gradeRows.isEmpty()) {
@@ -47,16 +47,19 @@ import org.sakaiproject.service.gradebook.shared.GradebookService;
 import org.sakaiproject.site.api.Site;
 import org.sakaiproject.site.api.SiteService;
 import org.sakaiproject.tool.gradebook.Gradebook;
+import org.sakaiproject.tool.gradebook.business.GradebookJob;
+import org.sakaiproject.tool.gradebook.business.GradebookJobManager;
+import org.sakaiproject.tool.gradebook.business.UserDisplayNameCache;
 import org.sakaiproject.tool.gradebook.ui.helpers.entity.model.Category;
 import org.sakaiproject.tool.gradebook.ui.helpers.entity.model.GradebookData;
 import org.sakaiproject.tool.gradebook.ui.helpers.entity.model.GradebookItem;
+import org.sakaiproject.tool.gradebook.ui.helpers.entity.model.GradebookJobStatus;
 import org.sakaiproject.tool.gradebook.ui.helpers.entity.model.StudentGrade;
 import org.sakaiproject.tool.gradebook.ui.helpers.params.GradebookItemViewParams;
 import org.sakaiproject.tool.gradebook.ui.helpers.producers.AuthorizationFailedProducer;
 import org.sakaiproject.tool.gradebook.ui.helpers.producers.GradebookItemProducer;
 import org.sakaiproject.user.api.User;
 import org.sakaiproject.user.api.UserDirectoryService;
-import org.sakaiproject.user.api.UserNotDefinedException;
 
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -87,6 +90,12 @@ public class GradebookEntityProvider extends AbstractEntityProvider implements
 	@Setter
 	private SecurityService securityService;
 
+	@Setter
+	private GradebookJobManager jobManager;
+
+	@Setter
+	private UserDisplayNameCache userDisplayNameCache;
+
 	@Override
 	public String getEntityPrefix() {
 		return ENTITY_PREFIX;
@@ -163,6 +172,7 @@ public class GradebookEntityProvider extends AbstractEntityProvider implements
 					+ siteId);
 			GradeCourse course = new GradeCourse(site);
 			Collection<String> students = getStudentList(siteId);
+			Map<String, String> studentNames = userDisplayNameCache.getDisplayNames(students);
 			@SuppressWarnings("unchecked")
 			List<Assignment> gbitems = gradebookService.getAssignments(siteId);
 			for (Assignment assignment : gbitems) {
@@ -170,7 +180,7 @@ public class GradebookEntityProvider extends AbstractEntityProvider implements
 					GradeAssignmentItem item = new GradeAssignmentItem(
 							assignment);
 					item.setUserId(studentId);
-					item.setUserName(getUserDisplayName(studentId));
+					item.setUserName(studentNames.get(studentId));
 					item.setGrade(gradebookService.getAssignmentScoreString(
 							siteId, assignment.getId(), studentId));
 
@@ -225,13 +235,11 @@ public class GradebookEntityProvider extends AbstractEntityProvider implements
 	}
 
 	private String getUserDisplayName(String uid) {
-		try {
-			User user = userDirectoryService.getUser(uid);
-			return user.getDisplayName();
-		} catch (UserNotDefinedException e) {
+		String displayName = userDisplayNameCache.getDisplayName(uid);
+		if (displayName == null) {
 			log.warn("Undefined user id (" + uid + ")");
-			return null;
 		}
+		return displayName;
 	}
 
 	@EntityCustomAction(action = "my", viewKey = EntityView.VIEW_LIST)
@@ -406,6 +414,37 @@ public class GradebookEntityProvider extends AbstractEntityProvider implements
 		
 	}
 	
+	/**
+	 * State and progress of a gradebook job, polled by the gradebook UI while the job runs.
+	 * 
+	 * Only the user who started the job or an instructor of its gradebook is able to access this.
+	 * 
+	 * @param view
+	 * @return
+	 */
+	@EntityCustomAction(action = "job", viewKey = EntityView.VIEW_LIST)
+	public GradebookJobStatus getJobStatus(EntityView view) {
+		String jobId = view.getPathSegment(2);
+		if (StringUtils.isBlank(jobId) || !StringUtils.isNumeric(jobId)) {
+			throw new IllegalArgumentException(
+					String.format("jobId must be set in order to get the state of a gradebook job, via the URL /%s/job/{jobId}", ENTITY_PREFIX));
+		}
+
+		String userId = developerHelperService.getCurrentUserId();
+		if (userId == null) {
+			throw new SecurityException("Only logged in users can access");
+		}
+
+		GradebookJob job = jobManager.getJob(Long.valueOf(jobId));
+		if (job == null) {
+			throw new IllegalArgumentException(String.format("No gradebook job %s", jobId));
+		}
+		if (!userId.equals(job.getCreator()) && !gradebookService.currentUserHasEditPerm(job.getGradebookUid())) {
+			throw new SecurityException("Only the user who started a gradebook job or an instructor can access it");
+		}
+		return new GradebookJobStatus(job);
+	}
+
 	/**
 	 * Helper to get a gradebook for a site
 	 * @param siteId
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.gradebook.ui.helpers.entity.model;
+
+import java.util.Date;
+
+import org.sakaiproject.tool.gradebook.business.GradebookJob;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * State and progress of a gradebook job, as polled by the UI while the job runs.
+ */
+public class GradebookJobStatus {
+
+	@Getter
+	@Setter
+	private Long id;
+
+	@Getter
+	@Setter
+	private String type;
+
+	@Getter
+	@Setter
+	private String state;
+
+	@Getter
+	@Setter
+	private int progress;
+
+	@Getter
+	@Setter
+	private int total;
+
+	@Getter
+	@Setter
+	private String message;
+
+	@Getter
+	@Setter
+	private boolean finished;
+
+	@Getter
+	@Setter
+	private Date dateCreated;
+
+	@Getter
+	@Setter
+	private Date dateFinished;
+
+	public GradebookJobStatus(GradebookJob job) {
+		this.id = job.getId();
+		this.type = job.getType();
+		this.state = job.getState();
+		this.progress = job.getProgress();
+		this.total = job.getTotal();
+		this.message = job.getMessage();
+		this.finished = job.isFinished();
+		this.dateCreated = job.getDateCreated();
+		this.dateFinished = job.getDateFinished();
+	}
+
+}
@@ -201,6 +201,10 @@
 					onclick="javascript:dhtmlPopupToggle('#{scoreRowIndex}', event);return false;">
 					<h:graphicImage value="images/log.png" alt="#{msgs.inst_view_log_alt}"/>
 				</h:outputLink>
+				<h:commandLink actionListener="#{assignmentDetailsBean.processShowGradingHistory}" rendered="#{scoreRow.olderEvents}">
+					<h:outputText value="#{msgs.grading_event_full_history}"/>
+					<f:param name="studentUid" value="#{scoreRow.enrollment.user.userUid}"/>
+				</h:commandLink>
 			</h:column>
 
 			<%@include file="/inc/scoringAgent/assignmentDetails.jspf"%>
@@ -18,6 +18,9 @@
 			<h:commandLink value="#{msgs.calculate_course_grade_name}" rendered="#{courseGradeDetailsBean.userAbleToGradeAll}" action="calculateCourseGrades" /><h:outputText value="." rendered="#{courseGradeDetailsBean.userAbleToGradeAll}" />
 			<h:outputText value="#{msgs.course_grade_details_null_msg_ta_view}" rendered="#{!courseGradeDetailsBean.userAbleToGradeAll}"/>
 		</p>
+		<p class="instruction">
+			<h:outputText value="#{courseGradeDetailsBean.calculateCourseGradesProgress}" rendered="#{courseGradeDetailsBean.calculatingCourseGrades}"/>
+		</p>
 
 		<h4><h:outputText value="#{msgs.course_grade_details_page_title}"/></h4>
 		<div class="indnt1">
@@ -114,6 +117,10 @@
 					onclick="javascript:dhtmlPopupToggle('#{scoreRowIndex}', event);return false;">
 					<h:graphicImage value="images/log.png" alt="#{msgs.inst_view_log_alt}"/>
 				</h:outputLink>
+				<h:commandLink actionListener="#{courseGradeDetailsBean.processShowGradingHistory}" rendered="#{scoreRow.olderEvents}">
+					<h:outputText value="#{msgs.grading_event_full_history}"/>
+					<f:param name="studentUid" value="#{scoreRow.enrollment.user.userUid}"/>
+				</h:commandLink>
 			</h:column>
 			<h:column>
 				<f:facet name="header">
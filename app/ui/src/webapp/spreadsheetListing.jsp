@@ -61,6 +61,9 @@
                     </h:commandLink>
                 </t:column>
             </t:dataTable>
+            <h:panelGroup rendered="#{not empty spreadsheetUploadBean.spreadsheets}" styleClass="instruction">
+                <h:outputText value="#{spreadsheetUploadBean.spreadsheetsStorageReport}"/>
+            </h:panelGroup>
         </h:form>
     </div>
 </f:view>
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2013 Apereo Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.gradebook.entity;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.azeckoski.reflectutils.ClassFields.FieldsFilter;
+import org.azeckoski.reflectutils.ReflectUtils;
+import org.azeckoski.reflectutils.transcoders.JSONTranscoder;
+import org.azeckoski.reflectutils.transcoders.Transcoder;
+import org.azeckoski.reflectutils.transcoders.XMLTranscoder;
+
+import org.sakaiproject.gradebook.logic.ExternalLogic.GradebookHandler;
+
+/**
+ * Writes a gradebook out as its items are built, so that only one item and its scores
+ * are held at a time however large the course is. The gradebook and then each item are
+ * encoded by the same transcoders the entity broker encodes the non streamed response with,
+ * the gradebook values being read the way those transcoders read them, with its items
+ * written one by one in their place.
+ * The output is flushed every few items so the client receives it in chunks.
+ * Nothing is written until the gradebook is handed over, so failures loading it
+ * can still be sent back as errors.
+ *
+ * Not thread safe, use one per response.
+ */
+public class GradebookStreamWriter implements GradebookHandler {
+
+    /** number of items written between flushes */
+    private static final int FLUSH_ITEMS = 10;
+
+    private static final String ITEMS_FIELD = "items";
+
+    private final boolean xml;
+    private final Transcoder transcoder;
+    private final Writer writer;
+    private int itemCount = 0;
+
+    /**
+     * @param out the stream to write to, the entity broker's stream for the response
+     * @param xml true to write XML, false to write JSON
+     */
+    public GradebookStreamWriter(OutputStream out, boolean xml) {
+        this.xml = xml;
+        this.transcoder = xml ? new XMLTranscoder() : new JSONTranscoder();
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 8192);
+    }
+
+    public void handleGradebook(Gradebook gb) {
+        try {
+            if (xml) {
+                writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<gradebook>");
+            } else {
+                writer.write('{');
+            }
+            Map<String, Object> values = ReflectUtils.getInstance().getObjectValues(gb, FieldsFilter.SERIALIZABLE, false);
+            values.remove(ITEMS_FIELD);
+            boolean separate = false;
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                writeField(entry.getKey(), entry.getValue(), separate);
+                separate = true;
+            }
+            if (xml) {
+                writer.write("<" + ITEMS_FIELD + ">");
+            } else {
+                writer.write((separate ? "," : "") + "\"" + ITEMS_FIELD + "\":[");
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed writing gradebook ("+gb.id+"): " + e.getMessage(), e);
+        }
+    }
+
+    public void handleItem(GradebookItem gbItem) {
+        try {
+            if (!xml && itemCount > 0) {
+                writer.write(',');
+            }
+            writer.write(transcoder.encode(gbItem, "gradebookItem", null));
+            if (++itemCount % FLUSH_ITEMS == 0) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed writing gradebook item ("+gbItem.id+"): " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Closes the items and the gradebook and flushes them out, to be called once all items are handled.
+     * The stream itself is left for the entity broker to complete
+     */
+    public void finish() throws IOException {
+        writer.write(xml ? "</" + ITEMS_FIELD + "></gradebook>" : "]}");
+        writer.flush();
+    }
+
+    /**
+     * @return the number of items written so far
+     */
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    private void writeField(String name, Object value, boolean separate) throws IOException {
+        if (xml) {
+            writer.write(transcoder.encode(value, name, null));
+        } else {
+            if (separate) {
+                writer.write(',');
+            }
+            writer.write(transcoder.encode(name, null, null));
+            writer.write(':');
+            writer.write(transcoder.encode(value, null, null));
+        }
+    }
+
+}
@@ -16,6 +16,7 @@ package org.sakaiproject.gradebook.entity;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -39,6 +40,7 @@ import org.sakaiproject.entitybroker.entityprovider.capabilities.Outputable;
 import org.sakaiproject.entitybroker.entityprovider.capabilities.Redirectable;
 import org.sakaiproject.entitybroker.entityprovider.capabilities.RequestAware;
 import org.sakaiproject.entitybroker.entityprovider.capabilities.Resolvable;
+import org.sakaiproject.entitybroker.entityprovider.extension.ActionReturn;
 import org.sakaiproject.entitybroker.entityprovider.extension.Formats;
 import org.sakaiproject.entitybroker.entityprovider.extension.RequestGetter;
 import org.sakaiproject.entitybroker.exception.EntityException;
@@ -111,8 +113,14 @@ Resolvable, Outputable, Inputable, Describeable, ActionsExecutable, Redirectable
         return students;
     }
 
+    /**
+     * Gets the gradebook of a course with all items and scores. With stream=true the gradebook is
+     * written to the entity broker's output stream as its items are built, instead of being built
+     * whole and encoded by the entity broker, which keeps memory use bounded for very large courses.
+     * Compressing the streamed response is left to the container, like any other response
+     */
     @EntityCustomAction(action = "gradebook", viewKey = EntityView.VIEW_LIST)
-    public Gradebook getCourseGradebook(EntityView view) {
+    public Object getCourseGradebook(EntityView view, Map<String, Object> params, OutputStream outputStream) {
         String courseId = view.getPathSegment(2);
         if (courseId == null) {
             throw new IllegalArgumentException(
@@ -126,6 +134,18 @@ Resolvable, Outputable, Inputable, Describeable, ActionsExecutable, Redirectable
         if (!externalLogic.isUserAdmin(userId) && !externalLogic.isUserInstructor(userId)) {
             throw new SecurityException("Only instructors can access course gradebook");
         }
+        if (params != null && "true".equalsIgnoreCase(String.valueOf(params.get("stream")))) {
+            boolean xml = Formats.XML.equals(view.getFormat());
+            GradebookStreamWriter writer = new GradebookStreamWriter(outputStream, xml);
+            externalLogic.getCourseGradebook(courseId, null, writer);
+            try {
+                writer.finish();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to complete the gradebook ("+courseId+") response after "
+                        + writer.getItemCount() + " items: " + e, e);
+            }
+            return new ActionReturn(Formats.UTF_8, xml ? Formats.XML_MIME_TYPE : Formats.JSON_MIME_TYPE, outputStream);
+        }
         Gradebook gradebook = externalLogic.getCourseGradebook(courseId, null);
         return gradebook;
     }
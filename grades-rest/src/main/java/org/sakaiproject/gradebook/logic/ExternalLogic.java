@@ -14,8 +14,13 @@
  */
 package org.sakaiproject.gradebook.logic;
 
+import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -44,6 +49,7 @@ import org.sakaiproject.service.gradebook.shared.Assignment;
 import org.sakaiproject.service.gradebook.shared.CategoryDefinition;
 import org.sakaiproject.service.gradebook.shared.CourseGrade;
 import org.sakaiproject.service.gradebook.shared.CommentDefinition;
+import org.sakaiproject.service.gradebook.shared.GradeDefinition;
 import org.sakaiproject.service.gradebook.shared.GradebookExternalAssessmentService;
 import org.sakaiproject.service.gradebook.shared.GradebookInformation;
 import org.sakaiproject.service.gradebook.shared.GradebookService;
@@ -54,6 +60,7 @@ import org.sakaiproject.site.api.SiteService.SortType;
 import org.sakaiproject.tool.api.Session;
 import org.sakaiproject.tool.api.SessionManager;
 import org.sakaiproject.tool.api.ToolManager;
+import org.sakaiproject.tool.gradebook.business.UserDisplayNameCache;
 import org.sakaiproject.user.api.User;
 import org.sakaiproject.user.api.UserDirectoryService;
 import org.sakaiproject.user.api.UserNotDefinedException;
@@ -120,6 +127,11 @@ public class ExternalLogic {
         this.userDirectoryService = userDirectoryService;
     }
 
+    private UserDisplayNameCache userDisplayNameCache;
+    public void setUserDisplayNameCache(UserDisplayNameCache userDisplayNameCache) {
+        this.userDisplayNameCache = userDisplayNameCache;
+    }
+
     public void init() {
         log.info("INIT");
     }
@@ -236,10 +248,8 @@ public class ExternalLogic {
      * @return display name (probably firstname lastname) or "----------" (10 hyphens) if none found
      */
     public String getUserDisplayName(String userId) {
-        String name = null;
-        try {
-            name = userDirectoryService.getUser(userId).getDisplayName();
-        } catch (UserNotDefinedException e) {
+        String name = userDisplayNameCache.getDisplayName(userId);
+        if (name == null) {
             log.warn("Cannot get user displayname for id: " + userId);
             name = "--------";
         }
@@ -247,25 +257,20 @@ public class ExternalLogic {
     }
 
     /**
-     * Get a user by their unique id
+     * Get a user by their unique id (or their eid if no user has this id),
+     * the display name comes from the same cache as {@link #getUserDisplayName(String)}
      * @param userId user id
      * @return the populated User or null if none found
      */
     public org.sakaiproject.gradebook.entity.User getUser(String userId) {
         org.sakaiproject.gradebook.entity.User user = null;
-        User u = null;
-        try {
-            u = userDirectoryService.getUser(userId);
-        } catch (UserNotDefinedException e) {
-            try {
-                u = userDirectoryService.getUserByEid(userId);
-            } catch (UserNotDefinedException e1) {
-                log.warn("Cannot get user for id: " + userId);
-            }
-        }
-        if (u != null) {
+        User u = resolveUsers(Collections.singleton(userId)).get(userId);
+        if (u == null) {
+            log.warn("Cannot get user for id: " + userId);
+        } else {
+            String displayName = userDisplayNameCache.getDisplayName(u.getId());
             user = new org.sakaiproject.gradebook.entity.User(u.getId(),
-                    u.getEid(), u.getDisplayName(), u.getSortName(), u.getEmail());
+                    u.getEid(), displayName != null ? displayName : u.getDisplayName(), u.getSortName(), u.getEmail());
             user.fname = u.getFirstName();
             user.lname = u.getLastName();
         }
@@ -515,6 +520,21 @@ public class ExternalLogic {
         return courseId;
     }
 
+    /**
+     * Receives a gradebook and then its items one at a time, see {@link ExternalLogic#getCourseGradebook(String, String, GradebookHandler)}
+     */
+    public interface GradebookHandler {
+        /**
+         * @param gb the gradebook with everything but its items loaded
+         */
+        void handleGradebook(Gradebook gb);
+
+        /**
+         * @param gbItem a complete item with all its scores, not referenced by the logic once handled
+         */
+        void handleItem(GradebookItem gbItem);
+    }
+
     /**
      * Gets the gradebook data for a given site, 
      * this uses the gradebook security so it is secure
@@ -524,8 +544,34 @@ public class ExternalLogic {
      * if null then all items are returned
      * @throws IllegalArgumentException if no gradebook can be found
      */
-    @SuppressWarnings("unchecked")
     public Gradebook getCourseGradebook(String siteId, String gbItemName) {
+        final List<GradebookItem> gbItems = new ArrayList<GradebookItem>();
+        Gradebook gb = getCourseGradebook(siteId, gbItemName, new GradebookHandler() {
+            public void handleGradebook(Gradebook gb) {
+                // items are added once all are built
+            }
+            public void handleItem(GradebookItem gbItem) {
+                gbItems.add(gbItem);
+            }
+        });
+        gb.items.addAll(gbItems);
+        return gb;
+    }
+
+    /**
+     * Gets the gradebook data for a given site and hands it to the given handler without its items,
+     * which are then built one at a time and handed over as well, so that callers writing them out
+     * as they come never hold more than one item and its scores at a time,
+     * this uses the gradebook security so it is secure
+     * 
+     * @param siteId a sakai siteId (cannot be group Id)
+     * @param gbItemName [OPTIONAL] an item name to fetch from this gradebook (limit to this item only),
+     * if null then all items are returned
+     * @param handler receives the gradebook, then its items in gradebook order
+     * @throws IllegalArgumentException if no gradebook can be found
+     */
+    @SuppressWarnings("unchecked")
+    public Gradebook getCourseGradebook(String siteId, String gbItemName, GradebookHandler handler) {
         // The gradebookUID is the siteId, the gradebookID is a long
         String gbID = siteId;
         if (!gradebookService.isGradebookDefined(gbID)) {
@@ -546,21 +592,6 @@ public class ExternalLogic {
             studentUserIds.put(student.userId, student.username);
         }
         ArrayList<String> studentIds = new ArrayList<String>(studentUserIds.keySet());
-        if (gbItemName == null) {
-            List<Assignment> gbitems = gradebookService.getAssignments(gbID);
-            for (Assignment assignment : gbitems) {
-                GradebookItem gbItem = makeGradebookItemFromAssignment(gbID, assignment, studentUserIds, studentIds);
-                gb.items.add(gbItem);
-            }
-        } else {
-            Assignment assignment = gradebookService.getAssignment(gbID, gbItemName);
-            if (assignment != null) {
-                GradebookItem gbItem = makeGradebookItemFromAssignment(gbID, assignment, studentUserIds, studentIds);
-                gb.items.add(gbItem);
-            } else {
-                throw new IllegalArgumentException("Invalid gradebook item name ("+gbItemName+"), no item with this name found in cource ("+siteId+")");
-            }
-        }
         gb.category=getCategoriesForCourse(gbID);
         GradebookInformation gradebookInformation = gradebookService.getGradebookInformation(gbID);
         gb.displayReleasedGradeItemsToStudents=gradebookInformation.isDisplayReleasedGradeItemsToStudents();
@@ -573,52 +604,89 @@ public class ExternalLogic {
         } else if(gradeType==GradebookService.GRADE_TYPE_LETTER) {
                 gb.isLetterGradeFlag=true;
         }
+        if (gbItemName == null) {
+            handler.handleGradebook(gb);
+            List<Assignment> gbitems = gradebookService.getAssignments(gbID);
+            for (Assignment assignment : gbitems) {
+                handler.handleItem(makeGradebookItemFromAssignment(gbID, assignment, studentUserIds, studentIds, gradeType));
+            }
+        } else {
+            Assignment assignment = gradebookService.getAssignment(gbID, gbItemName);
+            if (assignment != null) {
+                handler.handleGradebook(gb);
+                handler.handleItem(makeGradebookItemFromAssignment(gbID, assignment, studentUserIds, studentIds, gradeType));
+            } else {
+                throw new IllegalArgumentException("Invalid gradebook item name ("+gbItemName+"), no item with this name found in cource ("+siteId+")");
+            }
+        }
         return gb;
     }
 
+    /**
+     * Builds the item and its scores from one bulk lookup of the item's grades,
+     * instead of looking up the grade and comment of every student one by one.
+     * Only the students who have a grade and a comment get their comment looked up,
+     * as the score carries the comment's own grader and date.
+     * Scores are added in the order of the given students, as before.
+     */
     private GradebookItem makeGradebookItemFromAssignment(String gbID, Assignment assignment,
-            Map<String, String> studentUserIds, ArrayList<String> studentIds) {
+            Map<String, String> studentUserIds, ArrayList<String> studentIds, int gradeType) {
         // build up the items listing
         GradebookItem gbItem = new GradebookItem(gbID, assignment.getName(), assignment
                 .getPoints(), assignment.getDueDate(), assignment.getExternalAppName(),
                 assignment.isReleased(), assignment.isCounted());
         gbItem.id = assignment.getId();
-        /*
-         *  We have to iterate through each student and get the grades out... 
-         *  2.6 gradebook service has some issues
-         */
+        if (studentIds.isEmpty()) {
+            return gbItem;
+        }
+        List<GradeDefinition> grades = gradebookService.getGradesForStudentsForItem(gbID,
+                assignment.getId(), studentIds);
+        Map<String, GradeDefinition> gradesByStudent = new HashMap<String, GradeDefinition>(grades.size() * 2);
+        for (GradeDefinition gd : grades) {
+            gradesByStudent.put(gd.getStudentUid(), gd);
+        }
+        NumberFormat scoreFormat = makeScoreFormat();
         for (String studentId : studentIds) {
-            // too expensive: if (gradebookService.getGradeViewFunctionForUserForStudentForItem(gbID, assignment.getId(), studentId) == null) {
-            String grade = gradebookService.getAssignmentScoreString(gbID, assignment.getId(), studentId);
+            GradeDefinition gd = gradesByStudent.get(studentId);
+            if (gd == null || gd.getGrade() == null) {
+                continue; // no score recorded for this student
+            }
+            String grade;
+            if (gradeType == GradebookService.GRADE_TYPE_POINTS) {
+                // the definition holds the raw points, format them like getAssignmentScoreString does
+                grade = scoreFormat.format(Double.valueOf(gd.getGrade()));
+            } else {
+                // percentage and letter definitions are converted from the points, which this returns as is
+                grade = gradebookService.getAssignmentScoreString(gbID, assignment.getId(), studentId);
+            }
             if (grade != null) {
                 GradebookItemScore score = new GradebookItemScore(assignment.getId().toString(),
                         studentId, grade );
                 score.username = studentUserIds.get(studentId);
-                CommentDefinition cd = gradebookService.getAssignmentScoreComment(gbID, assignment
-                        .getId(), studentId);
-                if (cd != null) {
-                    score.comment = cd.getCommentText();
-                    score.recorded = cd.getDateRecorded();
-                    score.graderUserId = cd.getGraderUid();
+                if (gd.getGradeComment() != null) {
+                    CommentDefinition cd = gradebookService.getAssignmentScoreComment(gbID, assignment
+                            .getId(), studentId);
+                    if (cd != null) {
+                        score.comment = cd.getCommentText();
+                        score.recorded = cd.getDateRecorded();
+                        score.graderUserId = cd.getGraderUid();
+                    }
                 }
                 gbItem.scores.add(score);
             }
         }
-        /* This is another post 2.5 way
-        List<GradeDefinition> grades = gradebookService.getGradesForStudentsForItem(siteId,
-                assignment.getId(), studentIds);
-        for (GradeDefinition gd : grades) {
-            String studId = gd.getStudentUid();
-            String studEID = studentUserIds.get(studId);
-            GradebookItemScore score = new GradebookItemScore(assignment.getId().toString(),
-                    studId, gd.getGrade(), studEID, gd.getGraderUid(), gd.getDateRecorded(),
-                    gd.getGradeComment());
-            gbItem.scores.add(score);
-        }
-        **/
         return gbItem;
     }
 
+    /**
+     * @return the format the gradebook service uses for score strings (locale aware, no grouping, no scientific notation)
+     */
+    private NumberFormat makeScoreFormat() {
+        NumberFormat numberFormat = NumberFormat.getInstance(getCurrentLocale());
+        numberFormat.setGroupingUsed(false);
+        return numberFormat;
+    }
+
     /**
      * Save a gradebook item and optionally the scores within <br/>
      * Scores must have at least the studentId or username AND the grade set
@@ -756,6 +824,9 @@ public class ExternalLogic {
         if (gbItem.scores != null && !gbItem.scores.isEmpty()) {
             // now update scores if there are any to update, 
             // this will not remove scores and will only add new ones
+            Map<String, User> students = resolveScoreUsers(gbItem.scores);
+            // scores which passed validation, by internal student id (a later score for the same student wins)
+            Map<String, GradebookItemScore> validScores = new LinkedHashMap<String, GradebookItemScore>();
             for (GradebookItemScore score : gbItem.scores) {
                 if (isBlank(score.username) && isBlank(score.userId)) {
                     score.error = "USER_INVALID: User ID and Name are both blank";
@@ -766,22 +837,15 @@ public class ExternalLogic {
                 if (isBlank(score.userId)) {
                     studentId = score.username;
                 }
-                try {
-                    // try assuming it is the internal id first
-                    score.username = userDirectoryService.getUserEid(studentId);
-                    score.userId = studentId;
-                } catch (UserNotDefinedException e) {
-                    try {
-                        // now try it as the external id
-                        score.userId = userDirectoryService.getUserId(studentId);
-                        score.username = studentId;
-                        studentId = score.userId;
-                    } catch (UserNotDefinedException ex) {
-                        score.error = "USER_NOT_EXISTS: User (id="+score.userId+", name="+score.username+") could not be found";
-                        errorsCount++;
-                        continue;
-                    }
+                User student = students.get(studentId);
+                if (student == null) {
+                    score.error = "USER_NOT_EXISTS: User (id="+score.userId+", name="+score.username+") could not be found";
+                    errorsCount++;
+                    continue;
                 }
+                score.userId = student.getId();
+                score.username = student.getEid();
+                studentId = score.userId;
                 score.assignId(gbItem.id, studentId);
                 // null/blank scores are not allowed
                 if (isBlank(score.grade)) {
@@ -804,54 +868,25 @@ public class ExternalLogic {
                     errorsCount++;
                     continue;
                 }
+                GradebookItemScore previous = validScores.remove(studentId);
+                if (previous != null && isBlank(score.comment) && !isBlank(previous.comment)) {
+                    // an earlier score's comment is kept unless replaced
+                    score.comment = previous.comment;
+                }
+                validScores.put(studentId, score);
+            }
+            if (!validScores.isEmpty()) {
                 try {
-                    /** check against existing score ** NOT NEEDED
-                    String currentScore = gradebookService.getAssignmentScoreString(gradebookUid, gbItem.name, studentId);
-                    if (currentScore != null) {
-                        try {
-                            Double dCurrentScore = Double.valueOf(currentScore);
-                            if (dScore < dCurrentScore) {
-                                score.error = SCORE_UPDATE_ERRORS;
-                                errorsCount++;
-                                continue;
-                            }
-                        } catch (NumberFormatException e) {
-                            // no comparison since this is not a numerical score
+                    errorsCount += saveScores(gradebookId, gbItem, isExternal, validScores);
+                } catch (Exception e) {
+                    // find out which scores the batch failed on by saving them one at a time
+                    log.warn("Failure saving " + validScores.size() + " scores for item (" + gbItem.id + ") in one batch, saving them one by one: " + e);
+                    for (GradebookItemScore score : validScores.values()) {
+                        if (!saveScore(gradebookId, gbItem, isExternal, score)) {
+                            errorsCount++;
                         }
                     }
-                    **/
-                    // null grade deletes the score
-                    if (isExternal) {
-                        gradebookExternalAssessmentService.updateExternalAssessmentScore(gradebookId, gbItem.eid, studentId, dScore.toString());
-                    } else {
-                        gradebookService.setAssignmentScoreString(gradebookId, gbItem.id, studentId, dScore.toString(), EXTERNAL_DATASOURCE);
-                    }
-                    if (score.comment != null && ! "".equals(score.comment)) {
-                        gradebookService.setAssignmentScoreComment(gradebookId, gbItem.id, studentId, score.comment);
-                    }
-                } catch (Exception e) {
-                    // General errors, caused while performing updates (Tag: generalerrors)
-                    String msg = "Failure saving score ("+score+"): "+e;
-                    log.warn(msg, e);
-                    score.error = "GENERAL: "+msg;
-                    errorsCount++;
                 }
-                /* post-2.5 gradebook method
-                try {
-                    gradebookService.saveGradeAndCommentForStudent(gradebookUid, gbItemId,
-                            studentId, score.grade, score.comment);
-                } catch (InvalidGradeException e) {
-                    scoreErrors.put(score, "SCORE_INVALID");
-                    continue;
-                }
-                GradeDefinition gd = gradebookService.getGradeDefinitionForStudentForItem(
-                        gradebookUid, gbItemId, studentId);
-                score.assignId(gbItem.id, gd.getStudentUid());
-                score.comment = gd.getGradeComment();
-                score.grade = gd.getGrade();
-                score.graderUserId = gd.getGraderUid();
-                score.recorded = gd.getDateRecorded();
-                */
             }
             // put the errors in the item if there are errors and they are set
             if (errorsCount > 0) {
@@ -866,6 +901,140 @@ public class ExternalLogic {
         return gbItem;
     }
 
+    /**
+     * Looks up the users of all the scores at once, trying each score's user id (or name if the id is blank)
+     * as an internal id first and as an eid for those not found
+     * 
+     * @param scores the scores to find the users for
+     * @return the users found, keyed by the id or name of the scores they were found for
+     */
+    private Map<String, User> resolveScoreUsers(List<GradebookItemScore> scores) {
+        Set<String> keys = new HashSet<String>();
+        for (GradebookItemScore score : scores) {
+            String key = isBlank(score.userId) ? score.username : score.userId;
+            if (!isBlank(key)) {
+                keys.add(key);
+            }
+        }
+        return resolveUsers(keys);
+    }
+
+    /**
+     * Looks up users with one directory call for the keys which are internal ids
+     * and one more for the rest, which are tried as eids
+     * 
+     * @param keys the internal ids or eids of the users
+     * @return the users found, keyed by the id or eid they were found for
+     */
+    private Map<String, User> resolveUsers(Collection<String> keys) {
+        Map<String, User> users = new HashMap<String, User>(keys.size() * 2);
+        for (User user : userDirectoryService.getUsers(keys)) {
+            if (keys.contains(user.getId())) {
+                users.put(user.getId(), user);
+            }
+        }
+        Set<String> eids = new HashSet<String>(keys);
+        eids.removeAll(users.keySet());
+        if (!eids.isEmpty()) {
+            for (User user : userDirectoryService.getUsersByEids(eids)) {
+                if (eids.contains(user.getEid())) {
+                    users.put(user.getEid(), user);
+                }
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Saves the scores and comments of an item in as few service calls as possible,
+     * each of which is a single transaction: all the scores and then all the comments of an external item,
+     * or all scores and comments of an internal item at once.
+     * The scores are always points while the bulk save reads them in the gradebook's entry type,
+     * so only internal items of points gradebooks are saved in bulk. Those of percentage and letter grade
+     * gradebooks are still saved one score at a time through the points based score string,
+     * rather than converting the points here and losing precision on the way.
+     * 
+     * @param validScores the validated scores by internal student id
+     * @return the number of scores which failed on their own, these have their error set
+     * @throws RuntimeException if the batch failed, none of its scores should be assumed saved
+     */
+    private int saveScores(String gradebookId, GradebookItem gbItem, boolean isExternal,
+            Map<String, GradebookItemScore> validScores) {
+        List<String> studentIds = new ArrayList<String>(validScores.keySet());
+        if (isExternal) {
+            Map<String, String> studentScores = new HashMap<String, String>(validScores.size() * 2);
+            Map<String, String> studentComments = new HashMap<String, String>();
+            for (GradebookItemScore score : validScores.values()) {
+                studentScores.put(score.userId, Double.valueOf(score.grade).toString());
+                if (!isBlank(score.comment)) {
+                    studentComments.put(score.userId, score.comment);
+                }
+            }
+            gradebookExternalAssessmentService.updateExternalAssessmentScoresString(gradebookId, gbItem.eid, studentScores);
+            if (!studentComments.isEmpty()) {
+                gradebookExternalAssessmentService.updateExternalAssessmentComments(gradebookId, gbItem.eid, studentComments);
+            }
+            if (log.isDebugEnabled()) log.debug("saved " + validScores.size() + " scores for external item (" + gbItem.id + ") in one batch");
+            return 0;
+        }
+        if (gradebookService.getGradeEntryType(gradebookId) != GradebookService.GRADE_TYPE_POINTS) {
+            int errorsCount = 0;
+            for (GradebookItemScore score : validScores.values()) {
+                if (!saveScore(gradebookId, gbItem, isExternal, score)) {
+                    errorsCount++;
+                }
+            }
+            return errorsCount;
+        }
+        // the bulk save replaces comments too, so keep the current ones of scores without a comment
+        Map<String, String> currentComments = new HashMap<String, String>();
+        for (GradeDefinition gd : gradebookService.getGradesForStudentsForItem(gradebookId, gbItem.id, studentIds)) {
+            if (gd.getGradeComment() != null) {
+                currentComments.put(gd.getStudentUid(), gd.getGradeComment());
+            }
+        }
+        List<GradeDefinition> grades = new ArrayList<GradeDefinition>(validScores.size());
+        for (GradebookItemScore score : validScores.values()) {
+            GradeDefinition gd = new GradeDefinition();
+            gd.setStudentUid(score.userId);
+            // the same score string saveScore sets
+            gd.setGrade(Double.valueOf(score.grade).toString());
+            gd.setGradeComment(isBlank(score.comment) ? currentComments.get(score.userId) : score.comment);
+            grades.add(gd);
+        }
+        gradebookService.saveGradesAndComments(gradebookId, gbItem.id, grades);
+        if (log.isDebugEnabled()) log.debug("saved " + validScores.size() + " scores for item (" + gbItem.id + ") in one batch");
+        return 0;
+    }
+
+    /**
+     * Saves a single score and its comment, recording the failure in the score if it fails
+     * 
+     * @return true if saved, false if the score has an error now
+     */
+    private boolean saveScore(String gradebookId, GradebookItem gbItem, boolean isExternal, GradebookItemScore score) {
+        String studentId = score.userId;
+        try {
+            Double dScore = Double.valueOf(score.grade);
+            // null grade deletes the score
+            if (isExternal) {
+                gradebookExternalAssessmentService.updateExternalAssessmentScore(gradebookId, gbItem.eid, studentId, dScore.toString());
+            } else {
+                gradebookService.setAssignmentScoreString(gradebookId, gbItem.id, studentId, dScore.toString(), EXTERNAL_DATASOURCE);
+            }
+            if (score.comment != null && ! "".equals(score.comment)) {
+                gradebookService.setAssignmentScoreComment(gradebookId, gbItem.id, studentId, score.comment);
+            }
+            return true;
+        } catch (Exception e) {
+            // General errors, caused while performing updates (Tag: generalerrors)
+            String msg = "Failure saving score ("+score+"): "+e;
+            log.warn(msg, e);
+            score.error = "GENERAL: "+msg;
+            return false;
+        }
+    }
+
     /**
      * Check if a name exists already and if so, adjusts it so it is now safe without doing too many checks
      * @param gradebookId the gradebook unique id (can also be the siteId)
@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.business.impl;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.sakaiproject.service.gradebook.shared.GradebookService;
+import org.sakaiproject.tool.gradebook.AssignmentGradeRecord;
+import org.sakaiproject.tool.gradebook.Gradebook;
+import org.sakaiproject.tool.gradebook.GradebookAssignment;
+
+/**
+ * Assignment statistics calculated the way getAssignmentsWithStats did before the
+ * {@link AssignmentStatisticsAggregator}, handing every assignment the whole gradebook's
+ * records, against bucketing the records once and handing each assignment its own.
+ *
+ * Arguments: pairs of item and student counts, 50 500 150 1333 300 2000 by default.
+ */
+public class AssignmentStatisticsBenchmark {
+
+	public static void main(final String[] args) throws Exception {
+		final int[] sizes = args.length > 0 ? new int[args.length] : new int[] { 50, 500, 150, 1333, 300, 2000 };
+		for (int i = 0; i < args.length; i++) {
+			sizes[i] = Integer.parseInt(args[i]);
+		}
+		BenchmarkSupport.printEnvironment();
+		for (int i = 0; i + 1 < sizes.length; i += 2) {
+			run(sizes[i], sizes[i + 1]);
+		}
+	}
+
+	private static void run(final int items, final int studentCount) throws Exception {
+		final Gradebook gradebook = BenchmarkSupport.gradebook(GradebookService.CATEGORY_TYPE_NO_CATEGORY);
+		final List<GradebookAssignment> assignments = BenchmarkSupport.assignments(gradebook, items,
+				java.util.Collections.emptyList(), 0);
+		final List<AssignmentGradeRecord> records = BenchmarkSupport.gradeRecords(assignments, BenchmarkSupport.students(studentCount));
+		System.out.println(items + " items x " + studentCount + " students, " + records.size() + " records");
+
+		// both ways must agree before their timings mean anything
+		final Map<Long, Double> expected = new HashMap<>();
+		for (final GradebookAssignment assignment : assignments) {
+			assignment.calculateStatistics(records);
+			expected.put(assignment.getId(), assignment.getAverageTotal());
+		}
+		final AssignmentStatisticsAggregator check = new AssignmentStatisticsAggregator(records);
+		for (final GradebookAssignment assignment : assignments) {
+			check.calculateStatistics(assignment);
+			if (!Objects.equals(expected.get(assignment.getId()), assignment.getAverageTotal())) {
+				throw new IllegalStateException("Statistics of item " + assignment.getId() + " differ");
+			}
+		}
+
+		final int scanRuns = (long) items * records.size() > 20000000L ? 5 : 15;
+		BenchmarkSupport.time("every item scans all records", 2, scanRuns, () -> {
+			for (final GradebookAssignment assignment : assignments) {
+				assignment.calculateStatistics(records);
+			}
+		});
+		BenchmarkSupport.time("records bucketed once", 5, 15, () -> {
+			final AssignmentStatisticsAggregator aggregator = new AssignmentStatisticsAggregator(records);
+			for (final GradebookAssignment assignment : assignments) {
+				aggregator.calculateStatistics(assignment);
+			}
+		});
+	}
+}
@@ -0,0 +1,303 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.business.impl;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.sakaiproject.service.gradebook.shared.GradebookService;
+import org.sakaiproject.tool.gradebook.AssignmentGradeRecord;
+import org.sakaiproject.tool.gradebook.Category;
+import org.sakaiproject.tool.gradebook.Gradebook;
+import org.sakaiproject.tool.gradebook.GradebookAssignment;
+
+/**
+ * The course grade calculation from before {@link CourseGradeMatrix}, for the benchmark to
+ * compare against: getTotalPointsEarnedInternal and getTotalPointsInternal as they stood in
+ * GradebookCalculationImpl, with their logging taken out, called once per student the way
+ * getPointsEarnedCourseGradeRecords called them.
+ */
+@SuppressWarnings({ "rawtypes", "unchecked", "deprecation" })
+final class BaselineCourseGrades {
+
+	private BaselineCourseGrades() {
+	}
+
+	/**
+	 * The per-student loop of getPointsEarnedCourseGradeRecords, without its queries.
+	 */
+	static void calculate(final Gradebook gradebook, final List categories, final List<String> studentIds,
+			final List<GradebookAssignment> countedAssigns, final Map<String, List<AssignmentGradeRecord>> studentIdGradeRecordsMap,
+			final Map<String, Set<GradebookAssignment>> visibleExternals, final double[] earned, final double[] literal,
+			final double[] possible) {
+		for (int r = 0; r < studentIds.size(); r++) {
+			final String studentId = studentIds.get(r);
+			final List<GradebookAssignment> studentCountedAssigns = new ArrayList<GradebookAssignment>();
+			for (final GradebookAssignment assign : countedAssigns) {
+				if (!assign.isExternallyMaintained()
+						|| (visibleExternals.containsKey(studentId) && visibleExternals.get(studentId).contains(assign))) {
+					studentCountedAssigns.add(assign);
+				}
+			}
+			final List<AssignmentGradeRecord> studentGradeRecs = studentIdGradeRecordsMap.get(studentId);
+			final List totalEarned = getTotalPointsEarnedInternal(studentId, gradebook, categories, studentGradeRecs, studentCountedAssigns);
+			earned[r] = ((Double) totalEarned.get(0)).doubleValue();
+			literal[r] = ((Double) totalEarned.get(1)).doubleValue();
+			possible[r] = getTotalPointsInternal(gradebook, categories, studentId, studentGradeRecs, studentCountedAssigns, false);
+		}
+	}
+
+	private static List getTotalPointsEarnedInternal(final String studentId, final Gradebook gradebook, final List categories,
+	        final List<AssignmentGradeRecord> gradeRecs, List<GradebookAssignment> countedAssigns)
+	{
+		int gbGradeType = gradebook.getGrade_type();
+		if( gbGradeType != GradebookService.GRADE_TYPE_POINTS && gbGradeType != GradebookService.GRADE_TYPE_PERCENTAGE)
+		{
+			return new ArrayList();
+		}
+		
+		if (gradeRecs == null || countedAssigns == null) {
+            List returnList = new ArrayList();
+            returnList.add(new Double(0));
+            returnList.add(new Double(0));
+            returnList.add(new Double(0)); // 3rd one is for the pre-adjusted course grade
+            return returnList;
+        }
+
+
+		double totalPointsEarned = 0;
+		BigDecimal literalTotalPointsEarned = new BigDecimal(0d);
+
+		Map cateScoreMap = new HashMap();
+		Map cateTotalScoreMap = new HashMap();
+
+		Set assignmentsTaken = new HashSet();
+		for (AssignmentGradeRecord gradeRec : gradeRecs)
+		{
+			if(gradeRec.getPointsEarned() != null && !gradeRec.getPointsEarned().equals("") && !gradeRec.getDroppedFromGrade())
+			{
+				GradebookAssignment go = gradeRec.getAssignment();
+				if (go.isIncludedInCalculations() && countedAssigns.contains(go))
+				{
+					Double pointsEarned = new Double(gradeRec.getPointsEarned());
+					//if(gbGradeType == GRADE_TYPE_POINTS)
+					//{
+						if(gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_NO_CATEGORY)
+						{
+							totalPointsEarned += pointsEarned.doubleValue();
+							literalTotalPointsEarned = (new BigDecimal(pointsEarned.doubleValue())).add(literalTotalPointsEarned);
+							assignmentsTaken.add(go.getId());
+						}
+						else if(gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_ONLY_CATEGORY && go != null)
+						{
+							totalPointsEarned += pointsEarned.doubleValue();
+							literalTotalPointsEarned = (new BigDecimal(pointsEarned.doubleValue())).add(literalTotalPointsEarned);
+							assignmentsTaken.add(go.getId());
+						}
+						else if(gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_WEIGHTED_CATEGORY && go != null && categories != null)
+						{
+							for(int i=0; i<categories.size(); i++)
+							{
+								Category cate = (Category) categories.get(i);
+								if(cate != null && !cate.isRemoved() && go.getCategory() != null && cate.getId().equals(go.getCategory().getId()))
+								{
+									assignmentsTaken.add(go.getId());
+									literalTotalPointsEarned = (new BigDecimal(pointsEarned.doubleValue())).add(literalTotalPointsEarned);
+									if(cateScoreMap.get(cate.getId()) != null)
+									{
+										cateScoreMap.put(cate.getId(), new Double(((Double)cateScoreMap.get(cate.getId())).doubleValue() + pointsEarned.doubleValue()));
+									}
+									else
+									{
+										cateScoreMap.put(cate.getId(), new Double(pointsEarned));
+									}
+									break;
+								}
+							}
+						}
+					}
+					
+						
+					
+				
+			}			
+		}
+
+		if(gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_WEIGHTED_CATEGORY && categories != null)
+		{
+			Iterator assgnsIter = countedAssigns.iterator();
+			while (assgnsIter.hasNext()) 
+			{
+				GradebookAssignment asgn = (GradebookAssignment)assgnsIter.next();
+				if(assignmentsTaken.contains(asgn.getId()))
+				{
+					for(int i=0; i<categories.size(); i++)
+					{
+						Category cate = (Category) categories.get(i);
+						if(cate != null && !cate.isRemoved() && asgn.getCategory() != null && cate.getId().equals(asgn.getCategory().getId()) && !asgn.isExtraCredit())
+						{
+
+							if(cateTotalScoreMap.get(cate.getId()) == null)
+							{								
+								cateTotalScoreMap.put(cate.getId(), asgn.getPointsPossible());
+							}
+							else
+							{								
+								cateTotalScoreMap.put(cate.getId(), new Double(((Double)cateTotalScoreMap.get(cate.getId())).doubleValue() + asgn.getPointsPossible().doubleValue()));							
+							}
+
+						}
+					}
+				}
+			}
+		}
+
+		if(assignmentsTaken.isEmpty())
+			totalPointsEarned = -1;
+
+		if(gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_WEIGHTED_CATEGORY)
+		{
+			for(int i=0; i<categories.size(); i++)
+			{
+				Category cate = (Category) categories.get(i);
+				if(cate != null && !cate.isRemoved() && cateScoreMap.get(cate.getId()) != null && cateTotalScoreMap.get(cate.getId()) != null)
+				{
+					totalPointsEarned += ((Double)cateScoreMap.get(cate.getId())).doubleValue() * cate.getWeight().doubleValue() / ((Double)cateTotalScoreMap.get(cate.getId())).doubleValue();
+				}
+			}
+		}
+		List returnList = new ArrayList();
+		returnList.add(new Double(totalPointsEarned));
+		returnList.add(new Double((new BigDecimal(literalTotalPointsEarned.doubleValue(), GradebookService.MATH_CONTEXT)).doubleValue()));
+		return returnList;
+	}
+
+	private static double getTotalPointsInternal(final Gradebook gradebook, final List categories, final String studentId, List<AssignmentGradeRecord> studentGradeRecs, List<GradebookAssignment> countedAssigns, boolean literalTotal)
+	{
+		int gbGradeType = gradebook.getGrade_type();
+		if( gbGradeType != GradebookService.GRADE_TYPE_POINTS && gbGradeType != GradebookService.GRADE_TYPE_PERCENTAGE)
+		{
+			return -1;
+		}
+		
+		if (studentGradeRecs == null || countedAssigns == null) {
+            return 0;
+        }
+		
+		double totalPointsPossible = 0;
+
+        HashSet<GradebookAssignment> countedSet = new HashSet<GradebookAssignment>(countedAssigns);
+
+		// we need to filter this list to identify only "counted" grade recs
+        List<AssignmentGradeRecord> countedGradeRecs = new ArrayList<AssignmentGradeRecord>();
+        for (AssignmentGradeRecord gradeRec : studentGradeRecs) {
+            GradebookAssignment assign = gradeRec.getAssignment();
+            boolean extraCredit = assign.isExtraCredit();
+            if(gradebook.getCategory_type() != GradebookService.CATEGORY_TYPE_NO_CATEGORY && assign.getCategory() != null && assign.getCategory().isExtraCredit())
+            	extraCredit = true;
+            
+            if (assign.isCounted() && !assign.getUngraded() && !assign.isRemoved() && countedSet.contains(assign) &&
+                    assign.getPointsPossible() != null && assign.getPointsPossible() > 0 && !gradeRec.getDroppedFromGrade() && !extraCredit) {
+                countedGradeRecs.add(gradeRec);
+            }
+        }
+
+		Set assignmentsTaken = new HashSet();
+		Set categoryTaken = new HashSet();
+		for (AssignmentGradeRecord gradeRec : countedGradeRecs)
+		{
+		    if (gradeRec.getPointsEarned() != null && !gradeRec.getPointsEarned().equals("")) 
+		    {
+		        Double pointsEarned = new Double(gradeRec.getPointsEarned());
+		        GradebookAssignment go = gradeRec.getAssignment();
+		        if (pointsEarned != null) 
+		        {
+		            if(gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_NO_CATEGORY)
+		            {
+		                assignmentsTaken.add(go.getId());
+		            }
+		            else if ((gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_ONLY_CATEGORY || gradebook
+		            		.getCategory_type() == GradebookService.CATEGORY_TYPE_WEIGHTED_CATEGORY)
+		            		&& go != null && categories != null)
+		            {
+//		                assignmentsTaken.add(go.getId());
+//		            }
+//		            else if(gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_WEIGHTED_CATEGORY && go != null && categories != null)
+//		            {
+		                for(int i=0; i<categories.size(); i++)
+		                {
+		                    Category cate = (Category) categories.get(i);
+		                    if(cate != null && !cate.isRemoved() && go.getCategory() != null && cate.getId().equals(go.getCategory().getId()) && ((cate.isExtraCredit()!=null && !cate.isExtraCredit()) || cate.isExtraCredit()==null))
+		                    {
+		                        assignmentsTaken.add(go.getId());
+		                        categoryTaken.add(cate.getId());
+		                        break;
+		                    }
+		                }
+		            }
+		        }
+		    }
+		}
+
+		if(!assignmentsTaken.isEmpty())
+		{
+			if(!literalTotal && gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_WEIGHTED_CATEGORY)
+			{
+				for(int i=0; i<categories.size(); i++)
+				{
+					Category cate = (Category) categories.get(i);
+					if(cate != null && !cate.isRemoved() && categoryTaken.contains(cate.getId()) )
+					{
+						totalPointsPossible += cate.getWeight().doubleValue();
+					}
+				}
+				return totalPointsPossible;
+			}
+			Iterator assignmentIter = countedAssigns.iterator();
+			while (assignmentIter.hasNext()) 
+			{
+				GradebookAssignment asn = (GradebookAssignment) assignmentIter.next();
+				if(asn != null)
+				{
+					Double pointsPossible = asn.getPointsPossible();
+
+					if(gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_NO_CATEGORY && assignmentsTaken.contains(asn.getId()))
+					{
+						totalPointsPossible += pointsPossible.doubleValue();
+					}
+					else if(gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_ONLY_CATEGORY && assignmentsTaken.contains(asn.getId()))
+					{
+						totalPointsPossible += pointsPossible.doubleValue();
+					}else if(literalTotal && gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_WEIGHTED_CATEGORY && assignmentsTaken.contains(asn.getId()))
+					{
+						totalPointsPossible += pointsPossible.doubleValue();
+					}
+				}
+			}
+		}
+		else
+			totalPointsPossible = -1;
+
+		return totalPointsPossible;
+	}
+}
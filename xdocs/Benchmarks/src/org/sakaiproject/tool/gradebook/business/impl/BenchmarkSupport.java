@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.business.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.sakaiproject.service.gradebook.shared.GradebookService;
+import org.sakaiproject.tool.gradebook.AssignmentGradeRecord;
+import org.sakaiproject.tool.gradebook.Category;
+import org.sakaiproject.tool.gradebook.Gradebook;
+import org.sakaiproject.tool.gradebook.GradebookAssignment;
+
+/**
+ * Timing and generated gradebooks shared by the benchmarks, see ../README.txt.
+ *
+ * Timings are the median and fastest of a number of runs after a few warm-up runs, which is
+ * enough to compare two ways of doing the same work on one machine but no replacement for JMH.
+ * Generated data is seeded, so every run measures the same gradebook.
+ */
+final class BenchmarkSupport {
+
+	interface Task {
+		void run() throws Exception;
+	}
+
+	private BenchmarkSupport() {
+	}
+
+	/**
+	 * @return the median milliseconds of the timed runs, having printed them with the fastest
+	 */
+	static double time(final String name, final int warmups, final int runs, final Task task) throws Exception {
+		for (int i = 0; i < warmups; i++) {
+			task.run();
+		}
+		final long[] nanos = new long[runs];
+		for (int i = 0; i < runs; i++) {
+			final long start = System.nanoTime();
+			task.run();
+			nanos[i] = System.nanoTime() - start;
+		}
+		Arrays.sort(nanos);
+		final double median = nanos[runs / 2] / 1e6;
+		System.out.printf("  %-44s median %9.3f ms  fastest %9.3f ms%n", name, median, nanos[0] / 1e6);
+		return median;
+	}
+
+	/**
+	 * @return the heap in use once garbage has been collected, to tell what a structure keeps
+	 */
+	static long usedHeap() throws InterruptedException {
+		final Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	static void printEnvironment() {
+		System.out.println("Java " + System.getProperty("java.version") + ", " + Runtime.getRuntime().availableProcessors()
+				+ " processors, " + Runtime.getRuntime().maxMemory() / (1024 * 1024) + " MB heap");
+	}
+
+	static Gradebook gradebook(final int categoryType) {
+		final Gradebook gradebook = new Gradebook();
+		gradebook.setGrade_type(GradebookService.GRADE_TYPE_POINTS);
+		gradebook.setCategory_type(categoryType);
+		return gradebook;
+	}
+
+	/**
+	 * @return count categories of equal weight
+	 */
+	static List<Category> categories(final int count) {
+		final List<Category> categories = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			final Category category = new Category();
+			category.setId(Long.valueOf(i + 1));
+			category.setName("Category " + i);
+			category.setWeight(Double.valueOf(1.0 / count));
+			category.setExtraCredit(Boolean.FALSE);
+			categories.add(category);
+		}
+		return categories;
+	}
+
+	/**
+	 * @param categories categories to deal the items out to in turn, or empty for none
+	 * @param externalShare the share of items maintained by other tools
+	 */
+	static List<GradebookAssignment> assignments(final Gradebook gradebook, final int count, final List<Category> categories,
+			final double externalShare) {
+		final Random random = new Random(7);
+		final List<GradebookAssignment> assignments = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			final GradebookAssignment assignment = new GradebookAssignment();
+			assignment.setId(Long.valueOf(1000 + i));
+			assignment.setName("Item " + i);
+			assignment.setGradebook(gradebook);
+			assignment.setPointsPossible(Double.valueOf(10 + random.nextInt(91)));
+			assignment.setCategory(categories.isEmpty() ? null : categories.get(i % categories.size()));
+			assignment.setExternallyMaintained(random.nextDouble() < externalShare);
+			assignment.setCounted(true);
+			assignment.setUngraded(false);
+			assignment.setExtraCredit(Boolean.FALSE);
+			assignment.setRemoved(false);
+			assignments.add(assignment);
+		}
+		return assignments;
+	}
+
+	static List<String> students(final int count) {
+		final List<String> students = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			students.add("student-" + i);
+		}
+		return students;
+	}
+
+	/**
+	 * @return a record for nine in ten cells, one in eight of them without a score
+	 */
+	static List<AssignmentGradeRecord> gradeRecords(final List<GradebookAssignment> assignments, final List<String> students) {
+		final Random random = new Random(11);
+		final List<AssignmentGradeRecord> records = new ArrayList<>();
+		for (final String studentId : students) {
+			for (final GradebookAssignment assignment : assignments) {
+				if (random.nextInt(10) == 0) {
+					continue;
+				}
+				final Double points = random.nextInt(8) == 0 ? null
+						: Double.valueOf(random.nextInt(assignment.getPointsPossible().intValue() + 1));
+				final AssignmentGradeRecord record = new AssignmentGradeRecord(assignment, studentId, points);
+				record.setDroppedFromGrade(Boolean.FALSE);
+				records.add(record);
+			}
+		}
+		return records;
+	}
+}
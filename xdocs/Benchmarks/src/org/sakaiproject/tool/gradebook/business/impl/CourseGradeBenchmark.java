@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.business.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.sakaiproject.service.gradebook.shared.GradebookService;
+import org.sakaiproject.tool.gradebook.AssignmentGradeRecord;
+import org.sakaiproject.tool.gradebook.Category;
+import org.sakaiproject.tool.gradebook.Gradebook;
+import org.sakaiproject.tool.gradebook.GradebookAssignment;
+
+/**
+ * Course grade totals of a weighted gradebook of five categories, a tenth of whose items are
+ * maintained by other tools and shown to half the students each, calculated per student the way
+ * getPointsEarnedCourseGradeRecords did before {@link CourseGradeMatrix} against packing them
+ * into the matrix. The matrix's calculation is then timed on its own, sequentially and split
+ * over pools of each of the given thread counts with the default threshold of
+ * {@link GradebookCalculationImpl#DEFAULT_PARALLEL_CALCULATION_THRESHOLD} rows.
+ *
+ * The pools are used whatever the number of processors, so on a machine with fewer processors
+ * than threads the timings show the cost of splitting, not what it gains.
+ *
+ * Arguments: pairs of item and student counts, 50 1000 50 5000 100 5000 by default. The thread
+ * counts are taken from the gradebook.benchmark.threads system property, 2,4 by default.
+ */
+public class CourseGradeBenchmark {
+
+	public static void main(final String[] args) throws Exception {
+		final int[] sizes = args.length > 0 ? new int[args.length] : new int[] { 50, 1000, 50, 5000, 100, 5000 };
+		for (int i = 0; i < args.length; i++) {
+			sizes[i] = Integer.parseInt(args[i]);
+		}
+		final List<ForkJoinPool> pools = new ArrayList<>();
+		for (final String threads : System.getProperty("gradebook.benchmark.threads", "2,4").split(",")) {
+			pools.add(new ForkJoinPool(Integer.parseInt(threads.trim())));
+		}
+		BenchmarkSupport.printEnvironment();
+		System.out.println("default calculation threads here: " + GradebookManagerHibernateImpl.DEFAULT_CALCULATION_THREADS);
+		try {
+			for (int i = 0; i + 1 < sizes.length; i += 2) {
+				run(sizes[i], sizes[i + 1], pools);
+			}
+		} finally {
+			for (final ForkJoinPool pool : pools) {
+				pool.shutdown();
+			}
+		}
+	}
+
+	private static void run(final int items, final int studentCount, final List<ForkJoinPool> pools) throws Exception {
+		final Gradebook gradebook = BenchmarkSupport.gradebook(GradebookService.CATEGORY_TYPE_WEIGHTED_CATEGORY);
+		final List<Category> categories = BenchmarkSupport.categories(5);
+		final List<GradebookAssignment> assignments = BenchmarkSupport.assignments(gradebook, items, categories, 0.1);
+		final List<String> students = BenchmarkSupport.students(studentCount);
+		final List<AssignmentGradeRecord> records = BenchmarkSupport.gradeRecords(assignments, students);
+
+		final Map<String, List<AssignmentGradeRecord>> studentIdGradeRecordsMap = new HashMap<>();
+		for (final AssignmentGradeRecord gradeRecord : records) {
+			studentIdGradeRecordsMap.computeIfAbsent(gradeRecord.getStudentId(), k -> new ArrayList<>()).add(gradeRecord);
+		}
+		final Random random = new Random(13);
+		final Map<String, Set<GradebookAssignment>> visibleExternals = new HashMap<>();
+		for (final String studentId : students) {
+			final Set<GradebookAssignment> visible = new HashSet<>();
+			for (final GradebookAssignment assignment : assignments) {
+				if (assignment.isExternallyMaintained() && random.nextBoolean()) {
+					visible.add(assignment);
+				}
+			}
+			visibleExternals.put(studentId, visible);
+		}
+		System.out.println(items + " items x " + studentCount + " students, " + records.size() + " records");
+
+		final int rows = students.size();
+		final double[] earned = new double[rows];
+		final double[] literal = new double[rows];
+		final double[] possible = new double[rows];
+		final double[] matrixEarned = new double[rows];
+		final double[] matrixLiteral = new double[rows];
+		final double[] matrixPossible = new double[rows];
+
+		// the matrix must give every student the totals the per-student code did, whichever way it is split
+		BaselineCourseGrades.calculate(gradebook, categories, students, assignments, studentIdGradeRecordsMap, visibleExternals,
+				earned, literal, possible);
+		final CourseGradeMatrix matrix = new CourseGradeMatrix(gradebook, categories, assignments);
+		matrix.pack(students, studentIdGradeRecordsMap, visibleExternals);
+		matrix.calculate(matrixEarned, matrixLiteral, matrixPossible);
+		check("sequential", earned, literal, possible, matrixEarned, matrixLiteral, matrixPossible);
+		for (final ForkJoinPool pool : pools) {
+			matrix.calculate(matrixEarned, matrixLiteral, matrixPossible, pool, 0);
+			check(pool.getParallelism() + " threads", earned, literal, possible, matrixEarned, matrixLiteral, matrixPossible);
+		}
+
+		BenchmarkSupport.time("per student, as before", 3, 11, () -> BaselineCourseGrades.calculate(gradebook, categories,
+				students, assignments, studentIdGradeRecordsMap, visibleExternals, earned, literal, possible));
+		BenchmarkSupport.time("matrix, pack and calculate", 5, 15, () -> {
+			final CourseGradeMatrix packed = new CourseGradeMatrix(gradebook, categories, assignments);
+			packed.pack(students, studentIdGradeRecordsMap, visibleExternals);
+			packed.calculate(matrixEarned, matrixLiteral, matrixPossible);
+		});
+		BenchmarkSupport.time("matrix, pack only", 5, 15, () -> {
+			final CourseGradeMatrix packed = new CourseGradeMatrix(gradebook, categories, assignments);
+			packed.pack(students, studentIdGradeRecordsMap, visibleExternals);
+		});
+		BenchmarkSupport.time("matrix, calculate only, sequential", 5, 25,
+				() -> matrix.calculate(matrixEarned, matrixLiteral, matrixPossible));
+		for (final ForkJoinPool pool : pools) {
+			BenchmarkSupport.time("matrix, calculate only, " + pool.getParallelism() + " threads", 5, 25,
+					() -> matrix.calculate(matrixEarned, matrixLiteral, matrixPossible, pool,
+							GradebookCalculationImpl.DEFAULT_PARALLEL_CALCULATION_THRESHOLD));
+		}
+	}
+
+	private static void check(final String name, final double[] earned, final double[] literal, final double[] possible,
+			final double[] matrixEarned, final double[] matrixLiteral, final double[] matrixPossible) {
+		for (int r = 0; r < earned.length; r++) {
+			if (Double.compare(earned[r], matrixEarned[r]) != 0 || Double.compare(literal[r], matrixLiteral[r]) != 0
+					|| Double.compare(possible[r], matrixPossible[r]) != 0) {
+				throw new IllegalStateException("Totals of row " + r + " differ, " + name);
+			}
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2003-2017 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.gradebook.business.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sakaiproject.service.gradebook.shared.GradebookService;
+import org.sakaiproject.tool.gradebook.AbstractGradeRecord;
+import org.sakaiproject.tool.gradebook.AssignmentGradeRecord;
+import org.sakaiproject.tool.gradebook.GradebookAssignment;
+import org.sakaiproject.tool.gradebook.business.RosterGradeGrid;
+
+/**
+ * A roster's grade records held the way addToGradeRecordMap holds them, a hash map per student
+ * of item id to record, against a {@link RosterGradeGrid}: the memory each keeps beyond the
+ * records themselves, the time to fill it and the time to read every cell of it.
+ *
+ * Arguments: pairs of item and student counts, 50 1000 100 5000 by default.
+ */
+public class RosterGradeGridBenchmark {
+
+	/** holds what is being measured, so it survives the collection before measuring */
+	private static Object retained;
+
+	public static void main(final String[] args) throws Exception {
+		final int[] sizes = args.length > 0 ? new int[args.length] : new int[] { 50, 1000, 100, 5000 };
+		for (int i = 0; i < args.length; i++) {
+			sizes[i] = Integer.parseInt(args[i]);
+		}
+		BenchmarkSupport.printEnvironment();
+		for (int i = 0; i + 1 < sizes.length; i += 2) {
+			run(sizes[i], sizes[i + 1]);
+		}
+	}
+
+	private static void run(final int items, final int studentCount) throws Exception {
+		final List<GradebookAssignment> assignments = BenchmarkSupport.assignments(
+				BenchmarkSupport.gradebook(GradebookService.CATEGORY_TYPE_NO_CATEGORY), items, Collections.emptyList(), 0);
+		final List<String> students = BenchmarkSupport.students(studentCount);
+		final List<AssignmentGradeRecord> records = BenchmarkSupport.gradeRecords(assignments, students);
+		final List<Long> itemIds = new ArrayList<>(items);
+		for (final GradebookAssignment assignment : assignments) {
+			itemIds.add(assignment.getId());
+		}
+		System.out.println(items + " items x " + studentCount + " students, " + records.size() + " records");
+
+		// both must hold the same record in every cell before their costs mean anything
+		final Map<String, Map<Long, AbstractGradeRecord>> map = buildMap(records);
+		final RosterGradeGrid grid = buildGrid(students, itemIds, records);
+		for (int row = 0; row < students.size(); row++) {
+			final Map<Long, AbstractGradeRecord> studentMap = map.get(students.get(row));
+			for (int column = 0; column < itemIds.size(); column++) {
+				final AbstractGradeRecord expected = studentMap == null ? null : studentMap.get(itemIds.get(column));
+				if (expected != grid.getRecord(row, column)) {
+					throw new IllegalStateException("Cell " + row + ", " + column + " differs");
+				}
+			}
+		}
+
+		retained = null;
+		final long before = BenchmarkSupport.usedHeap();
+		retained = buildMap(records);
+		final long mapBytes = BenchmarkSupport.usedHeap() - before;
+		retained = null;
+		final long between = BenchmarkSupport.usedHeap();
+		retained = buildGrid(students, itemIds, records);
+		final long gridBytes = BenchmarkSupport.usedHeap() - between;
+		retained = null;
+		System.out.printf("  %-44s map %9.1f MB  grid %9.1f MB  (%.1fx)%n", "retained beyond the records",
+				mapBytes / 1048576.0, gridBytes / 1048576.0, (double) mapBytes / gridBytes);
+
+		BenchmarkSupport.time("build nested maps", 5, 15, () -> retained = buildMap(records));
+		BenchmarkSupport.time("build grid", 5, 15, () -> retained = buildGrid(students, itemIds, records));
+		retained = null;
+		BenchmarkSupport.time("read every cell of the nested maps", 5, 15, () -> {
+			int found = 0;
+			for (final String studentId : students) {
+				final Map<Long, AbstractGradeRecord> studentMap = map.get(studentId);
+				for (final Long itemId : itemIds) {
+					if (studentMap != null && studentMap.get(itemId) != null) {
+						found++;
+					}
+				}
+			}
+			retained = Integer.valueOf(found);
+		});
+		BenchmarkSupport.time("read every cell of the grid", 5, 15, () -> {
+			int found = 0;
+			for (int row = 0; row < grid.getStudentCount(); row++) {
+				for (int column = 0; column < grid.getItemCount(); column++) {
+					if (grid.getRecord(row, column) != null) {
+						found++;
+					}
+				}
+			}
+			retained = Integer.valueOf(found);
+		});
+	}
+
+	private static Map<String, Map<Long, AbstractGradeRecord>> buildMap(final List<AssignmentGradeRecord> records) {
+		final Map<String, Map<Long, AbstractGradeRecord>> map = new HashMap<>();
+		for (final AssignmentGradeRecord gradeRecord : records) {
+			map.computeIfAbsent(gradeRecord.getStudentId(), k -> new HashMap<>())
+					.put(gradeRecord.getGradableObject().getId(), gradeRecord);
+		}
+		return map;
+	}
+
+	private static RosterGradeGrid buildGrid(final List<String> students, final List<Long> itemIds,
+			final List<AssignmentGradeRecord> records) {
+		final RosterGradeGrid grid = new RosterGradeGrid(students, itemIds);
+		for (final AssignmentGradeRecord gradeRecord : records) {
+			grid.setRecord(gradeRecord, true);
+		}
+		return grid;
+	}
+}